@@ -0,0 +1,54 @@
+/*
+ * All content copyright Terracotta, Inc., unless otherwise indicated. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.quartz.exception;
+
+import org.quartz.job.JobPersistenceException;
+
+/**
+ * An exception that is thrown to indicate that a <code>JobStore</code>
+ * refused to store a job or trigger because the estimated memory
+ * taken by what it stores would exceed its configured limit.
+ *
+ * @see org.quartz.spi.FootprintReporter
+ */
+public class FootprintLimitExceededException extends JobPersistenceException {
+
+    private static final long serialVersionUID = 4613057092641874452L;
+
+    /*
+     * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+     *
+     * Constructors.
+     *
+     * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+     */
+
+    /**
+     * <p>
+     * Create a <code>FootprintLimitExceededException</code> for the object
+     * described, which needs the given number of bytes, while the store
+     * already takes <code>footprint</code> bytes of <code>limit</code>.
+     * </p>
+     */
+    public FootprintLimitExceededException(String what, long bytes, long footprint, long limit) {
+        super("Unable to store " + what + ": it would take an estimated " + bytes
+                + " bytes, and the job store already takes " + footprint
+                + " of its limit of " + limit + " bytes.");
+    }
+
+}
@@ -62,6 +62,31 @@ public interface QuartzSchedulerMBean {
 
     Map<String, Long> getPerformanceMetrics();
 
+    /**
+     * @return estimated bytes taken by the job store's jobs, triggers,
+     * calendars and JobDataMaps, its total and limit, and the numbers of
+     * jobs, triggers and calendars; empty if the job store does not report
+     * its footprint
+     * @see org.quartz.spi.FootprintReporter
+     */
+    Map<String, Long> getJobStoreFootprint();
+
+    /**
+     * @return estimated bytes taken by the jobs of each job group
+     */
+    Map<String, Long> getJobGroupFootprints();
+
+    /**
+     * @return estimated bytes taken by the triggers of each trigger group
+     */
+    Map<String, Long> getTriggerGroupFootprints();
+
+    /**
+     * @return estimated bytes of the largest JobDataMaps of jobs and
+     * triggers, largest first
+     */
+    Map<String, Long> getLargestJobDataMaps();
+
     /**
      * @return TabularData of CompositeData:JobExecutionContext
      * @throws Exception
@@ -14,6 +14,7 @@ import org.quartz.job.*;
 import org.quartz.scheduler.SchedulerException;
 import org.quartz.scheduler.SchedulerListener;
 import org.quartz.triggers.AbstractTrigger;
+import org.quartz.spi.JobStoreFootprint;
 import org.quartz.spi.OperableTrigger;
 import org.quartz.triggers.TriggerKey;
 
@@ -991,4 +992,36 @@ public class QuartzSchedulerMBeanImpl extends StandardMBean implements
                 .valueOf(getJobsScheduledMostRecentSample()));
         return result;
     }
+
+    public Map<String, Long> getJobStoreFootprint() {
+        Map<String, Long> result = new HashMap<String, Long>();
+        JobStoreFootprint footprint = scheduler.getJobStoreFootprint();
+        if (footprint != null) {
+            result.put("Jobs", Long.valueOf(footprint.getJobBytes()));
+            result.put("Triggers", Long.valueOf(footprint.getTriggerBytes()));
+            result.put("Calendars", Long.valueOf(footprint.getCalendarBytes()));
+            result.put("JobDataMaps", Long.valueOf(footprint.getJobDataMapBytes()));
+            result.put("Total", Long.valueOf(footprint.getTotalBytes()));
+            result.put("Limit", Long.valueOf(footprint.getMaxFootprint()));
+            result.put("NumberOfJobs", Long.valueOf(footprint.getNumberOfJobs()));
+            result.put("NumberOfTriggers", Long.valueOf(footprint.getNumberOfTriggers()));
+            result.put("NumberOfCalendars", Long.valueOf(footprint.getNumberOfCalendars()));
+        }
+        return result;
+    }
+
+    public Map<String, Long> getJobGroupFootprints() {
+        JobStoreFootprint footprint = scheduler.getJobStoreFootprint();
+        return (footprint != null) ? new HashMap<String, Long>(footprint.getJobGroupBytes()) : new HashMap<String, Long>();
+    }
+
+    public Map<String, Long> getTriggerGroupFootprints() {
+        JobStoreFootprint footprint = scheduler.getJobStoreFootprint();
+        return (footprint != null) ? new HashMap<String, Long>(footprint.getTriggerGroupBytes()) : new HashMap<String, Long>();
+    }
+
+    public Map<String, Long> getLargestJobDataMaps() {
+        JobStoreFootprint footprint = scheduler.getJobStoreFootprint();
+        return (footprint != null) ? new LinkedHashMap<String, Long>(footprint.getLargestJobDataMaps()) : new HashMap<String, Long>();
+    }
 }
@@ -20,6 +20,7 @@ package org.quartz.job;
 
 import java.io.Serializable;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
 import org.quartz.exception.PersistJobDataAfterExecution;
 import org.quartz.triggers.Trigger;
@@ -98,6 +99,20 @@ public class JobDataMap extends StringKeyDirtyFlagMap implements Serializable {
         clearDirtyFlag();
     }
 
+    /**
+     * <p>
+     * Create a <code>JobDataMap</code> with the data returned by the given
+     * loader, which is only called when the data is first accessed.
+     * </p>
+     * <p>
+     * Use case: loading JobDataMap from DB only if the job or trigger it
+     * belongs to actually reads it.
+     * </p>
+     */
+    public JobDataMap(Callable<? extends Map<String, Object>> loader) {
+        super(loader);
+    }
+
     /*
      * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
      * 
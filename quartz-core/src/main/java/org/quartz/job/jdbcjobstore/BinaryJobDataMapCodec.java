@@ -0,0 +1,386 @@
+/*
+ * All content copyright Terracotta, Inc., unless otherwise indicated. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.quartz.job.jdbcjobstore;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A <code>{@link JobDataMapCodec}</code> writing a compact binary format, in
+ * which each value is a one byte tag followed by its content, and numbers
+ * and lengths are variable length integers.
+ * <p>
+ * Strings, primitive wrappers, byte arrays, dates, and hash maps, linked
+ * hash maps and array lists of these, are written in this format. Any other
+ * value is written with Java serialization, within the format, as are the
+ * entries of a job data map that contains itself.
+ * </p>
+ * <p>
+ * The bytes start with the marker <code>QJDM</code> and a version, which
+ * neither Java serialization streams nor <code>java.util.Properties</code>
+ * text can start with.
+ * </p>
+ */
+public class BinaryJobDataMapCodec implements JobDataMapCodec {
+
+    private static final byte[] MARKER = {'Q', 'J', 'D', 'M'};
+
+    private static final int VERSION = 1;
+
+    private static final int TAG_NULL = 0;
+    private static final int TAG_STRING = 1;
+    private static final int TAG_INTEGER = 2;
+    private static final int TAG_LONG = 3;
+    private static final int TAG_TRUE = 4;
+    private static final int TAG_FALSE = 5;
+    private static final int TAG_DOUBLE = 6;
+    private static final int TAG_FLOAT = 7;
+    private static final int TAG_SHORT = 8;
+    private static final int TAG_BYTE = 9;
+    private static final int TAG_CHARACTER = 10;
+    private static final int TAG_BYTES = 11;
+    private static final int TAG_DATE = 12;
+    private static final int TAG_HASH_MAP = 13;
+    private static final int TAG_LINKED_HASH_MAP = 14;
+    private static final int TAG_ARRAY_LIST = 15;
+    private static final int TAG_SERIALIZED = 16;
+
+    public byte[] encode(Map<?, ?> data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.write(MARKER);
+        out.writeByte(VERSION);
+
+        Map<Object, Object> entries = new HashMap<Object, Object>(data);
+        try {
+            writeMap(out, TAG_HASH_MAP, entries, new IdentityHashMap<Object, Object>());
+        } catch (CyclicValueException e) {
+            bytes.reset();
+            out.write(MARKER);
+            out.writeByte(VERSION);
+            writeSerialized(out, entries, null);
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    public boolean canDecode(byte[] bytes) {
+        if (bytes == null || bytes.length <= MARKER.length) {
+            return false;
+        }
+        for (int i = 0; i < MARKER.length; i++) {
+            if (bytes[i] != MARKER[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public Map<?, ?> decode(byte[] bytes) throws IOException, ClassNotFoundException {
+        if (!canDecode(bytes)) {
+            throw new StreamCorruptedException("Not encoded by " + getClass().getName());
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, MARKER.length, bytes.length - MARKER.length));
+        int version = in.readUnsignedByte();
+        if (version != VERSION) {
+            throw new StreamCorruptedException("Unsupported job data version: " + version);
+        }
+        Object data = readValue(in);
+        if (!(data instanceof Map)) {
+            throw new StreamCorruptedException("Job data is not a map: " + data);
+        }
+        return (Map<?, ?>) data;
+    }
+
+    private void writeValue(DataOutputStream out, Object value, Object key,
+                            IdentityHashMap<Object, Object> enclosing) throws IOException {
+        if (value == null) {
+            out.writeByte(TAG_NULL);
+            return;
+        }
+
+        Class<?> type = value.getClass();
+        if (type == String.class) {
+            out.writeByte(TAG_STRING);
+            writeString(out, (String) value);
+        } else if (type == Integer.class) {
+            out.writeByte(TAG_INTEGER);
+            writeVarLong(out, zigZag((Integer) value));
+        } else if (type == Long.class) {
+            out.writeByte(TAG_LONG);
+            writeVarLong(out, zigZag((Long) value));
+        } else if (type == Boolean.class) {
+            out.writeByte((Boolean) value ? TAG_TRUE : TAG_FALSE);
+        } else if (type == Double.class) {
+            out.writeByte(TAG_DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (type == Float.class) {
+            out.writeByte(TAG_FLOAT);
+            out.writeFloat((Float) value);
+        } else if (type == Short.class) {
+            out.writeByte(TAG_SHORT);
+            writeVarLong(out, zigZag((Short) value));
+        } else if (type == Byte.class) {
+            out.writeByte(TAG_BYTE);
+            out.writeByte((Byte) value);
+        } else if (type == Character.class) {
+            out.writeByte(TAG_CHARACTER);
+            out.writeChar((Character) value);
+        } else if (type == byte[].class) {
+            byte[] bytes = (byte[]) value;
+            out.writeByte(TAG_BYTES);
+            writeVarLong(out, bytes.length);
+            out.write(bytes);
+        } else if (type == Date.class) {
+            out.writeByte(TAG_DATE);
+            writeVarLong(out, zigZag(((Date) value).getTime()));
+        } else if (type == HashMap.class) {
+            writeMap(out, TAG_HASH_MAP, (Map<?, ?>) value, enclosing);
+        } else if (type == LinkedHashMap.class) {
+            writeMap(out, TAG_LINKED_HASH_MAP, (Map<?, ?>) value, enclosing);
+        } else if (type == ArrayList.class) {
+            writeList(out, (List<?>) value, enclosing);
+        } else {
+            writeSerialized(out, value, key);
+        }
+    }
+
+    private void writeMap(DataOutputStream out, int tag, Map<?, ?> map,
+                          IdentityHashMap<Object, Object> enclosing) throws IOException {
+        enter(map, enclosing);
+        out.writeByte(tag);
+        writeVarLong(out, map.size());
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            writeValue(out, entry.getKey(), entry.getKey(), enclosing);
+            writeValue(out, entry.getValue(), entry.getKey(), enclosing);
+        }
+        enclosing.remove(map);
+    }
+
+    private void writeList(DataOutputStream out, List<?> list,
+                           IdentityHashMap<Object, Object> enclosing) throws IOException {
+        enter(list, enclosing);
+        out.writeByte(TAG_ARRAY_LIST);
+        writeVarLong(out, list.size());
+        for (Object element : list) {
+            writeValue(out, element, null, enclosing);
+        }
+        enclosing.remove(list);
+    }
+
+    private static void enter(Object container, IdentityHashMap<Object, Object> enclosing) {
+        if (enclosing.put(container, container) != null) {
+            // Java serialization keeps the reference, this format can not
+            throw new CyclicValueException();
+        }
+    }
+
+    private void writeSerialized(DataOutputStream out, Object value, Object key) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            ObjectOutputStream objectOut = new ObjectOutputStream(bytes);
+            objectOut.writeObject(value);
+            objectOut.flush();
+        } catch (NotSerializableException e) {
+            throw new NotSerializableException(
+                    "Unable to serialize JobDataMap for insertion into " +
+                            "database because the value of property '" + key +
+                            "' is not serializable: " + e.getMessage());
+        }
+        out.writeByte(TAG_SERIALIZED);
+        writeVarLong(out, bytes.size());
+        bytes.writeTo(out);
+    }
+
+    private Object readValue(DataInputStream in) throws IOException, ClassNotFoundException {
+        int tag = in.readUnsignedByte();
+        switch (tag) {
+            case TAG_NULL:
+                return null;
+            case TAG_STRING:
+                return readString(in);
+            case TAG_INTEGER:
+                return (int) unZigZag(readVarLong(in));
+            case TAG_LONG:
+                return unZigZag(readVarLong(in));
+            case TAG_TRUE:
+                return Boolean.TRUE;
+            case TAG_FALSE:
+                return Boolean.FALSE;
+            case TAG_DOUBLE:
+                return in.readDouble();
+            case TAG_FLOAT:
+                return in.readFloat();
+            case TAG_SHORT:
+                return (short) unZigZag(readVarLong(in));
+            case TAG_BYTE:
+                return in.readByte();
+            case TAG_CHARACTER:
+                return in.readChar();
+            case TAG_BYTES: {
+                byte[] bytes = new byte[readLength(in)];
+                in.readFully(bytes);
+                return bytes;
+            }
+            case TAG_DATE:
+                return new Date(unZigZag(readVarLong(in)));
+            case TAG_HASH_MAP:
+                return readEntries(in, new HashMap<Object, Object>());
+            case TAG_LINKED_HASH_MAP:
+                return readEntries(in, new LinkedHashMap<Object, Object>());
+            case TAG_ARRAY_LIST: {
+                int size = readLength(in);
+                return readElements(in, new ArrayList<Object>(Math.min(size, 1024)), size);
+            }
+            case TAG_SERIALIZED: {
+                byte[] bytes = new byte[readLength(in)];
+                in.readFully(bytes);
+                ObjectInputStream objectIn = new ObjectInputStream(new ByteArrayInputStream(bytes));
+                try {
+                    return objectIn.readObject();
+                } finally {
+                    objectIn.close();
+                }
+            }
+            default:
+                throw new StreamCorruptedException("Unknown job data value tag: " + tag);
+        }
+    }
+
+    private Map<Object, Object> readEntries(DataInputStream in, Map<Object, Object> map)
+            throws IOException, ClassNotFoundException {
+        int size = readLength(in);
+        for (int i = 0; i < size; i++) {
+            Object key = readValue(in);
+            map.put(key, readValue(in));
+        }
+        return map;
+    }
+
+    private Collection<Object> readElements(DataInputStream in, Collection<Object> elements, int size)
+            throws IOException, ClassNotFoundException {
+        for (int i = 0; i < size; i++) {
+            elements.add(readValue(in));
+        }
+        return elements;
+    }
+
+    /**
+     * Write the chars of the given string as modified UTF-8, as
+     * <code>DataOutputStream.writeUTF</code> does, with no limit on its
+     * length.
+     */
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        int length = s.length();
+        writeVarLong(out, length);
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (c >= 0x0001 && c <= 0x007F) {
+                out.write(c);
+            } else if (c <= 0x07FF) {
+                out.write(0xC0 | ((c >> 6) & 0x1F));
+                out.write(0x80 | (c & 0x3F));
+            } else {
+                out.write(0xE0 | ((c >> 12) & 0x0F));
+                out.write(0x80 | ((c >> 6) & 0x3F));
+                out.write(0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = readLength(in);
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            int b = in.readUnsignedByte();
+            if (b < 0x80) {
+                chars[i] = (char) b;
+            } else if ((b & 0xE0) == 0xC0) {
+                chars[i] = (char) (((b & 0x1F) << 6) | (in.readUnsignedByte() & 0x3F));
+            } else if ((b & 0xF0) == 0xE0) {
+                int b2 = in.readUnsignedByte();
+                int b3 = in.readUnsignedByte();
+                chars[i] = (char) (((b & 0x0F) << 12) | ((b2 & 0x3F) << 6) | (b3 & 0x3F));
+            } else {
+                throw new StreamCorruptedException("Malformed job data string");
+            }
+        }
+        return new String(chars);
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new StreamCorruptedException("Malformed job data number");
+    }
+
+    private static int readLength(DataInputStream in) throws IOException {
+        long length = readVarLong(in);
+        if (length < 0 || length > Integer.MAX_VALUE) {
+            throw new StreamCorruptedException("Malformed job data length: " + length);
+        }
+        // every element takes at least one byte, so this bounds what is allocated
+        if (length > in.available()) {
+            throw new EOFException();
+        }
+        return (int) length;
+    }
+
+    /**
+     * Thrown when a map or list contains itself.
+     */
+    private static class CyclicValueException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+    }
+}
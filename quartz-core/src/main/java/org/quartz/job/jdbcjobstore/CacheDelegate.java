@@ -79,7 +79,7 @@ public class CacheDelegate extends StdJDBCDelegate {
                     } else if (binaryInput instanceof ByteArrayInputStream && ((ByteArrayInputStream) binaryInput).available() == 0) {
                         return null;
                     } else {
-                        ObjectInputStream in = new ObjectInputStream(binaryInput);
+                        ObjectInputStream in = new ObjectInputStream(getDecompressingStream(binaryInput));
                         try {
                             return in.readObject();
                         } finally {
@@ -93,6 +93,26 @@ public class CacheDelegate extends StdJDBCDelegate {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Caché requires {@code java.sql.Blob} instances to be explicitly freed.
+     */
+    @Override
+    protected byte[] getBytesFromBlob(ResultSet rs, String colName) throws IOException, SQLException {
+        Blob blob = rs.getBlob(colName);
+        if (blob == null) {
+            return null;
+        } else {
+            try {
+                long length = blob.length();
+                return (length == 0) ? new byte[0] : blob.getBytes(1, (int) length);
+            } finally {
+                blob.free();
+            }
+        }
+    }
+
     /**
      * {@inheritDoc}
      * <p>
@@ -72,4 +72,10 @@ public class CalendarIntervalTriggerPersistenceDelegate extends SimpleProperties
         return new TriggerPropertyBundle(sb, statePropertyNames, statePropertyValues);
     }
 
+    @Override
+    protected String[] getFiredTriggerPropertyColumns() {
+        // the times triggered
+        return new String[]{COL_INT_PROP_2};
+    }
+
 }
@@ -103,8 +103,19 @@ public interface Constants {
 
     String COL_MISFIRE_INSTRUCTION = "MISFIRE_INSTR";
 
+    String COL_PARTITION_NUM = "PARTITION_NUM";
+
     String ALIAS_COL_NEXT_FIRE_TIME = "ALIAS_NXT_FR_TM";
 
+    // columns of the jobs and trigger extensions joined to TABLE_TRIGGERS
+    String ALIAS_COL_JOB_DESCRIPTION = "ALIAS_JOB_DESC";
+
+    String ALIAS_COL_SIMPLE_TRIGGER_NAME = "ALIAS_SMPL_TRG_NM";
+
+    String ALIAS_COL_CRON_TRIGGER_NAME = "ALIAS_CRN_TRG_NM";
+
+    String ALIAS_COL_SIMPLE_PROPERTIES_TRIGGER_NAME = "ALIAS_SMPRP_TRG_NM";
+
     // TABLE_SIMPLE_TRIGGERS columns names
     String COL_REPEAT_COUNT = "REPEAT_COUNT";
 
@@ -136,6 +147,9 @@ public interface Constants {
 
     String COL_CALENDAR = "CALENDAR";
 
+    // TABLE_JOB_DETAILS and TABLE_CALENDARS column
+    String COL_DATA_VERSION = "DATA_VERSION";
+
     // TABLE_LOCKS columns names
     String COL_LOCK_NAME = "LOCK_NAME";
 
@@ -144,6 +158,10 @@ public interface Constants {
 
     String COL_CHECKIN_INTERVAL = "CHECKIN_INTERVAL";
 
+    String COL_FIRST_PARTITION = "FIRST_PARTITION";
+
+    String COL_LAST_PARTITION = "LAST_PARTITION";
+
     // MISC CONSTANTS
     String DEFAULT_TABLE_PREFIX = "QRTZ_";
 
@@ -20,6 +20,7 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.List;
 import java.util.TimeZone;
 
 import org.quartz.cron.CronScheduleBuilder;
@@ -29,14 +30,25 @@ import org.quartz.triggers.TriggerKey;
 import org.quartz.cron.CronTriggerImpl;
 import org.quartz.spi.OperableTrigger;
 
-public class CronTriggerPersistenceDelegate implements TriggerPersistenceDelegate, StdJDBCConstants {
+public class CronTriggerPersistenceDelegate implements TriggerFiringPersistenceDelegate, StdJDBCConstants {
 
     protected String tablePrefix;
     protected String schedNameLiteral;
 
+    // the statements, with the table prefix and scheduler name substituted
+    private String expandedDeleteSQL;
+    private String expandedInsertSQL;
+    private String expandedSelectSQL;
+    private String expandedUpdateSQL;
+
     public void initialize(String theTablePrefix, String schedName) {
         this.tablePrefix = theTablePrefix;
         this.schedNameLiteral = "'" + schedName + "'";
+
+        expandedDeleteSQL = Util.rtp(DELETE_CRON_TRIGGER, tablePrefix, schedNameLiteral);
+        expandedInsertSQL = Util.rtp(INSERT_CRON_TRIGGER, tablePrefix, schedNameLiteral);
+        expandedSelectSQL = Util.rtp(SELECT_CRON_TRIGGER, tablePrefix, schedNameLiteral);
+        expandedUpdateSQL = Util.rtp(UPDATE_CRON_TRIGGER, tablePrefix, schedNameLiteral);
     }
 
     public String getHandledTriggerTypeDiscriminator() {
@@ -52,7 +64,7 @@ public class CronTriggerPersistenceDelegate implements TriggerPersistenceDelegat
         PreparedStatement ps = null;
 
         try {
-            ps = conn.prepareStatement(Util.rtp(DELETE_CRON_TRIGGER, tablePrefix, schedNameLiteral));
+            ps = conn.prepareStatement(expandedDeleteSQL);
             ps.setString(1, triggerKey.getName());
             ps.setString(2, triggerKey.getGroup());
 
@@ -69,7 +81,7 @@ public class CronTriggerPersistenceDelegate implements TriggerPersistenceDelegat
         PreparedStatement ps = null;
 
         try {
-            ps = conn.prepareStatement(Util.rtp(INSERT_CRON_TRIGGER, tablePrefix, schedNameLiteral));
+            ps = conn.prepareStatement(expandedInsertSQL);
             ps.setString(1, trigger.getKey().getName());
             ps.setString(2, trigger.getKey().getGroup());
             ps.setString(3, cronTrigger.getCronExpression());
@@ -87,30 +99,38 @@ public class CronTriggerPersistenceDelegate implements TriggerPersistenceDelegat
         ResultSet rs = null;
 
         try {
-            ps = conn.prepareStatement(Util.rtp(SELECT_CRON_TRIGGER, tablePrefix, schedNameLiteral));
+            ps = conn.prepareStatement(expandedSelectSQL);
             ps.setString(1, triggerKey.getName());
             ps.setString(2, triggerKey.getGroup());
             rs = ps.executeQuery();
 
             if (rs.next()) {
-                String cronExpr = rs.getString(COL_CRON_EXPRESSION);
-                String timeZoneId = rs.getString(COL_TIME_ZONE_ID);
-
-                CronScheduleBuilder cb = CronScheduleBuilder.cronSchedule(cronExpr);
-
-                if (timeZoneId != null)
-                    cb.inTimeZone(TimeZone.getTimeZone(timeZoneId));
-
-                return new TriggerPropertyBundle(cb, null, null);
+                return readExtendedTriggerProperties(rs);
             }
 
-            throw new IllegalStateException("No record found for selection of Trigger with key: '" + triggerKey + "' and statement: " + Util.rtp(SELECT_CRON_TRIGGER, tablePrefix, schedNameLiteral));
+            throw new IllegalStateException("No record found for selection of Trigger with key: '" + triggerKey + "' and statement: " + expandedSelectSQL);
         } finally {
             Util.closeResultSet(rs);
             Util.closeStatement(ps);
         }
     }
 
+    /**
+     * Read the properties of the trigger at the current row of a result set
+     * that has the columns of the cron triggers table.
+     */
+    protected TriggerPropertyBundle readExtendedTriggerProperties(ResultSet rs) throws SQLException {
+        String cronExpr = rs.getString(COL_CRON_EXPRESSION);
+        String timeZoneId = rs.getString(COL_TIME_ZONE_ID);
+
+        CronScheduleBuilder cb = CronScheduleBuilder.cronSchedule(cronExpr);
+
+        if (timeZoneId != null)
+            cb.inTimeZone(TimeZone.getTimeZone(timeZoneId));
+
+        return new TriggerPropertyBundle(cb, null, null);
+    }
+
     public int updateExtendedTriggerProperties(Connection conn, OperableTrigger trigger, String state, JobDetail jobDetail) throws SQLException, IOException {
 
         CronTrigger cronTrigger = (CronTrigger) trigger;
@@ -118,7 +138,7 @@ public class CronTriggerPersistenceDelegate implements TriggerPersistenceDelegat
         PreparedStatement ps = null;
 
         try {
-            ps = conn.prepareStatement(Util.rtp(UPDATE_CRON_TRIGGER, tablePrefix, schedNameLiteral));
+            ps = conn.prepareStatement(expandedUpdateSQL);
             ps.setString(1, cronTrigger.getCronExpression());
             ps.setString(2, cronTrigger.getTimeZone().getID());
             ps.setString(3, trigger.getKey().getName());
@@ -130,4 +150,11 @@ public class CronTriggerPersistenceDelegate implements TriggerPersistenceDelegat
         }
     }
 
+    /**
+     * None of the extended properties of a cron trigger change when it fires.
+     */
+    public int[] updateFiredTriggerProperties(Connection conn, List<OperableTrigger> triggers) {
+        return new int[triggers.size()];
+    }
+
 }
@@ -157,4 +157,10 @@ public class DailyTimeIntervalTriggerPersistenceDelegate extends SimplePropertie
 
         return new TriggerPropertyBundle(scheduleBuilder, statePropertyNames, statePropertyValues);
     }
+
+    @Override
+    protected String[] getFiredTriggerPropertyColumns() {
+        // the times triggered
+        return new String[]{COL_INT_PROP_2};
+    }
 }
@@ -21,6 +21,7 @@ import java.io.IOException;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.quartz.calendar.Calendar;
@@ -138,6 +139,23 @@ public interface DriverDelegate {
     boolean hasMisfiredTriggersInState(Connection conn, String state1,
                                        long ts, int count, List<TriggerKey> resultList) throws SQLException;
 
+    /**
+     * <p>
+     * Select the triggers in the given state that have misfired - according
+     * to the given timestamp - along with their properties, in a single
+     * query. No more than maxCount will be returned.
+     * </p>
+     *
+     * @param conn     the DB Connection
+     * @param maxCount the most misfired triggers to return
+     * @return the misfired triggers by key, in the order they should have
+     * fired, with no trigger for those of a type whose properties the query
+     * does not read
+     * @see #updateTriggersAfterMisfire(Connection, List, List, String, long[])
+     */
+    Map<TriggerKey, OperableTrigger> selectMisfiredTriggers(Connection conn, String state, long ts, int maxCount)
+            throws SQLException, IOException, JobPersistenceException;
+
     /**
      * <p>
      * Get the number of triggers in the given state that have
@@ -308,6 +326,32 @@ public interface DriverDelegate {
                               ClassLoadHelper loadHelper)
             throws ClassNotFoundException, IOException, SQLException;
 
+    /**
+     * <p>
+     * Select the version of the stored data of the given job.
+     * </p>
+     *
+     * @param conn   the DB Connection
+     * @param jobKey the key of the job
+     * @return the version, 0 if none was ever written, or null if the job
+     *         does not exist
+     */
+    Long selectJobVersion(Connection conn, JobKey jobKey)
+            throws SQLException;
+
+    /**
+     * <p>
+     * Update the version of the stored data of the given job.
+     * </p>
+     *
+     * @param conn    the DB Connection
+     * @param jobKey  the key of the job
+     * @param version the new version
+     * @return the number of rows updated
+     */
+    int updateJobVersion(Connection conn, JobKey jobKey, long version)
+            throws SQLException;
+
     /**
      * <p>
      * Select the total number of jobs stored.
@@ -370,6 +414,57 @@ public interface DriverDelegate {
     int updateTrigger(Connection conn, OperableTrigger trigger, String state,
                       JobDetail jobDetail) throws SQLException, IOException;
 
+    /**
+     * <p>
+     * Update the base trigger data of each of the given triggers, in as few
+     * batches as possible.
+     * </p>
+     *
+     * @param conn       the DB Connection
+     * @param triggers   the triggers to update
+     * @param states     the state that each trigger should be stored in
+     * @param jobDetails the job of each trigger
+     * @return the number of rows updated for each trigger, in order
+     */
+    int[] updateTriggers(Connection conn, List<OperableTrigger> triggers, List<String> states,
+                         List<JobDetail> jobDetails) throws SQLException, IOException;
+
+    /**
+     * <p>
+     * Update each of the given triggers after it fired, writing only what
+     * firing it changed where its type allows telling what that is.
+     * </p>
+     *
+     * @param conn       the DB Connection
+     * @param triggers   the triggers to update
+     * @param states     the state that each trigger should be stored in
+     * @param jobDetails the job of each trigger
+     * @return the number of rows updated for each trigger, in order
+     * @see TriggerFiringPersistenceDelegate
+     */
+    int[] updateTriggersAfterFiring(Connection conn, List<OperableTrigger> triggers, List<String> states,
+                                    List<JobDetail> jobDetails) throws SQLException, IOException;
+
+    /**
+     * <p>
+     * Update each of the given triggers after its misfire was handled,
+     * writing only what handling it changed, in as few batches as possible.
+     * A trigger is only updated if it is still in the given old state with
+     * the given old next fire time, so that one changed since it was
+     * selected is left as it is.
+     * </p>
+     *
+     * @param conn             the DB Connection
+     * @param triggers         the triggers to update, as returned by
+     *                         <code>{@link #selectMisfiredTriggers(Connection, String, long, int)}</code>
+     * @param states           the state that each trigger should be stored in
+     * @param oldState         the state the triggers were selected in
+     * @param oldNextFireTimes the next fire time each trigger was selected with
+     * @return the number of rows updated for each trigger, in order
+     */
+    int[] updateTriggersAfterMisfire(Connection conn, List<OperableTrigger> triggers, List<String> states,
+                                     String oldState, long[] oldNextFireTimes) throws SQLException, IOException;
+
     /**
      * <p>
      * Check whether or not a trigger exists.
@@ -407,6 +502,53 @@ public interface DriverDelegate {
     int updateTriggerStateFromOtherState(Connection conn,
                                          TriggerKey triggerKey, String newState, String oldState) throws SQLException;
 
+    /**
+     * <p>
+     * Update each of the given triggers to the given new state, if it is in
+     * the given old state, in a single batch.
+     * </p>
+     * <p>
+     * Drivers may not report the rows updated by each statement of a batch,
+     * in which case the trigger is assumed to have been updated: only use
+     * this while holding the <code>TRIGGER_ACCESS</code> lock.
+     * </p>
+     *
+     * @param conn        the DB connection
+     * @param triggerKeys the triggers to update
+     * @param newState    the new state for the triggers
+     * @param oldState    the old state the triggers must be in
+     * @return the number of rows updated for each trigger, in order
+     * @throws SQLException
+     */
+    int[] updateTriggerStateFromOtherState(Connection conn,
+                                           List<TriggerKey> triggerKeys, String newState, String oldState) throws SQLException;
+
+    /**
+     * <p>
+     * Update the partition of the given trigger.
+     * </p>
+     *
+     * @param conn       the DB connection
+     * @param triggerKey the trigger to update
+     * @param partition  the partition of the trigger
+     * @return the number of rows updated
+     */
+    int updateTriggerPartition(Connection conn, TriggerKey triggerKey, int partition)
+            throws SQLException;
+
+    /**
+     * <p>
+     * Select the triggers that have no partition, or a partition not below
+     * the given count of partitions.
+     * </p>
+     *
+     * @param conn           the DB connection
+     * @param partitionCount the count of partitions
+     * @return a List of <code>TriggerKey</code>s
+     */
+    List<TriggerKey> selectTriggersOutsidePartitions(Connection conn, int partitionCount)
+            throws SQLException;
+
     /**
      * <p>
      * Update the given trigger to the given new state, if it is one of the
@@ -489,6 +631,24 @@ public interface DriverDelegate {
                                                 JobKey jobKey, String state, String oldState)
             throws SQLException;
 
+    /**
+     * <p>
+     * Update the states of any triggers associated with each of the given
+     * jobs, making each of the given state transitions in turn, in a single
+     * batch.
+     * </p>
+     *
+     * @param conn      the DB Connection
+     * @param jobKeys   the jobs whose triggers to update
+     * @param states    the new state of each transition
+     * @param oldStates the old state of each transition
+     * @return the number of rows updated for each job and transition, in
+     * order, 1 where the driver does not tell
+     */
+    int[] updateTriggerStatesForJobsFromOtherStates(Connection conn,
+                                                    List<JobKey> jobKeys, String[] states, String[] oldStates)
+            throws SQLException;
+
     /**
      * <p>
      * Delete the base trigger data for a trigger.
@@ -597,6 +757,19 @@ public interface DriverDelegate {
      */
     String selectTriggerState(Connection conn, TriggerKey triggerKey) throws SQLException;
 
+    /**
+     * <p>
+     * Select the state of the trigger of each of the fired-trigger records of
+     * the given scheduler instance, by fire instance id. Records whose trigger
+     * no longer exists are left out.
+     * </p>
+     *
+     * @param conn       the DB Connection
+     * @param instanceId the id of the scheduler instance
+     * @return the trigger states, by fire instance id
+     */
+    Map<String, String> selectFiredTriggerStates(Connection conn, String instanceId) throws SQLException;
+
     /**
      * <p>
      * Select a trigger' status (state & next fire time).
@@ -734,6 +907,32 @@ public interface DriverDelegate {
     Calendar selectCalendar(Connection conn, String calendarName)
             throws ClassNotFoundException, IOException, SQLException;
 
+    /**
+     * <p>
+     * Select the version of the given stored calendar.
+     * </p>
+     *
+     * @param conn         the DB Connection
+     * @param calendarName the name of the calendar
+     * @return the version, 0 if none was ever written, or null if the
+     *         calendar does not exist
+     */
+    Long selectCalendarVersion(Connection conn, String calendarName)
+            throws SQLException;
+
+    /**
+     * <p>
+     * Update the version of the given stored calendar.
+     * </p>
+     *
+     * @param conn         the DB Connection
+     * @param calendarName the name of the calendar
+     * @param version      the new version
+     * @return the number of rows updated
+     */
+    int updateCalendarVersion(Connection conn, String calendarName, long version)
+            throws SQLException;
+
     /**
      * <p>
      * Check whether or not a calendar is referenced by any triggers.
@@ -837,6 +1036,102 @@ public interface DriverDelegate {
     public List<TriggerKey> selectTriggerToAcquire(Connection conn, long noLaterThan, long noEarlierThan, int maxCount)
             throws SQLException;
 
+    /**
+     * <p>
+     * Select the same triggers as <code>{@link #selectTriggerToAcquire(Connection, long, long, int)}</code>,
+     * in the same order, along with each trigger and its job, in as few
+     * queries as possible.
+     * </p>
+     *
+     * @param conn          the DB Connection
+     * @param noLaterThan   highest value of <code>getNextFireTime()</code> of the triggers (exclusive)
+     * @param noEarlierThan highest value of <code>getNextFireTime()</code> of the triggers (inclusive)
+     * @param maxCount      maximum number of triggers to return
+     * @param loadHelper    the load helper to load the jobs' classes with
+     * @return A (never null, possibly empty) list of the triggers and their
+     * jobs; see <code>{@link TriggerAcquisitionRecord}</code> for the ones
+     * that could not be read in the same query.
+     */
+    List<TriggerAcquisitionRecord> selectTriggersToAcquire(Connection conn, long noLaterThan, long noEarlierThan,
+                                                           int maxCount, ClassLoadHelper loadHelper)
+            throws SQLException, IOException, JobPersistenceException;
+
+    /**
+     * <p>
+     * Select the same triggers as
+     * <code>{@link #selectTriggersToAcquire(Connection, long, long, int, ClassLoadHelper)}</code>,
+     * among those of the given range of partitions only.
+     * </p>
+     *
+     * @param firstPartition the first partition of the range
+     * @param lastPartition  the last partition of the range, inclusive
+     */
+    List<TriggerAcquisitionRecord> selectTriggersToAcquire(Connection conn, long noLaterThan, long noEarlierThan,
+                                                           int maxCount, int firstPartition, int lastPartition,
+                                                           ClassLoadHelper loadHelper)
+            throws SQLException, IOException, JobPersistenceException;
+
+    /**
+     * <p>
+     * Select the same triggers as
+     * <code>{@link #selectTriggersToAcquire(Connection, long, long, int, ClassLoadHelper)}</code>,
+     * locking their rows until the end of the transaction and skipping any
+     * row locked by another transaction, so that concurrent schedulers
+     * select different triggers.
+     * </p>
+     *
+     * @throws IllegalStateException if the delegate does not
+     *                               <code>{@link #supportsSkipLocked() support}</code> this
+     */
+    List<TriggerAcquisitionRecord> selectTriggersToAcquireSkipLocked(Connection conn, long noLaterThan,
+                                                                     long noEarlierThan, int maxCount,
+                                                                     ClassLoadHelper loadHelper)
+            throws SQLException, IOException, JobPersistenceException;
+
+    /**
+     * <p>
+     * Select the keys and next fire times of the triggers that
+     * <code>{@link #selectTriggerToAcquire(Connection, long, long, int)}</code>
+     * selects, among those due after the given fire time, in the same order.
+     * </p>
+     *
+     * @param conn          the DB Connection
+     * @param after         the fire time the triggers are due after (exclusive)
+     * @param noLaterThan   highest value of <code>getNextFireTime()</code> of the triggers (inclusive)
+     * @param noEarlierThan lowest value of <code>getNextFireTime()</code> of the triggers that can misfire (inclusive)
+     * @param maxCount      maximum number of triggers to return
+     * @return A (never null, possibly empty) list of the upcoming triggers.
+     */
+    List<UpcomingTriggerRecord> selectUpcomingTriggers(Connection conn, long after, long noLaterThan,
+                                                       long noEarlierThan, int maxCount)
+            throws SQLException;
+
+    /**
+     * <p>
+     * Select the given triggers that are still waiting, along with their
+     * jobs, as <code>{@link #selectTriggersToAcquire(Connection, long, long, int, ClassLoadHelper)}</code>
+     * does, but by their keys rather than by their fire times.
+     * </p>
+     *
+     * @param conn        the DB Connection
+     * @param triggerKeys the keys of the triggers
+     * @param loadHelper  the load helper to load the jobs' classes with
+     * @return the triggers that are still waiting and their jobs, in the
+     * order of the given keys
+     */
+    List<TriggerAcquisitionRecord> selectTriggersToAcquireByKey(Connection conn, List<TriggerKey> triggerKeys,
+                                                                ClassLoadHelper loadHelper)
+            throws SQLException, IOException, JobPersistenceException;
+
+    /**
+     * <p>
+     * Whether or not this delegate can select the triggers to acquire
+     * skipping those locked by other transactions, with
+     * <code>{@link #selectTriggersToAcquireSkipLocked(Connection, long, long, int, ClassLoadHelper)}</code>.
+     * </p>
+     */
+    boolean supportsSkipLocked();
+
     /**
      * <p>
      * Insert a fired trigger.
@@ -850,6 +1145,20 @@ public interface DriverDelegate {
     int insertFiredTrigger(Connection conn, OperableTrigger trigger,
                            String state, JobDetail jobDetail) throws SQLException;
 
+    /**
+     * <p>
+     * Insert a fired trigger record for each of the given triggers, without
+     * their jobs' details, in a single batch.
+     * </p>
+     *
+     * @param conn     the DB Connection
+     * @param triggers the triggers
+     * @param state    the state that the triggers should be stored in
+     * @return the number of rows inserted for each trigger, in order
+     */
+    int[] insertFiredTriggers(Connection conn, List<OperableTrigger> triggers,
+                              String state) throws SQLException;
+
     /**
      * <p>
      * Update a fired trigger record.  Will update the fields
@@ -864,6 +1173,22 @@ public interface DriverDelegate {
     int updateFiredTrigger(Connection conn, OperableTrigger trigger,
                            String state, JobDetail jobDetail) throws SQLException;
 
+    /**
+     * <p>
+     * Update the fired trigger record of each of the given triggers, in a
+     * single batch.
+     * </p>
+     *
+     * @param conn       the DB Connection
+     * @param triggers   the triggers
+     * @param state      the state that the triggers should be stored in
+     * @param jobDetails the job of each trigger
+     * @return the number of rows updated for each trigger, in order, 1
+     * where the driver does not tell
+     */
+    int[] updateFiredTriggers(Connection conn, List<OperableTrigger> triggers,
+                              String state, List<JobDetail> jobDetails) throws SQLException;
+
     /**
      * <p>
      * Select the states of all fired-trigger records for a given trigger, or
@@ -923,6 +1248,19 @@ public interface DriverDelegate {
     int deleteFiredTrigger(Connection conn, String entryId)
             throws SQLException;
 
+    /**
+     * <p>
+     * Delete the given fired triggers, in a single batch.
+     * </p>
+     *
+     * @param conn     the DB Connection
+     * @param entryIds the fired trigger entries to delete
+     * @return the number of rows deleted for each entry, in order, 1 where
+     * the driver does not tell
+     */
+    int[] deleteFiredTriggers(Connection conn, List<String> entryIds)
+            throws SQLException;
+
     /**
      * <p>
      * Get the number instances of the identified job currently executing.
@@ -968,6 +1306,17 @@ public interface DriverDelegate {
     int updateSchedulerState(Connection conn, String instanceId, long checkInTime)
             throws SQLException;
 
+    /**
+     * <p>
+     * Record the range of partitions leased by a scheduler instance.
+     * </p>
+     *
+     * @param conn the DB Connection
+     * @return the number of updated rows.
+     */
+    int updateSchedulerStatePartitions(Connection conn, String instanceId, int firstPartition, int lastPartition)
+            throws SQLException;
+
     /**
      * <p>
      * A List of all current <code>SchedulerStateRecords</code>.
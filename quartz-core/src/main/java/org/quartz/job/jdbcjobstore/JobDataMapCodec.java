@@ -0,0 +1,51 @@
+/*
+ * All content copyright Terracotta, Inc., unless otherwise indicated. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.quartz.job.jdbcjobstore;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * An interface which provides an implementation for encoding the contents
+ * of a <code>JobDataMap</code> into the bytes stored in the job data
+ * columns, and decoding them back.
+ * <p>
+ * The bytes written by a codec must start with a marker that sets them apart
+ * from Java serialization streams and <code>java.util.Properties</code>
+ * text, so that the job data stored before the codec was used can still be
+ * read.
+ * </p>
+ *
+ * @see StdJDBCDelegate
+ */
+public interface JobDataMapCodec {
+
+    /**
+     * Encode the given entries of a <code>JobDataMap</code>.
+     */
+    public byte[] encode(Map<?, ?> data) throws IOException;
+
+    /**
+     * Whether or not the given bytes were encoded by this codec.
+     */
+    public boolean canDecode(byte[] bytes);
+
+    /**
+     * Decode the entries of a <code>JobDataMap</code> from the given bytes,
+     * for which <code>{@link #canDecode(byte[])}</code> is true.
+     */
+    public Map<?, ?> decode(byte[] bytes) throws IOException, ClassNotFoundException;
+}
@@ -44,6 +44,15 @@ import java.lang.reflect.Proxy;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 
 /**
@@ -78,6 +87,26 @@ public abstract class JobStoreSupport implements JobStore, Constants {
 
     protected String dsName;
 
+    private String readOnlyDsName;
+
+    private String readOnlyDataSourceQueries;
+
+    // the read-only queries routed to the read-only data source, set in initialize()
+    private Set<String> readOnlyQueryNames = Collections.emptySet();
+
+    // the read-only queries that can be routed to the read-only data source
+    private static final List<String> READ_ONLY_QUERIES = Arrays.asList(
+            "getJobKeys", "getTriggerKeys", "getTriggerState", "getTriggersForJob", "getNumberOfJobs",
+            "getNumberOfTriggers", "getNumberOfCalendars", "getJobGroupNames", "getTriggerGroupNames",
+            "getCalendarNames", "getPausedTriggerGroups");
+
+    // the read-only queries routed to the read-only data source unless others are set: the scheduler unschedules
+    // the triggers of a job it deletes as read by getTriggersForJob, which must not be behind the primary
+    private static final List<String> DEFAULT_READ_ONLY_QUERIES = Arrays.asList(
+            "getJobKeys", "getTriggerKeys", "getTriggerState", "getNumberOfJobs", "getNumberOfTriggers",
+            "getNumberOfCalendars", "getJobGroupNames", "getTriggerGroupNames", "getCalendarNames",
+            "getPausedTriggerGroups");
+
     protected String tablePrefix = DEFAULT_TABLE_PREFIX;
 
     protected boolean useProperties = false;
@@ -116,16 +145,58 @@ public abstract class JobStoreSupport implements JobStore, Constants {
 
     private MisfireHandler misfireHandler = null;
 
+    private volatile CompletionWriter completionWriter = null;
+
     private ClassLoadHelper classLoadHelper;
 
     private SchedulerSignaler schedSignaler;
 
     protected int maxToRecoverAtATime = 20;
 
+    private int misfireBatchSize = 0;
+
+    // the fewest misfired triggers worth handling in a thread of their own
+    private static final int MIN_MISFIRES_PER_TASK = 256;
+
     private boolean setTxIsolationLevelSequential = false;
 
+    private int statementCacheSize = 0;
+
     private boolean acquireTriggersWithinLock = false;
 
+    private boolean acquireTriggersWithoutLock = false;
+
+    private boolean fireDueTriggersOnAcquire = false;
+
+    // the results of firing the triggers that were due as they were acquired,
+    // by fire instance id, until the scheduler fires or releases them
+    private final ConcurrentHashMap<String, TriggerFiredResult> firedOnAcquire =
+            new ConcurrentHashMap<String, TriggerFiredResult>();
+
+    private int partitionCount = 0;
+
+    private long completionWriteBehindInterval = 0L;
+
+    private int jobAndCalendarCacheSize = 0;
+
+    // set in initialize() when jobAndCalendarCacheSize is set
+    private VersionedCache<JobKey, JobDetail> versionedJobCache = null;
+
+    private VersionedCache<String, Calendar> versionedCalendarCache = null;
+
+    private long prefetchWindow = 0L;
+
+    private int prefetchSize = 1000;
+
+    // set in initialize() when prefetchWindow is set
+    private TriggerPrefetchWindow triggerPrefetchWindow = null;
+
+    // set by the transactions that may have made triggers wait, to empty the window once committed
+    private final ThreadLocal<Boolean> prefetchChangeForTxCompletion = new ThreadLocal<Boolean>();
+
+    // the first and last partitions leased by this instance, null until the first check-in
+    private volatile int[] leasedPartitions;
+
     private long dbRetryInterval = 15000L; // 15 secs
 
     private boolean makeThreadsDaemons = false;
@@ -170,6 +241,69 @@ public abstract class JobStoreSupport implements JobStore, Constants {
         return dsName;
     }
 
+    /**
+     * Get the name of the read-only <code>DataSource</code> some queries are
+     * routed to, or null if there is none.
+     */
+    public String getReadOnlyDataSource() {
+        return readOnlyDsName;
+    }
+
+    /**
+     * Set the name of a read-only <code>DataSource</code> - such as a replica
+     * of the database - that the queries of the scheduler's state, made
+     * outside of any transaction, are routed to, so that they do not compete
+     * with the scheduler for the primary database and its connections. None
+     * by default.
+     * <p>
+     * Their results may be out of date by as much as the data source lags
+     * behind. A query is run on the primary data source instead if it fails
+     * on the read-only one, and whenever the read-only data source finds no
+     * trigger state, or no trigger of a job, as these may only not have been
+     * replicated yet.
+     * </p>
+     *
+     * @see #setReadOnlyDataSourceQueries(String)
+     */
+    @SuppressWarnings("UnusedDeclaration") /* called reflectively */
+    public void setReadOnlyDataSource(String readOnlyDsName) {
+        this.readOnlyDsName = readOnlyDsName;
+    }
+
+    /**
+     * Get the comma-separated names of the methods whose queries are routed
+     * to the read-only data source, or null if the default ones are.
+     */
+    public String getReadOnlyDataSourceQueries() {
+        return readOnlyDataSourceQueries;
+    }
+
+    /**
+     * Set the comma-separated names of the methods whose queries are routed
+     * to the read-only data source, among <code>getJobKeys</code>,
+     * <code>getTriggerKeys</code>, <code>getTriggerState</code>,
+     * <code>getTriggersForJob</code>, <code>getNumberOfJobs</code>,
+     * <code>getNumberOfTriggers</code>, <code>getNumberOfCalendars</code>,
+     * <code>getJobGroupNames</code>, <code>getTriggerGroupNames</code>,
+     * <code>getCalendarNames</code> and <code>getPausedTriggerGroups</code>.
+     * All of them but <code>getTriggersForJob</code> are by default; the
+     * others always run on the primary data source.
+     * <p>
+     * The results of the routed queries may be out of date by as much as the
+     * read-only data source lags behind. The scheduler itself relies on
+     * <code>getTriggersForJob</code> when deleting a job, to unschedule each
+     * of its triggers, and fails to delete it if one was already removed on
+     * the primary data source - so only route it where the lag is known to
+     * be short, or jobs are not deleted.
+     * </p>
+     *
+     * @see #setReadOnlyDataSource(String)
+     */
+    @SuppressWarnings("UnusedDeclaration") /* called reflectively */
+    public void setReadOnlyDataSourceQueries(String readOnlyDataSourceQueries) {
+        this.readOnlyDataSourceQueries = readOnlyDataSourceQueries;
+    }
+
     /**
      * <p>
      * Set the prefix that should be pre-pended to all table names.
@@ -331,6 +465,35 @@ public abstract class JobStoreSupport implements JobStore, Constants {
         this.maxToRecoverAtATime = maxToRecoverAtATime;
     }
 
+    /**
+     * Get the number of misfired triggers handled together in a batch, or
+     * 0 if they are handled one at a time.
+     */
+    public int getMisfireBatchSize() {
+        return misfireBatchSize;
+    }
+
+    /**
+     * Set the number of misfired triggers handled together in a batch. 0 -
+     * the default - handles them one at a time, reading, updating and
+     * writing each trigger while holding the <code>TRIGGER_ACCESS</code>
+     * lock, at most <code>maxMisfiresToHandleAtATime</code> in a transaction.
+     * <p>
+     * Otherwise the misfired triggers of the standard types are read along
+     * with their properties in a single query, without holding the lock, and
+     * their misfire instructions are applied to copies of them - in parallel
+     * for large batches. Then, holding the lock, the whole batch is written
+     * in one transaction, with batched updates that skip the triggers changed
+     * in the meantime. Triggers of other types are handled one at a time in
+     * the same transaction. A few thousands suit recovering from an outage
+     * during which many triggers misfired.
+     * </p>
+     */
+    @SuppressWarnings("UnusedDeclaration") /* called reflectively */
+    public void setMisfireBatchSize(int misfireBatchSize) {
+        this.misfireBatchSize = misfireBatchSize;
+    }
+
     /**
      * @return Returns the dbRetryInterval.
      */
@@ -440,6 +603,25 @@ public abstract class JobStoreSupport implements JobStore, Constants {
         setTxIsolationLevelSequential = b;
     }
 
+    public int getStatementCacheSize() {
+        return statementCacheSize;
+    }
+
+    /**
+     * <p>
+     * Set the number of prepared statements to keep open on a DB connection
+     * while it is used for a transaction, so that statements executed
+     * several times within the transaction are only prepared once. The
+     * least recently used statements are closed when there are more, and all
+     * of them when the connection is returned. The default is 0, which
+     * disables the cache.
+     * </p>
+     */
+    @SuppressWarnings("UnusedDeclaration") /* called reflectively */
+    public void setStatementCacheSize(int statementCacheSize) {
+        this.statementCacheSize = statementCacheSize;
+    }
+
     /**
      * Whether or not the query and update to acquire a Trigger for firing
      * should be performed after obtaining an explicit DB lock (to avoid
@@ -466,6 +648,234 @@ public abstract class JobStoreSupport implements JobStore, Constants {
         this.acquireTriggersWithinLock = acquireTriggersWithinLock;
     }
 
+    /**
+     * Whether or not triggers are acquired without obtaining the
+     * <code>TRIGGER_ACCESS</code> lock, even when several are acquired at
+     * once, so that schedulers of a cluster acquire triggers concurrently.
+     */
+    public boolean isAcquireTriggersWithoutLock() {
+        return acquireTriggersWithoutLock;
+    }
+
+    /**
+     * Whether or not triggers are acquired without obtaining the
+     * <code>TRIGGER_ACCESS</code> lock, even when several are acquired at
+     * once. Each trigger is then claimed by the conditional update of its
+     * state, that only one scheduler can make.
+     * <p>
+     * If the driver delegate is given a <code>skipLockedClause</code> in its
+     * init string - e.g. <code>skipLockedClause=FOR UPDATE OF T SKIP
+     * LOCKED</code> for PostgreSQL or MySQL 8 - the rows of the triggers
+     * selected for acquisition are locked, skipping those locked by other
+     * schedulers, so that concurrent schedulers select different triggers
+     * rather than contending for the same ones.
+     * </p>
+     * <p>
+     * Firing triggers still obtains the lock. This can not be used along
+     * with <code>acquireTriggersWithinLock</code>.
+     * </p>
+     */
+    @SuppressWarnings("UnusedDeclaration") /* called reflectively */
+    public void setAcquireTriggersWithoutLock(boolean acquireTriggersWithoutLock) {
+        this.acquireTriggersWithoutLock = acquireTriggersWithoutLock;
+    }
+
+    /**
+     * Whether or not the triggers already due when they are acquired are
+     * fired in the same transaction.
+     */
+    public boolean isFireDueTriggersOnAcquire() {
+        return fireDueTriggersOnAcquire;
+    }
+
+    /**
+     * Whether or not the triggers already due when they are acquired - such
+     * as those of jobs triggered now, or overdue ones - are fired in the same
+     * transaction, holding the <code>TRIGGER_ACCESS</code> lock once rather
+     * than twice. Their results are handed to the scheduler when it fires
+     * them, without reaching the database again.
+     * <p>
+     * Triggers are then always acquired holding the lock. A trigger fired
+     * this way that the scheduler releases rather than runs - as it is
+     * shutting down, say - has its firing undone, to be fired again. This can
+     * not be used along with <code>acquireTriggersWithoutLock</code> or
+     * <code>partitionCount</code>.
+     * </p>
+     */
+    @SuppressWarnings("UnusedDeclaration") /* called reflectively */
+    public void setFireDueTriggersOnAcquire(boolean fireDueTriggersOnAcquire) {
+        this.fireDueTriggersOnAcquire = fireDueTriggersOnAcquire;
+    }
+
+    /**
+     * Get the number of partitions the triggers are spread over, or 0 if
+     * they are not partitioned.
+     */
+    public int getPartitionCount() {
+        return partitionCount;
+    }
+
+    /**
+     * Set the number of partitions the triggers of a cluster are spread
+     * over, by the hash of their keys. 0 - the default - does not partition
+     * them.
+     * <p>
+     * Each instance of the cluster leases a range of the partitions when
+     * checking in, recorded in its scheduler state, and only acquires the
+     * triggers of these partitions, obtaining a lock for each partition
+     * rather than the <code>TRIGGER_ACCESS</code> lock. The partitions are
+     * spread again over the instances still checking in whenever one joins
+     * or fails.
+     * </p>
+     * <p>
+     * All instances of the cluster must use the same number of partitions.
+     * The triggers with no partition - stored before the triggers were
+     * partitioned - or with a partition beyond the number of partitions are
+     * given their partition when an instance first checks in. This can not
+     * be used along with <code>acquireTriggersWithinLock</code> or
+     * <code>acquireTriggersWithoutLock</code>.
+     * </p>
+     */
+    @SuppressWarnings("UnusedDeclaration") /* called reflectively */
+    public void setPartitionCount(int partitionCount) {
+        this.partitionCount = partitionCount;
+    }
+
+    /**
+     * Get the time, in milliseconds, the completions of jobs are held to be
+     * written together, or 0 if each completion is written on its own.
+     */
+    public long getCompletionWriteBehindInterval() {
+        return completionWriteBehindInterval;
+    }
+
+    /**
+     * Set the time, in milliseconds, the completions of jobs are held to be
+     * written together. 0 - the default - writes each completion in its own
+     * transaction, before the worker thread that executed the job returns to
+     * the pool.
+     * <p>
+     * Otherwise the completions are queued, and written by a single thread,
+     * in one transaction within the <code>TRIGGER_ACCESS</code> lock for all
+     * those queued by the time the interval after the first one has passed,
+     * so that short jobs share the cost of the lock and commit. The triggers
+     * of a job that disallows concurrent execution are unblocked, and its
+     * data persisted, when its completion is written. If the scheduler
+     * fails before then, the completion is lost and the execution is
+     * recovered as having been in progress - a job requesting recovery is
+     * executed again. A few milliseconds, 5 to 20, are enough.
+     * </p>
+     */
+    @SuppressWarnings("UnusedDeclaration") /* called reflectively */
+    public void setCompletionWriteBehindInterval(long completionWriteBehindInterval) {
+        if (completionWriteBehindInterval < 0) {
+            throw new IllegalArgumentException(
+                    "completionWriteBehindInterval can not be negative");
+        }
+        this.completionWriteBehindInterval = completionWriteBehindInterval;
+    }
+
+    /**
+     * Get the number of jobs, and of calendars, kept in the versioned cache,
+     * or 0 if they are read from the database each time.
+     */
+    public int getJobAndCalendarCacheSize() {
+        return jobAndCalendarCacheSize;
+    }
+
+    /**
+     * Set the number of jobs, and of calendars, kept in a cache along with
+     * the version of their rows. 0 - the default - does not cache them.
+     * <p>
+     * Each time a job or calendar is retrieved, only the version of its row
+     * is selected if it is cached with that version, rather than the whole
+     * row, and its data is not deserialized again. Storing a job or calendar,
+     * or the data of a job after its execution, writes a new version, so
+     * that the copies cached by every instance of a cluster are no longer
+     * used. This requires the <code>DATA_VERSION</code> column of the job
+     * details and calendars tables, and all instances of a cluster must use
+     * the cache, as the others do not write new versions.
+     * </p>
+     */
+    @SuppressWarnings("UnusedDeclaration") /* called reflectively */
+    public void setJobAndCalendarCacheSize(int jobAndCalendarCacheSize) {
+        this.jobAndCalendarCacheSize = jobAndCalendarCacheSize;
+    }
+
+    /**
+     * Get the time, in milliseconds, ahead of which the upcoming triggers
+     * are kept in memory, or 0 if the next triggers are selected each time.
+     */
+    public long getPrefetchWindow() {
+        return prefetchWindow;
+    }
+
+    /**
+     * Set the time, in milliseconds, ahead of which the keys and fire times
+     * of the upcoming triggers are kept in memory, in the order they are to
+     * be acquired. 0 - the default - selects the next triggers by their fire
+     * times each time triggers are acquired.
+     * <p>
+     * Triggers are then acquired by their keys, the window being extended
+     * with the triggers due after those it holds as time goes by, rather
+     * than scanning the index of fire times again. The window is emptied -
+     * and filled again when triggers are next acquired - when this instance
+     * signals a scheduling change, or commits a change that may make
+     * triggers wait again, such as storing or resuming triggers, or
+     * unblocking the triggers of a job. The triggers fired go back to the
+     * window with their next fire times. In a cluster, the triggers stored
+     * or changed by other instances are only seen once the window is
+     * emptied, which is also done at each check-in, so they may fire late
+     * by up to <code>clusterCheckinInterval</code>.
+     * </p>
+     * <p>
+     * This can not be used along with <code>acquireTriggersWithoutLock</code>
+     * or <code>partitionCount</code>.
+     * </p>
+     *
+     * @see #setPrefetchSize(int)
+     */
+    @SuppressWarnings("UnusedDeclaration") /* called reflectively */
+    public void setPrefetchWindow(long prefetchWindow) {
+        this.prefetchWindow = prefetchWindow;
+    }
+
+    /**
+     * Get the most triggers selected at once to fill the prefetch window.
+     */
+    public int getPrefetchSize() {
+        return prefetchSize;
+    }
+
+    /**
+     * Set the most triggers selected at once to fill the prefetch window,
+     * 1000 by default. The window covers less time than
+     * <code>prefetchWindow</code> when more triggers are due within it.
+     */
+    @SuppressWarnings("UnusedDeclaration") /* called reflectively */
+    public void setPrefetchSize(int prefetchSize) {
+        this.prefetchSize = prefetchSize;
+    }
+
+    protected boolean isPartitioned() {
+        return partitionCount > 0;
+    }
+
+    /**
+     * Get the partition of the trigger with the given key.
+     */
+    protected int getPartition(TriggerKey triggerKey) {
+        return (triggerKey.hashCode() & Integer.MAX_VALUE) % partitionCount;
+    }
+
+    /**
+     * Get the name of the lock to obtain to acquire the triggers of the given
+     * partition.
+     */
+    protected String getPartitionLockName(int partition) {
+        return LOCK_TRIGGER_ACCESS + "_" + partition;
+    }
+
 
     /**
      * <p>
@@ -633,6 +1043,72 @@ public abstract class JobStoreSupport implements JobStore, Constants {
 
         this.schedSignaler = signaler;
 
+        if (isAcquireTriggersWithinLock() && isAcquireTriggersWithoutLock()) {
+            throw new SchedulerConfigException(
+                    "acquireTriggersWithinLock and acquireTriggersWithoutLock can not both be set.");
+        }
+
+        if (partitionCount < 0) {
+            throw new SchedulerConfigException("partitionCount can not be negative.");
+        }
+        if (isPartitioned()) {
+            if (!isClustered()) {
+                throw new SchedulerConfigException("partitionCount can only be set for a cluster.");
+            }
+            if (isAcquireTriggersWithinLock() || isAcquireTriggersWithoutLock()) {
+                throw new SchedulerConfigException(
+                        "partitionCount can not be set along with acquireTriggersWithinLock or acquireTriggersWithoutLock.");
+            }
+        }
+        if (isFireDueTriggersOnAcquire() && (isAcquireTriggersWithoutLock() || isPartitioned())) {
+            throw new SchedulerConfigException(
+                    "fireDueTriggersOnAcquire can not be set along with acquireTriggersWithoutLock or partitionCount.");
+        }
+
+        if (prefetchWindow < 0) {
+            throw new SchedulerConfigException("prefetchWindow can not be negative.");
+        }
+        if (prefetchWindow > 0) {
+            if (prefetchSize < 1) {
+                throw new SchedulerConfigException("prefetchSize must be positive.");
+            }
+            if (isAcquireTriggersWithoutLock() || isPartitioned()) {
+                throw new SchedulerConfigException(
+                        "prefetchWindow can not be set along with acquireTriggersWithoutLock or partitionCount.");
+            }
+            triggerPrefetchWindow = new TriggerPrefetchWindow();
+        }
+
+        if (readOnlyDsName != null) {
+            if (readOnlyDataSourceQueries == null) {
+                readOnlyQueryNames = new HashSet<String>(DEFAULT_READ_ONLY_QUERIES);
+            } else {
+                readOnlyQueryNames = new HashSet<String>();
+                for (String queryName : readOnlyDataSourceQueries.split(",")) {
+                    queryName = queryName.trim();
+                    if (queryName.length() == 0) {
+                        continue;
+                    }
+                    if (!READ_ONLY_QUERIES.contains(queryName)) {
+                        throw new SchedulerConfigException(
+                                "readOnlyDataSourceQueries can not route '" + queryName + "', only "
+                                        + READ_ONLY_QUERIES + ".");
+                    }
+                    readOnlyQueryNames.add(queryName);
+                }
+            }
+        } else if (readOnlyDataSourceQueries != null) {
+            throw new SchedulerConfigException("readOnlyDataSourceQueries can only be set along with readOnlyDataSource.");
+        }
+
+        if (jobAndCalendarCacheSize < 0) {
+            throw new SchedulerConfigException("jobAndCalendarCacheSize can not be negative.");
+        }
+        if (jobAndCalendarCacheSize > 0) {
+            versionedJobCache = new VersionedCache<JobKey, JobDetail>(jobAndCalendarCacheSize);
+            versionedCalendarCache = new VersionedCache<String, Calendar>(jobAndCalendarCacheSize);
+        }
+
         // If the user hasn't specified an explicit lock handler, then 
         // choose one based on CMT/Clustered/UseDBLocks.
         if (getLockHandler() == null) {
@@ -685,6 +1161,14 @@ public abstract class JobStoreSupport implements JobStore, Constants {
         if (initializersLoader != null)
             misfireHandler.setContextClassLoader(initializersLoader);
         misfireHandler.initialize();
+
+        if (getCompletionWriteBehindInterval() > 0 && completionWriter == null) {
+            CompletionWriter writer = new CompletionWriter();
+            if (initializersLoader != null)
+                writer.setContextClassLoader(initializersLoader);
+            writer.initialize();
+            completionWriter = writer;
+        }
         schedulerRunning = true;
 
         getLog().debug("JobStore background threads started (as scheduler was started).");
@@ -706,6 +1190,17 @@ public abstract class JobStoreSupport implements JobStore, Constants {
      * </p>
      */
     public void shutdown() {
+        firedOnAcquire.clear();
+
+        // before retries stop, so that the completions still queued are written
+        if (completionWriter != null) {
+            completionWriter.shutdown();
+            try {
+                completionWriter.join();
+            } catch (InterruptedException ignore) {
+            }
+        }
+
         shutdown = true;
 
         if (misfireHandler != null) {
@@ -726,6 +1221,9 @@ public abstract class JobStoreSupport implements JobStore, Constants {
 
         try {
             DBConnectionManager.getInstance().shutdown(getDataSource());
+            if (readOnlyDsName != null) {
+                DBConnectionManager.getInstance().shutdown(readOnlyDsName);
+            }
         } catch (SQLException sqle) {
             getLog().warn("Database connection shutdown unsuccessful.", sqle);
         }
@@ -750,10 +1248,16 @@ public abstract class JobStoreSupport implements JobStore, Constants {
      * (and potentially restored to a pool).
      */
     protected Connection getAttributeRestoringConnection(Connection conn) {
+        AttributeRestoringConnectionInvocationHandler handler;
+        if (getStatementCacheSize() > 0) {
+            handler = new StatementCachingConnectionInvocationHandler(conn, getStatementCacheSize());
+        } else {
+            handler = new AttributeRestoringConnectionInvocationHandler(conn);
+        }
         return (Connection) Proxy.newProxyInstance(
                 Thread.currentThread().getContextClassLoader(),
                 new Class[]{Connection.class},
-                new AttributeRestoringConnectionInvocationHandler(conn));
+                handler);
     }
 
     protected Connection getConnection() throws JobPersistenceException {
@@ -804,6 +1308,28 @@ public abstract class JobStoreSupport implements JobStore, Constants {
         return conn;
     }
 
+    /**
+     * Get a connection of the read-only data source, as is - queries are run
+     * on it outside of any transaction.
+     */
+    private Connection getReadOnlyConnection() throws JobPersistenceException {
+        Connection conn;
+        try {
+            conn = DBConnectionManager.getInstance().getConnection(readOnlyDsName);
+        } catch (Throwable e) {
+            throw new JobPersistenceException(
+                    "Failed to obtain DB connection from read-only data source '"
+                            + readOnlyDsName + "': " + e.toString(), e);
+        }
+
+        if (conn == null) {
+            throw new JobPersistenceException(
+                    "Could not get connection from read-only DataSource '"
+                            + readOnlyDsName + "'");
+        }
+        return getAttributeRestoringConnection(conn);
+    }
+
     protected void releaseLock(String lockName, boolean doIt) {
         if (doIt) {
             try {
@@ -839,6 +1365,7 @@ public abstract class JobStoreSupport implements JobStore, Constants {
      * @throws JobPersistenceException if jobs could not be recovered
      */
     protected void recoverJobs(Connection conn) throws JobPersistenceException {
+        invalidatePrefetchWindowOnTxCompletion();
         try {
             // update inconsistent job states
             int rows = getDelegate().updateTriggerStatesFromOtherStates(conn,
@@ -936,6 +1463,10 @@ public abstract class JobStoreSupport implements JobStore, Constants {
             Connection conn, boolean recovering)
             throws JobPersistenceException, SQLException {
 
+        if (recovering && misfireBatchSize > 0) {
+            return recoverMisfiredJobsInBatches(conn);
+        }
+
         // If recovering, we want to handle all of the misfired
         // triggers right away.
         int maxMisfiresToHandleAtATime =
@@ -984,36 +1515,299 @@ public abstract class JobStoreSupport implements JobStore, Constants {
                 hasMoreMisfiredTriggers, misfiredTriggers.size(), earliestNewTime);
     }
 
-    protected boolean updateMisfiredTrigger(Connection conn,
-                                            TriggerKey triggerKey, String newStateIfNotComplete, boolean forceState)
-            throws JobPersistenceException {
-        try {
-
-            OperableTrigger trig = retrieveTrigger(conn, triggerKey);
-
-            long misfireTime = System.currentTimeMillis();
-            if (getMisfireThreshold() > 0) {
-                misfireTime -= getMisfireThreshold();
-            }
-
-            if (trig.getNextFireTime().getTime() > misfireTime) {
-                return false;
+    /**
+     * Handle all of the misfired triggers, a batch after the other, in the
+     * given transaction.
+     *
+     * @see #setMisfireBatchSize(int)
+     */
+    private RecoverMisfiredJobsResult recoverMisfiredJobsInBatches(Connection conn)
+            throws JobPersistenceException, SQLException {
+        int processedCount = 0;
+        long earliestNewTime = Long.MAX_VALUE;
+        RecoverMisfiredJobsResult result;
+        do {
+            MisfireBatch batch = selectMisfireBatch(conn);
+            if (batch.triggers.isEmpty()) {
+                break;
             }
+            result = storeMisfireBatch(conn, batch, applyMisfireInstructions(batch), true);
+            processedCount += result.getProcessedMisfiredTriggerCount();
+            earliestNewTime = Math.min(earliestNewTime, result.getEarliestNewTime());
+        } while (result.hasMoreMisfiredTriggers() && result.getProcessedMisfiredTriggerCount() > 0);
 
-            doUpdateOfMisfiredTrigger(conn, trig, forceState, newStateIfNotComplete, false);
+        getLog().info("Handled " + processedCount + " trigger(s) that missed their scheduled fire-time.");
+        return new RecoverMisfiredJobsResult(false, processedCount, earliestNewTime);
+    }
 
-            return true;
+    /**
+     * Handle the next batch of misfired triggers: read without holding the
+     * lock, and written holding it.
+     *
+     * @see #setMisfireBatchSize(int)
+     */
+    private RecoverMisfiredJobsResult doRecoverMisfiresInBatch() throws JobPersistenceException {
+        final MisfireBatch batch = executeInNonManagedTXLock(null,
+                new TransactionCallback<MisfireBatch>() {
+                    public MisfireBatch execute(Connection conn) throws JobPersistenceException {
+                        try {
+                            return selectMisfireBatch(conn);
+                        } catch (SQLException e) {
+                            throw new JobPersistenceException("Database error recovering from misfires.", e);
+                        }
+                    }
+                }, null);
 
-        } catch (Exception e) {
-            throw new JobPersistenceException(
-                    "Couldn't update misfired trigger '" + triggerKey + "': " + e.getMessage(), e);
+        if (batch.triggers.isEmpty()) {
+            getLog().debug(
+                    "Found 0 triggers that missed their scheduled fire-time.");
+            return RecoverMisfiredJobsResult.NO_OP;
         }
-    }
+        getLog().info(
+                "Handling " + batch.triggers.size() + " trigger(s) that missed their scheduled fire-time."
+                        + (batch.hasMore ? "  More misfired triggers remain to be processed." : ""));
 
-    private void doUpdateOfMisfiredTrigger(Connection conn, OperableTrigger trig, boolean forceState, String newStateIfNotComplete, boolean recovering) throws JobPersistenceException {
-        Calendar cal = null;
-        if (trig.getCalendarName() != null) {
-            cal = retrieveCalendar(conn, trig.getCalendarName());
+        final List<OperableTrigger> updatedTriggers = applyMisfireInstructions(batch);
+        return executeInNonManagedTXLock(LOCK_TRIGGER_ACCESS,
+                new TransactionCallback<RecoverMisfiredJobsResult>() {
+                    public RecoverMisfiredJobsResult execute(Connection conn) throws JobPersistenceException {
+                        try {
+                            return storeMisfireBatch(conn, batch, updatedTriggers, false);
+                        } catch (SQLException e) {
+                            throw new JobPersistenceException("Database error recovering from misfires.", e);
+                        }
+                    }
+                }, null);
+    }
+
+    /**
+     * Select the next batch of misfired triggers, and the calendars they are
+     * modified by.
+     */
+    private MisfireBatch selectMisfireBatch(Connection conn) throws JobPersistenceException, SQLException {
+        Map<TriggerKey, OperableTrigger> triggers;
+        try {
+            triggers = getDelegate().selectMisfiredTriggers(conn, STATE_WAITING, getMisfireTime(),
+                    misfireBatchSize + 1);
+        } catch (IOException e) {
+            throw new JobPersistenceException("Couldn't read misfired triggers: " + e.getMessage(), e);
+        }
+
+        boolean hasMore = triggers.size() > misfireBatchSize;
+        if (hasMore) {
+            Iterator<TriggerKey> keys = triggers.keySet().iterator();
+            for (int i = 0; i < misfireBatchSize; i++) {
+                keys.next();
+            }
+            keys.next();
+            keys.remove();
+        }
+
+        Map<String, Calendar> calendars = new HashMap<String, Calendar>();
+        for (OperableTrigger trigger : triggers.values()) {
+            String calName = (trigger == null) ? null : trigger.getCalendarName();
+            if (calName != null && !calendars.containsKey(calName)) {
+                calendars.put(calName, retrieveCalendar(conn, calName));
+            }
+        }
+
+        return new MisfireBatch(triggers, calendars, hasMore);
+    }
+
+    /**
+     * Apply the misfire instruction of each trigger of the batch read along
+     * with its properties to a copy of it, in parallel for large batches.
+     *
+     * @return the updated copies, in the order of the batch
+     */
+    private List<OperableTrigger> applyMisfireInstructions(MisfireBatch batch) throws JobPersistenceException {
+        List<OperableTrigger> triggers = new ArrayList<OperableTrigger>(batch.triggers.size());
+        for (OperableTrigger trigger : batch.triggers.values()) {
+            if (trigger != null) {
+                triggers.add(trigger);
+            }
+        }
+
+        int taskCount = Math.min(Runtime.getRuntime().availableProcessors(),
+                triggers.size() / MIN_MISFIRES_PER_TASK);
+        if (taskCount <= 1) {
+            return applyMisfireInstructions(triggers, batch.calendars, false);
+        }
+
+        final Map<String, Calendar> calendars = batch.calendars;
+        List<Callable<List<OperableTrigger>>> tasks = new ArrayList<Callable<List<OperableTrigger>>>();
+        int taskSize = (triggers.size() + taskCount - 1) / taskCount;
+        for (int from = 0; from < triggers.size(); from += taskSize) {
+            final List<OperableTrigger> part = triggers.subList(from, Math.min(from + taskSize, triggers.size()));
+            tasks.add(new Callable<List<OperableTrigger>>() {
+                public List<OperableTrigger> call() {
+                    return applyMisfireInstructions(part, calendars, true);
+                }
+            });
+        }
+
+        List<OperableTrigger> updatedTriggers = new ArrayList<OperableTrigger>(triggers.size());
+        try {
+            for (Future<List<OperableTrigger>> task : ForkJoinPool.commonPool().invokeAll(tasks)) {
+                updatedTriggers.addAll(task.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JobPersistenceException("Interrupted while handling misfired triggers.", e);
+        } catch (ExecutionException e) {
+            throw new JobPersistenceException("Couldn't handle misfired triggers: "
+                    + e.getCause().getMessage(), e.getCause());
+        }
+        return updatedTriggers;
+    }
+
+    /**
+     * Apply the misfire instruction of each of the given triggers to a copy
+     * of it, with copies of the calendars if they are shared with other
+     * threads, as calendars may not be safe to use concurrently.
+     */
+    private static List<OperableTrigger> applyMisfireInstructions(List<OperableTrigger> triggers,
+                                                                  Map<String, Calendar> calendars,
+                                                                  boolean copyCalendars) {
+        Map<String, Calendar> calendarCopies = new HashMap<String, Calendar>();
+        List<OperableTrigger> updatedTriggers = new ArrayList<OperableTrigger>(triggers.size());
+        for (OperableTrigger trigger : triggers) {
+            Calendar cal = null;
+            String calName = trigger.getCalendarName();
+            if (calName != null) {
+                cal = calendars.get(calName);
+                if (cal != null && copyCalendars) {
+                    if (!calendarCopies.containsKey(calName)) {
+                        calendarCopies.put(calName, (Calendar) cal.clone());
+                    }
+                    cal = calendarCopies.get(calName);
+                }
+            }
+
+            OperableTrigger updatedTrigger = (OperableTrigger) trigger.clone();
+            updatedTrigger.updateAfterMisfire(cal);
+            updatedTriggers.add(updatedTrigger);
+        }
+        return updatedTriggers;
+    }
+
+    /**
+     * Write the updated triggers of the batch, but those changed since they
+     * were read, and handle the other triggers of the batch one at a time.
+     */
+    private RecoverMisfiredJobsResult storeMisfireBatch(Connection conn, MisfireBatch batch,
+                                                        List<OperableTrigger> updatedTriggers, boolean recovering)
+            throws JobPersistenceException, SQLException {
+        List<OperableTrigger> triggers = new ArrayList<OperableTrigger>(updatedTriggers.size());
+        List<TriggerKey> otherTriggerKeys = new ArrayList<TriggerKey>();
+        for (Map.Entry<TriggerKey, OperableTrigger> entry : batch.triggers.entrySet()) {
+            if (entry.getValue() != null) {
+                triggers.add(entry.getValue());
+            } else {
+                otherTriggerKeys.add(entry.getKey());
+            }
+        }
+
+        List<String> states = new ArrayList<String>(triggers.size());
+        long[] oldNextFireTimes = new long[triggers.size()];
+        for (int i = 0; i < triggers.size(); i++) {
+            states.add((updatedTriggers.get(i).getNextFireTime() == null) ? STATE_COMPLETE : STATE_WAITING);
+            oldNextFireTimes[i] = triggers.get(i).getNextFireTime().getTime();
+        }
+
+        int[] counts;
+        try {
+            counts = getDelegate().updateTriggersAfterMisfire(conn, updatedTriggers, states,
+                    STATE_WAITING, oldNextFireTimes);
+        } catch (IOException e) {
+            throw new JobPersistenceException("Couldn't store misfired triggers: " + e.getMessage(), e);
+        }
+
+        int processedCount = 0;
+        long earliestNewTime = Long.MAX_VALUE;
+        for (int i = 0; i < triggers.size(); i++) {
+            if (counts[i] < 1) {
+                continue;
+            }
+            processedCount++;
+            schedSignaler.notifyTriggerListenersMisfired(triggers.get(i));
+
+            OperableTrigger updatedTrigger = updatedTriggers.get(i);
+            if (updatedTrigger.getNextFireTime() == null) {
+                schedSignaler.notifySchedulerListenersFinalized(updatedTrigger);
+            } else if (updatedTrigger.getNextFireTime().getTime() < earliestNewTime) {
+                earliestNewTime = updatedTrigger.getNextFireTime().getTime();
+            }
+        }
+
+        for (TriggerKey triggerKey : otherTriggerKeys) {
+            OperableTrigger trig = retrieveTrigger(conn, triggerKey);
+            if (trig == null || trig.getNextFireTime() == null
+                    || trig.getNextFireTime().getTime() >= getMisfireTime()
+                    || !STATE_WAITING.equals(getDelegate().selectTriggerState(conn, triggerKey))) {
+                continue;
+            }
+
+            doUpdateOfMisfiredTrigger(conn, trig, false, STATE_WAITING, recovering);
+            processedCount++;
+
+            if (trig.getNextFireTime() != null && trig.getNextFireTime().getTime() < earliestNewTime)
+                earliestNewTime = trig.getNextFireTime().getTime();
+        }
+
+        return new RecoverMisfiredJobsResult(batch.hasMore, processedCount, earliestNewTime);
+    }
+
+    /**
+     * A batch of misfired triggers, read with their properties but for those
+     * of other types than the standard ones, and the calendars they are
+     * modified by.
+     */
+    private static class MisfireBatch {
+
+        private final Map<TriggerKey, OperableTrigger> triggers;
+
+        private final Map<String, Calendar> calendars;
+
+        private final boolean hasMore;
+
+        MisfireBatch(Map<TriggerKey, OperableTrigger> triggers, Map<String, Calendar> calendars, boolean hasMore) {
+            this.triggers = triggers;
+            this.calendars = calendars;
+            this.hasMore = hasMore;
+        }
+    }
+
+    protected boolean updateMisfiredTrigger(Connection conn,
+                                            TriggerKey triggerKey, String newStateIfNotComplete, boolean forceState)
+            throws JobPersistenceException {
+        try {
+
+            OperableTrigger trig = retrieveTrigger(conn, triggerKey);
+
+            long misfireTime = System.currentTimeMillis();
+            if (getMisfireThreshold() > 0) {
+                misfireTime -= getMisfireThreshold();
+            }
+
+            if (trig.getNextFireTime().getTime() > misfireTime) {
+                return false;
+            }
+
+            doUpdateOfMisfiredTrigger(conn, trig, forceState, newStateIfNotComplete, false);
+
+            return true;
+
+        } catch (Exception e) {
+            throw new JobPersistenceException(
+                    "Couldn't update misfired trigger '" + triggerKey + "': " + e.getMessage(), e);
+        }
+    }
+
+    private void doUpdateOfMisfiredTrigger(Connection conn, OperableTrigger trig, boolean forceState, String newStateIfNotComplete, boolean recovering) throws JobPersistenceException {
+        Calendar cal = null;
+        if (trig.getCalendarName() != null) {
+            cal = retrieveCalendar(conn, trig.getCalendarName());
         }
 
         schedSignaler.notifyTriggerListenersMisfired(trig);
@@ -1096,6 +1890,7 @@ public abstract class JobStoreSupport implements JobStore, Constants {
             } else {
                 getDelegate().insertJobDetail(conn, newJob);
             }
+            updateJobVersion(conn, newJob.getKey());
         } catch (IOException e) {
             throw new JobPersistenceException("Couldn't store job: "
                     + e.getMessage(), e);
@@ -1105,6 +1900,40 @@ public abstract class JobStoreSupport implements JobStore, Constants {
         }
     }
 
+    /**
+     * Write a new version of the given job, if jobs are cached, so that the
+     * copies cached by every instance are no longer used.
+     */
+    private void updateJobVersion(Connection conn, JobKey jobKey)
+            throws NoSuchDelegateException, SQLException {
+        if (versionedJobCache != null) {
+            getDelegate().updateJobVersion(conn, jobKey, nextDataVersion());
+            versionedJobCache.remove(jobKey);
+        }
+    }
+
+    /**
+     * Write a new version of the given calendar, if calendars are cached.
+     *
+     * @see #updateJobVersion(Connection, JobKey)
+     */
+    private void updateCalendarVersion(Connection conn, String calName)
+            throws NoSuchDelegateException, SQLException {
+        if (versionedCalendarCache != null) {
+            getDelegate().updateCalendarVersion(conn, calName, nextDataVersion());
+            versionedCalendarCache.remove(calName);
+        }
+    }
+
+    private static long nextDataVersion() {
+        long version;
+        do {
+            // rows written before the cache was used have a version of 0
+            version = ThreadLocalRandom.current().nextLong();
+        } while (version == 0L);
+        return version;
+    }
+
     /**
      * <p>
      * Check existence of a given job.
@@ -1156,6 +1985,7 @@ public abstract class JobStoreSupport implements JobStore, Constants {
             throws JobPersistenceException {
 
         boolean existingTrigger = triggerExists(conn, newTrigger.getKey());
+        invalidatePrefetchWindowOnTxCompletion();
 
         if ((existingTrigger) && (!replaceExisting)) {
             throw new ObjectAlreadyExistsException(newTrigger);
@@ -1200,6 +2030,9 @@ public abstract class JobStoreSupport implements JobStore, Constants {
                 getDelegate().updateTrigger(conn, newTrigger, state, job);
             } else {
                 getDelegate().insertTrigger(conn, newTrigger, state, job);
+                if (isPartitioned()) {
+                    getDelegate().updateTriggerPartition(conn, newTrigger.getKey(), getPartition(newTrigger.getKey()));
+                }
             }
         } catch (Exception e) {
             throw new JobPersistenceException("Couldn't store trigger '" + newTrigger.getKey() + "' for '"
@@ -1328,6 +2161,9 @@ public abstract class JobStoreSupport implements JobStore, Constants {
     private boolean deleteJobAndChildren(Connection conn, JobKey key)
             throws NoSuchDelegateException, SQLException {
 
+        if (versionedJobCache != null) {
+            versionedJobCache.remove(key);
+        }
         return (getDelegate().deleteJobDetail(conn, key) > 0);
     }
 
@@ -1363,9 +2199,27 @@ public abstract class JobStoreSupport implements JobStore, Constants {
 
     protected JobDetail retrieveJob(Connection conn, JobKey key) throws JobPersistenceException {
         try {
+            if (versionedJobCache == null) {
+                return getDelegate().selectJobDetail(conn, key,
+                        getClassLoadHelper());
+            }
 
-            return getDelegate().selectJobDetail(conn, key,
+            Long version = getDelegate().selectJobVersion(conn, key);
+            if (version == null) {
+                versionedJobCache.remove(key);
+                return null;
+            }
+            JobDetail job = versionedJobCache.get(key, version);
+            if (job != null) {
+                return (JobDetail) job.clone();
+            }
+
+            job = getDelegate().selectJobDetail(conn, key,
                     getClassLoadHelper());
+            if (job != null) {
+                versionedJobCache.put(key, version, (JobDetail) job.clone());
+            }
+            return job;
         } catch (ClassNotFoundException e) {
             throw new JobPersistenceException(
                     "Couldn't retrieve job because a required class was not found: "
@@ -1529,9 +2383,9 @@ public abstract class JobStoreSupport implements JobStore, Constants {
      * @see TriggerState#NONE
      */
     public TriggerState getTriggerState(final TriggerKey triggerKey) throws JobPersistenceException {
-        return (TriggerState) executeWithoutLock( // no locks necessary for read...
-                new TransactionCallback() {
-                    public Object execute(Connection conn) throws JobPersistenceException {
+        return executeReadOnly("getTriggerState", TriggerState.NONE, // no locks necessary for read...
+                new TransactionCallback<TriggerState>() {
+                    public TriggerState execute(Connection conn) throws JobPersistenceException {
                         return getTriggerState(conn, triggerKey);
                     }
                 });
@@ -1611,6 +2465,7 @@ public abstract class JobStoreSupport implements JobStore, Constants {
             }
 
             getDelegate().updateTriggerStateFromOtherState(conn, triggerKey, newState, STATE_ERROR);
+            invalidatePrefetchWindowOnTxCompletion();
 
             getLog().info("Trigger " + triggerKey + " reset from ERROR state to: " + newState);
         } catch (SQLException e) {
@@ -1674,8 +2529,9 @@ public abstract class JobStoreSupport implements JobStore, Constants {
                             "Couldn't store calendar.  Insert failed.");
                 }
             }
+            updateCalendarVersion(conn, calName);
 
-            if (!isClustered) {
+            if (!isClustered && versionedCalendarCache == null) {
                 calendarCache.put(calName, calendar); // lazy-cache
             }
 
@@ -1742,6 +2598,9 @@ public abstract class JobStoreSupport implements JobStore, Constants {
             if (!isClustered) {
                 calendarCache.remove(calName);
             }
+            if (versionedCalendarCache != null) {
+                versionedCalendarCache.remove(calName);
+            }
 
             return (getDelegate().deleteCalendar(conn, calName) > 0);
         } catch (SQLException e) {
@@ -1772,6 +2631,10 @@ public abstract class JobStoreSupport implements JobStore, Constants {
     protected Calendar retrieveCalendar(Connection conn,
                                         String calName)
             throws JobPersistenceException {
+        if (versionedCalendarCache != null) {
+            return retrieveVersionedCalendar(conn, calName);
+        }
+
         // all calendars are persistent, but we can lazy-cache them during run
         // time as long as we aren't running clustered.
         Calendar cal = (isClustered) ? null : calendarCache.get(calName);
@@ -1799,6 +2662,42 @@ public abstract class JobStoreSupport implements JobStore, Constants {
         }
     }
 
+    /**
+     * Retrieve the given calendar from the versioned cache, if it is cached
+     * with the version of its row, selecting it otherwise.
+     */
+    private Calendar retrieveVersionedCalendar(Connection conn, String calName)
+            throws JobPersistenceException {
+        try {
+            Long version = getDelegate().selectCalendarVersion(conn, calName);
+            if (version == null) {
+                versionedCalendarCache.remove(calName);
+                return null;
+            }
+            Calendar cal = versionedCalendarCache.get(calName, version);
+            if (cal != null) {
+                return (Calendar) cal.clone();
+            }
+
+            cal = getDelegate().selectCalendar(conn, calName);
+            if (cal != null) {
+                versionedCalendarCache.put(calName, version, (Calendar) cal.clone());
+            }
+            return cal;
+        } catch (ClassNotFoundException e) {
+            throw new JobPersistenceException(
+                    "Couldn't retrieve calendar because a required class was not found: "
+                            + e.getMessage(), e);
+        } catch (IOException e) {
+            throw new JobPersistenceException(
+                    "Couldn't retrieve calendar because the BLOB couldn't be deserialized: "
+                            + e.getMessage(), e);
+        } catch (SQLException e) {
+            throw new JobPersistenceException("Couldn't retrieve calendar: "
+                    + e.getMessage(), e);
+        }
+    }
+
     /**
      * <p>
      * Get the number of <code>{@link Job}</code> s that are
@@ -1807,9 +2706,9 @@ public abstract class JobStoreSupport implements JobStore, Constants {
      */
     public int getNumberOfJobs()
             throws JobPersistenceException {
-        return (Integer) executeWithoutLock( // no locks necessary for read...
-                new TransactionCallback() {
-                    public Object execute(Connection conn) throws JobPersistenceException {
+        return executeReadOnly("getNumberOfJobs", null, // no locks necessary for read...
+                new TransactionCallback<Integer>() {
+                    public Integer execute(Connection conn) throws JobPersistenceException {
                         return getNumberOfJobs(conn);
                     }
                 });
@@ -1833,9 +2732,9 @@ public abstract class JobStoreSupport implements JobStore, Constants {
      */
     public int getNumberOfTriggers()
             throws JobPersistenceException {
-        return (Integer) executeWithoutLock( // no locks necessary for read...
-                new TransactionCallback() {
-                    public Object execute(Connection conn) throws JobPersistenceException {
+        return executeReadOnly("getNumberOfTriggers", null, // no locks necessary for read...
+                new TransactionCallback<Integer>() {
+                    public Integer execute(Connection conn) throws JobPersistenceException {
                         return getNumberOfTriggers(conn);
                     }
                 });
@@ -1859,9 +2758,9 @@ public abstract class JobStoreSupport implements JobStore, Constants {
      */
     public int getNumberOfCalendars()
             throws JobPersistenceException {
-        return (Integer) executeWithoutLock( // no locks necessary for read...
-                new TransactionCallback() {
-                    public Object execute(Connection conn) throws JobPersistenceException {
+        return executeReadOnly("getNumberOfCalendars", null, // no locks necessary for read...
+                new TransactionCallback<Integer>() {
+                    public Integer execute(Connection conn) throws JobPersistenceException {
                         return getNumberOfCalendars(conn);
                     }
                 });
@@ -1887,12 +2786,11 @@ public abstract class JobStoreSupport implements JobStore, Constants {
      * If there are no jobs in the given group name, the result should be an empty Set
      * </p>
      */
-    @SuppressWarnings("unchecked")
     public Set<JobKey> getJobKeys(final GroupMatcher<JobKey> matcher)
             throws JobPersistenceException {
-        return (Set<JobKey>) executeWithoutLock( // no locks necessary for read...
-                new TransactionCallback() {
-                    public Object execute(Connection conn) throws JobPersistenceException {
+        return executeReadOnly("getJobKeys", null, // no locks necessary for read...
+                new TransactionCallback<Set<JobKey>>() {
+                    public Set<JobKey> execute(Connection conn) throws JobPersistenceException {
                         return getJobNames(conn, matcher);
                     }
                 });
@@ -1984,6 +2882,10 @@ public abstract class JobStoreSupport implements JobStore, Constants {
     protected void clearAllSchedulingData(Connection conn) throws JobPersistenceException {
         try {
             getDelegate().clearData(conn);
+            if (versionedJobCache != null) {
+                versionedJobCache.clear();
+                versionedCalendarCache.clear();
+            }
         } catch (SQLException e) {
             throw new JobPersistenceException("Error clearing scheduling data: " + e.getMessage(), e);
         }
@@ -2000,12 +2902,11 @@ public abstract class JobStoreSupport implements JobStore, Constants {
      * an empty Set (not <code>null</code>).
      * </p>
      */
-    @SuppressWarnings("unchecked")
     public Set<TriggerKey> getTriggerKeys(final GroupMatcher<TriggerKey> matcher)
             throws JobPersistenceException {
-        return (Set<TriggerKey>) executeWithoutLock( // no locks necessary for read...
-                new TransactionCallback() {
-                    public Object execute(Connection conn) throws JobPersistenceException {
+        return executeReadOnly("getTriggerKeys", null, // no locks necessary for read...
+                new TransactionCallback<Set<TriggerKey>>() {
+                    public Set<TriggerKey> execute(Connection conn) throws JobPersistenceException {
                         return getTriggerNames(conn, matcher);
                     }
                 });
@@ -2038,12 +2939,11 @@ public abstract class JobStoreSupport implements JobStore, Constants {
      * array (not <code>null</code>).
      * </p>
      */
-    @SuppressWarnings("unchecked")
     public List<String> getJobGroupNames()
             throws JobPersistenceException {
-        return (List<String>) executeWithoutLock( // no locks necessary for read...
-                new TransactionCallback() {
-                    public Object execute(Connection conn) throws JobPersistenceException {
+        return executeReadOnly("getJobGroupNames", null, // no locks necessary for read...
+                new TransactionCallback<List<String>>() {
+                    public List<String> execute(Connection conn) throws JobPersistenceException {
                         return getJobGroupNames(conn);
                     }
                 });
@@ -2075,12 +2975,11 @@ public abstract class JobStoreSupport implements JobStore, Constants {
      * array (not <code>null</code>).
      * </p>
      */
-    @SuppressWarnings("unchecked")
     public List<String> getTriggerGroupNames()
             throws JobPersistenceException {
-        return (List<String>) executeWithoutLock( // no locks necessary for read...
-                new TransactionCallback() {
-                    public Object execute(Connection conn) throws JobPersistenceException {
+        return executeReadOnly("getTriggerGroupNames", null, // no locks necessary for read...
+                new TransactionCallback<List<String>>() {
+                    public List<String> execute(Connection conn) throws JobPersistenceException {
                         return getTriggerGroupNames(conn);
                     }
                 });
@@ -2111,12 +3010,11 @@ public abstract class JobStoreSupport implements JobStore, Constants {
      * a zero-length array (not <code>null</code>).
      * </p>
      */
-    @SuppressWarnings("unchecked")
     public List<String> getCalendarNames()
             throws JobPersistenceException {
-        return (List<String>) executeWithoutLock( // no locks necessary for read...
-                new TransactionCallback() {
-                    public Object execute(Connection conn) throws JobPersistenceException {
+        return executeReadOnly("getCalendarNames", null, // no locks necessary for read...
+                new TransactionCallback<List<String>>() {
+                    public List<String> execute(Connection conn) throws JobPersistenceException {
                         return getCalendarNames(conn);
                     }
                 });
@@ -2141,11 +3039,10 @@ public abstract class JobStoreSupport implements JobStore, Constants {
      * If there are no matches, a zero-length array should be returned.
      * </p>
      */
-    @SuppressWarnings("unchecked")
     public List<OperableTrigger> getTriggersForJob(final JobKey jobKey) throws JobPersistenceException {
-        return (List<OperableTrigger>) executeWithoutLock( // no locks necessary for read...
-                new TransactionCallback() {
-                    public Object execute(Connection conn) throws JobPersistenceException {
+        return executeReadOnly("getTriggersForJob", Collections.<OperableTrigger>emptyList(), // no locks necessary for read...
+                new TransactionCallback<List<OperableTrigger>>() {
+                    public List<OperableTrigger> execute(Connection conn) throws JobPersistenceException {
                         return getTriggersForJob(conn, jobKey);
                     }
                 });
@@ -2352,6 +3249,7 @@ public abstract class JobStoreSupport implements JobStore, Constants {
             if (status == null || status.getNextFireTime() == null) {
                 return;
             }
+            invalidatePrefetchWindowOnTxCompletion();
 
             boolean blocked = false;
             if (STATE_PAUSED_BLOCKED.equals(status.getStatus())) {
@@ -2508,12 +3406,11 @@ public abstract class JobStoreSupport implements JobStore, Constants {
         }
     }
 
-    @SuppressWarnings("unchecked")
     public Set<String> getPausedTriggerGroups()
             throws JobPersistenceException {
-        return (Set<String>) executeWithoutLock( // no locks necessary for read...
-                new TransactionCallback() {
-                    public Object execute(Connection conn) throws JobPersistenceException {
+        return executeReadOnly("getPausedTriggerGroups", null, // no locks necessary for read...
+                new TransactionCallback<Set<String>>() {
+                    public Set<String> execute(Connection conn) throws JobPersistenceException {
                         return getPausedTriggerGroups(conn);
                     }
                 });
@@ -2766,65 +3663,197 @@ public abstract class JobStoreSupport implements JobStore, Constants {
     public List<OperableTrigger> acquireNextTriggers(final long noLaterThan, final int maxCount, final long timeWindow)
             throws JobPersistenceException {
 
+        if (isPartitioned()) {
+            return acquireNextTriggersInPartitions(noLaterThan, maxCount, timeWindow);
+        }
+
         String lockName;
-        if (isAcquireTriggersWithinLock() || maxCount > 1) {
+        if (isAcquireTriggersWithoutLock()) {
+            lockName = null;
+        } else if (isAcquireTriggersWithinLock() || isFireDueTriggersOnAcquire() || maxCount > 1) {
             lockName = LOCK_TRIGGER_ACCESS;
         } else {
             lockName = null;
         }
-        return executeInNonManagedTXLock(lockName,
-                new TransactionCallback<List<OperableTrigger>>() {
-                    public List<OperableTrigger> execute(Connection conn) throws JobPersistenceException {
-                        return acquireNextTrigger(conn, noLaterThan, maxCount, timeWindow);
-                    }
-                },
-                new TransactionValidator<List<OperableTrigger>>() {
-                    public Boolean validate(Connection conn, List<OperableTrigger> result) throws JobPersistenceException {
-                        try {
-                            List<FiredTriggerRecord> acquired = getDelegate().selectInstancesFiredTriggerRecords(conn, getInstanceId());
-                            Set<String> fireInstanceIds = new HashSet<String>();
-                            for (FiredTriggerRecord ft : acquired) {
-                                fireInstanceIds.add(ft.getFireInstanceId());
+        // only kept once the transaction is committed
+        final Map<String, TriggerFiredResult> firedResults = new HashMap<String, TriggerFiredResult>();
+        List<OperableTrigger> acquired;
+        try {
+            acquired = executeInNonManagedTXLock(lockName,
+                    new TransactionCallback<List<OperableTrigger>>() {
+                        public List<OperableTrigger> execute(Connection conn) throws JobPersistenceException {
+                            List<OperableTrigger> acquired = acquireNextTrigger(conn, noLaterThan, maxCount, timeWindow);
+                            if (isFireDueTriggersOnAcquire()) {
+                                firedResults.putAll(fireDueTriggers(conn, acquired));
                             }
-                            for (OperableTrigger tr : result) {
-                                if (fireInstanceIds.contains(tr.getFireInstanceId())) {
-                                    return true;
+                            return acquired;
+                        }
+                    },
+                    new TransactionValidator<List<OperableTrigger>>() {
+                        public Boolean validate(Connection conn, List<OperableTrigger> result) throws JobPersistenceException {
+                            try {
+                                List<FiredTriggerRecord> acquired = getDelegate().selectInstancesFiredTriggerRecords(conn, getInstanceId());
+                                Set<String> fireInstanceIds = new HashSet<String>();
+                                for (FiredTriggerRecord ft : acquired) {
+                                    fireInstanceIds.add(ft.getFireInstanceId());
                                 }
+                                for (OperableTrigger tr : result) {
+                                    if (fireInstanceIds.contains(tr.getFireInstanceId())) {
+                                        return true;
+                                    }
+                                }
+                                return false;
+                            } catch (SQLException e) {
+                                throw new JobPersistenceException("error validating trigger acquisition", e);
                             }
-                            return false;
-                        } catch (SQLException e) {
-                            throw new JobPersistenceException("error validating trigger acquisition", e);
                         }
-                    }
-                });
+                    });
+        } catch (JobPersistenceException e) {
+            if (triggerPrefetchWindow != null) {
+                // the triggers taken from it may still be waiting
+                triggerPrefetchWindow.invalidate();
+            }
+            throw e;
+        }
+        firedOnAcquire.putAll(firedResults);
+        return acquired;
     }
 
-    // FUTURE_TODO: this really ought to return something like a FiredTriggerBundle,
-    // so that the fireInstanceId doesn't have to be on the trigger...
-    protected List<OperableTrigger> acquireNextTrigger(Connection conn, long noLaterThan, int maxCount, long timeWindow)
+    /**
+     * Fire the given just acquired triggers that are already due within the
+     * current transaction. Copies of the triggers are fired, as the scheduler
+     * still waits for the fire times of the acquired ones.
+     *
+     * @return the result of firing each of the due triggers, by fire
+     * instance id
+     */
+    private Map<String, TriggerFiredResult> fireDueTriggers(Connection conn, List<OperableTrigger> acquired)
             throws JobPersistenceException {
-        if (timeWindow < 0) {
-            throw new IllegalArgumentException();
+        long now = System.currentTimeMillis();
+        List<OperableTrigger> dueTriggers = new ArrayList<OperableTrigger>();
+        for (OperableTrigger trigger : acquired) {
+            if (trigger.getNextFireTime().getTime() <= now) {
+                dueTriggers.add((OperableTrigger) trigger.clone());
+            }
         }
 
-        List<OperableTrigger> acquiredTriggers = new ArrayList<OperableTrigger>();
-        Set<JobKey> acquiredJobKeysForNoConcurrentExec = new HashSet<JobKey>();
-        final int MAX_DO_LOOP_RETRY = 3;
-        int currentLoopCount = 0;
-        do {
-            currentLoopCount++;
-            try {
-                List<TriggerKey> keys = getDelegate().selectTriggerToAcquire(conn, noLaterThan + timeWindow, getMisfireTime(), maxCount);
+        Map<String, TriggerFiredResult> results = new HashMap<String, TriggerFiredResult>();
+        if (dueTriggers.isEmpty()) {
+            return results;
+        }
+        List<TriggerFiredResult> fired = triggersFired(conn, dueTriggers);
+        for (int i = 0; i < dueTriggers.size(); i++) {
+            results.put(dueTriggers.get(i).getFireInstanceId(), fired.get(i));
+        }
+        return results;
+    }
 
-                // No trigger is ready to fire yet.
-                if (keys == null || keys.size() == 0)
-                    return acquiredTriggers;
+    /**
+     * Acquire the next triggers of the partitions leased by this instance,
+     * within the locks of these partitions.
+     */
+    private List<OperableTrigger> acquireNextTriggersInPartitions(long noLaterThan, int maxCount, long timeWindow)
+            throws JobPersistenceException {
+        int[] partitions = leasedPartitions;
+        if (partitions == null || partitions[0] > partitions[1]) {
+            // not checked in yet, or more instances than partitions
+            return new ArrayList<OperableTrigger>();
+        }
 
-                long batchEnd = noLaterThan;
+        List<String> lockNames = new ArrayList<String>();
+        Connection conn = getNonManagedTXConnection();
+        try {
+            // always in the same order, so that instances with overlapping
+            // leases wait for each other rather than deadlock
+            for (int partition = partitions[0]; partition <= partitions[1]; partition++) {
+                String lockName = getPartitionLockName(partition);
+                getLockHandler().obtainLock(conn, lockName);
+                lockNames.add(lockName);
+            }
 
-                for (TriggerKey triggerKey : keys) {
-                    // If our trigger is no longer available, try a new one.
-                    OperableTrigger nextTrigger = retrieveTrigger(conn, triggerKey);
+            List<OperableTrigger> acquired = acquireNextTrigger(conn, noLaterThan, maxCount, timeWindow, partitions);
+            commitConnection(conn);
+            return acquired;
+        } catch (JobPersistenceException e) {
+            rollbackConnection(conn);
+            throw e;
+        } catch (RuntimeException e) {
+            rollbackConnection(conn);
+            throw new JobPersistenceException("Unexpected runtime exception: "
+                    + e.getMessage(), e);
+        } finally {
+            try {
+                for (String lockName : lockNames) {
+                    releaseLock(lockName, true);
+                }
+            } finally {
+                cleanupConnection(conn);
+            }
+        }
+    }
+
+    // FUTURE_TODO: this really ought to return something like a FiredTriggerBundle,
+    // so that the fireInstanceId doesn't have to be on the trigger...
+    protected List<OperableTrigger> acquireNextTrigger(Connection conn, long noLaterThan, int maxCount, long timeWindow)
+            throws JobPersistenceException {
+        return acquireNextTrigger(conn, noLaterThan, maxCount, timeWindow, null);
+    }
+
+    /**
+     * @param partitions the first and last partitions to acquire triggers
+     *                   from, within their locks, or null for all triggers
+     */
+    private List<OperableTrigger> acquireNextTrigger(Connection conn, long noLaterThan, int maxCount, long timeWindow,
+                                                     int[] partitions)
+            throws JobPersistenceException {
+        if (timeWindow < 0) {
+            throw new IllegalArgumentException();
+        }
+
+        List<OperableTrigger> acquiredTriggers = new ArrayList<OperableTrigger>();
+        Set<JobKey> acquiredJobKeysForNoConcurrentExec = new HashSet<JobKey>();
+        final int MAX_DO_LOOP_RETRY = 3;
+        int currentLoopCount = 0;
+        do {
+            currentLoopCount++;
+            try {
+                List<TriggerAcquisitionRecord> candidates;
+                boolean rowsLocked = false;
+                List<UpcomingTriggerRecord> prefetched = null;
+                if (partitions != null) {
+                    candidates = getDelegate().selectTriggersToAcquire(conn, noLaterThan + timeWindow,
+                            getMisfireTime(), maxCount, partitions[0], partitions[1], getClassLoadHelper());
+                } else if (triggerPrefetchWindow != null
+                        && (prefetched = takePrefetchedTriggers(conn, noLaterThan + timeWindow, maxCount)) != null) {
+                    List<TriggerKey> triggerKeys = new ArrayList<TriggerKey>(prefetched.size());
+                    for (UpcomingTriggerRecord record : prefetched) {
+                        triggerKeys.add(record.getTriggerKey());
+                    }
+                    candidates = getDelegate().selectTriggersToAcquireByKey(conn, triggerKeys, getClassLoadHelper());
+                } else if (isAcquireTriggersWithoutLock() && getDelegate().supportsSkipLocked()) {
+                    candidates = getDelegate().selectTriggersToAcquireSkipLocked(
+                            conn, noLaterThan + timeWindow, getMisfireTime(), maxCount, getClassLoadHelper());
+                    rowsLocked = true;
+                } else {
+                    candidates = getDelegate().selectTriggersToAcquire(
+                            conn, noLaterThan + timeWindow, getMisfireTime(), maxCount, getClassLoadHelper());
+                }
+
+                // No trigger is ready to fire yet.
+                if (candidates == null || candidates.size() == 0)
+                    return acquiredTriggers;
+
+                long batchEnd = noLaterThan;
+                List<OperableTrigger> triggersToAcquire = new ArrayList<OperableTrigger>();
+
+                for (TriggerAcquisitionRecord candidate : candidates) {
+                    TriggerKey triggerKey = candidate.getTriggerKey();
+                    OperableTrigger nextTrigger = candidate.getTrigger();
+                    if (nextTrigger == null) {
+                        // not of a type that could be read with its key
+                        nextTrigger = retrieveTrigger(conn, triggerKey);
+                    }
+                    // If our trigger is no longer available, try a new one.
                     if (nextTrigger == null) {
                         continue; // next trigger
                     }
@@ -2832,17 +3861,19 @@ public abstract class JobStoreSupport implements JobStore, Constants {
                     // If trigger's job is set as @DisallowConcurrentExecution, and it has already been added to result, then
                     // put it back into the timeTriggers set and continue to search for next trigger.
                     JobKey jobKey = nextTrigger.getJobKey();
-                    JobDetail job;
-                    try {
-                        job = retrieveJob(conn, jobKey);
-                    } catch (JobPersistenceException jpe) {
+                    JobDetail job = candidate.getJobDetail();
+                    if (job == null) {
                         try {
-                            getLog().error("Error retrieving job, setting trigger state to ERROR.", jpe);
-                            getDelegate().updateTriggerState(conn, triggerKey, STATE_ERROR);
-                        } catch (SQLException sqle) {
-                            getLog().error("Unable to set trigger state to ERROR.", sqle);
+                            job = retrieveJob(conn, jobKey);
+                        } catch (JobPersistenceException jpe) {
+                            try {
+                                getLog().error("Error retrieving job, setting trigger state to ERROR.", jpe);
+                                getDelegate().updateTriggerState(conn, triggerKey, STATE_ERROR);
+                            } catch (SQLException sqle) {
+                                getLog().error("Unable to set trigger state to ERROR.", sqle);
+                            }
+                            continue;
                         }
-                        continue;
                     }
 
                     if (job.isConcurrentExectionDisallowed()) {
@@ -2869,19 +3900,20 @@ public abstract class JobStoreSupport implements JobStore, Constants {
                     if (nextFireTime.getTime() > batchEnd) {
                         break;
                     }
-                    // We now have a acquired trigger, let's add to return list.
-                    // If our trigger was no longer in the expected state, try a new one.
-                    int rowsUpdated = getDelegate().updateTriggerStateFromOtherState(conn, triggerKey, STATE_ACQUIRED, STATE_WAITING);
-                    if (rowsUpdated <= 0) {
-                        continue; // next trigger
-                    }
-                    nextTrigger.setFireInstanceId(getFiredTriggerRecordId());
-                    getDelegate().insertFiredTrigger(conn, nextTrigger, STATE_ACQUIRED, null);
 
-                    if (acquiredTriggers.isEmpty()) {
+                    if (triggersToAcquire.isEmpty()) {
                         batchEnd = Math.max(nextFireTime.getTime(), System.currentTimeMillis()) + timeWindow;
                     }
-                    acquiredTriggers.add(nextTrigger);
+                    triggersToAcquire.add(nextTrigger);
+                }
+
+                // the partition locks do not keep other operations from
+                // updating the triggers, so they are then claimed one by one
+                boolean batch = partitions == null && (!isAcquireTriggersWithoutLock() || rowsLocked);
+                List<OperableTrigger> acquired = acquireTriggers(conn, triggersToAcquire, batch);
+                acquiredTriggers.addAll(acquired);
+                if (prefetched != null) {
+                    returnToPrefetchWindow(prefetched, candidates, acquired);
                 }
 
                 // if we didn't end up with any trigger to fire from that first
@@ -2902,6 +3934,130 @@ public abstract class JobStoreSupport implements JobStore, Constants {
         return acquiredTriggers;
     }
 
+    /**
+     * Take the triggers due no later than the given time from the prefetch
+     * window, extending it with the triggers due after those it holds if it
+     * does not cover that time yet.
+     *
+     * @return the triggers taken, or null if the window could not be
+     * extended to the given time, for the next triggers to be selected by
+     * their fire times instead
+     */
+    private List<UpcomingTriggerRecord> takePrefetchedTriggers(Connection conn, long noLaterThan, int maxCount)
+            throws SQLException, NoSuchDelegateException {
+        TriggerPrefetchWindow window = triggerPrefetchWindow;
+        if (!window.covers(noLaterThan)) {
+            long generation = window.getGeneration();
+            long after = window.getCoveredUntil();
+            long until = Math.max(noLaterThan, System.currentTimeMillis() + prefetchWindow);
+            List<UpcomingTriggerRecord> upcoming = getDelegate().selectUpcomingTriggers(
+                    conn, after, until, getMisfireTime(), prefetchSize);
+            if (!window.extend(generation, upcoming, until, prefetchSize) || !window.covers(noLaterThan)) {
+                return null;
+            }
+        }
+        return window.take(noLaterThan, getMisfireTime(), maxCount);
+    }
+
+    /**
+     * Put the triggers taken from the prefetch window that were not
+     * acquired, but are still waiting, back into it.
+     */
+    private void returnToPrefetchWindow(List<UpcomingTriggerRecord> prefetched,
+                                        List<TriggerAcquisitionRecord> candidates, List<OperableTrigger> acquired) {
+        Set<TriggerKey> acquiredKeys = new HashSet<TriggerKey>();
+        for (OperableTrigger trigger : acquired) {
+            acquiredKeys.add(trigger.getKey());
+        }
+        Map<TriggerKey, OperableTrigger> waiting = new HashMap<TriggerKey, OperableTrigger>();
+        for (TriggerAcquisitionRecord candidate : candidates) {
+            waiting.put(candidate.getTriggerKey(), candidate.getTrigger());
+        }
+
+        for (UpcomingTriggerRecord record : prefetched) {
+            TriggerKey key = record.getTriggerKey();
+            if (acquiredKeys.contains(key) || !waiting.containsKey(key)) {
+                continue;
+            }
+            OperableTrigger trigger = waiting.get(key);
+            if (trigger == null || trigger.getNextFireTime() == null) {
+                // not read along with its key
+                triggerPrefetchWindow.add(record);
+            } else {
+                triggerPrefetchWindow.add(upcomingTriggerRecord(trigger));
+            }
+        }
+    }
+
+    private static UpcomingTriggerRecord upcomingTriggerRecord(OperableTrigger trigger) {
+        return new UpcomingTriggerRecord(trigger.getKey(), trigger.getNextFireTime().getTime(),
+                trigger.getPriority(), trigger.getMisfireInstruction());
+    }
+
+    /**
+     * Move the given triggers from the waiting to the acquired state, and
+     * insert their fired trigger records, skipping any trigger that was no
+     * longer waiting.
+     * <p>
+     * The updates are batched if no other scheduler can be updating the
+     * triggers at the same time - within the <code>TRIGGER_ACCESS</code>
+     * lock, or with their rows locked - as batches do not always tell which
+     * of their updates changed a row. Otherwise each trigger is claimed on
+     * its own, in the order of their keys, so that schedulers claiming the
+     * same triggers wait for each other rather than deadlock.
+     * </p>
+     *
+     * @return the triggers acquired
+     */
+    private List<OperableTrigger> acquireTriggers(Connection conn, List<OperableTrigger> triggers, boolean batch)
+            throws SQLException, NoSuchDelegateException {
+        if (triggers.isEmpty()) {
+            return triggers;
+        }
+
+        List<OperableTrigger> acquired = new ArrayList<OperableTrigger>(triggers.size());
+        if (triggers.size() == 1 || !batch) {
+            List<OperableTrigger> claimOrder = new ArrayList<OperableTrigger>(triggers);
+            Collections.sort(claimOrder, new Comparator<OperableTrigger>() {
+                public int compare(OperableTrigger t1, OperableTrigger t2) {
+                    return t1.getKey().compareTo(t2.getKey());
+                }
+            });
+            Set<TriggerKey> claimed = new HashSet<TriggerKey>();
+            for (OperableTrigger trigger : claimOrder) {
+                // If our trigger was no longer in the expected state, try a new one.
+                if (getDelegate().updateTriggerStateFromOtherState(conn, trigger.getKey(), STATE_ACQUIRED, STATE_WAITING) > 0) {
+                    claimed.add(trigger.getKey());
+                }
+            }
+            for (OperableTrigger trigger : triggers) {
+                if (claimed.contains(trigger.getKey())) {
+                    trigger.setFireInstanceId(getFiredTriggerRecordId());
+                    getDelegate().insertFiredTrigger(conn, trigger, STATE_ACQUIRED, null);
+                    acquired.add(trigger);
+                }
+            }
+            return acquired;
+        }
+
+        List<TriggerKey> triggerKeys = new ArrayList<TriggerKey>(triggers.size());
+        for (OperableTrigger trigger : triggers) {
+            triggerKeys.add(trigger.getKey());
+        }
+        int[] rowsUpdated = getDelegate().updateTriggerStateFromOtherState(conn, triggerKeys, STATE_ACQUIRED, STATE_WAITING);
+        for (int i = 0; i < rowsUpdated.length; i++) {
+            if (rowsUpdated[i] > 0) {
+                OperableTrigger trigger = triggers.get(i);
+                trigger.setFireInstanceId(getFiredTriggerRecordId());
+                acquired.add(trigger);
+            }
+        }
+        if (!acquired.isEmpty()) {
+            getDelegate().insertFiredTriggers(conn, acquired, STATE_ACQUIRED);
+        }
+        return acquired;
+    }
+
     /**
      * <p>
      * Inform the <code>JobStore</code> that the scheduler no longer plans to
@@ -2910,6 +4066,21 @@ public abstract class JobStoreSupport implements JobStore, Constants {
      * </p>
      */
     public void releaseAcquiredTrigger(final OperableTrigger trigger) {
+        TriggerFiredResult firedResult = trigger.getFireInstanceId() != null
+                ? firedOnAcquire.remove(trigger.getFireInstanceId()) : null;
+        if (firedResult != null && firedResult.getTriggerFiredBundle() != null) {
+            // already fired as it was acquired, so the firing is undone
+            final TriggerFiredBundle bundle = firedResult.getTriggerFiredBundle();
+            retryExecuteInNonManagedTXLock(
+                    LOCK_TRIGGER_ACCESS,
+                    new VoidTransactionCallback() {
+                        public void executeVoid(Connection conn) throws JobPersistenceException {
+                            releaseFiredTrigger(conn, trigger, bundle);
+                        }
+                    });
+            return;
+        }
+
         retryExecuteInNonManagedTXLock(
                 LOCK_TRIGGER_ACCESS,
                 new VoidTransactionCallback() {
@@ -2928,12 +4099,58 @@ public abstract class JobStoreSupport implements JobStore, Constants {
             getDelegate().updateTriggerStateFromOtherState(conn,
                     trigger.getKey(), STATE_WAITING, STATE_BLOCKED);
             getDelegate().deleteFiredTrigger(conn, trigger.getFireInstanceId());
+            invalidatePrefetchWindowOnTxCompletion();
         } catch (SQLException e) {
             throw new JobPersistenceException(
                     "Couldn't release acquired trigger: " + e.getMessage(), e);
         }
     }
 
+    /**
+     * <p>
+     * Undo the firing of the given trigger, fired as it was acquired but
+     * released rather than run: it is put back with the fire times it was
+     * acquired with, unless it was changed since, and the triggers its
+     * firing blocked are unblocked.
+     * </p>
+     */
+    protected void releaseFiredTrigger(Connection conn, OperableTrigger trigger,
+                                       TriggerFiredBundle bundle) throws JobPersistenceException {
+        JobDetail job = bundle.getJobDetail();
+        try {
+            // first, so that the trigger does not find its job still executing
+            getDelegate().deleteFiredTrigger(conn, trigger.getFireInstanceId());
+
+            if (job.isConcurrentExectionDisallowed()) {
+                getDelegate().updateTriggerStatesForJobsFromOtherStates(conn,
+                        Collections.singletonList(job.getKey()),
+                        new String[]{STATE_WAITING, STATE_PAUSED},
+                        new String[]{STATE_BLOCKED, STATE_PAUSED_BLOCKED});
+            }
+
+            TriggerStatus status = getDelegate().selectTriggerStatus(conn, trigger.getKey());
+            Date firedNextFireTime = bundle.getTrigger().getNextFireTime();
+            if (status == null || (status.getNextFireTime() == null
+                    ? firedNextFireTime != null : !status.getNextFireTime().equals(firedNextFireTime))) {
+                // removed or rescheduled since it fired
+                invalidatePrefetchWindowOnTxCompletion();
+                return;
+            }
+
+            String state = getDelegate().selectTriggerState(conn, trigger.getKey());
+            if (STATE_PAUSED.equals(state) || STATE_PAUSED_BLOCKED.equals(state)) {
+                storeTrigger(conn, trigger, job, true, STATE_PAUSED, true, false);
+            } else if (STATE_WAITING.equals(state) || STATE_BLOCKED.equals(state) || STATE_COMPLETE.equals(state)) {
+                storeTrigger(conn, trigger, job, true, STATE_WAITING, false, false);
+            } else {
+                invalidatePrefetchWindowOnTxCompletion();
+            }
+        } catch (SQLException e) {
+            throw new JobPersistenceException(
+                    "Couldn't release fired trigger: " + e.getMessage(), e);
+        }
+    }
+
     /**
      * <p>
      * Inform the <code>JobStore</code> that the scheduler is now firing the
@@ -2945,27 +4162,47 @@ public abstract class JobStoreSupport implements JobStore, Constants {
      * if the trigger was not successfully put into the 'executing'
      * state.
      */
+    public List<TriggerFiredResult> triggersFired(List<OperableTrigger> triggers) throws JobPersistenceException {
+        if (firedOnAcquire.isEmpty()) {
+            return fireTriggers(triggers);
+        }
+
+        // those fired as they were acquired are not fired again
+        TriggerFiredResult[] results = new TriggerFiredResult[triggers.size()];
+        List<Integer> unfiredIndexes = new ArrayList<Integer>();
+        List<OperableTrigger> unfiredTriggers = new ArrayList<OperableTrigger>();
+        for (int i = 0; i < triggers.size(); i++) {
+            OperableTrigger trigger = triggers.get(i);
+            if (trigger.getFireInstanceId() != null) {
+                results[i] = firedOnAcquire.get(trigger.getFireInstanceId());
+            }
+            if (results[i] == null) {
+                unfiredIndexes.add(i);
+                unfiredTriggers.add(trigger);
+            }
+        }
+
+        if (!unfiredTriggers.isEmpty()) {
+            // should this fail, the triggers fired on acquisition are released as fired
+            List<TriggerFiredResult> fired = fireTriggers(unfiredTriggers);
+            for (int k = 0; k < unfiredTriggers.size(); k++) {
+                results[unfiredIndexes.get(k)] = fired.get(k);
+            }
+        }
+        for (OperableTrigger trigger : triggers) {
+            if (trigger.getFireInstanceId() != null) {
+                firedOnAcquire.remove(trigger.getFireInstanceId());
+            }
+        }
+        return new ArrayList<TriggerFiredResult>(Arrays.asList(results));
+    }
+
     @SuppressWarnings("unchecked")
-    public List<TriggerFiredResult> triggersFired(final List<OperableTrigger> triggers) throws JobPersistenceException {
+    private List<TriggerFiredResult> fireTriggers(final List<OperableTrigger> triggers) throws JobPersistenceException {
         return executeInNonManagedTXLock(LOCK_TRIGGER_ACCESS,
                 new TransactionCallback<List<TriggerFiredResult>>() {
                     public List<TriggerFiredResult> execute(Connection conn) throws JobPersistenceException {
-                        List<TriggerFiredResult> results = new ArrayList<TriggerFiredResult>();
-
-                        TriggerFiredResult result;
-                        for (OperableTrigger trigger : triggers) {
-                            try {
-                                TriggerFiredBundle bundle = triggerFired(conn, trigger);
-                                result = new TriggerFiredResult(bundle);
-                            } catch (JobPersistenceException jpe) {
-                                result = new TriggerFiredResult(jpe);
-                            } catch (RuntimeException re) {
-                                result = new TriggerFiredResult(re);
-                            }
-                            results.add(result);
-                        }
-
-                        return results;
+                        return triggersFired(conn, triggers);
                     }
                 },
                 new TransactionValidator<List<TriggerFiredResult>>() {
@@ -2996,71 +4233,104 @@ public abstract class JobStoreSupport implements JobStore, Constants {
                 });
     }
 
-    protected TriggerFiredBundle triggerFired(Connection conn,
-                                              OperableTrigger trigger)
+    /**
+     * <p>
+     * Fire the given acquired triggers within the current transaction.
+     * </p>
+     * <p>
+     * The states of the triggers are checked with a single query, jobs and
+     * calendars shared by several of the triggers are retrieved only once,
+     * and the fired-trigger records, the states of the triggers of
+     * non-concurrent jobs and the triggers themselves are updated with
+     * batched statements. Only what firing changed is written for triggers
+     * whose <code>TriggerPersistenceDelegate</code> tells what that is.
+     * </p>
+     *
+     * @return the result of firing each of the triggers, in order, with a
+     * <code>null</code> bundle if the trigger or its job or calendar no longer
+     * exist, or if the trigger was no longer acquired.
+     */
+    protected List<TriggerFiredResult> triggersFired(Connection conn,
+                                                     List<OperableTrigger> triggers)
             throws JobPersistenceException {
-        JobDetail job;
-        Calendar cal = null;
+        TriggerFiredResult[] results = new TriggerFiredResult[triggers.size()];
 
-        // Make sure trigger wasn't deleted, paused, or completed...
-        try { // if trigger was deleted, state will be STATE_DELETED
-            String state = getDelegate().selectTriggerState(conn, trigger.getKey());
-            if (!state.equals(STATE_ACQUIRED)) {
-                return null;
-            }
+        // Make sure the triggers weren't deleted, paused, or completed...
+        Map<String, String> triggerStates;
+        try {
+            triggerStates = getDelegate().selectFiredTriggerStates(conn, getInstanceId());
         } catch (SQLException e) {
-            throw new JobPersistenceException("Couldn't select trigger state: "
+            throw new JobPersistenceException("Couldn't select trigger states: "
                     + e.getMessage(), e);
         }
 
-        try {
-            job = retrieveJob(conn, trigger.getJobKey());
-            if (job == null) {
-                return null;
-            }
-        } catch (JobPersistenceException jpe) {
+        Map<JobKey, JobDetail> jobs = new HashMap<JobKey, JobDetail>();
+        Map<String, Calendar> calendars = new HashMap<String, Calendar>();
+        List<Integer> firedIndexes = new ArrayList<Integer>();
+        List<OperableTrigger> firedTriggers = new ArrayList<OperableTrigger>();
+        List<JobDetail> firedJobs = new ArrayList<JobDetail>();
+        List<Calendar> firedCalendars = new ArrayList<Calendar>();
+        List<JobKey> blockedJobKeys = new ArrayList<JobKey>();
+
+        for (int i = 0; i < triggers.size(); i++) {
+            OperableTrigger trigger = triggers.get(i);
             try {
-                getLog().error("Error retrieving job, setting trigger state to ERROR.", jpe);
-                getDelegate().updateTriggerState(conn, trigger.getKey(),
-                        STATE_ERROR);
-            } catch (SQLException sqle) {
-                getLog().error("Unable to set trigger state to ERROR.", sqle);
+                if (!STATE_ACQUIRED.equals(triggerStates.get(trigger.getFireInstanceId()))) {
+                    results[i] = new TriggerFiredResult((TriggerFiredBundle) null);
+                    continue;
+                }
+
+                JobDetail job = retrieveFiredJob(conn, trigger, jobs);
+                // the job of another of the triggers has just blocked this one
+                if (job == null || (job.isConcurrentExectionDisallowed()
+                        && blockedJobKeys.contains(job.getKey()))) {
+                    results[i] = new TriggerFiredResult((TriggerFiredBundle) null);
+                    continue;
+                }
+
+                Calendar cal = null;
+                String calendarName = trigger.getCalendarName();
+                if (calendarName != null) {
+                    if (!calendars.containsKey(calendarName)) {
+                        calendars.put(calendarName, retrieveCalendar(conn, calendarName));
+                    }
+                    cal = calendars.get(calendarName);
+                    if (cal == null) {
+                        results[i] = new TriggerFiredResult((TriggerFiredBundle) null);
+                        continue;
+                    }
+                }
+
+                if (job.isConcurrentExectionDisallowed()) {
+                    blockedJobKeys.add(job.getKey());
+                }
+                firedIndexes.add(i);
+                firedTriggers.add(trigger);
+                firedJobs.add(job);
+                firedCalendars.add(cal);
+            } catch (JobPersistenceException jpe) {
+                results[i] = new TriggerFiredResult(jpe);
+            } catch (RuntimeException re) {
+                results[i] = new TriggerFiredResult(re);
             }
-            throw jpe;
         }
 
-        if (trigger.getCalendarName() != null) {
-            cal = retrieveCalendar(conn, trigger.getCalendarName());
-            if (cal == null) {
-                return null;
-            }
+        if (firedTriggers.isEmpty()) {
+            return new ArrayList<TriggerFiredResult>(Arrays.asList(results));
         }
 
         try {
-            getDelegate().updateFiredTrigger(conn, trigger, STATE_EXECUTING, job);
+            getDelegate().updateFiredTriggers(conn, firedTriggers, STATE_EXECUTING, firedJobs);
         } catch (SQLException e) {
-            throw new JobPersistenceException("Couldn't insert fired trigger: "
+            throw new JobPersistenceException("Couldn't update fired triggers: "
                     + e.getMessage(), e);
         }
 
-        Date prevFireTime = trigger.getPreviousFireTime();
-
-        // call triggered - to update the trigger's next-fire-time state...
-        trigger.triggered(cal);
-
-        String state = STATE_WAITING;
-        boolean force = true;
-
-        if (job.isConcurrentExectionDisallowed()) {
-            state = STATE_BLOCKED;
-            force = false;
+        if (!blockedJobKeys.isEmpty()) {
             try {
-                getDelegate().updateTriggerStatesForJobFromOtherState(conn, job.getKey(),
-                        STATE_BLOCKED, STATE_WAITING);
-                getDelegate().updateTriggerStatesForJobFromOtherState(conn, job.getKey(),
-                        STATE_BLOCKED, STATE_ACQUIRED);
-                getDelegate().updateTriggerStatesForJobFromOtherState(conn, job.getKey(),
-                        STATE_PAUSED_BLOCKED, STATE_PAUSED);
+                getDelegate().updateTriggerStatesForJobsFromOtherStates(conn, blockedJobKeys,
+                        new String[]{STATE_BLOCKED, STATE_BLOCKED, STATE_PAUSED_BLOCKED},
+                        new String[]{STATE_WAITING, STATE_ACQUIRED, STATE_PAUSED});
             } catch (SQLException e) {
                 throw new JobPersistenceException(
                         "Couldn't update states of blocked triggers: "
@@ -3068,18 +4338,145 @@ public abstract class JobStoreSupport implements JobStore, Constants {
             }
         }
 
-        if (trigger.getNextFireTime() == null) {
-            state = STATE_COMPLETE;
-            force = true;
+        Date[] prevFireTimes = new Date[firedTriggers.size()];
+        List<OperableTrigger> storedTriggers = new ArrayList<OperableTrigger>();
+        List<String> storedStates = new ArrayList<String>();
+        List<JobDetail> storedJobs = new ArrayList<JobDetail>();
+        Boolean allGroupsPaused = null;
+
+        for (int k = 0; k < firedTriggers.size(); k++) {
+            OperableTrigger trigger = firedTriggers.get(k);
+            JobDetail job = firedJobs.get(k);
+
+            prevFireTimes[k] = trigger.getPreviousFireTime();
+
+            // call triggered - to update the trigger's next-fire-time state...
+            trigger.triggered(firedCalendars.get(k));
+
+            String state = STATE_WAITING;
+            boolean force = true;
+
+            if (job.isConcurrentExectionDisallowed()) {
+                state = STATE_BLOCKED;
+                force = false;
+            }
+
+            if (trigger.getNextFireTime() == null) {
+                state = STATE_COMPLETE;
+                force = true;
+            }
+
+            if (!force) {
+                // a blocked trigger keeps its state even if its group is
+                // paused, but storing it may have to record the group as paused
+                if (allGroupsPaused == null) {
+                    try {
+                        allGroupsPaused = getDelegate().isTriggerGroupPaused(conn, ALL_GROUPS_PAUSED);
+                    } catch (SQLException e) {
+                        throw new JobPersistenceException("Couldn't determine if all groups are paused: "
+                                + e.getMessage(), e);
+                    }
+                }
+                if (allGroupsPaused) {
+                    try {
+                        storeTrigger(conn, trigger, job, true, state, false, false);
+                    } catch (JobPersistenceException jpe) {
+                        results[firedIndexes.get(k)] = new TriggerFiredResult(jpe);
+                    }
+                    continue;
+                }
+            }
+
+            storedTriggers.add(trigger);
+            storedStates.add(state);
+            storedJobs.add(job);
+        }
+
+        if (!storedTriggers.isEmpty()) {
+            try {
+                getDelegate().updateTriggersAfterFiring(conn, storedTriggers, storedStates, storedJobs);
+            } catch (SQLException e) {
+                throw new JobPersistenceException("Couldn't store triggers: "
+                        + e.getMessage(), e);
+            } catch (IOException e) {
+                throw new JobPersistenceException("Couldn't serialize trigger job data: "
+                        + e.getMessage(), e);
+            }
+        }
+
+        if (triggerPrefetchWindow != null) {
+            for (int k = 0; k < storedTriggers.size(); k++) {
+                if (STATE_WAITING.equals(storedStates.get(k))) {
+                    triggerPrefetchWindow.add(upcomingTriggerRecord(storedTriggers.get(k)));
+                }
+            }
         }
 
-        storeTrigger(conn, trigger, job, true, state, force, false);
+        for (int k = 0; k < firedTriggers.size(); k++) {
+            int i = firedIndexes.get(k);
+            if (results[i] != null) {
+                continue;
+            }
+            OperableTrigger trigger = firedTriggers.get(k);
+            JobDetail job = firedJobs.get(k);
+
+            job.getJobDataMap().clearDirtyFlag();
 
-        job.getJobDataMap().clearDirtyFlag();
+            results[i] = new TriggerFiredResult(new TriggerFiredBundle(job, trigger, firedCalendars.get(k),
+                    trigger.getKey().getGroup().equals(Scheduler.DEFAULT_RECOVERY_GROUP), new Date(),
+                    trigger.getPreviousFireTime(), prevFireTimes[k], trigger.getNextFireTime()));
+        }
 
-        return new TriggerFiredBundle(job, trigger, cal, trigger.getKey().getGroup()
-                .equals(Scheduler.DEFAULT_RECOVERY_GROUP), new Date(), trigger
-                .getPreviousFireTime(), prevFireTime, trigger.getNextFireTime());
+        return new ArrayList<TriggerFiredResult>(Arrays.asList(results));
+    }
+
+    /**
+     * Retrieve the job of the given fired trigger, retrieving each job only
+     * once per batch of triggers: every firing gets its own copy of the job,
+     * as it may change its job data.
+     * <p>
+     * The job data of the trigger and of the job are decoded here, rather
+     * than when the job first reads them, so that job data that cannot be
+     * decoded puts the trigger in error instead of failing the job's run.
+     * </p>
+     */
+    private JobDetail retrieveFiredJob(Connection conn, OperableTrigger trigger,
+                                       Map<JobKey, JobDetail> jobs) throws JobPersistenceException {
+        try {
+            decodeJobData(trigger.getJobDataMap(), "trigger " + trigger.getKey());
+            if (jobs.containsKey(trigger.getJobKey())) {
+                JobDetail job = jobs.get(trigger.getJobKey());
+                return (job == null) ? null : (JobDetail) job.clone();
+            }
+
+            JobDetail job = retrieveJob(conn, trigger.getJobKey());
+            if (job != null) {
+                decodeJobData(job.getJobDataMap(), "job " + job.getKey());
+            }
+            jobs.put(trigger.getJobKey(), job);
+            return job;
+        } catch (JobPersistenceException jpe) {
+            try {
+                getLog().error("Error retrieving job, setting trigger state to ERROR.", jpe);
+                getDelegate().updateTriggerState(conn, trigger.getKey(),
+                        STATE_ERROR);
+            } catch (SQLException sqle) {
+                getLog().error("Unable to set trigger state to ERROR.", sqle);
+            }
+            throw jpe;
+        }
+    }
+
+    private static void decodeJobData(JobDataMap jobDataMap, String owner) throws JobPersistenceException {
+        try {
+            if (jobDataMap != null) {
+                // decoded on first access
+                jobDataMap.isEmpty();
+            }
+        } catch (IllegalStateException e) {
+            throw new JobPersistenceException("Couldn't decode job data of " + owner + ": "
+                    + e.getMessage(), e.getCause());
+        }
     }
 
     /**
@@ -3093,6 +4490,11 @@ public abstract class JobStoreSupport implements JobStore, Constants {
      */
     public void triggeredJobComplete(final OperableTrigger trigger,
                                      final JobDetail jobDetail, final CompletedExecutionInstruction triggerInstCode) {
+        CompletionWriter writer = completionWriter;
+        if (writer != null && writer.enqueue(new CompletedExecution(trigger, jobDetail, triggerInstCode))) {
+            return;
+        }
+
         retryExecuteInNonManagedTXLock(
                 LOCK_TRIGGER_ACCESS,
                 new VoidTransactionCallback() {
@@ -3105,78 +4507,133 @@ public abstract class JobStoreSupport implements JobStore, Constants {
     protected void triggeredJobComplete(Connection conn,
                                         OperableTrigger trigger, JobDetail jobDetail,
                                         CompletedExecutionInstruction triggerInstCode) throws JobPersistenceException {
+        triggeredJobsComplete(conn, Collections.singletonList(
+                new CompletedExecution(trigger, jobDetail, triggerInstCode)));
+    }
+
+    /**
+     * <p>
+     * Record the completion of the given executions within the current
+     * transaction: the triggers of their non-concurrent jobs are unblocked,
+     * and their fired-trigger records deleted, with batched statements.
+     * </p>
+     */
+    protected void triggeredJobsComplete(Connection conn,
+                                         List<CompletedExecution> completions) throws JobPersistenceException {
+        Set<JobKey> unblockedJobKeys = new LinkedHashSet<JobKey>();
+        List<String> entryIds = new ArrayList<String>(completions.size());
         try {
-            if (triggerInstCode == CompletedExecutionInstruction.DELETE_TRIGGER) {
-                if (trigger.getNextFireTime() == null) {
-                    // double check for possible reschedule within job 
-                    // execution, which would cancel the need to delete...
-                    TriggerStatus stat = getDelegate().selectTriggerStatus(
-                            conn, trigger.getKey());
-                    if (stat != null && stat.getNextFireTime() == null) {
+            for (CompletedExecution completion : completions) {
+                OperableTrigger trigger = completion.getTrigger();
+                JobDetail jobDetail = completion.getJobDetail();
+                CompletedExecutionInstruction triggerInstCode = completion.getInstruction();
+
+                if (triggerInstCode == CompletedExecutionInstruction.DELETE_TRIGGER) {
+                    if (trigger.getNextFireTime() == null) {
+                        // double check for possible reschedule within job 
+                        // execution, which would cancel the need to delete...
+                        TriggerStatus stat = getDelegate().selectTriggerStatus(
+                                conn, trigger.getKey());
+                        if (stat != null && stat.getNextFireTime() == null) {
+                            removeTrigger(conn, trigger.getKey());
+                        }
+                    } else {
                         removeTrigger(conn, trigger.getKey());
+                        signalSchedulingChangeOnTxCompletion(0L);
                     }
-                } else {
-                    removeTrigger(conn, trigger.getKey());
+                } else if (triggerInstCode == CompletedExecutionInstruction.SET_TRIGGER_COMPLETE) {
+                    getDelegate().updateTriggerState(conn, trigger.getKey(),
+                            STATE_COMPLETE);
+                    signalSchedulingChangeOnTxCompletion(0L);
+                } else if (triggerInstCode == CompletedExecutionInstruction.SET_TRIGGER_ERROR) {
+                    getLog().info("Trigger " + trigger.getKey() + " set to ERROR state.");
+                    getDelegate().updateTriggerState(conn, trigger.getKey(),
+                            STATE_ERROR);
+                    signalSchedulingChangeOnTxCompletion(0L);
+                } else if (triggerInstCode == CompletedExecutionInstruction.SET_ALL_JOB_TRIGGERS_COMPLETE) {
+                    getDelegate().updateTriggerStatesForJob(conn,
+                            trigger.getJobKey(), STATE_COMPLETE);
+                    signalSchedulingChangeOnTxCompletion(0L);
+                } else if (triggerInstCode == CompletedExecutionInstruction.SET_ALL_JOB_TRIGGERS_ERROR) {
+                    getLog().info("All triggers of Job " +
+                            trigger.getKey() + " set to ERROR state.");
+                    getDelegate().updateTriggerStatesForJob(conn,
+                            trigger.getJobKey(), STATE_ERROR);
                     signalSchedulingChangeOnTxCompletion(0L);
                 }
-            } else if (triggerInstCode == CompletedExecutionInstruction.SET_TRIGGER_COMPLETE) {
-                getDelegate().updateTriggerState(conn, trigger.getKey(),
-                        STATE_COMPLETE);
-                signalSchedulingChangeOnTxCompletion(0L);
-            } else if (triggerInstCode == CompletedExecutionInstruction.SET_TRIGGER_ERROR) {
-                getLog().info("Trigger " + trigger.getKey() + " set to ERROR state.");
-                getDelegate().updateTriggerState(conn, trigger.getKey(),
-                        STATE_ERROR);
-                signalSchedulingChangeOnTxCompletion(0L);
-            } else if (triggerInstCode == CompletedExecutionInstruction.SET_ALL_JOB_TRIGGERS_COMPLETE) {
-                getDelegate().updateTriggerStatesForJob(conn,
-                        trigger.getJobKey(), STATE_COMPLETE);
-                signalSchedulingChangeOnTxCompletion(0L);
-            } else if (triggerInstCode == CompletedExecutionInstruction.SET_ALL_JOB_TRIGGERS_ERROR) {
-                getLog().info("All triggers of Job " +
-                        trigger.getKey() + " set to ERROR state.");
-                getDelegate().updateTriggerStatesForJob(conn,
-                        trigger.getJobKey(), STATE_ERROR);
-                signalSchedulingChangeOnTxCompletion(0L);
-            }
 
-            if (jobDetail.isConcurrentExectionDisallowed()) {
-                getDelegate().updateTriggerStatesForJobFromOtherState(conn,
-                        jobDetail.getKey(), STATE_WAITING,
-                        STATE_BLOCKED);
+                if (jobDetail.isConcurrentExectionDisallowed()) {
+                    unblockedJobKeys.add(jobDetail.getKey());
+                }
+                if (jobDetail.isPersistJobDataAfterExecution()) {
+                    try {
+                        if (jobDetail.getJobDataMap().isDirty()) {
+                            getDelegate().updateJobData(conn, jobDetail);
+                            updateJobVersion(conn, jobDetail.getKey());
+                        }
+                    } catch (IOException e) {
+                        throw new JobPersistenceException(
+                                "Couldn't serialize job data: " + e.getMessage(), e);
+                    } catch (SQLException e) {
+                        throw new JobPersistenceException(
+                                "Couldn't update job data: " + e.getMessage(), e);
+                    }
+                }
 
-                getDelegate().updateTriggerStatesForJobFromOtherState(conn,
-                        jobDetail.getKey(), STATE_PAUSED,
-                        STATE_PAUSED_BLOCKED);
+                entryIds.add(trigger.getFireInstanceId());
+            }
+
+            if (!unblockedJobKeys.isEmpty()) {
+                getDelegate().updateTriggerStatesForJobsFromOtherStates(conn,
+                        new ArrayList<JobKey>(unblockedJobKeys),
+                        new String[]{STATE_WAITING, STATE_PAUSED},
+                        new String[]{STATE_BLOCKED, STATE_PAUSED_BLOCKED});
 
+                invalidatePrefetchWindowOnTxCompletion();
                 signalSchedulingChangeOnTxCompletion(0L);
             }
-            if (jobDetail.isPersistJobDataAfterExecution()) {
-                try {
-                    if (jobDetail.getJobDataMap().isDirty()) {
-                        getDelegate().updateJobData(conn, jobDetail);
-                    }
-                } catch (IOException e) {
-                    throw new JobPersistenceException(
-                            "Couldn't serialize job data: " + e.getMessage(), e);
-                } catch (SQLException e) {
-                    throw new JobPersistenceException(
-                            "Couldn't update job data: " + e.getMessage(), e);
-                }
-            }
         } catch (SQLException e) {
             throw new JobPersistenceException(
                     "Couldn't update trigger state(s): " + e.getMessage(), e);
         }
 
         try {
-            getDelegate().deleteFiredTrigger(conn, trigger.getFireInstanceId());
+            getDelegate().deleteFiredTriggers(conn, entryIds);
         } catch (SQLException e) {
-            throw new JobPersistenceException("Couldn't delete fired trigger: "
+            throw new JobPersistenceException("Couldn't delete fired triggers: "
                     + e.getMessage(), e);
         }
     }
 
+    /**
+     * The completion of a job's execution, as recorded by
+     * <code>{@link #triggeredJobsComplete(Connection, List)}</code>.
+     */
+    protected static class CompletedExecution {
+        private final OperableTrigger trigger;
+        private final JobDetail jobDetail;
+        private final CompletedExecutionInstruction instruction;
+
+        public CompletedExecution(OperableTrigger trigger, JobDetail jobDetail,
+                                  CompletedExecutionInstruction instruction) {
+            this.trigger = trigger;
+            this.jobDetail = jobDetail;
+            this.instruction = instruction;
+        }
+
+        public OperableTrigger getTrigger() {
+            return trigger;
+        }
+
+        public JobDetail getJobDetail() {
+            return jobDetail;
+        }
+
+        public CompletedExecutionInstruction getInstruction() {
+            return instruction;
+        }
+    }
+
     /**
      * <P>
      * Get the driver delegate for DB operations.
@@ -3222,6 +4679,10 @@ public abstract class JobStoreSupport implements JobStore, Constants {
     //---------------------------------------------------------------------------
 
     protected RecoverMisfiredJobsResult doRecoverMisfires() throws JobPersistenceException {
+        if (misfireBatchSize > 0) {
+            return doRecoverMisfiresInBatch();
+        }
+
         boolean transOwner = false;
         Connection conn = getNonManagedTXConnection();
         try {
@@ -3284,9 +4745,22 @@ public abstract class JobStoreSupport implements JobStore, Constants {
     }
 
     protected void signalSchedulingChangeImmediately(long candidateNewNextFireTime) {
+        if (triggerPrefetchWindow != null) {
+            triggerPrefetchWindow.invalidate();
+        }
         schedSignaler.signalSchedulingChange(candidateNewNextFireTime);
     }
 
+    /**
+     * Empty the prefetch window once the current transaction is committed,
+     * as it may have made triggers wait that the window misses.
+     */
+    protected void invalidatePrefetchWindowOnTxCompletion() {
+        if (triggerPrefetchWindow != null) {
+            prefetchChangeForTxCompletion.set(Boolean.TRUE);
+        }
+    }
+
     //---------------------------------------------------------------------------
     // Cluster management methods
     //---------------------------------------------------------------------------
@@ -3320,6 +4794,10 @@ public abstract class JobStoreSupport implements JobStore, Constants {
                 // The first time through, we also need to make sure we update/create our state record
                 failedRecords = (firstCheckIn) ? clusterCheckIn(conn) : findFailedInstances(conn);
 
+                if (firstCheckIn && isPartitioned()) {
+                    assignPartitions(conn);
+                }
+
                 if (failedRecords.size() > 0) {
                     getLockHandler().obtainLock(conn, LOCK_TRIGGER_ACCESS);
                     //getLockHandler().obtainLock(conn, LOCK_JOB_ACCESS);
@@ -3330,6 +4808,10 @@ public abstract class JobStoreSupport implements JobStore, Constants {
                 }
             }
 
+            if (isPartitioned()) {
+                leasePartitions(conn);
+            }
+
             commitConnection(conn);
         } catch (JobPersistenceException e) {
             rollbackConnection(conn);
@@ -3438,6 +4920,94 @@ public abstract class JobStoreSupport implements JobStore, Constants {
         return orphanedInstances;
     }
 
+    /**
+     * Give their partition to the triggers that have none, or one beyond
+     * the number of partitions.
+     */
+    protected void assignPartitions(Connection conn) throws JobPersistenceException {
+        try {
+            List<TriggerKey> triggerKeys = getDelegate().selectTriggersOutsidePartitions(conn, getPartitionCount());
+            for (TriggerKey triggerKey : triggerKeys) {
+                getDelegate().updateTriggerPartition(conn, triggerKey, getPartition(triggerKey));
+            }
+
+            logWarnIfNonZero(triggerKeys.size(),
+                    "ClusterManager: Assigned a partition to " + triggerKeys.size() + " trigger(s).");
+        } catch (Exception e) {
+            throw new JobPersistenceException("Failure assigning trigger partitions: "
+                    + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Lease this instance its share of the partitions, among the instances
+     * that have not failed, and record it in its scheduler state. Each
+     * instance leases a contiguous range of the partitions, in the order of
+     * the instance ids, so that the instances lease distinct ranges once
+     * they have all checked in with the same view of the cluster. Until
+     * then, ranges may overlap, which only makes their instances wait for
+     * each other's partition locks.
+     */
+    protected void leasePartitions(Connection conn) throws JobPersistenceException {
+        try {
+            long timeNow = System.currentTimeMillis();
+            List<String> instanceIds = new ArrayList<String>();
+            instanceIds.add(getInstanceId());
+            for (SchedulerStateRecord rec : getDelegate().selectSchedulerStateRecords(conn, null)) {
+                if (!rec.getSchedulerInstanceId().equals(getInstanceId()) && calcFailedIfAfter(rec) >= timeNow) {
+                    instanceIds.add(rec.getSchedulerInstanceId());
+                }
+            }
+            Collections.sort(instanceIds);
+
+            int index = instanceIds.indexOf(getInstanceId());
+            int firstPartition = index * getPartitionCount() / instanceIds.size();
+            int lastPartition = (index + 1) * getPartitionCount() / instanceIds.size() - 1;
+            getDelegate().updateSchedulerStatePartitions(conn, getInstanceId(), firstPartition, lastPartition);
+
+            int[] previous = leasedPartitions;
+            if (previous == null || previous[0] != firstPartition || previous[1] != lastPartition) {
+                getLog().info("ClusterManager: Leased partitions " + firstPartition + " to " + lastPartition
+                        + " of " + getPartitionCount() + ", shared among " + instanceIds.size() + " instance(s).");
+            }
+            leasedPartitions = new int[]{firstPartition, lastPartition};
+        } catch (Exception e) {
+            throw new JobPersistenceException("Failure leasing trigger partitions: "
+                    + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Get the first and last partitions leased by this instance, or null if
+     * the triggers are not partitioned or it has not checked in yet.
+     */
+    protected int[] getLeasedPartitions() {
+        int[] partitions = leasedPartitions;
+        return partitions == null ? null : partitions.clone();
+    }
+
+    /**
+     * Get the number of job data and blob trigger payloads written
+     * compressed, when the driver delegate is given a
+     * <code>compressionThreshold</code> in its init string.
+     */
+    public long getCompressedBlobCount() {
+        DriverDelegate driverDelegate = delegate;
+        return (driverDelegate instanceof StdJDBCDelegate)
+                ? ((StdJDBCDelegate) driverDelegate).getCompressedBlobCount() : 0L;
+    }
+
+    /**
+     * Get the number of bytes by which compression has reduced the job data
+     * and blob trigger payloads written, when the driver delegate is given a
+     * <code>compressionThreshold</code> in its init string.
+     */
+    public long getBytesSavedByCompression() {
+        DriverDelegate driverDelegate = delegate;
+        return (driverDelegate instanceof StdJDBCDelegate)
+                ? ((StdJDBCDelegate) driverDelegate).getBytesSavedByCompression() : 0L;
+    }
+
     protected long calcFailedIfAfter(SchedulerStateRecord rec) {
         return rec.getCheckinTimestamp() +
                 Math.max(rec.getCheckinInterval(),
@@ -3655,6 +5225,9 @@ public abstract class JobStoreSupport implements JobStore, Constants {
                     AttributeRestoringConnectionInvocationHandler connHandler =
                             (AttributeRestoringConnectionInvocationHandler) invocationHandler;
 
+                    if (connHandler instanceof StatementCachingConnectionInvocationHandler) {
+                        ((StatementCachingConnectionInvocationHandler) connHandler).closeStatements();
+                    }
                     connHandler.restoreOriginalAtributes();
                     closeConnection(connHandler.getWrappedConnection());
                     return;
@@ -3731,6 +5304,11 @@ public abstract class JobStoreSupport implements JobStore, Constants {
                         "Couldn't commit jdbc connection. " + e.getMessage(), e);
             }
         }
+
+        if (prefetchChangeForTxCompletion.get() != null) {
+            prefetchChangeForTxCompletion.remove();
+            triggerPrefetchWindow.invalidate();
+        }
     }
 
     /**
@@ -3781,6 +5359,40 @@ public abstract class JobStoreSupport implements JobStore, Constants {
         return executeInLock(null, txCallback);
     }
 
+    /**
+     * Execute the given read-only query on the read-only data source, if it
+     * is routed there, or else the way <code>executeWithoutLock()</code>
+     * does. It is executed on the primary data source if it fails on the
+     * read-only one, or if its result there equals the given missing value.
+     *
+     * @param queryName the name of the method of the query
+     * @param missing   the result that may only be out of date on the
+     *                  read-only data source, or null
+     * @see #setReadOnlyDataSource(String)
+     */
+    protected <T> T executeReadOnly(String queryName, T missing,
+                                    TransactionCallback<T> txCallback) throws JobPersistenceException {
+        if (readOnlyQueryNames.contains(queryName)) {
+            Connection conn = null;
+            try {
+                conn = getReadOnlyConnection();
+                T result = txCallback.execute(conn);
+                if (missing == null || !missing.equals(result)) {
+                    return result;
+                }
+            } catch (JobPersistenceException e) {
+                getLog().warn("Couldn't execute " + queryName + " on read-only data source '"
+                        + readOnlyDsName + "', executing it on '" + getDataSource() + "': " + e.getMessage());
+            } catch (RuntimeException e) {
+                getLog().warn("Couldn't execute " + queryName + " on read-only data source '"
+                        + readOnlyDsName + "', executing it on '" + getDataSource() + "': " + e.getMessage(), e);
+            } finally {
+                cleanupConnection(conn);
+            }
+        }
+        return executeWithoutLock(txCallback);
+    }
+
     /**
      * Execute the given callback having acquired the given lock.
      * Depending on the JobStore, the surrounding transaction may be
@@ -3914,6 +5526,10 @@ public abstract class JobStoreSupport implements JobStore, Constants {
             try {
 
                 res = doCheckin();
+                if (triggerPrefetchWindow != null) {
+                    // to see the triggers the other instances changed
+                    triggerPrefetchWindow.invalidate();
+                }
 
                 numFails = 0;
                 getLog().debug("ClusterManager: Check-in complete.");
@@ -3964,6 +5580,145 @@ public abstract class JobStoreSupport implements JobStore, Constants {
     //
     /////////////////////////////////////////////////////////////////////////////
 
+    /**
+     * Writes the completions of jobs queued by
+     * <code>{@link #triggeredJobComplete(OperableTrigger, JobDetail, CompletedExecutionInstruction)}</code>,
+     * in groups. A group that keeps failing is written one completion at a
+     * time, and the completions that still fail are retried on their own,
+     * so that they hold back no other.
+     */
+    class CompletionWriter extends Thread {
+
+        // times a group is written before writing its completions one at a time
+        private static final int MAX_GROUP_WRITE_ATTEMPTS = 3;
+
+        private final BlockingQueue<CompletedExecution> completions = new LinkedBlockingQueue<CompletedExecution>();
+
+        private volatile boolean shutdown = false;
+
+        private int numFails = 0;
+
+        CompletionWriter() {
+            this.setName("QuartzScheduler_" + instanceName + "-" + instanceId + "_CompletionWriter");
+            this.setDaemon(getMakeThreadsDaemons());
+        }
+
+        public void initialize() {
+            ThreadExecutor executor = getThreadExecutor();
+            executor.execute(CompletionWriter.this);
+        }
+
+        /**
+         * @return false if the writer is shut down, and the completion has
+         * to be written by the caller
+         */
+        synchronized boolean enqueue(CompletedExecution completion) {
+            if (shutdown) {
+                return false;
+            }
+            completions.add(completion);
+            return true;
+        }
+
+        public synchronized void shutdown() {
+            shutdown = true;
+            this.interrupt();
+        }
+
+        private void write(final List<CompletedExecution> group) throws JobPersistenceException {
+            executeInNonManagedTXLock(LOCK_TRIGGER_ACCESS, new VoidTransactionCallback() {
+                public void executeVoid(Connection conn) throws JobPersistenceException {
+                    triggeredJobsComplete(conn, group);
+                }
+            }, null);
+        }
+
+        /**
+         * @return whether or not the group was written
+         */
+        private boolean tryWrite(List<CompletedExecution> group) {
+            try {
+                write(group);
+                numFails = 0;
+                return true;
+            } catch (JobPersistenceException e) {
+                if (numFails % 4 == 0) {
+                    schedSignaler.notifySchedulerListenersError(
+                            "An error occurred while writing completed jobs", e);
+                }
+                numFails++;
+                return false;
+            }
+        }
+
+        @Override
+        public void run() {
+            // completions that failed to be written, retried one at a time
+            List<CompletedExecution> failing = new ArrayList<CompletedExecution>();
+            while (true) {
+                List<CompletedExecution> group = new ArrayList<CompletedExecution>();
+                if (!shutdown) {
+                    try {
+                        CompletedExecution first = failing.isEmpty() ? completions.take()
+                                : completions.poll(getDbRetryInterval(), TimeUnit.MILLISECONDS);
+                        if (first != null) {
+                            group.add(first);
+                            // let the completions of other jobs join the transaction
+                            Thread.sleep(getCompletionWriteBehindInterval());
+                        }
+                    } catch (InterruptedException ignore) {
+                        // shutting down
+                    }
+                }
+                completions.drainTo(group);
+
+                if (shutdown) {
+                    // no more completions can be queued: write those left once
+                    group.addAll(failing);
+                    if (!group.isEmpty()) {
+                        try {
+                            write(group);
+                        } catch (JobPersistenceException e) {
+                            getLog().error("CompletionWriter: Couldn't write " + group.size()
+                                    + " completed job(s), leaving them to recovery: " + e.getMessage(), e);
+                        }
+                    }
+                    break;
+                }
+
+                List<CompletedExecution> retried = failing;
+                failing = new ArrayList<CompletedExecution>();
+                for (CompletedExecution completion : retried) {
+                    if (shutdown || !tryWrite(Collections.singletonList(completion))) {
+                        failing.add(completion);
+                    }
+                }
+
+                if (group.isEmpty()) {
+                    continue;
+                }
+                boolean written = false;
+                for (int attempt = 0; !written && !shutdown && attempt < MAX_GROUP_WRITE_ATTEMPTS; attempt++) {
+                    if (attempt > 0) {
+                        try {
+                            Thread.sleep(getDbRetryInterval());
+                        } catch (InterruptedException ignore) {
+                            // shutting down
+                        }
+                    }
+                    written = tryWrite(group);
+                }
+                if (!written) {
+                    for (CompletedExecution completion : group) {
+                        if (shutdown || !tryWrite(Collections.singletonList(completion))) {
+                            failing.add(completion);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
     class MisfireHandler extends Thread {
 
         private volatile boolean shutdown = false;
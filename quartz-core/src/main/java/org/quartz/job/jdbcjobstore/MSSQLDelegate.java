@@ -17,6 +17,7 @@
 
 package org.quartz.job.jdbcjobstore;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectInputStream;
@@ -60,7 +61,7 @@ public class MSSQLDelegate extends StdJDBCDelegate {
 
         Object obj = null;
 
-        ObjectInputStream in = new ObjectInputStream(binaryInput);
+        ObjectInputStream in = new ObjectInputStream(getDecompressingStream(binaryInput));
         try {
             obj = in.readObject();
         } finally {
@@ -70,6 +71,27 @@ public class MSSQLDelegate extends StdJDBCDelegate {
         return obj;
     }
 
+    @Override
+    protected byte[] getBytesFromBlob(ResultSet rs, String colName)
+            throws IOException, SQLException {
+        InputStream binaryInput = rs.getBinaryStream(colName);
+        if (binaryInput == null) {
+            return null;
+        }
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try {
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = binaryInput.read(buffer)) != -1) {
+                baos.write(buffer, 0, read);
+            }
+        } finally {
+            binaryInput.close();
+        }
+        return baos.toByteArray();
+    }
+
     @Override
     protected Object getJobDataFromBlob(ResultSet rs, String colName)
             throws ClassNotFoundException, IOException, SQLException {
@@ -20,6 +20,7 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.List;
 
 import org.quartz.job.JobDetail;
 import org.quartz.scheduler.ScheduleBuilder;
@@ -36,7 +37,7 @@ import org.quartz.spi.OperableTrigger;
  * @author jhouse
  * @see CalendarIntervalTriggerPersistenceDelegate for an example extension
  */
-public abstract class SimplePropertiesTriggerPersistenceDelegateSupport implements TriggerPersistenceDelegate, StdJDBCConstants {
+public abstract class SimplePropertiesTriggerPersistenceDelegateSupport implements TriggerFiringPersistenceDelegate, StdJDBCConstants {
 
     protected static final String TABLE_SIMPLE_PROPERTIES_TRIGGERS = "SIMPROP_TRIGGERS";
 
@@ -88,20 +89,55 @@ public abstract class SimplePropertiesTriggerPersistenceDelegateSupport implemen
 
     protected String schedNameLiteral;
 
+    // the statements, with the table prefix and scheduler name substituted
+    private String expandedDeleteSQL;
+    private String expandedInsertSQL;
+    private String expandedSelectSQL;
+    private String expandedUpdateSQL;
+    private String expandedUpdateFiredSQL;
+
     public void initialize(String theTablePrefix, String schedName) {
         this.tablePrefix = theTablePrefix;
         this.schedNameLiteral = "'" + schedName + "'";
+
+        expandedDeleteSQL = Util.rtp(DELETE_SIMPLE_PROPS_TRIGGER, tablePrefix, schedNameLiteral);
+        expandedInsertSQL = Util.rtp(INSERT_SIMPLE_PROPS_TRIGGER, tablePrefix, schedNameLiteral);
+        expandedSelectSQL = Util.rtp(SELECT_SIMPLE_PROPS_TRIGGER, tablePrefix, schedNameLiteral);
+        expandedUpdateSQL = Util.rtp(UPDATE_SIMPLE_PROPS_TRIGGER, tablePrefix, schedNameLiteral);
+
+        String[] firedColumns = getFiredTriggerPropertyColumns();
+        if (firedColumns != null && firedColumns.length > 0) {
+            StringBuilder sql = new StringBuilder("UPDATE " + TABLE_PREFIX_SUBST + TABLE_SIMPLE_PROPERTIES_TRIGGERS + " SET ");
+            for (int i = 0; i < firedColumns.length; i++) {
+                sql.append(i == 0 ? "" : ", ").append(firedColumns[i]).append(" = ?");
+            }
+            sql.append(" WHERE " + COL_SCHEDULER_NAME + " = " + SCHED_NAME_SUBST
+                    + " AND " + COL_TRIGGER_NAME + " = ? AND " + COL_TRIGGER_GROUP + " = ?");
+            expandedUpdateFiredSQL = Util.rtp(sql.toString(), tablePrefix, schedNameLiteral);
+        }
     }
 
     protected abstract SimplePropertiesTriggerProperties getTriggerProperties(OperableTrigger trigger);
 
     protected abstract TriggerPropertyBundle getTriggerPropertyBundle(SimplePropertiesTriggerProperties properties);
 
+    /**
+     * Get the columns holding the properties that change when a trigger
+     * fires - e.g. the number of times it was triggered - so that only those
+     * are updated then.
+     *
+     * @return the columns, or <code>null</code> to update all of the
+     * properties when a trigger fires
+     */
+    protected String[] getFiredTriggerPropertyColumns() {
+        return null;
+    }
+
     public int deleteExtendedTriggerProperties(Connection conn, TriggerKey triggerKey) throws SQLException {
         PreparedStatement ps = null;
 
         try {
-            ps = conn.prepareStatement(Util.rtp(DELETE_SIMPLE_PROPS_TRIGGER, tablePrefix, schedNameLiteral));
+            ps = conn.prepareStatement(expandedDeleteSQL);
             ps.setString(1, triggerKey.getName());
             ps.setString(2, triggerKey.getGroup());
 
@@ -118,7 +154,7 @@ public abstract class SimplePropertiesTriggerPersistenceDelegateSupport implemen
         PreparedStatement ps = null;
 
         try {
-            ps = conn.prepareStatement(Util.rtp(INSERT_SIMPLE_PROPS_TRIGGER, tablePrefix, schedNameLiteral));
+            ps = conn.prepareStatement(expandedInsertSQL);
             ps.setString(1, trigger.getKey().getName());
             ps.setString(2, trigger.getKey().getGroup());
             ps.setString(3, properties.getString1());
@@ -145,27 +181,13 @@ public abstract class SimplePropertiesTriggerPersistenceDelegateSupport implemen
         ResultSet rs = null;
 
         try {
-            ps = conn.prepareStatement(Util.rtp(SELECT_SIMPLE_PROPS_TRIGGER, tablePrefix, schedNameLiteral));
+            ps = conn.prepareStatement(expandedSelectSQL);
             ps.setString(1, triggerKey.getName());
             ps.setString(2, triggerKey.getGroup());
             rs = ps.executeQuery();
 
             if (rs.next()) {
-                SimplePropertiesTriggerProperties properties = new SimplePropertiesTriggerProperties();
-
-                properties.setString1(rs.getString(COL_STR_PROP_1));
-                properties.setString2(rs.getString(COL_STR_PROP_2));
-                properties.setString3(rs.getString(COL_STR_PROP_3));
-                properties.setInt1(rs.getInt(COL_INT_PROP_1));
-                properties.setInt2(rs.getInt(COL_INT_PROP_2));
-                properties.setLong1(rs.getInt(COL_LONG_PROP_1));
-                properties.setLong2(rs.getInt(COL_LONG_PROP_2));
-                properties.setDecimal1(rs.getBigDecimal(COL_DEC_PROP_1));
-                properties.setDecimal2(rs.getBigDecimal(COL_DEC_PROP_2));
-                properties.setBoolean1(rs.getBoolean(COL_BOOL_PROP_1));
-                properties.setBoolean2(rs.getBoolean(COL_BOOL_PROP_2));
-
-                return getTriggerPropertyBundle(properties);
+                return readExtendedTriggerProperties(rs);
             }
 
             throw new IllegalStateException("No record found for selection of Trigger with key: '" + triggerKey + "' and statement: " + Util.rtp(SELECT_SIMPLE_TRIGGER, tablePrefix, schedNameLiteral));
@@ -175,27 +197,35 @@ public abstract class SimplePropertiesTriggerPersistenceDelegateSupport implemen
         }
     }
 
-    public int updateExtendedTriggerProperties(Connection conn, OperableTrigger trigger, String state, JobDetail jobDetail) throws SQLException, IOException {
+    /**
+     * Read the properties of the trigger at the current row of a result set
+     * that has the columns of the simple properties triggers table.
+     */
+    protected TriggerPropertyBundle readExtendedTriggerProperties(ResultSet rs) throws SQLException {
+        SimplePropertiesTriggerProperties properties = new SimplePropertiesTriggerProperties();
+
+        properties.setString1(rs.getString(COL_STR_PROP_1));
+        properties.setString2(rs.getString(COL_STR_PROP_2));
+        properties.setString3(rs.getString(COL_STR_PROP_3));
+        properties.setInt1(rs.getInt(COL_INT_PROP_1));
+        properties.setInt2(rs.getInt(COL_INT_PROP_2));
+        properties.setLong1(rs.getInt(COL_LONG_PROP_1));
+        properties.setLong2(rs.getInt(COL_LONG_PROP_2));
+        properties.setDecimal1(rs.getBigDecimal(COL_DEC_PROP_1));
+        properties.setDecimal2(rs.getBigDecimal(COL_DEC_PROP_2));
+        properties.setBoolean1(rs.getBoolean(COL_BOOL_PROP_1));
+        properties.setBoolean2(rs.getBoolean(COL_BOOL_PROP_2));
+
+        return getTriggerPropertyBundle(properties);
+    }
 
-        SimplePropertiesTriggerProperties properties = getTriggerProperties(trigger);
+    public int updateExtendedTriggerProperties(Connection conn, OperableTrigger trigger, String state, JobDetail jobDetail) throws SQLException, IOException {
 
         PreparedStatement ps = null;
 
         try {
-            ps = conn.prepareStatement(Util.rtp(UPDATE_SIMPLE_PROPS_TRIGGER, tablePrefix, schedNameLiteral));
-            ps.setString(1, properties.getString1());
-            ps.setString(2, properties.getString2());
-            ps.setString(3, properties.getString3());
-            ps.setInt(4, properties.getInt1());
-            ps.setInt(5, properties.getInt2());
-            ps.setLong(6, properties.getLong1());
-            ps.setLong(7, properties.getLong2());
-            ps.setBigDecimal(8, properties.getDecimal1());
-            ps.setBigDecimal(9, properties.getDecimal2());
-            ps.setBoolean(10, properties.isBoolean1());
-            ps.setBoolean(11, properties.isBoolean2());
-            ps.setString(12, trigger.getKey().getName());
-            ps.setString(13, trigger.getKey().getGroup());
+            ps = conn.prepareStatement(expandedUpdateSQL);
+            setUpdateParameters(ps, trigger);
 
             return ps.executeUpdate();
         } finally {
@@ -203,4 +233,85 @@ public abstract class SimplePropertiesTriggerPersistenceDelegateSupport implemen
         }
     }
 
+    public int[] updateFiredTriggerProperties(Connection conn, List<OperableTrigger> triggers) throws SQLException {
+        String[] firedColumns = getFiredTriggerPropertyColumns();
+        if (firedColumns != null && firedColumns.length == 0) {
+            return new int[triggers.size()];
+        }
+
+        PreparedStatement ps = null;
+
+        try {
+            if (firedColumns == null) {
+                ps = conn.prepareStatement(expandedUpdateSQL);
+                for (OperableTrigger trigger : triggers) {
+                    setUpdateParameters(ps, trigger);
+                    ps.addBatch();
+                }
+            } else {
+                ps = conn.prepareStatement(expandedUpdateFiredSQL);
+                for (OperableTrigger trigger : triggers) {
+                    SimplePropertiesTriggerProperties properties = getTriggerProperties(trigger);
+                    for (int i = 0; i < firedColumns.length; i++) {
+                        setProperty(ps, i + 1, firedColumns[i], properties);
+                    }
+                    ps.setString(firedColumns.length + 1, trigger.getKey().getName());
+                    ps.setString(firedColumns.length + 2, trigger.getKey().getGroup());
+                    ps.addBatch();
+                }
+            }
+
+            return StdJDBCDelegate.executeBatchUpdate(ps);
+        } finally {
+            Util.closeStatement(ps);
+        }
+    }
+
+    private void setUpdateParameters(PreparedStatement ps, OperableTrigger trigger) throws SQLException {
+        SimplePropertiesTriggerProperties properties = getTriggerProperties(trigger);
+
+        ps.setString(1, properties.getString1());
+        ps.setString(2, properties.getString2());
+        ps.setString(3, properties.getString3());
+        ps.setInt(4, properties.getInt1());
+        ps.setInt(5, properties.getInt2());
+        ps.setLong(6, properties.getLong1());
+        ps.setLong(7, properties.getLong2());
+        ps.setBigDecimal(8, properties.getDecimal1());
+        ps.setBigDecimal(9, properties.getDecimal2());
+        ps.setBoolean(10, properties.isBoolean1());
+        ps.setBoolean(11, properties.isBoolean2());
+        ps.setString(12, trigger.getKey().getName());
+        ps.setString(13, trigger.getKey().getGroup());
+    }
+
+    private static void setProperty(PreparedStatement ps, int index, String column,
+                                    SimplePropertiesTriggerProperties properties) throws SQLException {
+        if (COL_STR_PROP_1.equals(column)) {
+            ps.setString(index, properties.getString1());
+        } else if (COL_STR_PROP_2.equals(column)) {
+            ps.setString(index, properties.getString2());
+        } else if (COL_STR_PROP_3.equals(column)) {
+            ps.setString(index, properties.getString3());
+        } else if (COL_INT_PROP_1.equals(column)) {
+            ps.setInt(index, properties.getInt1());
+        } else if (COL_INT_PROP_2.equals(column)) {
+            ps.setInt(index, properties.getInt2());
+        } else if (COL_LONG_PROP_1.equals(column)) {
+            ps.setLong(index, properties.getLong1());
+        } else if (COL_LONG_PROP_2.equals(column)) {
+            ps.setLong(index, properties.getLong2());
+        } else if (COL_DEC_PROP_1.equals(column)) {
+            ps.setBigDecimal(index, properties.getDecimal1());
+        } else if (COL_DEC_PROP_2.equals(column)) {
+            ps.setBigDecimal(index, properties.getDecimal2());
+        } else if (COL_BOOL_PROP_1.equals(column)) {
+            ps.setBoolean(index, properties.isBoolean1());
+        } else if (COL_BOOL_PROP_2.equals(column)) {
+            ps.setBoolean(index, properties.isBoolean2());
+        } else {
+            throw new IllegalArgumentException("Unknown simple properties trigger column: " + column);
+        }
+    }
+
 }
@@ -21,6 +21,7 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.List;
 
 import org.quartz.job.JobDetail;
 import org.quartz.scheduler.SimpleScheduleBuilder;
@@ -29,14 +30,27 @@ import org.quartz.triggers.TriggerKey;
 import org.quartz.triggers.SimpleTriggerImpl;
 import org.quartz.spi.OperableTrigger;
 
-public class SimpleTriggerPersistenceDelegate implements TriggerPersistenceDelegate, StdJDBCConstants {
+public class SimpleTriggerPersistenceDelegate implements TriggerFiringPersistenceDelegate, StdJDBCConstants {
 
     protected String tablePrefix;
     protected String schedNameLiteral;
 
+    // the statements, with the table prefix and scheduler name substituted
+    private String expandedDeleteSQL;
+    private String expandedInsertSQL;
+    private String expandedSelectSQL;
+    private String expandedUpdateSQL;
+    private String expandedUpdateTimesTriggeredSQL;
+
     public void initialize(String theTablePrefix, String schedName) {
         this.tablePrefix = theTablePrefix;
         this.schedNameLiteral = "'" + schedName + "'";
+
+        expandedDeleteSQL = Util.rtp(DELETE_SIMPLE_TRIGGER, tablePrefix, schedNameLiteral);
+        expandedInsertSQL = Util.rtp(INSERT_SIMPLE_TRIGGER, tablePrefix, schedNameLiteral);
+        expandedSelectSQL = Util.rtp(SELECT_SIMPLE_TRIGGER, tablePrefix, schedNameLiteral);
+        expandedUpdateSQL = Util.rtp(UPDATE_SIMPLE_TRIGGER, tablePrefix, schedNameLiteral);
+        expandedUpdateTimesTriggeredSQL = Util.rtp(UPDATE_SIMPLE_TRIGGER_TIMES_TRIGGERED, tablePrefix, schedNameLiteral);
     }
 
     public String getHandledTriggerTypeDiscriminator() {
@@ -51,7 +65,7 @@ public class SimpleTriggerPersistenceDelegate implements TriggerPersistenceDeleg
         PreparedStatement ps = null;
 
         try {
-            ps = conn.prepareStatement(Util.rtp(DELETE_SIMPLE_TRIGGER, tablePrefix, schedNameLiteral));
+            ps = conn.prepareStatement(expandedDeleteSQL);
             ps.setString(1, triggerKey.getName());
             ps.setString(2, triggerKey.getGroup());
 
@@ -68,7 +82,7 @@ public class SimpleTriggerPersistenceDelegate implements TriggerPersistenceDeleg
         PreparedStatement ps = null;
 
         try {
-            ps = conn.prepareStatement(Util.rtp(INSERT_SIMPLE_TRIGGER, tablePrefix, schedNameLiteral));
+            ps = conn.prepareStatement(expandedInsertSQL);
             ps.setString(1, trigger.getKey().getName());
             ps.setString(2, trigger.getKey().getGroup());
             ps.setInt(3, simpleTrigger.getRepeatCount());
@@ -87,33 +101,41 @@ public class SimpleTriggerPersistenceDelegate implements TriggerPersistenceDeleg
         ResultSet rs = null;
 
         try {
-            ps = conn.prepareStatement(Util.rtp(SELECT_SIMPLE_TRIGGER, tablePrefix, schedNameLiteral));
+            ps = conn.prepareStatement(expandedSelectSQL);
             ps.setString(1, triggerKey.getName());
             ps.setString(2, triggerKey.getGroup());
             rs = ps.executeQuery();
 
             if (rs.next()) {
-                int repeatCount = rs.getInt(COL_REPEAT_COUNT);
-                long repeatInterval = rs.getLong(COL_REPEAT_INTERVAL);
-                int timesTriggered = rs.getInt(COL_TIMES_TRIGGERED);
-
-                SimpleScheduleBuilder sb = SimpleScheduleBuilder.simpleSchedule()
-                        .withRepeatCount(repeatCount)
-                        .withIntervalInMilliseconds(repeatInterval);
-
-                String[] statePropertyNames = {"timesTriggered"};
-                Object[] statePropertyValues = {timesTriggered};
-
-                return new TriggerPropertyBundle(sb, statePropertyNames, statePropertyValues);
+                return readExtendedTriggerProperties(rs);
             }
 
-            throw new IllegalStateException("No record found for selection of Trigger with key: '" + triggerKey + "' and statement: " + Util.rtp(SELECT_SIMPLE_TRIGGER, tablePrefix, schedNameLiteral));
+            throw new IllegalStateException("No record found for selection of Trigger with key: '" + triggerKey + "' and statement: " + expandedSelectSQL);
         } finally {
             Util.closeResultSet(rs);
             Util.closeStatement(ps);
         }
     }
 
+    /**
+     * Read the properties of the trigger at the current row of a result set
+     * that has the columns of the simple triggers table.
+     */
+    protected TriggerPropertyBundle readExtendedTriggerProperties(ResultSet rs) throws SQLException {
+        int repeatCount = rs.getInt(COL_REPEAT_COUNT);
+        long repeatInterval = rs.getLong(COL_REPEAT_INTERVAL);
+        int timesTriggered = rs.getInt(COL_TIMES_TRIGGERED);
+
+        SimpleScheduleBuilder sb = SimpleScheduleBuilder.simpleSchedule()
+                .withRepeatCount(repeatCount)
+                .withIntervalInMilliseconds(repeatInterval);
+
+        String[] statePropertyNames = {"timesTriggered"};
+        Object[] statePropertyValues = {timesTriggered};
+
+        return new TriggerPropertyBundle(sb, statePropertyNames, statePropertyValues);
+    }
+
     public int updateExtendedTriggerProperties(Connection conn, OperableTrigger trigger, String state, JobDetail jobDetail) throws SQLException, IOException {
 
         SimpleTrigger simpleTrigger = (SimpleTrigger) trigger;
@@ -121,7 +143,7 @@ public class SimpleTriggerPersistenceDelegate implements TriggerPersistenceDeleg
         PreparedStatement ps = null;
 
         try {
-            ps = conn.prepareStatement(Util.rtp(UPDATE_SIMPLE_TRIGGER, tablePrefix, schedNameLiteral));
+            ps = conn.prepareStatement(expandedUpdateSQL);
 
             ps.setInt(1, simpleTrigger.getRepeatCount());
             ps.setBigDecimal(2, new BigDecimal(String.valueOf(simpleTrigger.getRepeatInterval())));
@@ -135,4 +157,27 @@ public class SimpleTriggerPersistenceDelegate implements TriggerPersistenceDeleg
         }
     }
 
+    /**
+     * Only the number of times a simple trigger was triggered changes when it
+     * fires.
+     */
+    public int[] updateFiredTriggerProperties(Connection conn, List<OperableTrigger> triggers) throws SQLException {
+
+        PreparedStatement ps = null;
+
+        try {
+            ps = conn.prepareStatement(expandedUpdateTimesTriggeredSQL);
+            for (OperableTrigger trigger : triggers) {
+                ps.setInt(1, ((SimpleTrigger) trigger).getTimesTriggered());
+                ps.setString(2, trigger.getKey().getName());
+                ps.setString(3, trigger.getKey().getGroup());
+                ps.addBatch();
+            }
+
+            return StdJDBCDelegate.executeBatchUpdate(ps);
+        } finally {
+            Util.closeStatement(ps);
+        }
+    }
+
 }
@@ -0,0 +1,215 @@
+/*
+ * All content copyright Terracotta, Inc., unless otherwise indicated. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.quartz.job.jdbcjobstore;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>
+ * Protects a <code>{@link java.sql.Connection}</code>'s attributes from being
+ * permanently modified, like its super class, and keeps the
+ * <code>{@link PreparedStatement}</code>s prepared on it open until it is
+ * closed, so that a statement executed again - e.g. once for each of a batch
+ * of triggers - is only prepared once.
+ * </p>
+ * <p>
+ * Statements are handed out wrapped, so that closing them only returns them
+ * to the cache. At most the given number of statements are kept, evicting the
+ * least recently used. A statement that is prepared again while it is still
+ * in use - while iterating over its results, for instance - is prepared anew,
+ * and closed as usual.
+ * </p>
+ *
+ * @see org.quartz.job.jdbcjobstore.JobStoreSupport#setStatementCacheSize(int)
+ */
+public class StatementCachingConnectionInvocationHandler extends AttributeRestoringConnectionInvocationHandler {
+
+    private final Map<String, CachedStatement> statements;
+
+    public StatementCachingConnectionInvocationHandler(
+            Connection conn, final int maxStatements) {
+        super(conn);
+        if (maxStatements < 1) {
+            throw new IllegalArgumentException("maxStatements must be at least 1.");
+        }
+
+        this.statements = new LinkedHashMap<String, CachedStatement>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+                if (size() > maxStatements) {
+                    eldest.getValue().evict();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args)
+            throws Throwable {
+        if (method.getName().equals("prepareStatement") && args.length == 1) {
+            return prepareStatement((String) args[0]);
+        }
+        return super.invoke(proxy, method, args);
+    }
+
+    /**
+     * Returns the cached statement for the given SQL, preparing it if it
+     * isn't cached, or if it is in use.
+     */
+    public PreparedStatement prepareStatement(String sql) throws SQLException {
+        CachedStatement cached = statements.get(sql);
+        if (cached != null && cached.inUse) {
+            return getWrappedConnection().prepareStatement(sql);
+        }
+        if (cached == null || cached.closed) {
+            cached = new CachedStatement(getWrappedConnection().prepareStatement(sql));
+            statements.put(sql, cached);
+        }
+        cached.inUse = true;
+        return cached.proxy;
+    }
+
+    /**
+     * Closes all of the cached statements, and forgets them. Statements
+     * still in use are closed once they are released.
+     */
+    public void closeStatements() {
+        for (CachedStatement cached : statements.values()) {
+            cached.evict();
+        }
+        statements.clear();
+    }
+
+    /**
+     * Closes the cached statements, restores the connection's attributes and
+     * closes it.
+     */
+    @Override
+    public void close() throws SQLException {
+        closeStatements();
+
+        super.close();
+    }
+
+    private static class CachedStatement implements InvocationHandler {
+
+        private final PreparedStatement ps;
+
+        private final PreparedStatement proxy;
+
+        private boolean inUse;
+
+        private boolean evicted;
+
+        private boolean closed;
+
+        // settings to undo, so that the next user gets the statement as if
+        // it were prepared for it
+        private boolean batched;
+
+        private boolean maxRowsSet;
+
+        private boolean fetchSizeSet;
+
+        CachedStatement(PreparedStatement ps) {
+            this.ps = ps;
+            this.proxy = (PreparedStatement) Proxy.newProxyInstance(
+                    CachedStatement.class.getClassLoader(),
+                    new Class[]{PreparedStatement.class},
+                    this);
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("close")) {
+                release();
+                return null;
+            } else if (name.equals("isClosed")) {
+                return !inUse || ps.isClosed();
+            } else if (name.equals("addBatch")) {
+                batched = true;
+            } else if (name.equals("executeBatch") || name.equals("clearBatch")) {
+                batched = false;
+            } else if (name.equals("setMaxRows")) {
+                maxRowsSet = true;
+            } else if (name.equals("setFetchSize")) {
+                fetchSizeSet = true;
+            }
+
+            try {
+                return method.invoke(ps, args);
+            } catch (InvocationTargetException ite) {
+                throw (ite.getCause() != null ? ite.getCause() : ite);
+            }
+        }
+
+        private void release() throws SQLException {
+            if (!inUse) {
+                return;
+            }
+            inUse = false;
+            if (evicted) {
+                close();
+                return;
+            }
+
+            try {
+                ps.clearParameters();
+                if (batched) {
+                    ps.clearBatch();
+                    batched = false;
+                }
+                if (maxRowsSet) {
+                    ps.setMaxRows(0);
+                    maxRowsSet = false;
+                }
+                if (fetchSizeSet) {
+                    ps.setFetchSize(0);
+                    fetchSizeSet = false;
+                }
+            } catch (SQLException e) {
+                close();
+                throw e;
+            }
+        }
+
+        void evict() {
+            evicted = true;
+            if (!inUse) {
+                close();
+            }
+        }
+
+        private void close() {
+            closed = true;
+            Util.closeStatement(ps);
+        }
+    }
+}
@@ -185,6 +185,19 @@ public interface StdJDBCConstants extends Constants {
             + " AND " + COL_JOB_NAME
             + " = ? AND " + COL_JOB_GROUP + " = ?";
 
+    String SELECT_JOB_VERSION = "SELECT " + COL_DATA_VERSION + " FROM "
+            + TABLE_PREFIX_SUBST + TABLE_JOB_DETAILS + " WHERE "
+            + COL_SCHEDULER_NAME + " = " + SCHED_NAME_SUBST
+            + " AND " + COL_JOB_NAME
+            + " = ? AND " + COL_JOB_GROUP + " = ?";
+
+    String UPDATE_JOB_VERSION = "UPDATE " + TABLE_PREFIX_SUBST
+            + TABLE_JOB_DETAILS + " SET " + COL_DATA_VERSION + " = ? "
+            + " WHERE "
+            + COL_SCHEDULER_NAME + " = " + SCHED_NAME_SUBST
+            + " AND " + COL_JOB_NAME
+            + " = ? AND " + COL_JOB_GROUP + " = ?";
+
 
     String SELECT_NUM_JOBS = "SELECT COUNT(" + COL_JOB_NAME
             + ") " + " FROM " + TABLE_PREFIX_SUBST + TABLE_JOB_DETAILS + " WHERE "
@@ -260,6 +273,19 @@ public interface StdJDBCConstants extends Constants {
             + COL_SCHEDULER_NAME + " = " + SCHED_NAME_SUBST
             + " AND " + COL_TRIGGER_NAME + " = ? AND " + COL_TRIGGER_GROUP + " = ?";
 
+    String UPDATE_TRIGGER_FIRE_TIMES = "UPDATE " + TABLE_PREFIX_SUBST
+            + TABLE_TRIGGERS + " SET " + COL_NEXT_FIRE_TIME + " = ?, "
+            + COL_PREV_FIRE_TIME + " = ?, " + COL_TRIGGER_STATE + " = ? WHERE "
+            + COL_SCHEDULER_NAME + " = " + SCHED_NAME_SUBST
+            + " AND " + COL_TRIGGER_NAME + " = ? AND " + COL_TRIGGER_GROUP + " = ?";
+
+    String UPDATE_TRIGGER_FIRE_TIMES_AND_DATA = "UPDATE " + TABLE_PREFIX_SUBST
+            + TABLE_TRIGGERS + " SET " + COL_NEXT_FIRE_TIME + " = ?, "
+            + COL_PREV_FIRE_TIME + " = ?, " + COL_TRIGGER_STATE + " = ?, "
+            + COL_JOB_DATAMAP + " = ? WHERE "
+            + COL_SCHEDULER_NAME + " = " + SCHED_NAME_SUBST
+            + " AND " + COL_TRIGGER_NAME + " = ? AND " + COL_TRIGGER_GROUP + " = ?";
+
     String UPDATE_SIMPLE_TRIGGER = "UPDATE "
             + TABLE_PREFIX_SUBST + TABLE_SIMPLE_TRIGGERS + " SET "
             + COL_REPEAT_COUNT + " = ?, " + COL_REPEAT_INTERVAL + " = ?, "
@@ -268,6 +294,13 @@ public interface StdJDBCConstants extends Constants {
             + " AND " + COL_TRIGGER_NAME
             + " = ? AND " + COL_TRIGGER_GROUP + " = ?";
 
+    String UPDATE_SIMPLE_TRIGGER_TIMES_TRIGGERED = "UPDATE "
+            + TABLE_PREFIX_SUBST + TABLE_SIMPLE_TRIGGERS + " SET "
+            + COL_TIMES_TRIGGERED + " = ? WHERE "
+            + COL_SCHEDULER_NAME + " = " + SCHED_NAME_SUBST
+            + " AND " + COL_TRIGGER_NAME
+            + " = ? AND " + COL_TRIGGER_GROUP + " = ?";
+
     String UPDATE_CRON_TRIGGER = "UPDATE "
             + TABLE_PREFIX_SUBST + TABLE_CRON_TRIGGERS + " SET "
             + COL_CRON_EXPRESSION + " = ?, " + COL_TIME_ZONE_ID
@@ -476,6 +509,16 @@ public interface StdJDBCConstants extends Constants {
             + COL_SCHEDULER_NAME + " = " + SCHED_NAME_SUBST
             + " AND " + COL_CALENDAR_NAME + " = ?";
 
+    String SELECT_CALENDAR_VERSION = "SELECT " + COL_DATA_VERSION + " FROM "
+            + TABLE_PREFIX_SUBST + TABLE_CALENDARS + " WHERE "
+            + COL_SCHEDULER_NAME + " = " + SCHED_NAME_SUBST
+            + " AND " + COL_CALENDAR_NAME + " = ?";
+
+    String UPDATE_CALENDAR_VERSION = "UPDATE " + TABLE_PREFIX_SUBST
+            + TABLE_CALENDARS + " SET " + COL_DATA_VERSION + " = ? " + " WHERE "
+            + COL_SCHEDULER_NAME + " = " + SCHED_NAME_SUBST
+            + " AND " + COL_CALENDAR_NAME + " = ?";
+
     String SELECT_REFERENCED_CALENDAR = "SELECT "
             + COL_CALENDAR_NAME + " FROM " + TABLE_PREFIX_SUBST
             + TABLE_TRIGGERS + " WHERE " + COL_SCHEDULER_NAME + " = " + SCHED_NAME_SUBST
@@ -515,6 +558,103 @@ public interface StdJDBCConstants extends Constants {
             + "AND (" + COL_MISFIRE_INSTRUCTION + " = -1 OR (" + COL_MISFIRE_INSTRUCTION + " != -1 AND " + COL_NEXT_FIRE_TIME + " >= ?)) "
             + "ORDER BY " + COL_NEXT_FIRE_TIME + " ASC, " + COL_PRIORITY + " DESC";
 
+    // SELECT_NEXT_TRIGGER_TO_ACQUIRE, with each trigger's job - but not the
+    // job's data - and extension row of the standard trigger types
+    String SELECT_TRIGGERS_WITH_JOBS = "SELECT T.*, "
+            + "J." + COL_DESCRIPTION + " AS " + ALIAS_COL_JOB_DESCRIPTION + ", J." + COL_JOB_CLASS + ", J."
+            + COL_IS_DURABLE + ", J." + COL_IS_NONCONCURRENT + ", J." + COL_IS_UPDATE_DATA + ", J."
+            + COL_REQUESTS_RECOVERY + ", "
+            + "S." + COL_TRIGGER_NAME + " AS " + ALIAS_COL_SIMPLE_TRIGGER_NAME + ", S." + COL_REPEAT_COUNT + ", S."
+            + COL_REPEAT_INTERVAL + ", S." + COL_TIMES_TRIGGERED + ", "
+            + "C." + COL_TRIGGER_NAME + " AS " + ALIAS_COL_CRON_TRIGGER_NAME + ", C." + COL_CRON_EXPRESSION + ", C."
+            + COL_TIME_ZONE_ID + ", "
+            + "P." + COL_TRIGGER_NAME + " AS " + ALIAS_COL_SIMPLE_PROPERTIES_TRIGGER_NAME
+            + ", P." + SimplePropertiesTriggerPersistenceDelegateSupport.COL_STR_PROP_1
+            + ", P." + SimplePropertiesTriggerPersistenceDelegateSupport.COL_STR_PROP_2
+            + ", P." + SimplePropertiesTriggerPersistenceDelegateSupport.COL_STR_PROP_3
+            + ", P." + SimplePropertiesTriggerPersistenceDelegateSupport.COL_INT_PROP_1
+            + ", P." + SimplePropertiesTriggerPersistenceDelegateSupport.COL_INT_PROP_2
+            + ", P." + SimplePropertiesTriggerPersistenceDelegateSupport.COL_LONG_PROP_1
+            + ", P." + SimplePropertiesTriggerPersistenceDelegateSupport.COL_LONG_PROP_2
+            + ", P." + SimplePropertiesTriggerPersistenceDelegateSupport.COL_DEC_PROP_1
+            + ", P." + SimplePropertiesTriggerPersistenceDelegateSupport.COL_DEC_PROP_2
+            + ", P." + SimplePropertiesTriggerPersistenceDelegateSupport.COL_BOOL_PROP_1
+            + ", P." + SimplePropertiesTriggerPersistenceDelegateSupport.COL_BOOL_PROP_2
+            + " FROM " + TABLE_PREFIX_SUBST + TABLE_TRIGGERS + " T"
+            + " LEFT OUTER JOIN " + TABLE_PREFIX_SUBST + TABLE_JOB_DETAILS + " J ON J." + COL_SCHEDULER_NAME
+            + " = T." + COL_SCHEDULER_NAME + " AND J." + COL_JOB_NAME + " = T." + COL_JOB_NAME
+            + " AND J." + COL_JOB_GROUP + " = T." + COL_JOB_GROUP
+            + " LEFT OUTER JOIN " + TABLE_PREFIX_SUBST + TABLE_SIMPLE_TRIGGERS + " S ON S." + COL_SCHEDULER_NAME
+            + " = T." + COL_SCHEDULER_NAME + " AND S." + COL_TRIGGER_NAME + " = T." + COL_TRIGGER_NAME
+            + " AND S." + COL_TRIGGER_GROUP + " = T." + COL_TRIGGER_GROUP
+            + " LEFT OUTER JOIN " + TABLE_PREFIX_SUBST + TABLE_CRON_TRIGGERS + " C ON C." + COL_SCHEDULER_NAME
+            + " = T." + COL_SCHEDULER_NAME + " AND C." + COL_TRIGGER_NAME + " = T." + COL_TRIGGER_NAME
+            + " AND C." + COL_TRIGGER_GROUP + " = T." + COL_TRIGGER_GROUP
+            + " LEFT OUTER JOIN " + TABLE_PREFIX_SUBST
+            + SimplePropertiesTriggerPersistenceDelegateSupport.TABLE_SIMPLE_PROPERTIES_TRIGGERS
+            + " P ON P." + COL_SCHEDULER_NAME + " = T." + COL_SCHEDULER_NAME
+            + " AND P." + COL_TRIGGER_NAME + " = T." + COL_TRIGGER_NAME
+            + " AND P." + COL_TRIGGER_GROUP + " = T." + COL_TRIGGER_GROUP;
+
+    String SELECT_TRIGGERS_TO_ACQUIRE_WITH_JOBS = SELECT_TRIGGERS_WITH_JOBS
+            + " WHERE T." + COL_SCHEDULER_NAME + " = " + SCHED_NAME_SUBST
+            + " AND T." + COL_TRIGGER_STATE + " = ? AND T." + COL_NEXT_FIRE_TIME + " <= ? "
+            + "AND (T." + COL_MISFIRE_INSTRUCTION + " = -1 OR (T." + COL_MISFIRE_INSTRUCTION + " != -1 AND T."
+            + COL_NEXT_FIRE_TIME + " >= ?)) ";
+
+    String SELECT_NEXT_TRIGGERS_TO_ACQUIRE_WITH_JOBS = SELECT_TRIGGERS_TO_ACQUIRE_WITH_JOBS
+            + "ORDER BY T." + COL_NEXT_FIRE_TIME + " ASC, T." + COL_PRIORITY + " DESC";
+
+    String SELECT_NEXT_TRIGGERS_TO_ACQUIRE_IN_PARTITIONS = SELECT_TRIGGERS_TO_ACQUIRE_WITH_JOBS
+            + "AND T." + COL_PARTITION_NUM + " BETWEEN ? AND ? "
+            + "ORDER BY T." + COL_NEXT_FIRE_TIME + " ASC, T." + COL_PRIORITY + " DESC";
+
+    // the triggers SELECT_NEXT_TRIGGER_TO_ACQUIRE selects, due after a fire time
+    String SELECT_UPCOMING_TRIGGERS = "SELECT "
+            + COL_TRIGGER_NAME + ", " + COL_TRIGGER_GROUP + ", " + COL_NEXT_FIRE_TIME + ", "
+            + COL_PRIORITY + ", " + COL_MISFIRE_INSTRUCTION + " FROM "
+            + TABLE_PREFIX_SUBST + TABLE_TRIGGERS + " WHERE "
+            + COL_SCHEDULER_NAME + " = " + SCHED_NAME_SUBST
+            + " AND " + COL_TRIGGER_STATE + " = ? AND " + COL_NEXT_FIRE_TIME + " > ? AND "
+            + COL_NEXT_FIRE_TIME + " <= ? "
+            + "AND (" + COL_MISFIRE_INSTRUCTION + " = -1 OR (" + COL_MISFIRE_INSTRUCTION + " != -1 AND " + COL_NEXT_FIRE_TIME + " >= ?)) "
+            + "ORDER BY " + COL_NEXT_FIRE_TIME + " ASC, " + COL_PRIORITY + " DESC";
+
+    String SELECT_TRIGGER_TO_ACQUIRE_WITH_JOB = SELECT_TRIGGERS_WITH_JOBS
+            + " WHERE T." + COL_SCHEDULER_NAME + " = " + SCHED_NAME_SUBST
+            + " AND T." + COL_TRIGGER_NAME + " = ? AND T." + COL_TRIGGER_GROUP + " = ? AND T."
+            + COL_TRIGGER_STATE + " = ?";
+
+    String SELECT_MISFIRED_TRIGGERS_WITH_JOBS = SELECT_TRIGGERS_WITH_JOBS
+            + " WHERE T." + COL_SCHEDULER_NAME + " = " + SCHED_NAME_SUBST
+            + " AND NOT (T." + COL_MISFIRE_INSTRUCTION + " = " + Trigger.MISFIRE_INSTRUCTION_IGNORE_MISFIRE_POLICY
+            + ") AND T." + COL_NEXT_FIRE_TIME + " < ? AND T." + COL_TRIGGER_STATE + " = ? "
+            + "ORDER BY T." + COL_NEXT_FIRE_TIME + " ASC, T." + COL_PRIORITY + " DESC";
+
+    String UPDATE_MISFIRED_TRIGGER = "UPDATE "
+            + TABLE_PREFIX_SUBST + TABLE_TRIGGERS + " SET " + COL_NEXT_FIRE_TIME + " = ?, "
+            + COL_PREV_FIRE_TIME + " = ?, " + COL_TRIGGER_STATE + " = ?, " + COL_START_TIME + " = ?, "
+            + COL_END_TIME + " = ? WHERE " + COL_SCHEDULER_NAME + " = " + SCHED_NAME_SUBST
+            + " AND " + COL_TRIGGER_NAME + " = ? AND " + COL_TRIGGER_GROUP + " = ? AND "
+            + COL_TRIGGER_STATE + " = ? AND " + COL_NEXT_FIRE_TIME + " = ?";
+
+    String SELECT_TRIGGER_FIRE_TIMES_AND_STATE = "SELECT "
+            + COL_NEXT_FIRE_TIME + ", " + COL_PREV_FIRE_TIME + ", " + COL_TRIGGER_STATE + " FROM "
+            + TABLE_PREFIX_SUBST + TABLE_TRIGGERS + " WHERE "
+            + COL_SCHEDULER_NAME + " = " + SCHED_NAME_SUBST
+            + " AND " + COL_TRIGGER_NAME + " = ? AND " + COL_TRIGGER_GROUP + " = ?";
+
+    String UPDATE_TRIGGER_PARTITION = "UPDATE "
+            + TABLE_PREFIX_SUBST + TABLE_TRIGGERS + " SET " + COL_PARTITION_NUM + " = ? WHERE "
+            + COL_SCHEDULER_NAME + " = " + SCHED_NAME_SUBST
+            + " AND " + COL_TRIGGER_NAME + " = ? AND " + COL_TRIGGER_GROUP + " = ?";
+
+    String SELECT_TRIGGERS_OUTSIDE_PARTITIONS = "SELECT "
+            + COL_TRIGGER_NAME + ", " + COL_TRIGGER_GROUP + " FROM "
+            + TABLE_PREFIX_SUBST + TABLE_TRIGGERS + " WHERE "
+            + COL_SCHEDULER_NAME + " = " + SCHED_NAME_SUBST
+            + " AND (" + COL_PARTITION_NUM + " IS NULL OR " + COL_PARTITION_NUM + " >= ?)";
+
 
     String INSERT_FIRED_TRIGGER = "INSERT INTO "
             + TABLE_PREFIX_SUBST + TABLE_FIRED_TRIGGERS + " (" + COL_SCHEDULER_NAME + ", " + COL_ENTRY_ID
@@ -540,6 +680,13 @@ public interface StdJDBCConstants extends Constants {
             + COL_SCHEDULER_NAME + " = " + SCHED_NAME_SUBST
             + " AND " + COL_INSTANCE_NAME + " = ?";
 
+    String SELECT_INSTANCES_FIRED_TRIGGER_STATES = "SELECT F." + COL_ENTRY_ID + ", T."
+            + COL_TRIGGER_STATE + " FROM " + TABLE_PREFIX_SUBST + TABLE_FIRED_TRIGGERS + " F, "
+            + TABLE_PREFIX_SUBST + TABLE_TRIGGERS + " T WHERE F." + COL_SCHEDULER_NAME + " = "
+            + SCHED_NAME_SUBST + " AND F." + COL_INSTANCE_NAME + " = ? AND T." + COL_SCHEDULER_NAME
+            + " = F." + COL_SCHEDULER_NAME + " AND T." + COL_TRIGGER_NAME + " = F." + COL_TRIGGER_NAME
+            + " AND T." + COL_TRIGGER_GROUP + " = F." + COL_TRIGGER_GROUP;
+
     String SELECT_INSTANCES_RECOVERABLE_FIRED_TRIGGERS = "SELECT * FROM "
             + TABLE_PREFIX_SUBST
             + TABLE_FIRED_TRIGGERS
@@ -637,6 +784,12 @@ public interface StdJDBCConstants extends Constants {
             + COL_SCHEDULER_NAME + " = " + SCHED_NAME_SUBST
             + " AND " + COL_INSTANCE_NAME + " = ?";
 
+    String UPDATE_SCHEDULER_STATE_PARTITIONS = "UPDATE "
+            + TABLE_PREFIX_SUBST + TABLE_SCHEDULER_STATE + " SET "
+            + COL_FIRST_PARTITION + " = ?, " + COL_LAST_PARTITION + " = ? WHERE "
+            + COL_SCHEDULER_NAME + " = " + SCHED_NAME_SUBST
+            + " AND " + COL_INSTANCE_NAME + " = ?";
+
     String INSERT_PAUSED_TRIGGER_GROUP = "INSERT INTO "
             + TABLE_PREFIX_SUBST + TABLE_PAUSED_TRIGGERS + " ("
             + COL_SCHEDULER_NAME + ", "
@@ -21,6 +21,7 @@ import static org.quartz.job.JobKey.jobKey;
 import static org.quartz.triggers.TriggerBuilder.newTrigger;
 import static org.quartz.triggers.TriggerKey.triggerKey;
 
+import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
@@ -28,6 +29,7 @@ import java.io.InputStream;
 import java.io.NotSerializableException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.lang.reflect.Field;
 import java.math.BigDecimal;
 import java.sql.Blob;
 import java.sql.Connection;
@@ -35,15 +37,23 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import org.quartz.calendar.Calendar;
 import org.quartz.job.Job;
@@ -100,6 +110,25 @@ public class StdJDBCDelegate implements DriverDelegate, StdJDBCConstants {
 
     protected List<TriggerPersistenceDelegate> triggerPersistenceDelegates = new LinkedList<TriggerPersistenceDelegate>();
 
+    // the queries given to rtp(), by their unsubstituted text
+    private final ConcurrentMap<String, String> expandedQueries = new ConcurrentHashMap<String, String>();
+
+    // appended to the query selecting the triggers to acquire, to lock their
+    // rows and skip the rows locked by others
+    private String skipLockedClause;
+
+    // encodes job data maps when set, in place of properties or Java
+    // serialization
+    private JobDataMapCodec jobDataMapCodec;
+
+    // job data and blob triggers of at least this many bytes are compressed,
+    // none are when 0
+    private int compressionThreshold;
+
+    private final AtomicLong compressedBlobCount = new AtomicLong();
+
+    private final AtomicLong bytesSavedByCompression = new AtomicLong();
+
     
     /*
      * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
@@ -137,6 +166,7 @@ public class StdJDBCDelegate implements DriverDelegate, StdJDBCConstants {
         this.instanceId = instanceId;
         this.useProperties = useProperties;
         this.classLoadHelper = classLoadHelper;
+        expandQueries();
         addDefaultTriggerPersistenceDelegates();
 
         if (initString == null)
@@ -162,6 +192,25 @@ public class StdJDBCDelegate implements DriverDelegate, StdJDBCConstants {
                         throw new NoSuchDelegateException("Error instantiating TriggerPersistenceDelegate of type: " + trigDelClassName, e);
                     }
                 }
+            } else if (name.equals("skipLockedClause")) {
+                skipLockedClause = parts[1].trim();
+            } else if (name.equals("compressionThreshold")) {
+                try {
+                    compressionThreshold = Integer.parseInt(parts[1].trim());
+                } catch (NumberFormatException e) {
+                    throw new NoSuchDelegateException("Invalid compressionThreshold: '" + parts[1] + "'", e);
+                }
+                if (compressionThreshold < 0) {
+                    throw new NoSuchDelegateException("Invalid compressionThreshold: '" + parts[1] + "'");
+                }
+            } else if (name.equals("jobDataMapCodec")) {
+                String codecClassName = parts[1].trim();
+                try {
+                    Class<?> codecClass = classLoadHelper.loadClass(codecClassName);
+                    jobDataMapCodec = (JobDataMapCodec) codecClass.newInstance();
+                } catch (Exception e) {
+                    throw new NoSuchDelegateException("Error instantiating JobDataMapCodec of type: " + codecClassName, e);
+                }
             } else
                 throw new NoSuchDelegateException("Unknown setting: '" + name + "'");
         }
@@ -178,6 +227,41 @@ public class StdJDBCDelegate implements DriverDelegate, StdJDBCConstants {
         return useProperties;
     }
 
+    /**
+     * Get the codec encoding job data maps, which is the
+     * <code>jobDataMapCodec</code> setting of the init string, or
+     * <code>null</code> if it is not set.
+     */
+    protected JobDataMapCodec getJobDataMapCodec() {
+        return jobDataMapCodec;
+    }
+
+    /**
+     * Get the size, in bytes, from which job data and blob triggers are
+     * written compressed, which is the <code>compressionThreshold</code>
+     * setting of the init string, or 0 if none are.
+     */
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    /**
+     * Get the number of job data and blob trigger payloads this delegate has
+     * written compressed.
+     */
+    public long getCompressedBlobCount() {
+        return compressedBlobCount.get();
+    }
+
+    /**
+     * Get the number of bytes by which compression has reduced the job data
+     * and blob trigger payloads written by this delegate.
+     */
+    public long getBytesSavedByCompression() {
+        return bytesSavedByCompression.get();
+    }
+
+
     public void addTriggerPersistenceDelegate(TriggerPersistenceDelegate delegate) {
         logger.debug("Adding TriggerPersistenceDelegate of type: " + delegate.getClass().getCanonicalName());
         delegate.initialize(tablePrefix, schedName);
@@ -364,6 +448,49 @@ public class StdJDBCDelegate implements DriverDelegate, StdJDBCConstants {
         }
     }
 
+    /**
+     * <p>
+     * Select the triggers in the given state that have misfired - according
+     * to the given timestamp - along with their properties, in a single
+     * query joining the triggers with the tables of the standard trigger
+     * types. No more than maxCount will be returned.
+     * </p>
+     *
+     * @param conn     the DB Connection
+     * @param maxCount the most misfired triggers to return
+     * @return the misfired triggers by key, in the order they should have
+     * fired, with no trigger for those of a type whose properties the query
+     * does not read
+     */
+    public Map<TriggerKey, OperableTrigger> selectMisfiredTriggers(Connection conn, String state, long ts,
+                                                                  int maxCount)
+            throws SQLException, IOException, JobPersistenceException {
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        Map<TriggerKey, OperableTrigger> triggers = new LinkedHashMap<TriggerKey, OperableTrigger>();
+        try {
+            ps = conn.prepareStatement(rtp(SELECT_MISFIRED_TRIGGERS_WITH_JOBS));
+            ps.setMaxRows(maxCount);
+            ps.setFetchSize(maxCount);
+            ps.setBigDecimal(1, new BigDecimal(String.valueOf(ts)));
+            ps.setString(2, state);
+            rs = ps.executeQuery();
+
+            while (rs.next() && triggers.size() < maxCount) {
+                TriggerKey triggerKey = triggerKey(
+                        rs.getString(COL_TRIGGER_NAME),
+                        rs.getString(COL_TRIGGER_GROUP));
+                JobKey jobKey = jobKey(rs.getString(COL_JOB_NAME), rs.getString(COL_JOB_GROUP));
+                triggers.put(triggerKey, readTriggerToAcquire(rs, triggerKey, jobKey));
+            }
+
+            return triggers;
+        } finally {
+            closeResultSet(rs);
+            closeStatement(ps);
+        }
+    }
+
     /**
      * <p>
      * Get the number of triggers in the given states that have
@@ -828,15 +955,10 @@ public class StdJDBCDelegate implements DriverDelegate, StdJDBCConstants {
                 job.setDurability(getBoolean(rs, COL_IS_DURABLE));
                 job.setRequestsRecovery(getBoolean(rs, COL_REQUESTS_RECOVERY));
 
-                Map<?, ?> map = null;
-                if (canUseProperties()) {
-                    map = getMapFromProperties(rs);
-                } else {
-                    map = (Map<?, ?>) getObjectFromBlob(rs, COL_JOB_DATAMAP);
-                }
+                JobDataMap map = getJobDataMapFromBlob(rs, COL_JOB_DATAMAP);
 
                 if (null != map) {
-                    job.setJobDataMap(new JobDataMap(map));
+                    job.setJobDataMap(map);
                 }
             }
 
@@ -848,25 +970,139 @@ public class StdJDBCDelegate implements DriverDelegate, StdJDBCConstants {
     }
 
     /**
-     * build Map from java.util.Properties encoding.
+     * <p>
+     * Select the version of the stored data of the given job.
+     * </p>
+     *
+     * @param conn   the DB Connection
+     * @param jobKey the key of the job
+     * @return the version, 0 if none was ever written, or null if the job
+     *         does not exist
      */
-    private Map<?, ?> getMapFromProperties(ResultSet rs)
-            throws ClassNotFoundException, IOException, SQLException {
-        Map<?, ?> map;
-        InputStream is = (InputStream) getJobDataFromBlob(rs, COL_JOB_DATAMAP);
-        if (is == null) {
+    public Long selectJobVersion(Connection conn, JobKey jobKey)
+            throws SQLException {
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+
+        try {
+            ps = conn.prepareStatement(rtp(SELECT_JOB_VERSION));
+            ps.setString(1, jobKey.getName());
+            ps.setString(2, jobKey.getGroup());
+            rs = ps.executeQuery();
+
+            if (rs.next()) {
+                return rs.getLong(COL_DATA_VERSION);
+            }
             return null;
+        } finally {
+            closeResultSet(rs);
+            closeStatement(ps);
         }
-        Properties properties = new Properties();
-        if (is != null) {
+    }
+
+    /**
+     * <p>
+     * Update the version of the stored data of the given job.
+     * </p>
+     *
+     * @param conn    the DB Connection
+     * @param jobKey  the key of the job
+     * @param version the new version
+     * @return the number of rows updated
+     */
+    public int updateJobVersion(Connection conn, JobKey jobKey, long version)
+            throws SQLException {
+        PreparedStatement ps = null;
+
+        try {
+            ps = conn.prepareStatement(rtp(UPDATE_JOB_VERSION));
+            ps.setLong(1, version);
+            ps.setString(2, jobKey.getName());
+            ps.setString(3, jobKey.getGroup());
+
+            return ps.executeUpdate();
+        } finally {
+            closeStatement(ps);
+        }
+    }
+
+    /**
+     * <p>
+     * Get the <code>{@link JobDataMap}</code> stored in the given BLOB
+     * column. Only the bytes are read from the result set; they are decoded
+     * when the map is first accessed, so that jobs and triggers whose data is
+     * never looked at do not pay for it.
+     * </p>
+     *
+     * @param rs      the result set, already queued to the correct row
+     * @param colName the column name for the BLOB
+     * @return the job data map, or null if none is stored
+     * @see #decodeJobData(byte[])
+     */
+    protected JobDataMap getJobDataMapFromBlob(ResultSet rs, String colName)
+            throws IOException, SQLException {
+        final byte[] bytes = getBytesFromBlob(rs, colName);
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+
+        return new JobDataMap(new Callable<Map<String, Object>>() {
+            @SuppressWarnings("unchecked")
+            public Map<String, Object> call() throws IOException, ClassNotFoundException {
+                Map<?, ?> map = decodeJobData(bytes);
+                return (map == null) ? new HashMap<String, Object>() : new HashMap<String, Object>((Map<String, Object>) map);
+            }
+        });
+    }
+
+    /**
+     * <p>
+     * Decode the <code>{@link JobDataMap}</code> entries stored as the given
+     * bytes. Without a <code>{@link JobDataMapCodec}</code> they are read as
+     * <code>java.util.Properties</code> or as a serialized object, according
+     * to <code>useProperties</code>. With a codec, bytes that are not in the
+     * codec's format are read as they were stored before the codec was set.
+     * Bytes written compressed are decompressed first.
+     * </p>
+     *
+     * @throws ClassNotFoundException if a class found during deserialization cannot be found
+     * @throws IOException            if decoding causes an error
+     */
+    protected Map<?, ?> decodeJobData(byte[] bytes) throws IOException, ClassNotFoundException {
+        if (bytes.length > 1 && bytes[0] == (byte) GZIPInputStream.GZIP_MAGIC
+                && bytes[1] == (byte) (GZIPInputStream.GZIP_MAGIC >> 8)) {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream(bytes.length * 4);
+            InputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes));
             try {
-                properties.load(is);
+                byte[] buffer = new byte[4096];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    baos.write(buffer, 0, read);
+                }
             } finally {
-                is.close();
+                in.close();
             }
+            bytes = baos.toByteArray();
+        }
+
+        JobDataMapCodec codec = getJobDataMapCodec();
+        if (codec != null && codec.canDecode(bytes)) {
+            return codec.decode(bytes);
+        }
+
+        boolean serialized = bytes.length > 1 && bytes[0] == (byte) 0xAC && bytes[1] == (byte) 0xED;
+        if (canUseProperties() && (codec == null || !serialized)) {
+            Properties properties = new Properties();
+            properties.load(new ByteArrayInputStream(bytes));
+            return convertFromProperty(properties);
+        }
+
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes));
+        try {
+            return (Map<?, ?>) in.readObject();
+        } finally {
+            in.close();
         }
-        map = convertFromProperty(properties);
-        return map;
     }
 
     /**
@@ -1087,10 +1323,7 @@ public class StdJDBCDelegate implements DriverDelegate, StdJDBCConstants {
 
         try {
             // update the blob
-            os = new ByteArrayOutputStream();
-            ObjectOutputStream oos = new ObjectOutputStream(os);
-            oos.writeObject(trigger);
-            oos.close();
+            os = compressBlob(serializeObject(trigger));
 
             byte[] buf = os.toByteArray();
             ByteArrayInputStream is = new ByteArrayInputStream(buf);
@@ -1138,61 +1371,356 @@ public class StdJDBCDelegate implements DriverDelegate, StdJDBCConstants {
                 ps = conn.prepareStatement(rtp(UPDATE_TRIGGER_SKIP_DATA));
             }
 
-            ps.setString(1, trigger.getJobKey().getName());
-            ps.setString(2, trigger.getJobKey().getGroup());
-            ps.setString(3, trigger.getDescription());
-            long nextFireTime = -1;
-            if (trigger.getNextFireTime() != null) {
-                nextFireTime = trigger.getNextFireTime().getTime();
-            }
-            ps.setBigDecimal(4, new BigDecimal(String.valueOf(nextFireTime)));
-            long prevFireTime = -1;
-            if (trigger.getPreviousFireTime() != null) {
-                prevFireTime = trigger.getPreviousFireTime().getTime();
-            }
-            ps.setBigDecimal(5, new BigDecimal(String.valueOf(prevFireTime)));
-            ps.setString(6, state);
+            setTriggerUpdateParameters(ps, trigger, state, baos);
+
+            insertResult = ps.executeUpdate();
 
             TriggerPersistenceDelegate tDel = findTriggerPersistenceDelegate(trigger);
 
-            String type = TTYPE_BLOB;
-            if (tDel != null)
-                type = tDel.getHandledTriggerTypeDiscriminator();
+            if (tDel == null)
+                updateBlobTrigger(conn, trigger);
+            else
+                tDel.updateExtendedTriggerProperties(conn, trigger, state, jobDetail);
 
-            ps.setString(7, type);
+        } finally {
+            closeStatement(ps);
+        }
 
-            ps.setBigDecimal(8, new BigDecimal(String.valueOf(trigger
-                    .getStartTime().getTime())));
-            long endTime = 0;
-            if (trigger.getEndTime() != null) {
-                endTime = trigger.getEndTime().getTime();
+        return insertResult;
+    }
+
+    /**
+     * <p>
+     * Update the base trigger data of each of the given triggers, in one
+     * batch for the triggers whose job data changed and one for the others.
+     * The type-specific data of each trigger is then updated on its own.
+     * </p>
+     *
+     * @param conn       the DB Connection
+     * @param triggers   the triggers to update
+     * @param states     the state that each trigger should be stored in
+     * @param jobDetails the job of each trigger
+     * @return the number of rows updated for each trigger, in order, 1 where
+     * the driver does not tell
+     */
+    public int[] updateTriggers(Connection conn, List<OperableTrigger> triggers, List<String> states,
+                                List<JobDetail> jobDetails) throws SQLException, IOException {
+        List<Integer> withData = new ArrayList<Integer>();
+        List<Integer> withoutData = new ArrayList<Integer>();
+        for (int i = 0; i < triggers.size(); i++) {
+            if (triggers.get(i).getJobDataMap().isDirty()) {
+                withData.add(i);
+            } else {
+                withoutData.add(i);
             }
-            ps.setBigDecimal(9, new BigDecimal(String.valueOf(endTime)));
-            ps.setString(10, trigger.getCalendarName());
-            ps.setInt(11, trigger.getMisfireInstruction());
-            ps.setInt(12, trigger.getPriority());
+        }
 
-            if (updateJobData) {
-                setBytes(ps, 13, baos);
-                ps.setString(14, trigger.getKey().getName());
-                ps.setString(15, trigger.getKey().getGroup());
+        int[] counts = new int[triggers.size()];
+        updateTriggers(conn, true, withData, triggers, states, counts);
+        updateTriggers(conn, false, withoutData, triggers, states, counts);
+
+        for (int i = 0; i < triggers.size(); i++) {
+            updateExtendedTriggerProperties(conn, triggers.get(i), states.get(i), jobDetails.get(i));
+        }
+
+        return counts;
+    }
+
+    /**
+     * <p>
+     * Update each of the given triggers after it fired, writing only its fire
+     * times, its state, its job data if that changed, and the extended
+     * properties that changed with firing, if its
+     * <code>{@link TriggerPersistenceDelegate}</code> is a
+     * <code>{@link TriggerFiringPersistenceDelegate}</code>. Other triggers
+     * are updated in full, as by
+     * <code>{@link #updateTriggers(Connection, List, List, List)}</code>.
+     * </p>
+     *
+     * @param conn       the DB Connection
+     * @param triggers   the triggers to update
+     * @param states     the state that each trigger should be stored in
+     * @param jobDetails the job of each trigger
+     * @return the number of rows updated for each trigger, in order, 1 where
+     * the driver does not tell
+     */
+    public int[] updateTriggersAfterFiring(Connection conn, List<OperableTrigger> triggers, List<String> states,
+                                           List<JobDetail> jobDetails) throws SQLException, IOException {
+        List<Integer> withData = new ArrayList<Integer>();
+        List<Integer> withoutData = new ArrayList<Integer>();
+        List<Integer> firedWithData = new ArrayList<Integer>();
+        List<Integer> firedWithoutData = new ArrayList<Integer>();
+        Map<TriggerFiringPersistenceDelegate, List<OperableTrigger>> firedByDelegate =
+                new LinkedHashMap<TriggerFiringPersistenceDelegate, List<OperableTrigger>>();
+        for (int i = 0; i < triggers.size(); i++) {
+            OperableTrigger trigger = triggers.get(i);
+            boolean dirty = trigger.getJobDataMap().isDirty();
+            TriggerPersistenceDelegate tDel = findTriggerPersistenceDelegate(trigger);
+            if (tDel instanceof TriggerFiringPersistenceDelegate) {
+                (dirty ? firedWithData : firedWithoutData).add(i);
+                List<OperableTrigger> delegateTriggers = firedByDelegate.get(tDel);
+                if (delegateTriggers == null) {
+                    delegateTriggers = new ArrayList<OperableTrigger>();
+                    firedByDelegate.put((TriggerFiringPersistenceDelegate) tDel, delegateTriggers);
+                }
+                delegateTriggers.add(trigger);
             } else {
-                ps.setString(13, trigger.getKey().getName());
-                ps.setString(14, trigger.getKey().getGroup());
+                (dirty ? withData : withoutData).add(i);
             }
+        }
 
-            insertResult = ps.executeUpdate();
+        int[] counts = new int[triggers.size()];
+        updateTriggerFireTimes(conn, true, firedWithData, triggers, states, counts);
+        updateTriggerFireTimes(conn, false, firedWithoutData, triggers, states, counts);
+        updateTriggers(conn, true, withData, triggers, states, counts);
+        updateTriggers(conn, false, withoutData, triggers, states, counts);
 
-            if (tDel == null)
-                updateBlobTrigger(conn, trigger);
-            else
-                tDel.updateExtendedTriggerProperties(conn, trigger, state, jobDetail);
+        for (Map.Entry<TriggerFiringPersistenceDelegate, List<OperableTrigger>> entry : firedByDelegate.entrySet()) {
+            entry.getKey().updateFiredTriggerProperties(conn, entry.getValue());
+        }
+        for (int i = 0; i < triggers.size(); i++) {
+            if (!(findTriggerPersistenceDelegate(triggers.get(i)) instanceof TriggerFiringPersistenceDelegate)) {
+                updateExtendedTriggerProperties(conn, triggers.get(i), states.get(i), jobDetails.get(i));
+            }
+        }
+
+        return counts;
+    }
+
+    /**
+     * <p>
+     * Update each of the given triggers after its misfire was handled,
+     * provided it is still in the given old state with the given old next
+     * fire time. Its fire times, state, and start and end times are updated
+     * in one batch, and then its type's properties, but for cron triggers,
+     * whose properties are never changed by a misfire.
+     * </p>
+     * <p>
+     * Where the driver does not report the rows updated by a statement of
+     * the batch, as Oracle's does, the trigger is read back: it only counts
+     * as updated if it holds the fire times and state just written, rather
+     * than those of a trigger fired or rescheduled since it was selected.
+     * </p>
+     *
+     * @param conn             the DB Connection
+     * @param triggers         the triggers to update, of the standard types
+     * @param states           the state that each trigger should be stored in
+     * @param oldState         the state the triggers were selected in
+     * @param oldNextFireTimes the next fire time each trigger was selected with
+     * @return the number of rows updated for each trigger, in order
+     */
+    public int[] updateTriggersAfterMisfire(Connection conn, List<OperableTrigger> triggers, List<String> states,
+                                            String oldState, long[] oldNextFireTimes)
+            throws SQLException, IOException {
+        if (triggers.isEmpty()) {
+            return new int[0];
+        }
+
+        int[] counts;
+        PreparedStatement ps = null;
+        try {
+            ps = conn.prepareStatement(rtp(UPDATE_MISFIRED_TRIGGER));
+            for (int i = 0; i < triggers.size(); i++) {
+                OperableTrigger trigger = triggers.get(i);
+                long nextFireTime = -1;
+                if (trigger.getNextFireTime() != null) {
+                    nextFireTime = trigger.getNextFireTime().getTime();
+                }
+                ps.setBigDecimal(1, new BigDecimal(String.valueOf(nextFireTime)));
+                long prevFireTime = -1;
+                if (trigger.getPreviousFireTime() != null) {
+                    prevFireTime = trigger.getPreviousFireTime().getTime();
+                }
+                ps.setBigDecimal(2, new BigDecimal(String.valueOf(prevFireTime)));
+                ps.setString(3, states.get(i));
+                ps.setBigDecimal(4, new BigDecimal(String.valueOf(trigger.getStartTime().getTime())));
+                long endTime = 0;
+                if (trigger.getEndTime() != null) {
+                    endTime = trigger.getEndTime().getTime();
+                }
+                ps.setBigDecimal(5, new BigDecimal(String.valueOf(endTime)));
+                ps.setString(6, trigger.getKey().getName());
+                ps.setString(7, trigger.getKey().getGroup());
+                ps.setString(8, oldState);
+                ps.setBigDecimal(9, new BigDecimal(String.valueOf(oldNextFireTimes[i])));
+                ps.addBatch();
+            }
 
+            counts = ps.executeBatch();
         } finally {
             closeStatement(ps);
         }
+        verifyMisfiredTriggerUpdates(conn, triggers, states, counts);
 
-        return insertResult;
+        for (int i = 0; i < triggers.size(); i++) {
+            TriggerPersistenceDelegate tDel = findTriggerPersistenceDelegate(triggers.get(i));
+            if (counts[i] > 0 && !(tDel instanceof CronTriggerPersistenceDelegate)) {
+                updateExtendedTriggerProperties(conn, triggers.get(i), states.get(i), null);
+            }
+        }
+
+        return counts;
+    }
+
+    /**
+     * Replace each count of the batch update of misfired triggers the
+     * driver did not report by 1 if the trigger holds the fire times and
+     * state written for it, and 0 otherwise.
+     */
+    private void verifyMisfiredTriggerUpdates(Connection conn, List<OperableTrigger> triggers, List<String> states,
+                                              int[] counts) throws SQLException {
+        PreparedStatement ps = null;
+        try {
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] != Statement.SUCCESS_NO_INFO) {
+                    continue;
+                }
+                if (ps == null) {
+                    ps = conn.prepareStatement(rtp(SELECT_TRIGGER_FIRE_TIMES_AND_STATE));
+                }
+                OperableTrigger trigger = triggers.get(i);
+                ps.setString(1, trigger.getKey().getName());
+                ps.setString(2, trigger.getKey().getGroup());
+                ResultSet rs = ps.executeQuery();
+                try {
+                    long nextFireTime = (trigger.getNextFireTime() != null) ? trigger.getNextFireTime().getTime() : -1;
+                    long prevFireTime = (trigger.getPreviousFireTime() != null) ? trigger.getPreviousFireTime().getTime() : -1;
+                    counts[i] = (rs.next()
+                            && rs.getLong(COL_NEXT_FIRE_TIME) == nextFireTime
+                            && rs.getLong(COL_PREV_FIRE_TIME) == prevFireTime
+                            && states.get(i).equals(rs.getString(COL_TRIGGER_STATE))) ? 1 : 0;
+                } finally {
+                    closeResultSet(rs);
+                }
+            }
+        } finally {
+            closeStatement(ps);
+        }
+    }
+
+    private void updateExtendedTriggerProperties(Connection conn, OperableTrigger trigger, String state,
+                                                 JobDetail jobDetail) throws SQLException, IOException {
+        TriggerPersistenceDelegate tDel = findTriggerPersistenceDelegate(trigger);
+        if (tDel == null)
+            updateBlobTrigger(conn, trigger);
+        else
+            tDel.updateExtendedTriggerProperties(conn, trigger, state, jobDetail);
+    }
+
+    private void updateTriggerFireTimes(Connection conn, boolean updateJobData, List<Integer> indexes,
+                                        List<OperableTrigger> triggers, List<String> states, int[] counts)
+            throws SQLException, IOException {
+        if (indexes.isEmpty()) {
+            return;
+        }
+
+        PreparedStatement ps = null;
+        try {
+            ps = conn.prepareStatement(rtp(updateJobData ? UPDATE_TRIGGER_FIRE_TIMES_AND_DATA : UPDATE_TRIGGER_FIRE_TIMES));
+            for (int i : indexes) {
+                OperableTrigger trigger = triggers.get(i);
+                long nextFireTime = -1;
+                if (trigger.getNextFireTime() != null) {
+                    nextFireTime = trigger.getNextFireTime().getTime();
+                }
+                ps.setBigDecimal(1, new BigDecimal(String.valueOf(nextFireTime)));
+                long prevFireTime = -1;
+                if (trigger.getPreviousFireTime() != null) {
+                    prevFireTime = trigger.getPreviousFireTime().getTime();
+                }
+                ps.setBigDecimal(2, new BigDecimal(String.valueOf(prevFireTime)));
+                ps.setString(3, states.get(i));
+                int index = 4;
+                if (updateJobData) {
+                    setBytes(ps, index++, serializeJobData(trigger.getJobDataMap()));
+                }
+                ps.setString(index++, trigger.getKey().getName());
+                ps.setString(index, trigger.getKey().getGroup());
+                ps.addBatch();
+            }
+
+            int[] batchCounts = executeBatchUpdate(ps);
+            for (int i = 0; i < batchCounts.length; i++) {
+                counts[indexes.get(i)] = batchCounts[i];
+            }
+        } finally {
+            closeStatement(ps);
+        }
+    }
+
+    private void updateTriggers(Connection conn, boolean updateJobData, List<Integer> indexes,
+                                List<OperableTrigger> triggers, List<String> states, int[] counts)
+            throws SQLException, IOException {
+        if (indexes.isEmpty()) {
+            return;
+        }
+
+        PreparedStatement ps = null;
+        try {
+            ps = conn.prepareStatement(rtp(updateJobData ? UPDATE_TRIGGER : UPDATE_TRIGGER_SKIP_DATA));
+            for (int i : indexes) {
+                OperableTrigger trigger = triggers.get(i);
+                ByteArrayOutputStream jobData = null;
+                if (updateJobData) {
+                    jobData = serializeJobData(trigger.getJobDataMap());
+                }
+                setTriggerUpdateParameters(ps, trigger, states.get(i), jobData);
+                ps.addBatch();
+            }
+
+            int[] batchCounts = executeBatchUpdate(ps);
+            for (int i = 0; i < batchCounts.length; i++) {
+                counts[indexes.get(i)] = batchCounts[i];
+            }
+        } finally {
+            closeStatement(ps);
+        }
+    }
+
+    private void setTriggerUpdateParameters(PreparedStatement ps, OperableTrigger trigger, String state,
+                                            ByteArrayOutputStream jobData) throws SQLException {
+        ps.setString(1, trigger.getJobKey().getName());
+        ps.setString(2, trigger.getJobKey().getGroup());
+        ps.setString(3, trigger.getDescription());
+        long nextFireTime = -1;
+        if (trigger.getNextFireTime() != null) {
+            nextFireTime = trigger.getNextFireTime().getTime();
+        }
+        ps.setBigDecimal(4, new BigDecimal(String.valueOf(nextFireTime)));
+        long prevFireTime = -1;
+        if (trigger.getPreviousFireTime() != null) {
+            prevFireTime = trigger.getPreviousFireTime().getTime();
+        }
+        ps.setBigDecimal(5, new BigDecimal(String.valueOf(prevFireTime)));
+        ps.setString(6, state);
+
+        TriggerPersistenceDelegate tDel = findTriggerPersistenceDelegate(trigger);
+
+        String type = TTYPE_BLOB;
+        if (tDel != null)
+            type = tDel.getHandledTriggerTypeDiscriminator();
+
+        ps.setString(7, type);
+
+        ps.setBigDecimal(8, new BigDecimal(String.valueOf(trigger
+                .getStartTime().getTime())));
+        long endTime = 0;
+        if (trigger.getEndTime() != null) {
+            endTime = trigger.getEndTime().getTime();
+        }
+        ps.setBigDecimal(9, new BigDecimal(String.valueOf(endTime)));
+        ps.setString(10, trigger.getCalendarName());
+        ps.setInt(11, trigger.getMisfireInstruction());
+        ps.setInt(12, trigger.getPriority());
+
+        if (jobData != null) {
+            setBytes(ps, 13, jobData);
+            ps.setString(14, trigger.getKey().getName());
+            ps.setString(15, trigger.getKey().getGroup());
+        } else {
+            ps.setString(13, trigger.getKey().getName());
+            ps.setString(14, trigger.getKey().getGroup());
+        }
     }
 
     /**
@@ -1211,10 +1739,7 @@ public class StdJDBCDelegate implements DriverDelegate, StdJDBCConstants {
 
         try {
             // update the blob
-            os = new ByteArrayOutputStream();
-            ObjectOutputStream oos = new ObjectOutputStream(os);
-            oos.writeObject(trigger);
-            oos.close();
+            os = compressBlob(serializeObject(trigger));
 
             byte[] buf = os.toByteArray();
             ByteArrayInputStream is = new ByteArrayInputStream(buf);
@@ -1387,7 +1912,101 @@ public class StdJDBCDelegate implements DriverDelegate, StdJDBCConstants {
 
     /**
      * <p>
-     * Update all of the triggers of the given group to the given new state, if
+     * Update each of the given triggers to the given new state, if it is in
+     * the given old state, in a single batch.
+     * </p>
+     *
+     * @param conn        the DB connection
+     * @param triggerKeys the triggers to update
+     * @param newState    the new state for the triggers
+     * @param oldState    the old state the triggers must be in
+     * @return the number of rows updated for each trigger, 1 where the
+     * driver does not tell
+     * @throws SQLException
+     */
+    public int[] updateTriggerStateFromOtherState(Connection conn,
+                                                  List<TriggerKey> triggerKeys, String newState, String oldState) throws SQLException {
+        PreparedStatement ps = null;
+
+        try {
+            ps = conn.prepareStatement(rtp(UPDATE_TRIGGER_STATE_FROM_STATE));
+            for (TriggerKey triggerKey : triggerKeys) {
+                ps.setString(1, newState);
+                ps.setString(2, triggerKey.getName());
+                ps.setString(3, triggerKey.getGroup());
+                ps.setString(4, oldState);
+                ps.addBatch();
+            }
+
+            return executeBatchUpdate(ps);
+        } finally {
+            closeStatement(ps);
+        }
+    }
+
+    /**
+     * <p>
+     * Update the partition of the given trigger.
+     * </p>
+     *
+     * @param conn       the DB connection
+     * @param triggerKey the trigger to update
+     * @param partition  the partition of the trigger
+     * @return int the number of rows updated
+     * @throws SQLException
+     */
+    public int updateTriggerPartition(Connection conn, TriggerKey triggerKey, int partition)
+            throws SQLException {
+        PreparedStatement ps = null;
+
+        try {
+            ps = conn.prepareStatement(rtp(UPDATE_TRIGGER_PARTITION));
+            ps.setInt(1, partition);
+            ps.setString(2, triggerKey.getName());
+            ps.setString(3, triggerKey.getGroup());
+
+            return ps.executeUpdate();
+        } finally {
+            closeStatement(ps);
+        }
+    }
+
+    /**
+     * <p>
+     * Select the triggers that have no partition, or a partition not below
+     * the given count of partitions.
+     * </p>
+     *
+     * @param conn           the DB connection
+     * @param partitionCount the count of partitions
+     * @return a List of <code>TriggerKey</code>s
+     * @throws SQLException
+     */
+    public List<TriggerKey> selectTriggersOutsidePartitions(Connection conn, int partitionCount)
+            throws SQLException {
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+
+        try {
+            ps = conn.prepareStatement(rtp(SELECT_TRIGGERS_OUTSIDE_PARTITIONS));
+            ps.setInt(1, partitionCount);
+            rs = ps.executeQuery();
+
+            LinkedList<TriggerKey> list = new LinkedList<TriggerKey>();
+            while (rs.next()) {
+                list.add(triggerKey(rs.getString(1), rs.getString(2)));
+            }
+
+            return list;
+        } finally {
+            closeResultSet(rs);
+            closeStatement(ps);
+        }
+    }
+
+    /**
+     * <p>
+     * Update all of the triggers of the given group to the given new state, if
      * they are in the given old state.
      * </p>
      *
@@ -1460,6 +2079,30 @@ public class StdJDBCDelegate implements DriverDelegate, StdJDBCConstants {
         }
     }
 
+    public int[] updateTriggerStatesForJobsFromOtherStates(Connection conn,
+                                                           List<JobKey> jobKeys, String[] states, String[] oldStates)
+            throws SQLException {
+        PreparedStatement ps = null;
+
+        try {
+            ps = conn
+                    .prepareStatement(rtp(UPDATE_JOB_TRIGGER_STATES_FROM_OTHER_STATE));
+            for (JobKey jobKey : jobKeys) {
+                for (int i = 0; i < states.length; i++) {
+                    ps.setString(1, states[i]);
+                    ps.setString(2, jobKey.getName());
+                    ps.setString(3, jobKey.getGroup());
+                    ps.setString(4, oldStates[i]);
+                    ps.addBatch();
+                }
+            }
+
+            return executeBatchUpdate(ps);
+        } finally {
+            closeStatement(ps);
+        }
+    }
+
     /**
      * <p>
      * Delete the cron trigger data for a trigger.
@@ -1703,12 +2346,7 @@ public class StdJDBCDelegate implements DriverDelegate, StdJDBCConstants {
                 int misFireInstr = rs.getInt(COL_MISFIRE_INSTRUCTION);
                 int priority = rs.getInt(COL_PRIORITY);
 
-                Map<?, ?> map = null;
-                if (canUseProperties()) {
-                    map = getMapFromProperties(rs);
-                } else {
-                    map = (Map<?, ?>) getObjectFromBlob(rs, COL_JOB_DATAMAP);
-                }
+                JobDataMap map = getJobDataMapFromBlob(rs, COL_JOB_DATAMAP);
 
                 Date nft = null;
                 if (nextFireTime > 0) {
@@ -1767,12 +2405,12 @@ public class StdJDBCDelegate implements DriverDelegate, StdJDBCConstants {
                             .withSchedule(triggerProps.getScheduleBuilder())
                             .forJob(jobKey(jobName, jobGroup));
 
+                    trigger = (OperableTrigger) tb.build();
+
                     if (null != map) {
-                        tb.usingJobData(new JobDataMap(map));
+                        trigger.setJobDataMap(map);
                     }
 
-                    trigger = (OperableTrigger) tb.build();
-
                     trigger.setMisfireInstruction(misFireInstr);
                     trigger.setNextFireTime(nft);
                     trigger.setPreviousFireTime(pft);
@@ -1832,18 +2470,13 @@ public class StdJDBCDelegate implements DriverDelegate, StdJDBCConstants {
 
             if (rs.next()) {
 
-                Map<?, ?> map = null;
-                if (canUseProperties()) {
-                    map = getMapFromProperties(rs);
-                } else {
-                    map = (Map<?, ?>) getObjectFromBlob(rs, COL_JOB_DATAMAP);
-                }
+                JobDataMap map = getJobDataMapFromBlob(rs, COL_JOB_DATAMAP);
 
                 rs.close();
                 ps.close();
 
                 if (null != map) {
-                    return new JobDataMap(map);
+                    return map;
                 }
             }
         } finally {
@@ -1889,6 +2522,36 @@ public class StdJDBCDelegate implements DriverDelegate, StdJDBCConstants {
 
     }
 
+    /**
+     * <p>
+     * Select the state of the trigger of each of the fired-trigger records of
+     * the given scheduler instance, by fire instance id.
+     * </p>
+     *
+     * @param conn       the DB Connection
+     * @param instanceId the id of the scheduler instance
+     * @return the trigger states, by fire instance id
+     */
+    public Map<String, String> selectFiredTriggerStates(Connection conn, String instanceId) throws SQLException {
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+
+        try {
+            ps = conn.prepareStatement(rtp(SELECT_INSTANCES_FIRED_TRIGGER_STATES));
+            ps.setString(1, instanceId);
+            rs = ps.executeQuery();
+
+            Map<String, String> states = new HashMap<String, String>();
+            while (rs.next()) {
+                states.put(rs.getString(COL_ENTRY_ID), rs.getString(COL_TRIGGER_STATE).intern());
+            }
+            return states;
+        } finally {
+            closeResultSet(rs);
+            closeStatement(ps);
+        }
+    }
+
     /**
      * <p>
      * Select a trigger' status (state & next fire time).
@@ -2271,6 +2934,61 @@ public class StdJDBCDelegate implements DriverDelegate, StdJDBCConstants {
         }
     }
 
+    /**
+     * <p>
+     * Select the version of the given stored calendar.
+     * </p>
+     *
+     * @param conn         the DB Connection
+     * @param calendarName the name of the calendar
+     * @return the version, 0 if none was ever written, or null if the
+     *         calendar does not exist
+     */
+    public Long selectCalendarVersion(Connection conn, String calendarName)
+            throws SQLException {
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+
+        try {
+            ps = conn.prepareStatement(rtp(SELECT_CALENDAR_VERSION));
+            ps.setString(1, calendarName);
+            rs = ps.executeQuery();
+
+            if (rs.next()) {
+                return rs.getLong(COL_DATA_VERSION);
+            }
+            return null;
+        } finally {
+            closeResultSet(rs);
+            closeStatement(ps);
+        }
+    }
+
+    /**
+     * <p>
+     * Update the version of the given stored calendar.
+     * </p>
+     *
+     * @param conn         the DB Connection
+     * @param calendarName the name of the calendar
+     * @param version      the new version
+     * @return the number of rows updated
+     */
+    public int updateCalendarVersion(Connection conn, String calendarName, long version)
+            throws SQLException {
+        PreparedStatement ps = null;
+
+        try {
+            ps = conn.prepareStatement(rtp(UPDATE_CALENDAR_VERSION));
+            ps.setLong(1, version);
+            ps.setString(2, calendarName);
+
+            return ps.executeUpdate();
+        } finally {
+            closeStatement(ps);
+        }
+    }
+
     /**
      * <p>
      * Check whether or not a calendar is referenced by any triggers.
@@ -2511,6 +3229,288 @@ public class StdJDBCDelegate implements DriverDelegate, StdJDBCConstants {
         }
     }
 
+    /**
+     * <p>
+     * Select the next triggers to fire, as <code>{@link #selectTriggerToAcquire(Connection, long, long, int)}</code>
+     * does, along with the triggers and their jobs, in a single query joining
+     * the triggers with their jobs and the tables of the standard trigger
+     * types.
+     * </p>
+     *
+     * @param conn          the DB Connection
+     * @param noLaterThan   highest value of <code>getNextFireTime()</code> of the triggers (exclusive)
+     * @param noEarlierThan highest value of <code>getNextFireTime()</code> of the triggers (inclusive)
+     * @param maxCount      maximum number of triggers to return
+     * @param loadHelper    the load helper to load the jobs' classes with
+     * @return A (never null, possibly empty) list of the triggers and their jobs.
+     */
+    public List<TriggerAcquisitionRecord> selectTriggersToAcquire(Connection conn, long noLaterThan, long noEarlierThan,
+                                                                  int maxCount, ClassLoadHelper loadHelper)
+            throws SQLException, IOException, JobPersistenceException {
+        return selectTriggersToAcquire(conn, rtp(SELECT_NEXT_TRIGGERS_TO_ACQUIRE_WITH_JOBS),
+                noLaterThan, noEarlierThan, maxCount, null, loadHelper);
+    }
+
+    /**
+     * <p>
+     * Select the next triggers to fire, as
+     * <code>{@link #selectTriggersToAcquire(Connection, long, long, int, ClassLoadHelper)}</code>
+     * does, among the triggers of the given range of partitions only.
+     * </p>
+     */
+    public List<TriggerAcquisitionRecord> selectTriggersToAcquire(Connection conn, long noLaterThan, long noEarlierThan,
+                                                                  int maxCount, int firstPartition, int lastPartition,
+                                                                  ClassLoadHelper loadHelper)
+            throws SQLException, IOException, JobPersistenceException {
+        return selectTriggersToAcquire(conn, rtp(SELECT_NEXT_TRIGGERS_TO_ACQUIRE_IN_PARTITIONS),
+                noLaterThan, noEarlierThan, maxCount, new int[]{firstPartition, lastPartition}, loadHelper);
+    }
+
+    /**
+     * <p>
+     * Select the next triggers to fire, as
+     * <code>{@link #selectTriggersToAcquire(Connection, long, long, int, ClassLoadHelper)}</code>
+     * does, appending the <code>{@link #getSkipLockedClause() skip locked clause}</code>
+     * to the query.
+     * </p>
+     *
+     * @throws IllegalStateException if this delegate has no skip locked clause
+     */
+    public List<TriggerAcquisitionRecord> selectTriggersToAcquireSkipLocked(Connection conn, long noLaterThan,
+                                                                            long noEarlierThan, int maxCount,
+                                                                            ClassLoadHelper loadHelper)
+            throws SQLException, IOException, JobPersistenceException {
+        String clause = getSkipLockedClause();
+        if (clause == null) {
+            throw new IllegalStateException("No skipLockedClause is set for this delegate.");
+        }
+        return selectTriggersToAcquire(conn, rtp(SELECT_NEXT_TRIGGERS_TO_ACQUIRE_WITH_JOBS) + " " + clause,
+                noLaterThan, noEarlierThan, maxCount, null, loadHelper);
+    }
+
+    public List<UpcomingTriggerRecord> selectUpcomingTriggers(Connection conn, long after, long noLaterThan,
+                                                              long noEarlierThan, int maxCount)
+            throws SQLException {
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        List<UpcomingTriggerRecord> records = new ArrayList<UpcomingTriggerRecord>();
+        try {
+            ps = conn.prepareStatement(rtp(SELECT_UPCOMING_TRIGGERS));
+            ps.setMaxRows(maxCount);
+            ps.setFetchSize(maxCount);
+
+            ps.setString(1, STATE_WAITING);
+            ps.setBigDecimal(2, new BigDecimal(String.valueOf(after)));
+            ps.setBigDecimal(3, new BigDecimal(String.valueOf(noLaterThan)));
+            ps.setBigDecimal(4, new BigDecimal(String.valueOf(noEarlierThan)));
+            rs = ps.executeQuery();
+
+            while (rs.next() && records.size() < maxCount) {
+                records.add(new UpcomingTriggerRecord(
+                        triggerKey(rs.getString(COL_TRIGGER_NAME), rs.getString(COL_TRIGGER_GROUP)),
+                        rs.getLong(COL_NEXT_FIRE_TIME), rs.getInt(COL_PRIORITY), rs.getInt(COL_MISFIRE_INSTRUCTION)));
+            }
+            return records;
+        } finally {
+            closeResultSet(rs);
+            closeStatement(ps);
+        }
+    }
+
+    public List<TriggerAcquisitionRecord> selectTriggersToAcquireByKey(Connection conn, List<TriggerKey> triggerKeys,
+                                                                       ClassLoadHelper loadHelper)
+            throws SQLException, IOException, JobPersistenceException {
+        List<TriggerAcquisitionRecord> records = new ArrayList<TriggerAcquisitionRecord>(triggerKeys.size());
+        if (triggerKeys.isEmpty()) {
+            return records;
+        }
+
+        PreparedStatement ps = null;
+        Map<JobKey, JobDetail> jobs = new HashMap<JobKey, JobDetail>();
+        try {
+            ps = conn.prepareStatement(rtp(SELECT_TRIGGER_TO_ACQUIRE_WITH_JOB));
+            for (TriggerKey triggerKey : triggerKeys) {
+                ps.setString(1, triggerKey.getName());
+                ps.setString(2, triggerKey.getGroup());
+                ps.setString(3, STATE_WAITING);
+                ResultSet rs = ps.executeQuery();
+                try {
+                    if (!rs.next()) {
+                        continue;
+                    }
+                    JobKey jobKey = jobKey(rs.getString(COL_JOB_NAME), rs.getString(COL_JOB_GROUP));
+                    OperableTrigger trigger = readTriggerToAcquire(rs, triggerKey, jobKey);
+                    JobDetail job;
+                    if (jobs.containsKey(jobKey)) {
+                        job = jobs.get(jobKey);
+                    } else {
+                        job = readJobToAcquire(rs, jobKey, loadHelper);
+                        jobs.put(jobKey, job);
+                    }
+                    records.add(new TriggerAcquisitionRecord(triggerKey, trigger, job));
+                } finally {
+                    closeResultSet(rs);
+                }
+            }
+            return records;
+        } finally {
+            closeStatement(ps);
+        }
+    }
+
+    public boolean supportsSkipLocked() {
+        return getSkipLockedClause() != null;
+    }
+
+    /**
+     * Get the clause to append to the query selecting the triggers to
+     * acquire - in which the triggers table has the alias <code>T</code> -
+     * so that it locks the rows of the triggers it selects, skipping the rows
+     * locked by other transactions, e.g. <code>FOR UPDATE OF T SKIP
+     * LOCKED</code>. This is the <code>skipLockedClause</code> setting of
+     * the init string by default, and <code>null</code> if it is not set.
+     * Delegates for databases that support skipping locked rows differently
+     * can override this.
+     */
+    protected String getSkipLockedClause() {
+        return skipLockedClause;
+    }
+
+    private List<TriggerAcquisitionRecord> selectTriggersToAcquire(Connection conn, String sql, long noLaterThan,
+                                                                   long noEarlierThan, int maxCount, int[] partitions,
+                                                                   ClassLoadHelper loadHelper)
+            throws SQLException, IOException, JobPersistenceException {
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        List<TriggerAcquisitionRecord> records = new LinkedList<TriggerAcquisitionRecord>();
+        Map<JobKey, JobDetail> jobs = new HashMap<JobKey, JobDetail>();
+        try {
+            ps = conn.prepareStatement(sql);
+
+            if (maxCount < 1)
+                maxCount = 1; // we want at least one trigger back.
+            ps.setMaxRows(maxCount);
+            ps.setFetchSize(maxCount);
+
+            ps.setString(1, STATE_WAITING);
+            ps.setBigDecimal(2, new BigDecimal(String.valueOf(noLaterThan)));
+            ps.setBigDecimal(3, new BigDecimal(String.valueOf(noEarlierThan)));
+            if (partitions != null) {
+                ps.setInt(4, partitions[0]);
+                ps.setInt(5, partitions[1]);
+            }
+            rs = ps.executeQuery();
+
+            while (rs.next() && records.size() < maxCount) {
+                TriggerKey triggerKey = triggerKey(
+                        rs.getString(COL_TRIGGER_NAME),
+                        rs.getString(COL_TRIGGER_GROUP));
+                JobKey jobKey = jobKey(rs.getString(COL_JOB_NAME), rs.getString(COL_JOB_GROUP));
+
+                OperableTrigger trigger = readTriggerToAcquire(rs, triggerKey, jobKey);
+                JobDetail job;
+                if (jobs.containsKey(jobKey)) {
+                    job = jobs.get(jobKey);
+                } else {
+                    job = readJobToAcquire(rs, jobKey, loadHelper);
+                    jobs.put(jobKey, job);
+                }
+                records.add(new TriggerAcquisitionRecord(triggerKey, trigger, job));
+            }
+
+            return records;
+        } finally {
+            closeResultSet(rs);
+            closeStatement(ps);
+        }
+    }
+
+    /**
+     * Build the trigger at the current row of a query of <code>SELECT_TRIGGERS_WITH_JOBS</code>,
+     * or return <code>null</code> if its type's properties are not part of
+     * the row.
+     */
+    private OperableTrigger readTriggerToAcquire(ResultSet rs, TriggerKey triggerKey, JobKey jobKey)
+            throws SQLException, IOException, JobPersistenceException {
+        String triggerType = rs.getString(COL_TRIGGER_TYPE);
+        TriggerPersistenceDelegate tDel = findTriggerPersistenceDelegate(triggerType);
+        TriggerPropertyBundle triggerProps = null;
+        if (tDel instanceof SimpleTriggerPersistenceDelegate) {
+            if (rs.getString(ALIAS_COL_SIMPLE_TRIGGER_NAME) != null) {
+                triggerProps = ((SimpleTriggerPersistenceDelegate) tDel).readExtendedTriggerProperties(rs);
+            }
+        } else if (tDel instanceof CronTriggerPersistenceDelegate) {
+            if (rs.getString(ALIAS_COL_CRON_TRIGGER_NAME) != null) {
+                triggerProps = ((CronTriggerPersistenceDelegate) tDel).readExtendedTriggerProperties(rs);
+            }
+        } else if (tDel instanceof SimplePropertiesTriggerPersistenceDelegateSupport) {
+            if (rs.getString(ALIAS_COL_SIMPLE_PROPERTIES_TRIGGER_NAME) != null) {
+                triggerProps = ((SimplePropertiesTriggerPersistenceDelegateSupport) tDel).readExtendedTriggerProperties(rs);
+            }
+        }
+        if (triggerProps == null) {
+            return null;
+        }
+
+        JobDataMap map = getJobDataMapFromBlob(rs, COL_JOB_DATAMAP);
+
+        long nextFireTime = rs.getLong(COL_NEXT_FIRE_TIME);
+        long prevFireTime = rs.getLong(COL_PREV_FIRE_TIME);
+        long endTime = rs.getLong(COL_END_TIME);
+
+        TriggerBuilder<?> tb = newTrigger()
+                .withDescription(rs.getString(COL_DESCRIPTION))
+                .withPriority(rs.getInt(COL_PRIORITY))
+                .startAt(new Date(rs.getLong(COL_START_TIME)))
+                .endAt((endTime > 0) ? new Date(endTime) : null)
+                .withIdentity(triggerKey)
+                .modifiedByCalendar(rs.getString(COL_CALENDAR_NAME))
+                .withSchedule(triggerProps.getScheduleBuilder())
+                .forJob(jobKey);
+
+        OperableTrigger trigger = (OperableTrigger) tb.build();
+
+        if (null != map) {
+            trigger.setJobDataMap(map);
+        }
+
+        trigger.setMisfireInstruction(rs.getInt(COL_MISFIRE_INSTRUCTION));
+        trigger.setNextFireTime((nextFireTime > 0) ? new Date(nextFireTime) : null);
+        trigger.setPreviousFireTime((prevFireTime > 0) ? new Date(prevFireTime) : null);
+
+        setTriggerStateProperties(trigger, triggerProps);
+
+        return trigger;
+    }
+
+    /**
+     * Build the job at the current row of a query of <code>SELECT_TRIGGERS_WITH_JOBS</code>,
+     * without its job data, or return <code>null</code> if it does not exist,
+     * or cannot be loaded.
+     */
+    private JobDetail readJobToAcquire(ResultSet rs, JobKey jobKey, ClassLoadHelper loadHelper)
+            throws SQLException, IOException {
+        String jobClass = rs.getString(COL_JOB_CLASS);
+        if (jobClass == null) {
+            return null;
+        }
+
+        JobDetailImpl job = new JobDetailImpl();
+        try {
+            job.setName(jobKey.getName());
+            job.setGroup(jobKey.getGroup());
+            job.setDescription(rs.getString(ALIAS_COL_JOB_DESCRIPTION));
+            job.setJobClass(loadHelper.loadClass(jobClass, Job.class));
+            job.setDurability(getBoolean(rs, COL_IS_DURABLE));
+            job.setRequestsRecovery(getBoolean(rs, COL_REQUESTS_RECOVERY));
+        } catch (ClassNotFoundException e) {
+            // retrieving the job on its own reports the failure
+            return null;
+        }
+
+        return job;
+    }
+
     /**
      * <p>
      * Insert a fired trigger.
@@ -2526,25 +3526,7 @@ public class StdJDBCDelegate implements DriverDelegate, StdJDBCConstants {
         PreparedStatement ps = null;
         try {
             ps = conn.prepareStatement(rtp(INSERT_FIRED_TRIGGER));
-            ps.setString(1, trigger.getFireInstanceId());
-            ps.setString(2, trigger.getKey().getName());
-            ps.setString(3, trigger.getKey().getGroup());
-            ps.setString(4, instanceId);
-            ps.setBigDecimal(5, new BigDecimal(String.valueOf(System.currentTimeMillis())));
-            ps.setBigDecimal(6, new BigDecimal(String.valueOf(trigger.getNextFireTime().getTime())));
-            ps.setString(7, state);
-            if (job != null) {
-                ps.setString(8, trigger.getJobKey().getName());
-                ps.setString(9, trigger.getJobKey().getGroup());
-                setBoolean(ps, 10, job.isConcurrentExectionDisallowed());
-                setBoolean(ps, 11, job.requestsRecovery());
-            } else {
-                ps.setString(8, null);
-                ps.setString(9, null);
-                setBoolean(ps, 10, false);
-                setBoolean(ps, 11, false);
-            }
-            ps.setInt(12, trigger.getPriority());
+            setFiredTriggerParameters(ps, trigger, state, job);
 
             return ps.executeUpdate();
         } finally {
@@ -2552,6 +3534,56 @@ public class StdJDBCDelegate implements DriverDelegate, StdJDBCConstants {
         }
     }
 
+    /**
+     * <p>
+     * Insert a fired trigger record for each of the given triggers, without
+     * their jobs' details, in a single batch.
+     * </p>
+     *
+     * @param conn     the DB Connection
+     * @param triggers the triggers
+     * @param state    the state that the triggers should be stored in
+     * @return the number of rows inserted for each trigger
+     */
+    public int[] insertFiredTriggers(Connection conn, List<OperableTrigger> triggers,
+                                     String state) throws SQLException {
+        PreparedStatement ps = null;
+        try {
+            ps = conn.prepareStatement(rtp(INSERT_FIRED_TRIGGER));
+            for (OperableTrigger trigger : triggers) {
+                setFiredTriggerParameters(ps, trigger, state, null);
+                ps.addBatch();
+            }
+
+            return ps.executeBatch();
+        } finally {
+            closeStatement(ps);
+        }
+    }
+
+    private void setFiredTriggerParameters(PreparedStatement ps, OperableTrigger trigger,
+                                           String state, JobDetail job) throws SQLException {
+        ps.setString(1, trigger.getFireInstanceId());
+        ps.setString(2, trigger.getKey().getName());
+        ps.setString(3, trigger.getKey().getGroup());
+        ps.setString(4, instanceId);
+        ps.setBigDecimal(5, new BigDecimal(String.valueOf(System.currentTimeMillis())));
+        ps.setBigDecimal(6, new BigDecimal(String.valueOf(trigger.getNextFireTime().getTime())));
+        ps.setString(7, state);
+        if (job != null) {
+            ps.setString(8, trigger.getJobKey().getName());
+            ps.setString(9, trigger.getJobKey().getGroup());
+            setBoolean(ps, 10, job.isConcurrentExectionDisallowed());
+            setBoolean(ps, 11, job.requestsRecovery());
+        } else {
+            ps.setString(8, null);
+            ps.setString(9, null);
+            setBoolean(ps, 10, false);
+            setBoolean(ps, 11, false);
+        }
+        ps.setInt(12, trigger.getPriority());
+    }
+
     /**
      * <p>
      * Update a fired trigger.
@@ -2567,34 +3599,66 @@ public class StdJDBCDelegate implements DriverDelegate, StdJDBCConstants {
         PreparedStatement ps = null;
         try {
             ps = conn.prepareStatement(rtp(UPDATE_FIRED_TRIGGER));
+            setFiredTriggerUpdateParameters(ps, trigger, state, job);
 
-            ps.setString(1, instanceId);
-
-            ps.setBigDecimal(2, new BigDecimal(String.valueOf(System.currentTimeMillis())));
-            ps.setBigDecimal(3, new BigDecimal(String.valueOf(trigger.getNextFireTime().getTime())));
-            ps.setString(4, state);
+            return ps.executeUpdate();
+        } finally {
+            closeStatement(ps);
+        }
+    }
 
-            if (job != null) {
-                ps.setString(5, trigger.getJobKey().getName());
-                ps.setString(6, trigger.getJobKey().getGroup());
-                setBoolean(ps, 7, job.isConcurrentExectionDisallowed());
-                setBoolean(ps, 8, job.requestsRecovery());
-            } else {
-                ps.setString(5, null);
-                ps.setString(6, null);
-                setBoolean(ps, 7, false);
-                setBoolean(ps, 8, false);
+    /**
+     * <p>
+     * Update the fired trigger of each of the given triggers, in a single
+     * batch.
+     * </p>
+     *
+     * @param conn       the DB Connection
+     * @param triggers   the triggers
+     * @param state      the state that the triggers should be stored in
+     * @param jobDetails the job of each trigger
+     * @return the number of rows updated for each trigger, 1 where the
+     * driver does not tell
+     */
+    public int[] updateFiredTriggers(Connection conn, List<OperableTrigger> triggers,
+                                     String state, List<JobDetail> jobDetails) throws SQLException {
+        PreparedStatement ps = null;
+        try {
+            ps = conn.prepareStatement(rtp(UPDATE_FIRED_TRIGGER));
+            for (int i = 0; i < triggers.size(); i++) {
+                setFiredTriggerUpdateParameters(ps, triggers.get(i), state, jobDetails.get(i));
+                ps.addBatch();
             }
 
-            ps.setString(9, trigger.getFireInstanceId());
-
-
-            return ps.executeUpdate();
+            return executeBatchUpdate(ps);
         } finally {
             closeStatement(ps);
         }
     }
 
+    private void setFiredTriggerUpdateParameters(PreparedStatement ps, OperableTrigger trigger,
+                                                 String state, JobDetail job) throws SQLException {
+        ps.setString(1, instanceId);
+
+        ps.setBigDecimal(2, new BigDecimal(String.valueOf(System.currentTimeMillis())));
+        ps.setBigDecimal(3, new BigDecimal(String.valueOf(trigger.getNextFireTime().getTime())));
+        ps.setString(4, state);
+
+        if (job != null) {
+            ps.setString(5, trigger.getJobKey().getName());
+            ps.setString(6, trigger.getJobKey().getGroup());
+            setBoolean(ps, 7, job.isConcurrentExectionDisallowed());
+            setBoolean(ps, 8, job.requestsRecovery());
+        } else {
+            ps.setString(5, null);
+            ps.setString(6, null);
+            setBoolean(ps, 7, false);
+            setBoolean(ps, 8, false);
+        }
+
+        ps.setString(9, trigger.getFireInstanceId());
+    }
+
     /**
      * <p>
      * Select the states of all fired-trigger records for a given trigger, or
@@ -2795,6 +3859,22 @@ public class StdJDBCDelegate implements DriverDelegate, StdJDBCConstants {
         }
     }
 
+    public int[] deleteFiredTriggers(Connection conn, List<String> entryIds)
+            throws SQLException {
+        PreparedStatement ps = null;
+        try {
+            ps = conn.prepareStatement(rtp(DELETE_FIRED_TRIGGER));
+            for (String entryId : entryIds) {
+                ps.setString(1, entryId);
+                ps.addBatch();
+            }
+
+            return executeBatchUpdate(ps);
+        } finally {
+            closeStatement(ps);
+        }
+    }
+
     public int selectJobExecutionCount(Connection conn, JobKey jobKey) throws SQLException {
         PreparedStatement ps = null;
         ResultSet rs = null;
@@ -2856,6 +3936,22 @@ public class StdJDBCDelegate implements DriverDelegate, StdJDBCConstants {
         }
     }
 
+    public int updateSchedulerStatePartitions(Connection conn, String theInstanceId,
+                                              int firstPartition, int lastPartition)
+            throws SQLException {
+        PreparedStatement ps = null;
+        try {
+            ps = conn.prepareStatement(rtp(UPDATE_SCHEDULER_STATE_PARTITIONS));
+            ps.setInt(1, firstPartition);
+            ps.setInt(2, lastPartition);
+            ps.setString(3, theInstanceId);
+
+            return ps.executeUpdate();
+        } finally {
+            closeStatement(ps);
+        }
+    }
+
     public List<SchedulerStateRecord> selectSchedulerStateRecords(Connection conn, String theInstanceId)
             throws SQLException {
         PreparedStatement ps = null;
@@ -2898,12 +3994,47 @@ public class StdJDBCDelegate implements DriverDelegate, StdJDBCConstants {
      * Replace the table prefix in a query by replacing any occurrences of
      * "{0}" with the table prefix.
      * </p>
+     * <p>
+     * Each query is only substituted once: the queries of
+     * <code>{@link StdJDBCConstants}</code> when the delegate is initialized,
+     * and any other query the first time it is used.
+     * </p>
      *
      * @param query the unsubstitued query
      * @return the query, with proper table prefix substituted
      */
     protected final String rtp(String query) {
-        return Util.rtp(query, tablePrefix, getSchedulerNameLiteral());
+        String expanded = expandedQueries.get(query);
+        if (expanded == null) {
+            expanded = Util.rtp(query, tablePrefix, getSchedulerNameLiteral());
+            expandedQueries.put(query, expanded);
+        }
+        return expanded;
+    }
+
+    /**
+     * <p>
+     * Substitute the table prefix and scheduler name in all of the queries
+     * of <code>{@link StdJDBCConstants}</code>.
+     * </p>
+     */
+    protected void expandQueries() {
+        expandedQueries.clear();
+        schedNameLiteral = null;
+        for (Field field : StdJDBCConstants.class.getFields()) {
+            if (field.getType() != String.class) {
+                continue;
+            }
+            String query;
+            try {
+                query = (String) field.get(null);
+            } catch (IllegalAccessException e) {
+                continue;
+            }
+            if (query.contains(TABLE_PREFIX_SUBST)) {
+                expandedQueries.put(query, Util.rtp(query, tablePrefix, getSchedulerNameLiteral()));
+            }
+        }
     }
 
     private String schedNameLiteral = null;
@@ -2947,6 +4078,20 @@ public class StdJDBCDelegate implements DriverDelegate, StdJDBCConstants {
      */
     protected ByteArrayOutputStream serializeJobData(JobDataMap data)
             throws IOException {
+        return compressBlob(encodeJobData(data));
+    }
+
+    private ByteArrayOutputStream encodeJobData(JobDataMap data)
+            throws IOException {
+        JobDataMapCodec codec = getJobDataMapCodec();
+        if (codec != null) {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            if (null != data) {
+                baos.write(codec.encode(data.getWrappedMap()));
+            }
+            return baos;
+        }
+
         if (canUseProperties()) {
             return serializeProperties(data);
         }
@@ -3069,7 +4214,7 @@ public class StdJDBCDelegate implements DriverDelegate, StdJDBCConstants {
                         && ((ByteArrayInputStream) binaryInput).available() == 0) {
                     //do nothing
                 } else {
-                    ObjectInputStream in = new ObjectInputStream(binaryInput);
+                    ObjectInputStream in = new ObjectInputStream(getDecompressingStream(binaryInput));
                     try {
                         obj = in.readObject();
                     } finally {
@@ -3082,6 +4227,75 @@ public class StdJDBCDelegate implements DriverDelegate, StdJDBCConstants {
         return obj;
     }
 
+    /**
+     * <p>
+     * Compress the given BLOB payload if it has at least
+     * <code>{@link #getCompressionThreshold()}</code> bytes, and compression
+     * makes it smaller. Compressed payloads are in the GZIP format, whose
+     * header sets them apart from uncompressed ones, so that both can be
+     * stored side by side.
+     * </p>
+     *
+     * @return the compressed payload, or the given one
+     */
+    protected ByteArrayOutputStream compressBlob(ByteArrayOutputStream baos) throws IOException {
+        if (compressionThreshold == 0 || baos.size() < compressionThreshold) {
+            return baos;
+        }
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(baos.size() / 4);
+        GZIPOutputStream out = new GZIPOutputStream(compressed);
+        baos.writeTo(out);
+        out.close();
+        if (compressed.size() >= baos.size()) {
+            return baos;
+        }
+
+        compressedBlobCount.incrementAndGet();
+        bytesSavedByCompression.addAndGet(baos.size() - compressed.size());
+        return compressed;
+    }
+
+    /**
+     * <p>
+     * Get a stream of the uncompressed content of the given BLOB stream,
+     * which is decompressed if it was written compressed by
+     * <code>{@link #compressBlob(ByteArrayOutputStream)}</code>.
+     * </p>
+     */
+    protected InputStream getDecompressingStream(InputStream binaryInput) throws IOException {
+        InputStream in = binaryInput.markSupported() ? binaryInput : new BufferedInputStream(binaryInput);
+        in.mark(2);
+        int b1 = in.read();
+        int b2 = in.read();
+        in.reset();
+        if (b1 == (GZIPInputStream.GZIP_MAGIC & 0xFF) && b2 == (GZIPInputStream.GZIP_MAGIC >> 8)) {
+            return new GZIPInputStream(in);
+        }
+        return in;
+    }
+
+    /**
+     * <p>
+     * This method should be overridden by any delegate subclasses that need
+     * special handling for BLOBs. The default implementation uses standard
+     * JDBC <code>java.sql.Blob</code> operations.
+     * </p>
+     *
+     * @param rs      the result set, already queued to the correct row
+     * @param colName the column name for the BLOB
+     * @return the bytes of the BLOB, or null if it is null
+     */
+    protected byte[] getBytesFromBlob(ResultSet rs, String colName)
+            throws IOException, SQLException {
+        Blob blobLocator = rs.getBlob(colName);
+        if (blobLocator == null) {
+            return null;
+        }
+        long length = blobLocator.length();
+        return (length == 0) ? new byte[0] : blobLocator.getBytes(1, (int) length);
+    }
+
     /**
      * <p>
      * This method should be overridden by any delegate subclasses that need
@@ -3159,6 +4373,20 @@ public class StdJDBCDelegate implements DriverDelegate, StdJDBCConstants {
         }
     }
 
+    /**
+     * Executes the batch of the given statement, counting the rows of each
+     * of its updates as 1 where the driver does not report them.
+     */
+    protected static int[] executeBatchUpdate(PreparedStatement ps) throws SQLException {
+        int[] counts = ps.executeBatch();
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] == Statement.SUCCESS_NO_INFO) {
+                counts[i] = 1;
+            }
+        }
+        return counts;
+    }
+
 
     /**
      * Sets the designated parameter to the given Java <code>boolean</code> value.
@@ -0,0 +1,65 @@
+/*
+ * All content copyright Terracotta, Inc., unless otherwise indicated. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.quartz.job.jdbcjobstore;
+
+import org.quartz.job.JobDetail;
+import org.quartz.spi.OperableTrigger;
+import org.quartz.triggers.TriggerKey;
+
+/**
+ * <p>
+ * Conveys a trigger that is a candidate for acquisition, with its job, as
+ * selected by <code>{@link DriverDelegate#selectTriggersToAcquire}</code>.
+ * </p>
+ * <p>
+ * The job is read without its <code>JobDataMap</code>, which is not needed
+ * to acquire the trigger, and is read when the trigger fires.
+ * </p>
+ * <p>
+ * The trigger or the job is <code>null</code> when it could not be read
+ * along with the trigger's key - e.g. for blob triggers, or triggers
+ * persisted by a custom <code>{@link TriggerPersistenceDelegate}</code> -
+ * and has to be retrieved on its own.
+ * </p>
+ */
+public class TriggerAcquisitionRecord {
+
+    private final TriggerKey triggerKey;
+
+    private final OperableTrigger trigger;
+
+    private final JobDetail jobDetail;
+
+    public TriggerAcquisitionRecord(TriggerKey triggerKey, OperableTrigger trigger, JobDetail jobDetail) {
+        this.triggerKey = triggerKey;
+        this.trigger = trigger;
+        this.jobDetail = jobDetail;
+    }
+
+    public TriggerKey getTriggerKey() {
+        return triggerKey;
+    }
+
+    public OperableTrigger getTrigger() {
+        return trigger;
+    }
+
+    public JobDetail getJobDetail() {
+        return jobDetail;
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * All content copyright Terracotta, Inc., unless otherwise indicated. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.quartz.job.jdbcjobstore;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+
+import org.quartz.spi.OperableTrigger;
+
+/**
+ * A <code>{@link TriggerPersistenceDelegate}</code> that knows which of the
+ * extended properties of its type of <code>Trigger</code> change when it
+ * fires - such as the number of times it was triggered - so that only those
+ * are written when a trigger fires, and that only the fire times and state of
+ * the trigger itself need to be.
+ * <p>
+ * Triggers whose delegate does not implement this interface are written in
+ * full when they fire.
+ * </p>
+ *
+ * @see DriverDelegate#updateTriggersAfterFiring(Connection, List, List, List)
+ */
+public interface TriggerFiringPersistenceDelegate extends TriggerPersistenceDelegate {
+
+    /**
+     * Update the extended properties that changed when the given triggers,
+     * all of the type handled by this delegate, fired.
+     *
+     * @return the number of rows updated for each trigger, in order, all 0 if
+     * firing does not change any of the extended properties
+     */
+    public int[] updateFiredTriggerProperties(Connection conn, List<OperableTrigger> triggers) throws SQLException;
+}
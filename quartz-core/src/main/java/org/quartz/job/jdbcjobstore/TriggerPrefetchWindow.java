@@ -0,0 +1,153 @@
+/*
+ * All content copyright Terracotta, Inc., unless otherwise indicated. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.quartz.job.jdbcjobstore;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.quartz.triggers.Trigger;
+import org.quartz.triggers.TriggerKey;
+
+/**
+ * The waiting triggers due up to a fire time, in the order they are to be
+ * acquired, so that triggers can be acquired by their keys rather than by
+ * selecting the next triggers again. The window covers every waiting
+ * trigger up to the fire time it was filled to, and is extended beyond it
+ * as time goes by.
+ * <p>
+ * Invalidating the window empties it, and makes the triggers selected
+ * before it was invalidated, that may miss its changes, be discarded.
+ * </p>
+ *
+ * @see JobStoreSupport#setPrefetchWindow(long)
+ */
+class TriggerPrefetchWindow {
+
+    private static final Comparator<UpcomingTriggerRecord> ACQUISITION_ORDER = new Comparator<UpcomingTriggerRecord>() {
+        public int compare(UpcomingTriggerRecord r1, UpcomingTriggerRecord r2) {
+            if (r1.getNextFireTime() != r2.getNextFireTime()) {
+                return r1.getNextFireTime() < r2.getNextFireTime() ? -1 : 1;
+            }
+            if (r1.getPriority() != r2.getPriority()) {
+                return r1.getPriority() > r2.getPriority() ? -1 : 1;
+            }
+            return r1.getTriggerKey().compareTo(r2.getTriggerKey());
+        }
+    };
+
+    private final TreeSet<UpcomingTriggerRecord> records = new TreeSet<UpcomingTriggerRecord>(ACQUISITION_ORDER);
+
+    private final Map<TriggerKey, UpcomingTriggerRecord> recordsByKey = new HashMap<TriggerKey, UpcomingTriggerRecord>();
+
+    // the fire time up to which every waiting trigger is in the window, negative if none is
+    private long coveredUntil = -1L;
+
+    private long generation = 0L;
+
+    synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Get the fire time up to which every waiting trigger is in the window,
+     * or a negative value if the window is empty.
+     */
+    synchronized long getCoveredUntil() {
+        return coveredUntil;
+    }
+
+    synchronized boolean covers(long fireTime) {
+        return coveredUntil >= 0L && fireTime <= coveredUntil;
+    }
+
+    /**
+     * Add the waiting triggers selected after the fire time the window
+     * covers and up to the given one, in order, at most the given number of
+     * them - unless the window was invalidated since the given generation.
+     *
+     * @return whether or not the triggers were added
+     */
+    synchronized boolean extend(long generation, List<UpcomingTriggerRecord> selected, long until, int maxCount) {
+        if (generation != this.generation) {
+            return false;
+        }
+        for (UpcomingTriggerRecord record : selected) {
+            put(record);
+        }
+        // if cut short, other triggers may fire at the same time as the last one
+        long extendedUntil = selected.size() < maxCount
+                ? until : selected.get(selected.size() - 1).getNextFireTime() - 1;
+        coveredUntil = Math.max(coveredUntil, extendedUntil);
+        return true;
+    }
+
+    /**
+     * Remove and return the first triggers due no later than the given
+     * time, at most the given number of them. The triggers that misfired -
+     * due before the given misfire time - are left to the misfire handler.
+     */
+    synchronized List<UpcomingTriggerRecord> take(long noLaterThan, long misfireTime, int maxCount) {
+        List<UpcomingTriggerRecord> taken = new ArrayList<UpcomingTriggerRecord>();
+        Iterator<UpcomingTriggerRecord> it = records.iterator();
+        while (it.hasNext() && taken.size() < maxCount) {
+            UpcomingTriggerRecord record = it.next();
+            if (record.getNextFireTime() > noLaterThan) {
+                break;
+            }
+            it.remove();
+            recordsByKey.remove(record.getTriggerKey());
+            if (record.getNextFireTime() >= misfireTime
+                    || record.getMisfireInstruction() == Trigger.MISFIRE_INSTRUCTION_IGNORE_MISFIRE_POLICY) {
+                taken.add(record);
+            }
+        }
+        return taken;
+    }
+
+    /**
+     * Add the given trigger, which is now waiting, if the window covers its
+     * fire time. Otherwise it is selected when the window is extended to it.
+     */
+    synchronized void add(UpcomingTriggerRecord record) {
+        if (covers(record.getNextFireTime())) {
+            put(record);
+        }
+    }
+
+    synchronized void invalidate() {
+        records.clear();
+        recordsByKey.clear();
+        coveredUntil = -1L;
+        generation++;
+    }
+
+    synchronized int size() {
+        return records.size();
+    }
+
+    private void put(UpcomingTriggerRecord record) {
+        UpcomingTriggerRecord previous = recordsByKey.put(record.getTriggerKey(), record);
+        if (previous != null) {
+            records.remove(previous);
+        }
+        records.add(record);
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * All content copyright Terracotta, Inc., unless otherwise indicated. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.quartz.job.jdbcjobstore;
+
+import org.quartz.triggers.TriggerKey;
+
+/**
+ * <p>
+ * Conveys the key and next fire time of a waiting trigger, as selected by
+ * <code>{@link DriverDelegate#selectUpcomingTriggers}</code>, along with what
+ * orders it among the triggers firing at the same time and tells whether it
+ * can misfire.
+ * </p>
+ */
+public class UpcomingTriggerRecord {
+
+    private final TriggerKey triggerKey;
+
+    private final long nextFireTime;
+
+    private final int priority;
+
+    private final int misfireInstruction;
+
+    public UpcomingTriggerRecord(TriggerKey triggerKey, long nextFireTime, int priority, int misfireInstruction) {
+        this.triggerKey = triggerKey;
+        this.nextFireTime = nextFireTime;
+        this.priority = priority;
+        this.misfireInstruction = misfireInstruction;
+    }
+
+    public TriggerKey getTriggerKey() {
+        return triggerKey;
+    }
+
+    public long getNextFireTime() {
+        return nextFireTime;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    public int getMisfireInstruction() {
+        return misfireInstruction;
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * All content copyright Terracotta, Inc., unless otherwise indicated. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.quartz.job.jdbcjobstore;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache of values read from the database, each held along with
+ * the version of the row it was read from. A value is only returned for the
+ * version it was cached with, so that an entry outdated by another instance
+ * of a cluster is never used - comparing the versions is all that is needed
+ * to invalidate it. The least recently used entries are evicted once the
+ * cache is full.
+ *
+ * @see JobStoreSupport#setJobAndCalendarCacheSize(int)
+ */
+class VersionedCache<K, V> {
+
+    private final LinkedHashMap<K, Entry<V>> entries;
+
+    VersionedCache(final int maxSize) {
+        this.entries = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Get the value cached for the given key, or null if none is cached for
+     * the given version.
+     */
+    synchronized V get(K key, long version) {
+        Entry<V> entry = entries.get(key);
+        return (entry != null && entry.version == version) ? entry.value : null;
+    }
+
+    synchronized void put(K key, long version, V value) {
+        entries.put(key, new Entry<V>(version, value));
+    }
+
+    synchronized void remove(K key) {
+        entries.remove(key);
+    }
+
+    synchronized void clear() {
+        entries.clear();
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    private static final class Entry<V> {
+
+        private final long version;
+
+        private final V value;
+
+        Entry(long version, V value) {
+            this.version = version;
+            this.value = value;
+        }
+    }
+}
@@ -441,6 +441,21 @@ public class QuartzScheduler implements RemotableQuartzScheduler {
         return resources.getJobStore().getClass();
     }
 
+    /**
+     * <p>
+     * Get an estimate of the memory taken by the <code>JobStore</code>'s
+     * data, or <code>null</code> if it is not a
+     * <code>{@link FootprintReporter}</code>.
+     * </p>
+     */
+    public JobStoreFootprint getJobStoreFootprint() {
+        JobStore jobStore = resources.getJobStore();
+        if (jobStore instanceof FootprintReporter) {
+            return ((FootprintReporter) jobStore).getFootprint();
+        }
+        return null;
+    }
+
     public boolean supportsPersistence() {
         return resources.getJobStore().supportsPersistence();
     }
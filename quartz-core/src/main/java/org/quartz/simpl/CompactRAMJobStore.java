@@ -0,0 +1,173 @@
+/*
+ * All content copyright Terracotta, Inc., unless otherwise indicated. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.quartz.simpl;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.quartz.exception.ObjectAlreadyExistsException;
+import org.quartz.job.JobKey;
+import org.quartz.job.JobPersistenceException;
+import org.quartz.spi.OperableTrigger;
+import org.quartz.triggers.SimpleTriggerImpl;
+import org.quartz.triggers.TriggerKey;
+
+/**
+ * <p>
+ * A <code>{@link RAMJobStore}</code> that needs far less memory per
+ * <code>SimpleTrigger</code>, for schedules of millions of triggers.
+ * </p>
+ * <p>
+ * The schedule of each stored <code>SimpleTriggerImpl</code> - its fire
+ * times, repeat settings, priority, misfire instruction and calendar - is
+ * kept in arrays of primitives shared by all triggers, instead of in a
+ * trigger object with its own <code>Date</code>s and <code>JobDataMap</code>.
+ * The store indexes small handles to that state, whose keys share their
+ * group names and job key with the other triggers of the group and job.
+ * Full trigger objects are only created when triggers are handed out, as by
+ * <code>acquireNextTriggers</code> or <code>retrieveTrigger</code>, or when
+ * their schedule changes as they fire or misfire.
+ * </p>
+ * <p>
+ * Triggers of other types are stored as by <code>RAMJobStore</code>.
+ * </p>
+ *
+ * @see CompactSimpleTrigger
+ */
+public class CompactRAMJobStore extends RAMJobStore {
+
+    /*
+     * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+     *
+     * Data members.
+     *
+     * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+     */
+
+    private final SimpleTriggerSlab slab = new SimpleTriggerSlab(1024);
+
+    private final Map<String, String> groupNames = new HashMap<String, String>();
+
+    /*
+     * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+     *
+     * Constructors.
+     *
+     * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+     */
+
+    /**
+     * <p>
+     * Create a new <code>CompactRAMJobStore</code>.
+     * </p>
+     */
+    public CompactRAMJobStore() {
+    }
+
+    /*
+     * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+     *
+     * Interface.
+     *
+     * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+     */
+
+    /**
+     * The number of triggers whose state is kept in compact form.
+     */
+    public int getNumberOfCompactTriggers() {
+        synchronized (lock) {
+            return slab.getTriggerCount();
+        }
+    }
+
+    @Override
+    public void storeTrigger(OperableTrigger newTrigger, boolean replaceExisting) throws JobPersistenceException {
+        synchronized (lock) {
+            // fail before a slot is taken for the new trigger
+            if (!replaceExisting && triggersByKey.get(newTrigger.getKey()) != null) {
+                throw new ObjectAlreadyExistsException(newTrigger);
+            }
+            if (retrieveJob(newTrigger.getJobKey()) == null) {
+                throw new JobPersistenceException("The job ("
+                        + newTrigger.getJobKey()
+                        + ") referenced by the trigger does not exist.");
+            }
+
+            super.storeTrigger(newTrigger, replaceExisting);
+        }
+    }
+
+    @Override
+    protected OperableTrigger createStoredTrigger(OperableTrigger trigger) {
+        OperableTrigger copy = (OperableTrigger) trigger.clone();
+        // subclasses may hold state of their own
+        if (copy.getClass() != SimpleTriggerImpl.class) {
+            return copy;
+        }
+
+        synchronized (lock) {
+            String group = groupNames.get(copy.getKey().getGroup());
+            if (group == null) {
+                group = copy.getKey().getGroup();
+                groupNames.put(group, group);
+            }
+            JobWrapper jw = jobsByKey.get(copy.getJobKey());
+            JobKey jobKey = (jw != null) ? jw.key : copy.getJobKey();
+
+            return new CompactSimpleTrigger(slab, (SimpleTriggerImpl) copy,
+                    new TriggerKey(copy.getKey().getName(), group), jobKey);
+        }
+    }
+
+    @Override
+    protected boolean removeTrigger(TriggerKey key, boolean removeOrphanedJob) {
+        synchronized (lock) {
+            TriggerWrapper tw = triggersByKey.get(key);
+            boolean found = super.removeTrigger(key, removeOrphanedJob);
+            if (found) {
+                release(tw);
+            }
+            return found;
+        }
+    }
+
+    @Override
+    public boolean replaceTrigger(TriggerKey triggerKey, OperableTrigger newTrigger) throws JobPersistenceException {
+        synchronized (lock) {
+            TriggerWrapper tw = triggersByKey.get(triggerKey);
+            if (tw != null && !tw.jobKey.equals(newTrigger.getJobKey())) {
+                throw new JobPersistenceException("New trigger is not related to the same job as the old trigger.");
+            }
+            try {
+                return super.replaceTrigger(triggerKey, newTrigger);
+            } finally {
+                // whether replaced, or put back as a new copy
+                if (tw != null && triggersByKey.get(triggerKey) != tw) {
+                    release(tw);
+                }
+            }
+        }
+    }
+
+    private void release(TriggerWrapper tw) {
+        if (tw.trigger instanceof CompactSimpleTrigger) {
+            ((CompactSimpleTrigger) tw.trigger).release();
+        }
+    }
+}
@@ -0,0 +1,312 @@
+/*
+ * All content copyright Terracotta, Inc., unless otherwise indicated. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.quartz.simpl;
+
+import java.util.Date;
+
+import org.quartz.calendar.Calendar;
+import org.quartz.job.JobDataMap;
+import org.quartz.job.JobExecutionContext;
+import org.quartz.job.JobExecutionException;
+import org.quartz.job.JobKey;
+import org.quartz.scheduler.ScheduleBuilder;
+import org.quartz.scheduler.SchedulerException;
+import org.quartz.spi.OperableTrigger;
+import org.quartz.triggers.SimpleTrigger;
+import org.quartz.triggers.SimpleTriggerImpl;
+import org.quartz.triggers.Trigger;
+import org.quartz.triggers.TriggerBuilder;
+import org.quartz.triggers.TriggerKey;
+
+/**
+ * A <code>SimpleTrigger</code> whose state is kept in a slot of a
+ * <code>{@link SimpleTriggerSlab}</code>, as stored by
+ * <code>{@link CompactRAMJobStore}</code>.
+ * <p>
+ * Reading a property reads the slab; operations that change the schedule
+ * are carried out by a temporary <code>SimpleTriggerImpl</code>, whose state
+ * is then written back. <code>clone()</code> returns a
+ * <code>SimpleTriggerImpl</code>, so the copies handed out by the store are
+ * ordinary, independent triggers.
+ * </p>
+ * <p>
+ * Like the slab, instances are guarded by the store's lock, and must not be
+ * used once their trigger has been removed from the store.
+ * </p>
+ */
+class CompactSimpleTrigger implements OperableTrigger, SimpleTrigger {
+
+    private static final long serialVersionUID = 3961245728117563245L;
+
+    private final transient SimpleTriggerSlab slab;
+
+    private transient int slot;
+
+    private TriggerKey key;
+
+    private JobKey jobKey;
+
+    CompactSimpleTrigger(SimpleTriggerSlab slab, SimpleTriggerImpl trigger, TriggerKey key, JobKey jobKey) {
+        this.slab = slab;
+        this.key = key;
+        this.jobKey = jobKey;
+        this.slot = slab.add(trigger);
+    }
+
+    /**
+     * Free the trigger's slot in the slab.
+     */
+    void release() {
+        slab.remove(slot());
+        slot = -1;
+    }
+
+    private int slot() {
+        if (slot < 0) {
+            throw new IllegalStateException("Trigger '" + key + "' has been removed from the store.");
+        }
+        return slot;
+    }
+
+    private SimpleTriggerImpl materialize() {
+        return slab.read(slot(), key, jobKey);
+    }
+
+    private void update(SimpleTriggerImpl trigger) {
+        slab.write(slot(), trigger);
+    }
+
+    public TriggerKey getKey() {
+        return key;
+    }
+
+    public void setKey(TriggerKey key) {
+        this.key = key;
+    }
+
+    public JobKey getJobKey() {
+        return jobKey;
+    }
+
+    public void setJobKey(JobKey key) {
+        this.jobKey = key;
+    }
+
+    public String getDescription() {
+        return slab.getDescription(slot());
+    }
+
+    public void setDescription(String description) {
+        slab.setDescription(slot(), description);
+    }
+
+    public String getCalendarName() {
+        return slab.getCalendarName(slot());
+    }
+
+    public void setCalendarName(String calendarName) {
+        slab.setCalendarName(slot(), calendarName);
+    }
+
+    /**
+     * Returns the stored map, or a new, empty map which is not stored if
+     * the trigger has no data.
+     */
+    public JobDataMap getJobDataMap() {
+        JobDataMap jobDataMap = slab.getJobDataMap(slot());
+        return (jobDataMap != null) ? jobDataMap : new JobDataMap();
+    }
+
+    public void setJobDataMap(JobDataMap jobDataMap) {
+        slab.setJobDataMap(slot(), jobDataMap);
+    }
+
+    public int getPriority() {
+        return slab.getPriority(slot());
+    }
+
+    public void setPriority(int priority) {
+        slab.setPriority(slot(), priority);
+    }
+
+    public int getMisfireInstruction() {
+        return slab.getMisfireInstruction(slot());
+    }
+
+    public void setMisfireInstruction(int misfireInstruction) {
+        SimpleTriggerImpl trigger = materialize();
+        trigger.setMisfireInstruction(misfireInstruction);
+        update(trigger);
+    }
+
+    public Date getStartTime() {
+        return slab.getStartTime(slot());
+    }
+
+    public void setStartTime(Date startTime) {
+        SimpleTriggerImpl trigger = materialize();
+        trigger.setStartTime(startTime);
+        update(trigger);
+    }
+
+    public Date getEndTime() {
+        return slab.getEndTime(slot());
+    }
+
+    public void setEndTime(Date endTime) {
+        SimpleTriggerImpl trigger = materialize();
+        trigger.setEndTime(endTime);
+        update(trigger);
+    }
+
+    public Date getNextFireTime() {
+        return slab.getNextFireTime(slot());
+    }
+
+    public void setNextFireTime(Date nextFireTime) {
+        slab.setNextFireTime(slot(), nextFireTime);
+    }
+
+    public Date getPreviousFireTime() {
+        return slab.getPreviousFireTime(slot());
+    }
+
+    public void setPreviousFireTime(Date previousFireTime) {
+        slab.setPreviousFireTime(slot(), previousFireTime);
+    }
+
+    public int getRepeatCount() {
+        return slab.getRepeatCount(slot());
+    }
+
+    public long getRepeatInterval() {
+        return slab.getRepeatInterval(slot());
+    }
+
+    public int getTimesTriggered() {
+        return slab.getTimesTriggered(slot());
+    }
+
+    public String getFireInstanceId() {
+        return slab.getFireInstanceId(slot());
+    }
+
+    public void setFireInstanceId(String id) {
+        slab.setFireInstanceId(slot(), id);
+    }
+
+    public void triggered(Calendar calendar) {
+        SimpleTriggerImpl trigger = materialize();
+        trigger.triggered(calendar);
+        update(trigger);
+    }
+
+    public Date computeFirstFireTime(Calendar calendar) {
+        SimpleTriggerImpl trigger = materialize();
+        Date firstFireTime = trigger.computeFirstFireTime(calendar);
+        update(trigger);
+        return firstFireTime;
+    }
+
+    public void updateAfterMisfire(Calendar cal) {
+        SimpleTriggerImpl trigger = materialize();
+        trigger.updateAfterMisfire(cal);
+        update(trigger);
+    }
+
+    public void updateWithNewCalendar(Calendar cal, long misfireThreshold) {
+        SimpleTriggerImpl trigger = materialize();
+        trigger.updateWithNewCalendar(cal, misfireThreshold);
+        update(trigger);
+    }
+
+    public CompletedExecutionInstruction executionComplete(JobExecutionContext context, JobExecutionException result) {
+        return materialize().executionComplete(context, result);
+    }
+
+    public void validate() throws SchedulerException {
+        materialize().validate();
+    }
+
+    public boolean mayFireAgain() {
+        return materialize().mayFireAgain();
+    }
+
+    public Date getFireTimeAfter(Date afterTime) {
+        return materialize().getFireTimeAfter(afterTime);
+    }
+
+    public Date getFinalFireTime() {
+        return materialize().getFinalFireTime();
+    }
+
+    public TriggerBuilder<SimpleTrigger> getTriggerBuilder() {
+        return materialize().getTriggerBuilder();
+    }
+
+    public ScheduleBuilder<SimpleTrigger> getScheduleBuilder() {
+        return materialize().getScheduleBuilder();
+    }
+
+    public int compareTo(Trigger other) {
+
+        if (other.getKey() == null && getKey() == null)
+            return 0;
+        if (other.getKey() == null)
+            return -1;
+        if (getKey() == null)
+            return 1;
+
+        return getKey().compareTo(other.getKey());
+    }
+
+    /**
+     * Returns a <code>SimpleTriggerImpl</code> with this trigger's state.
+     */
+    @Override
+    public Object clone() {
+        return materialize();
+    }
+
+    /**
+     * Serialized as a <code>SimpleTriggerImpl</code>.
+     */
+    private Object writeReplace() {
+        return materialize();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof Trigger))
+            return false;
+
+        Trigger other = (Trigger) o;
+
+        return !(other.getKey() == null || getKey() == null) && getKey().equals(other.getKey());
+    }
+
+    @Override
+    public int hashCode() {
+        return (key != null) ? key.hashCode() : super.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return materialize().toString();
+    }
+}
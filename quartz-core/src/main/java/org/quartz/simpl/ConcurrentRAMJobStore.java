@@ -0,0 +1,225 @@
+/*
+ * All content copyright Terracotta, Inc., unless otherwise indicated. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.quartz.simpl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.quartz.calendar.Calendar;
+import org.quartz.job.JobDetail;
+import org.quartz.job.JobKey;
+import org.quartz.matchers.GroupMatcher;
+import org.quartz.spi.OperableTrigger;
+import org.quartz.triggers.Trigger.TriggerState;
+import org.quartz.triggers.TriggerKey;
+
+/**
+ * <p>
+ * A <code>{@link RAMJobStore}</code> whose query operations never wait for
+ * the store's lock.
+ * </p>
+ * <p>
+ * Jobs, triggers, groups and calendars are held in concurrent maps, and
+ * waiting triggers in a concurrent skip list (unless
+ * <code>useTimingWheel</code> is set), so that lookups such as
+ * <code>retrieveJob</code>, <code>retrieveTrigger</code>,
+ * <code>getTriggerState</code>, <code>getJobKeys</code> or
+ * <code>getTriggersForJob</code> - typically issued by management consoles -
+ * neither block nor are blocked by the <code>QuartzSchedulerThread</code>
+ * acquiring and firing triggers. Reads are weakly consistent: they observe
+ * each stored object either before or after a concurrent change, but a
+ * multi-object query may span several changes.
+ * </p>
+ * <p>
+ * Changes to the schedule are still serialized by the store's lock, which
+ * keeps the key, group, job and time indexes consistent with each other.
+ * A trigger's schedule is only changed in place while holding its wrapper's
+ * monitor, which readers take when copying it.
+ * </p>
+ *
+ * @see RAMJobStore
+ */
+public class ConcurrentRAMJobStore extends RAMJobStore {
+
+    /*
+     * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+     *
+     * Constructors.
+     *
+     * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+     */
+
+    /**
+     * <p>
+     * Create a new <code>ConcurrentRAMJobStore</code>.
+     * </p>
+     */
+    public ConcurrentRAMJobStore() {
+    }
+
+    /*
+     * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+     *
+     * Interface.
+     *
+     * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+     */
+
+    @Override
+    protected <K, V> Map<K, V> createMap(int initialCapacity) {
+        return new ConcurrentHashMap<K, V>(initialCapacity);
+    }
+
+    @Override
+    protected <E> Set<E> createSet() {
+        return Collections.newSetFromMap(new ConcurrentHashMap<E, Boolean>());
+    }
+
+    @Override
+    protected Set<TriggerWrapper> createTriggerSet() {
+        return Collections.newSetFromMap(new ConcurrentHashMap<TriggerWrapper, Boolean>(4));
+    }
+
+    @Override
+    protected TriggerTimeIndex createTimeIndex(boolean useTimingWheel) {
+        return useTimingWheel ? super.createTimeIndex(true) : new SkipListTriggerTimeIndex();
+    }
+
+    @Override
+    public JobDetail retrieveJob(JobKey jobKey) {
+        JobWrapper jw = jobsByKey.get(jobKey);
+        return (jw != null) ? (JobDetail) jw.jobDetail.clone() : null;
+    }
+
+    @Override
+    public OperableTrigger retrieveTrigger(TriggerKey triggerKey) {
+        TriggerWrapper tw = triggersByKey.get(triggerKey);
+        return (tw != null) ? copyOf(tw) : null;
+    }
+
+    @Override
+    public boolean checkExists(JobKey jobKey) {
+        return jobsByKey.containsKey(jobKey);
+    }
+
+    @Override
+    public boolean checkExists(TriggerKey triggerKey) {
+        return triggersByKey.containsKey(triggerKey);
+    }
+
+    @Override
+    public TriggerState getTriggerState(TriggerKey triggerKey) {
+        return triggerStateOf(triggersByKey.get(triggerKey));
+    }
+
+    @Override
+    public Calendar retrieveCalendar(String calName) {
+        Calendar cal = calendarsByName.get(calName);
+        return (cal != null) ? (Calendar) cal.clone() : null;
+    }
+
+    @Override
+    public int getNumberOfJobs() {
+        return jobsByKey.size();
+    }
+
+    @Override
+    public int getNumberOfTriggers() {
+        return triggersByKey.size();
+    }
+
+    @Override
+    public int getNumberOfCalendars() {
+        return calendarsByName.size();
+    }
+
+    @Override
+    public Set<JobKey> getJobKeys(GroupMatcher<JobKey> matcher) {
+        return jobKeysMatching(matcher);
+    }
+
+    @Override
+    public Set<TriggerKey> getTriggerKeys(GroupMatcher<TriggerKey> matcher) {
+        return triggerKeysMatching(matcher);
+    }
+
+    @Override
+    public List<String> getCalendarNames() {
+        return new LinkedList<String>(calendarsByName.keySet());
+    }
+
+    @Override
+    public List<String> getJobGroupNames() {
+        return new LinkedList<String>(jobsByGroup.keySet());
+    }
+
+    @Override
+    public List<String> getTriggerGroupNames() {
+        return new LinkedList<String>(triggersByGroup.keySet());
+    }
+
+    @Override
+    public List<OperableTrigger> getTriggersForJob(JobKey jobKey) {
+        ArrayList<OperableTrigger> trigList = new ArrayList<OperableTrigger>();
+
+        Set<TriggerWrapper> jobTriggers = triggersByJob.get(jobKey);
+        if (jobTriggers != null) {
+            for (TriggerWrapper tw : jobTriggers) {
+                trigList.add(copyOf(tw));
+            }
+        }
+
+        return trigList;
+    }
+
+    /**
+     * Returns without taking the store's lock when the earliest waiting
+     * trigger is not due within <code>noLaterThan</code>, which is the common
+     * case for an idle scheduler thread.
+     */
+    @Override
+    public List<OperableTrigger> acquireNextTriggers(long noLaterThan, int maxCount, long timeWindow) {
+        TriggerTimeIndex index = timeTriggers;
+        if (index instanceof SkipListTriggerTimeIndex) {
+            TriggerWrapper first = index.first();
+            if (first == null) {
+                return new ArrayList<OperableTrigger>();
+            }
+            Date nextFireTime;
+            synchronized (first) {
+                nextFireTime = first.trigger.getNextFireTime();
+            }
+            if (nextFireTime != null && nextFireTime.getTime() > noLaterThan) {
+                return new ArrayList<OperableTrigger>();
+            }
+        }
+        return super.acquireNextTriggers(noLaterThan, maxCount, timeWindow);
+    }
+
+    private static OperableTrigger copyOf(TriggerWrapper tw) {
+        synchronized (tw) {
+            return (OperableTrigger) tw.trigger.clone();
+        }
+    }
+}
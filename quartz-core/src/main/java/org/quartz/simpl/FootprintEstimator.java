@@ -0,0 +1,194 @@
+/*
+ * All content copyright Terracotta, Inc., unless otherwise indicated. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.quartz.simpl;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.Date;
+import java.util.Map;
+
+import org.quartz.calendar.Calendar;
+import org.quartz.cron.CronTrigger;
+import org.quartz.job.JobDataMap;
+import org.quartz.job.JobDetail;
+import org.quartz.job.JobKey;
+import org.quartz.spi.OperableTrigger;
+import org.quartz.triggers.TriggerKey;
+
+/**
+ * Estimates the heap taken by the jobs, triggers and calendars kept by a
+ * <code>{@link RAMJobStore}</code>, including the store's own wrappers and
+ * index entries.
+ * <p>
+ * Estimates assume a 64-bit JVM with compressed references, and count
+ * objects shared with other jobs and triggers - such as copy-on-write
+ * <code>JobDataMap</code>s, or interned strings - as if they were not
+ * shared. An estimate of a stored object only depends on properties that do
+ * not change while it is stored, so that it is the same when the object is
+ * removed as when it was added.
+ * </p>
+ */
+class FootprintEstimator {
+
+    private static final long OBJECT_HEADER = 16;
+
+    private static final long REFERENCE = 4;
+
+    // an entry of a HashMap or HashSet, with its share of the table
+    private static final long MAP_ENTRY = 40;
+
+    // an entry of a TreeSet, which most time indexes are
+    private static final long TREE_ENTRY = 48;
+
+    private static final long DATE = 24;
+
+    // the JobWrapper, and the job's entries in the key and group maps
+    private static final long JOB_OVERHEAD = 24 + 2 * MAP_ENTRY;
+
+    // the TriggerWrapper, and the trigger's entries in the key, group, job
+    // and time indexes
+    private static final long TRIGGER_OVERHEAD = 32 + 3 * MAP_ENTRY + TREE_ENTRY;
+
+    private static final long JOB_DETAIL = OBJECT_HEADER + 6 * REFERENCE + 8;
+
+    private static final long TRIGGER = OBJECT_HEADER + 12 * REFERENCE + 32;
+
+    // the parsed fields of a cron expression, kept in sorted sets
+    private static final long CRON_EXPRESSION = 2048;
+
+    private static final long JOB_DATA_MAP = OBJECT_HEADER + 3 * REFERENCE + 48;
+
+    // for values that can be neither recognized nor serialized
+    private static final long UNKNOWN_VALUE = 64;
+
+    private FootprintEstimator() {
+    }
+
+    static long estimate(JobDetail job) {
+        return JOB_OVERHEAD + JOB_DETAIL
+                + estimate(job.getKey())
+                + estimate(job.getDescription())
+                + estimate(job.getJobDataMap());
+    }
+
+    static long estimate(OperableTrigger trigger) {
+        long bytes = TRIGGER_OVERHEAD + TRIGGER + 4 * DATE
+                + estimate(trigger.getKey())
+                + estimate(trigger.getJobKey())
+                + estimate(trigger.getDescription())
+                + estimate(trigger.getCalendarName())
+                + estimate(trigger.getJobDataMap());
+        if (trigger instanceof CronTrigger) {
+            bytes += CRON_EXPRESSION + estimate(((CronTrigger) trigger).getCronExpression());
+        }
+        return bytes;
+    }
+
+    /**
+     * Calendars vary too much in structure to be estimated field by field,
+     * and are few, so they are estimated by their serialized size.
+     */
+    static long estimate(String name, Calendar calendar) {
+        return MAP_ENTRY + estimate(name) + serializedSize(calendar);
+    }
+
+    static long estimate(JobDataMap jobDataMap) {
+        if (jobDataMap == null || jobDataMap.isEmpty()) {
+            return 0;
+        }
+        long bytes = JOB_DATA_MAP;
+        for (Map.Entry<String, Object> entry : jobDataMap.entrySet()) {
+            bytes += MAP_ENTRY + estimate(entry.getKey()) + estimateValue(entry.getValue());
+        }
+        return bytes;
+    }
+
+    private static long estimate(JobKey key) {
+        return OBJECT_HEADER + 2 * REFERENCE + estimate(key.getName()) + estimate(key.getGroup());
+    }
+
+    private static long estimate(TriggerKey key) {
+        return OBJECT_HEADER + 2 * REFERENCE + estimate(key.getName()) + estimate(key.getGroup());
+    }
+
+    private static long estimate(String s) {
+        if (s == null) {
+            return 0;
+        }
+        // the String, and its array of (at worst two byte) chars
+        return 24 + OBJECT_HEADER + 2L * s.length();
+    }
+
+    private static long estimateValue(Object value) {
+        if (value == null || value instanceof Boolean) {
+            return 0;
+        }
+        if (value instanceof String) {
+            return estimate((String) value);
+        }
+        if (value instanceof Integer || value instanceof Short || value instanceof Byte
+                || value instanceof Character || value instanceof Float) {
+            return OBJECT_HEADER;
+        }
+        if (value instanceof Long || value instanceof Double) {
+            return OBJECT_HEADER + 8;
+        }
+        if (value instanceof Date) {
+            return DATE;
+        }
+        if (value instanceof byte[]) {
+            return OBJECT_HEADER + ((byte[]) value).length;
+        }
+        if (value instanceof char[]) {
+            return OBJECT_HEADER + 2L * ((char[]) value).length;
+        }
+        return serializedSize(value);
+    }
+
+    private static long serializedSize(Object value) {
+        if (!(value instanceof Serializable)) {
+            return UNKNOWN_VALUE;
+        }
+        CountingOutputStream counter = new CountingOutputStream();
+        try {
+            ObjectOutputStream out = new ObjectOutputStream(counter);
+            out.writeObject(value);
+            out.close();
+        } catch (IOException e) {
+            return UNKNOWN_VALUE;
+        }
+        return OBJECT_HEADER + counter.count;
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
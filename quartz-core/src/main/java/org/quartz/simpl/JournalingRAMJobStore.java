@@ -0,0 +1,1275 @@
+/*
+ * All content copyright Terracotta, Inc., unless otherwise indicated. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.quartz.simpl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Map.Entry;
+
+import org.quartz.calendar.Calendar;
+import org.quartz.exception.ObjectAlreadyExistsException;
+import org.quartz.job.JobDataMap;
+import org.quartz.job.JobDetail;
+import org.quartz.job.JobKey;
+import org.quartz.job.JobPersistenceException;
+import org.quartz.matchers.GroupMatcher;
+import org.quartz.scheduler.Scheduler;
+import org.quartz.scheduler.SchedulerConfigException;
+import org.quartz.scheduler.SchedulerException;
+import org.quartz.spi.ClassLoadHelper;
+import org.quartz.spi.OperableTrigger;
+import org.quartz.spi.SchedulerSignaler;
+import org.quartz.spi.TriggerFiredBundle;
+import org.quartz.spi.TriggerFiredResult;
+import org.quartz.triggers.SimpleTrigger;
+import org.quartz.triggers.SimpleTriggerImpl;
+import org.quartz.triggers.Trigger;
+import org.quartz.triggers.Trigger.CompletedExecutionInstruction;
+import org.quartz.triggers.TriggerKey;
+
+/**
+ * <p>
+ * A <code>{@link RAMJobStore}</code> that keeps its data across restarts by
+ * recording every change to it in a journal on local disk.
+ * </p>
+ * <p>
+ * Each change - storing or removing jobs, triggers and calendars, pausing
+ * and resuming, triggers firing and jobs completing - is appended to a
+ * memory-mapped journal file in the <code>journalDirectory</code> as it is
+ * made. Once the journal grows beyond <code>maxJournalSize</code> bytes, the
+ * whole content of the store is written to a snapshot file, which atomically
+ * replaces the previous one, and the journal is emptied.
+ * <code>initialize()</code> loads the snapshot and replays the journal on
+ * top of it, so the store comes back with the data it held when the process
+ * stopped. Triggers that were acquired or blocked come back waiting, and jobs
+ * that were executing and request recovery are fired again by a one-shot
+ * trigger in the <code>{@link Scheduler#DEFAULT_RECOVERY_GROUP}</code> group,
+ * as with <code>JobStoreSupport</code>.
+ * </p>
+ * <p>
+ * With a <code>journalSyncInterval</code> of 0 (the default), each change is
+ * forced to the storage device before the call that made it returns, and
+ * callers that change the store concurrently share a single force. With a
+ * positive interval the journal is instead forced in the background every
+ * that many milliseconds, so that at most that window of changes is lost if
+ * the machine crashes. Changes in the journal always survive a crash of the
+ * process alone.
+ * </p>
+ * <p>
+ * Jobs, triggers, calendars and job data are written with Java
+ * serialization, so everything stored must be <code>Serializable</code>.
+ * Each change is journaled before it is made, so that a change that cannot
+ * be journaled is not made at all: a <code>JobPersistenceException</code>
+ * is thrown instead, or an <code>IllegalStateException</code> by the
+ * methods that do not declare one. Only triggers firing or misfiring and
+ * jobs completing are made regardless and the failure logged, as the
+ * scheduler has already acted on them; they are made again once the store
+ * is restored, as after a crash.
+ * </p>
+ *
+ * @see RAMJobStore
+ */
+public class JournalingRAMJobStore extends RAMJobStore {
+
+    /*
+     * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+     *
+     * Data members.
+     *
+     * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+     */
+
+    private static final String SNAPSHOT_FILE = "quartz.snapshot";
+
+    private static final String JOURNAL_FILE = "quartz.journal";
+
+    private static final int SNAPSHOT_VERSION = 1;
+
+    // journal record types
+    private static final byte STORE_JOB = 1;
+    private static final byte REMOVE_JOB = 2;
+    private static final byte REMOVE_JOBS = 3;
+    private static final byte STORE_TRIGGER = 4;
+    private static final byte REMOVE_TRIGGER = 5;
+    private static final byte REMOVE_TRIGGERS = 6;
+    private static final byte REPLACE_TRIGGER = 7;
+    private static final byte STORE_JOBS_AND_TRIGGERS = 8;
+    private static final byte STORE_CALENDAR = 9;
+    private static final byte REMOVE_CALENDAR = 10;
+    private static final byte CLEAR = 11;
+    private static final byte RESET_TRIGGER_FROM_ERROR = 12;
+    private static final byte PAUSE_TRIGGER = 13;
+    private static final byte PAUSE_TRIGGERS = 14;
+    private static final byte PAUSE_JOB = 15;
+    private static final byte PAUSE_JOBS = 16;
+    private static final byte RESUME_TRIGGER = 17;
+    private static final byte RESUME_TRIGGERS = 18;
+    private static final byte RESUME_JOB = 19;
+    private static final byte RESUME_JOBS = 20;
+    private static final byte PAUSE_ALL = 21;
+    private static final byte RESUME_ALL = 22;
+    private static final byte TRIGGER_MISFIRED = 23;
+    private static final byte TRIGGER_FIRED = 24;
+    private static final byte JOB_COMPLETED = 25;
+
+    private String journalDirectory;
+
+    private long journalSyncInterval = 0L;
+
+    private long maxJournalSize = 64L * 1024L * 1024L;
+
+    private String instanceName = "QuartzScheduler";
+
+    private volatile MappedJournal journal;
+
+    private long sequence;
+
+    private final Object syncLock = new Object();
+
+    private long syncedSequence;
+
+    private JournalFlusher flusher;
+
+    // nesting of journaled calls, guarded by lock
+    private int depth;
+
+    private boolean replaying;
+
+    // last misfire journaled while acquiring triggers, not yet synced, guarded by lock
+    private long misfireSequence;
+
+    // jobs requesting recovery that are executing, by fire instance id
+    private final Map<String, FiredRecord> recoverableFires = new HashMap<String, FiredRecord>();
+
+    /*
+     * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+     *
+     * Constructors.
+     *
+     * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+     */
+
+    /**
+     * <p>
+     * Create a new <code>JournalingRAMJobStore</code>.
+     * </p>
+     */
+    public JournalingRAMJobStore() {
+    }
+
+    /*
+     * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+     *
+     * Interface.
+     *
+     * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+     */
+
+    public String getJournalDirectory() {
+        return journalDirectory;
+    }
+
+    /**
+     * The directory holding the snapshot and journal files. It is created if
+     * it does not exist, and must not be shared with another scheduler.
+     */
+    public void setJournalDirectory(String journalDirectory) {
+        this.journalDirectory = journalDirectory;
+    }
+
+    public long getJournalSyncInterval() {
+        return journalSyncInterval;
+    }
+
+    /**
+     * The number of milliseconds between forcing the journal to the storage
+     * device in the background, or 0 to force it before returning from each
+     * change.
+     */
+    public void setJournalSyncInterval(long journalSyncInterval) {
+        if (journalSyncInterval < 0) {
+            throw new IllegalArgumentException("Journal sync interval must not be negative");
+        }
+        this.journalSyncInterval = journalSyncInterval;
+    }
+
+    public long getMaxJournalSize() {
+        return maxJournalSize;
+    }
+
+    /**
+     * The size in bytes beyond which the journal is compacted into a new
+     * snapshot.
+     */
+    public void setMaxJournalSize(long maxJournalSize) {
+        if (maxJournalSize < 1) {
+            throw new IllegalArgumentException("Maximum journal size must be larger than 0");
+        }
+        this.maxJournalSize = maxJournalSize;
+    }
+
+    @Override
+    public void setInstanceName(String schedName) {
+        this.instanceName = schedName;
+    }
+
+    /**
+     * <p>
+     * Restores the data recorded in the journal directory, and starts
+     * recording changes.
+     * </p>
+     */
+    @Override
+    public void initialize(ClassLoadHelper loadHelper, SchedulerSignaler schedSignaler) throws SchedulerConfigException {
+
+        super.initialize(loadHelper, schedSignaler);
+
+        if (journalDirectory == null) {
+            throw new SchedulerConfigException("JournalingRAMJobStore requires a journalDirectory.");
+        }
+        File dir = new File(journalDirectory);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new SchedulerConfigException("Could not create journal directory: " + dir.getAbsolutePath());
+        }
+
+        synchronized (lock) {
+            try {
+                MappedJournal jrnl = new MappedJournal(new File(dir, JOURNAL_FILE));
+                SchedulerSignaler realSignaler = signaler;
+                signaler = new NoOpSignaler();
+                replaying = true;
+                try {
+                    restore(dir, jrnl);
+                } finally {
+                    replaying = false;
+                    signaler = realSignaler;
+                }
+                journal = jrnl;
+                recoverFiredJobs();
+                compact();
+            } catch (Exception e) {
+                throw new SchedulerConfigException("Could not restore job store from " + dir.getAbsolutePath(), e);
+            }
+
+            getLog().info("JournalingRAMJobStore restored " + jobsByKey.size() + " jobs, "
+                    + triggersByKey.size() + " triggers and " + calendarsByName.size()
+                    + " calendars from " + dir.getAbsolutePath());
+        }
+
+        if (journalSyncInterval > 0) {
+            flusher = new JournalFlusher();
+            flusher.start();
+        }
+    }
+
+    /**
+     * <p>
+     * Writes a snapshot, so that the next start does not need to replay the
+     * journal, and closes the journal.
+     * </p>
+     */
+    @Override
+    public void shutdown() {
+        if (flusher != null) {
+            flusher.shutdown();
+        }
+
+        synchronized (lock) {
+            MappedJournal jrnl = journal;
+            if (jrnl == null) {
+                return;
+            }
+            try {
+                compact();
+            } catch (IOException e) {
+                getLog().error("Could not write snapshot on shutdown; the journal will be replayed on the next start.", e);
+            }
+            journal = null;
+            try {
+                jrnl.close();
+            } catch (IOException e) {
+                getLog().warn("Could not close journal.", e);
+            }
+        }
+
+        super.shutdown();
+    }
+
+    @Override
+    public boolean supportsPersistence() {
+        return true;
+    }
+
+    /*
+     * Changes are journaled while holding the lock, so that the journal
+     * records them in the order they were made, and before being made, so
+     * that a change that could not be journaled is not made either.  A change
+     * that fails once journaled fails again when replayed.  Changes the
+     * superclass makes by calling other overridden methods are not journaled
+     * separately, as replaying the outer call makes them again.
+     */
+
+    @Override
+    public void storeJob(JobDetail newJob, boolean replaceExisting) throws JobPersistenceException {
+        long seq;
+        synchronized (lock) {
+            seq = record(STORE_JOB, newJob, replaceExisting);
+            depth++;
+            try {
+                super.storeJob(newJob, replaceExisting);
+            } finally {
+                depth--;
+            }
+            compactIfFull();
+        }
+        sync(seq);
+    }
+
+    @Override
+    public boolean removeJob(JobKey jobKey) {
+        long seq;
+        boolean found;
+        synchronized (lock) {
+            seq = jobsByKey.containsKey(jobKey) ? recordUnchecked(REMOVE_JOB, jobKey) : 0L;
+            depth++;
+            try {
+                found = super.removeJob(jobKey);
+            } finally {
+                depth--;
+            }
+            compactIfFull();
+        }
+        sync(seq);
+        return found;
+    }
+
+    @Override
+    public boolean removeJobs(List<JobKey> jobKeys) throws JobPersistenceException {
+        long seq;
+        boolean allFound;
+        synchronized (lock) {
+            seq = record(REMOVE_JOBS, new ArrayList<JobKey>(jobKeys));
+            depth++;
+            try {
+                allFound = super.removeJobs(jobKeys);
+            } finally {
+                depth--;
+            }
+            compactIfFull();
+        }
+        sync(seq);
+        return allFound;
+    }
+
+    @Override
+    public void storeTrigger(OperableTrigger newTrigger, boolean replaceExisting) throws JobPersistenceException {
+        long seq;
+        synchronized (lock) {
+            seq = record(STORE_TRIGGER, newTrigger, replaceExisting);
+            depth++;
+            try {
+                super.storeTrigger(newTrigger, replaceExisting);
+            } finally {
+                depth--;
+            }
+            compactIfFull();
+        }
+        sync(seq);
+    }
+
+    @Override
+    public boolean removeTrigger(TriggerKey triggerKey) {
+        long seq;
+        boolean found;
+        synchronized (lock) {
+            seq = triggersByKey.containsKey(triggerKey) ? recordUnchecked(REMOVE_TRIGGER, triggerKey) : 0L;
+            depth++;
+            try {
+                found = super.removeTrigger(triggerKey);
+            } finally {
+                depth--;
+            }
+            compactIfFull();
+        }
+        sync(seq);
+        return found;
+    }
+
+    @Override
+    public boolean removeTriggers(List<TriggerKey> triggerKeys) throws JobPersistenceException {
+        long seq;
+        boolean allFound;
+        synchronized (lock) {
+            seq = record(REMOVE_TRIGGERS, new ArrayList<TriggerKey>(triggerKeys));
+            depth++;
+            try {
+                allFound = super.removeTriggers(triggerKeys);
+            } finally {
+                depth--;
+            }
+            compactIfFull();
+        }
+        sync(seq);
+        return allFound;
+    }
+
+    @Override
+    public boolean replaceTrigger(TriggerKey triggerKey, OperableTrigger newTrigger) throws JobPersistenceException {
+        long seq;
+        boolean found;
+        synchronized (lock) {
+            seq = triggersByKey.containsKey(triggerKey) ? record(REPLACE_TRIGGER, triggerKey, newTrigger) : 0L;
+            depth++;
+            try {
+                found = super.replaceTrigger(triggerKey, newTrigger);
+            } finally {
+                depth--;
+            }
+            compactIfFull();
+        }
+        sync(seq);
+        return found;
+    }
+
+    @Override
+    public void storeJobsAndTriggers(Map<JobDetail, Set<? extends Trigger>> triggersAndJobs, boolean replace)
+            throws JobPersistenceException {
+        long seq;
+        synchronized (lock) {
+            LinkedHashMap<JobDetail, Set<? extends Trigger>> copy = new LinkedHashMap<JobDetail, Set<? extends Trigger>>();
+            for (Entry<JobDetail, Set<? extends Trigger>> e : triggersAndJobs.entrySet()) {
+                copy.put(e.getKey(), new LinkedHashSet<Trigger>(e.getValue()));
+            }
+            seq = record(STORE_JOBS_AND_TRIGGERS, copy, replace);
+            depth++;
+            try {
+                super.storeJobsAndTriggers(triggersAndJobs, replace);
+            } finally {
+                depth--;
+            }
+            compactIfFull();
+        }
+        sync(seq);
+    }
+
+    @Override
+    public void storeCalendar(String name, Calendar calendar, boolean replaceExisting, boolean updateTriggers)
+            throws ObjectAlreadyExistsException {
+        long seq;
+        synchronized (lock) {
+            seq = recordUnchecked(STORE_CALENDAR, name, calendar, replaceExisting, updateTriggers);
+            depth++;
+            try {
+                super.storeCalendar(name, calendar, replaceExisting, updateTriggers);
+            } finally {
+                depth--;
+            }
+            compactIfFull();
+        }
+        sync(seq);
+    }
+
+    @Override
+    public boolean removeCalendar(String calName) throws JobPersistenceException {
+        long seq;
+        boolean found;
+        synchronized (lock) {
+            seq = calendarsByName.containsKey(calName) ? record(REMOVE_CALENDAR, calName) : 0L;
+            depth++;
+            try {
+                found = super.removeCalendar(calName);
+            } finally {
+                depth--;
+            }
+            compactIfFull();
+        }
+        sync(seq);
+        return found;
+    }
+
+    @Override
+    public void clearAllSchedulingData() throws JobPersistenceException {
+        long seq;
+        synchronized (lock) {
+            seq = record(CLEAR);
+            depth++;
+            try {
+                super.clearAllSchedulingData();
+            } finally {
+                depth--;
+            }
+            compactIfFull();
+        }
+        sync(seq);
+    }
+
+    @Override
+    public void resetTriggerFromErrorState(TriggerKey triggerKey) throws JobPersistenceException {
+        long seq;
+        synchronized (lock) {
+            seq = record(RESET_TRIGGER_FROM_ERROR, triggerKey);
+            depth++;
+            try {
+                super.resetTriggerFromErrorState(triggerKey);
+            } finally {
+                depth--;
+            }
+            compactIfFull();
+        }
+        sync(seq);
+    }
+
+    @Override
+    public void pauseTrigger(TriggerKey triggerKey) {
+        long seq;
+        synchronized (lock) {
+            seq = recordUnchecked(PAUSE_TRIGGER, triggerKey);
+            depth++;
+            try {
+                super.pauseTrigger(triggerKey);
+            } finally {
+                depth--;
+            }
+            compactIfFull();
+        }
+        sync(seq);
+    }
+
+    @Override
+    public List<String> pauseTriggers(GroupMatcher<TriggerKey> matcher) {
+        long seq;
+        List<String> pausedGroups;
+        synchronized (lock) {
+            seq = recordUnchecked(PAUSE_TRIGGERS, matcher);
+            depth++;
+            try {
+                pausedGroups = super.pauseTriggers(matcher);
+            } finally {
+                depth--;
+            }
+            compactIfFull();
+        }
+        sync(seq);
+        return pausedGroups;
+    }
+
+    @Override
+    public void pauseJob(JobKey jobKey) {
+        long seq;
+        synchronized (lock) {
+            seq = recordUnchecked(PAUSE_JOB, jobKey);
+            depth++;
+            try {
+                super.pauseJob(jobKey);
+            } finally {
+                depth--;
+            }
+            compactIfFull();
+        }
+        sync(seq);
+    }
+
+    @Override
+    public List<String> pauseJobs(GroupMatcher<JobKey> matcher) {
+        long seq;
+        List<String> pausedGroups;
+        synchronized (lock) {
+            seq = recordUnchecked(PAUSE_JOBS, matcher);
+            depth++;
+            try {
+                pausedGroups = super.pauseJobs(matcher);
+            } finally {
+                depth--;
+            }
+            compactIfFull();
+        }
+        sync(seq);
+        return pausedGroups;
+    }
+
+    @Override
+    public void resumeTrigger(TriggerKey triggerKey) {
+        long seq;
+        synchronized (lock) {
+            seq = recordUnchecked(RESUME_TRIGGER, triggerKey);
+            depth++;
+            try {
+                super.resumeTrigger(triggerKey);
+            } finally {
+                depth--;
+            }
+            compactIfFull();
+        }
+        sync(seq);
+    }
+
+    @Override
+    public List<String> resumeTriggers(GroupMatcher<TriggerKey> matcher) {
+        long seq;
+        List<String> groups;
+        synchronized (lock) {
+            seq = recordUnchecked(RESUME_TRIGGERS, matcher);
+            depth++;
+            try {
+                groups = super.resumeTriggers(matcher);
+            } finally {
+                depth--;
+            }
+            compactIfFull();
+        }
+        sync(seq);
+        return groups;
+    }
+
+    @Override
+    public void resumeJob(JobKey jobKey) {
+        long seq;
+        synchronized (lock) {
+            seq = recordUnchecked(RESUME_JOB, jobKey);
+            depth++;
+            try {
+                super.resumeJob(jobKey);
+            } finally {
+                depth--;
+            }
+            compactIfFull();
+        }
+        sync(seq);
+    }
+
+    @Override
+    public Collection<String> resumeJobs(GroupMatcher<JobKey> matcher) {
+        long seq;
+        Collection<String> groups;
+        synchronized (lock) {
+            seq = recordUnchecked(RESUME_JOBS, matcher);
+            depth++;
+            try {
+                groups = super.resumeJobs(matcher);
+            } finally {
+                depth--;
+            }
+            compactIfFull();
+        }
+        sync(seq);
+        return groups;
+    }
+
+    @Override
+    public void pauseAll() {
+        long seq;
+        synchronized (lock) {
+            seq = recordUnchecked(PAUSE_ALL);
+            depth++;
+            try {
+                super.pauseAll();
+            } finally {
+                depth--;
+            }
+            compactIfFull();
+        }
+        sync(seq);
+    }
+
+    @Override
+    public void resumeAll() {
+        long seq;
+        synchronized (lock) {
+            seq = recordUnchecked(RESUME_ALL);
+            depth++;
+            try {
+                super.resumeAll();
+            } finally {
+                depth--;
+            }
+            compactIfFull();
+        }
+        sync(seq);
+    }
+
+    /**
+     * Journals the new schedule of triggers that misfire while being
+     * acquired; misfires applied while resuming are made again by replaying
+     * the resume.
+     */
+    @Override
+    protected boolean applyMisfire(TriggerWrapper tw) {
+        boolean applied = super.applyMisfire(tw);
+        if (applied) {
+            long seq = recordIfPossible(TRIGGER_MISFIRED, tw.trigger, tw.state);
+            if (seq != 0L) {
+                misfireSequence = seq;
+            }
+        }
+        return applied;
+    }
+
+    /**
+     * Syncs the misfires journaled while acquiring, once the lock is
+     * released.
+     */
+    @Override
+    public List<OperableTrigger> acquireNextTriggers(long noLaterThan, int maxCount, long timeWindow) {
+        long seq;
+        List<OperableTrigger> result;
+        synchronized (lock) {
+            result = super.acquireNextTriggers(noLaterThan, maxCount, timeWindow);
+            seq = misfireSequence;
+            misfireSequence = 0L;
+            compactIfFull();
+        }
+        sync(seq);
+        return result;
+    }
+
+    @Override
+    public List<TriggerFiredResult> triggersFired(List<OperableTrigger> firedTriggers) {
+        long seq = 0L;
+        List<TriggerFiredResult> results;
+        synchronized (lock) {
+            results = super.triggersFired(firedTriggers);
+            for (TriggerFiredResult result : results) {
+                TriggerFiredBundle bndle = result.getTriggerFiredBundle();
+                TriggerWrapper tw = triggersByKey.get(bndle.getTrigger().getKey());
+                FiredRecord fired = null;
+                if (bndle.getJobDetail().requestsRecovery()) {
+                    fired = new FiredRecord(bndle);
+                    recoverableFires.put(fired.fireInstanceId, fired);
+                }
+                long firedSeq = recordIfPossible(TRIGGER_FIRED, tw.trigger, fired);
+                if (firedSeq != 0L) {
+                    seq = firedSeq;
+                }
+            }
+            compactIfFull();
+        }
+        sync(seq);
+        return results;
+    }
+
+    @Override
+    public void triggeredJobComplete(OperableTrigger trigger, JobDetail jobDetail,
+                                     CompletedExecutionInstruction triggerInstCode) {
+        long seq;
+        synchronized (lock) {
+            recoverableFires.remove(trigger.getFireInstanceId());
+            seq = recordIfPossible(JOB_COMPLETED, trigger, jobDetail, triggerInstCode);
+            depth++;
+            try {
+                super.triggeredJobComplete(trigger, jobDetail, triggerInstCode);
+            } finally {
+                depth--;
+            }
+            compactIfFull();
+        }
+        sync(seq);
+    }
+
+    /*
+     * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+     *
+     * Journal and snapshot handling.
+     *
+     * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+     */
+
+    /**
+     * Append a record to the journal, unless the change is part of a call
+     * that is itself being journaled or replayed. Must be called holding the
+     * lock.
+     *
+     * @return the sequence number of the record, or 0 if none was written.
+     * @throws JobPersistenceException if the record could not be written, in
+     *                                 which case the journal is unchanged.
+     */
+    private long record(byte type, Object... args) throws JobPersistenceException {
+        MappedJournal jrnl = journal;
+        if (jrnl == null || depth > 0 || replaying) {
+            return 0L;
+        }
+        try {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream(512);
+            ObjectOutputStream out = new ObjectOutputStream(baos);
+            out.writeByte(type);
+            for (Object arg : args) {
+                out.writeObject(arg);
+            }
+            out.close();
+
+            jrnl.append(sequence + 1, baos.toByteArray());
+            return ++sequence;
+        } catch (IOException e) {
+            throw new JobPersistenceException(
+                    "Could not write to journal in " + journalDirectory + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Append a record to the journal, like <code>record()</code>, for the
+     * methods that can not throw a <code>JobPersistenceException</code>.
+     *
+     * @throws IllegalStateException if the record could not be written.
+     */
+    private long recordUnchecked(byte type, Object... args) {
+        try {
+            return record(type, args);
+        } catch (JobPersistenceException e) {
+            throw new IllegalStateException(e.getMessage(), e.getCause());
+        }
+    }
+
+    /**
+     * Append a record to the journal, like <code>record()</code>, for the
+     * changes the scheduler makes as triggers fire and misfire and jobs
+     * complete, which are made even if they can not be journaled: they are
+     * then lost as if the process had crashed before journaling them, and
+     * made again once the store is restored.
+     *
+     * @return the sequence number of the record, or 0 if none was written.
+     */
+    private long recordIfPossible(byte type, Object... args) {
+        try {
+            return record(type, args);
+        } catch (JobPersistenceException e) {
+            getLog().error(e.getMessage(), e.getCause());
+            return 0L;
+        }
+    }
+
+    /**
+     * Write a snapshot in place of the journal once the journal has grown
+     * beyond <code>maxJournalSize</code>. Must be called holding the lock,
+     * once the changes journaled have been made.
+     */
+    private void compactIfFull() {
+        MappedJournal jrnl = journal;
+        if (jrnl == null || depth > 0 || replaying || jrnl.size() <= maxJournalSize) {
+            return;
+        }
+        try {
+            compact();
+        } catch (IOException e) {
+            getLog().warn("Could not write snapshot; the journal keeps growing until it can be.", e);
+        }
+    }
+
+    /**
+     * Wait until the given journal record has been forced to the storage
+     * device, if changes are synced as they are made. Must be called without
+     * holding the lock, so that concurrent callers can share a single force.
+     */
+    private void sync(long seq) {
+        if (seq == 0L || journalSyncInterval > 0) {
+            return;
+        }
+        synchronized (syncLock) {
+            MappedJournal jrnl = journal;
+            if (syncedSequence < seq && jrnl != null) {
+                syncedSequence = jrnl.force();
+            }
+        }
+    }
+
+    /**
+     * Write all data held by the store into a new snapshot, replacing the
+     * previous one, and empty the journal. Must be called holding the lock.
+     */
+    private void compact() throws IOException {
+        File dir = new File(journalDirectory);
+        File tmp = new File(dir, SNAPSHOT_FILE + ".tmp");
+
+        FileOutputStream fos = new FileOutputStream(tmp);
+        try {
+            ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(fos));
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeLong(sequence);
+            out.writeObject(new HashMap<String, Calendar>(calendarsByName));
+            List<JobDetail> jobs = new ArrayList<JobDetail>(jobsByKey.size());
+            for (JobWrapper jw : jobsByKey.values()) {
+                jobs.add(jw.jobDetail);
+            }
+            out.writeObject(jobs);
+            out.writeObject(new HashSet<String>(pausedTriggerGroups));
+            out.writeObject(new HashSet<String>(pausedJobGroups));
+            out.writeInt(triggersByKey.size());
+            for (TriggerWrapper tw : triggersByKey.values()) {
+                out.writeObject(tw.trigger);
+                out.writeInt(tw.state);
+            }
+            out.writeObject(new ArrayList<FiredRecord>(recoverableFires.values()));
+            out.flush();
+            fos.getFD().sync();
+        } finally {
+            fos.close();
+        }
+
+        Files.move(tmp.toPath(), new File(dir, SNAPSHOT_FILE).toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        // the rename must be durable before the journal is emptied: should a crash undo it, the previous
+        // snapshot would be restored without the journal records written since
+        syncDirectory(dir);
+        journal.reset();
+    }
+
+    /**
+     * Force the entries of the given directory, such as a file renamed into
+     * it, to the storage device.
+     */
+    void syncDirectory(File dir) throws IOException {
+        if (File.separatorChar == '\\') {
+            return; // directories can not be opened on Windows, whose file system journals renames
+        }
+        FileChannel channel = FileChannel.open(dir.toPath(), StandardOpenOption.READ);
+        try {
+            channel.force(true);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Load the snapshot, if there is one, and replay the journal records
+     * written after it. Must be called holding the lock.
+     */
+    @SuppressWarnings("unchecked")
+    private void restore(File dir, MappedJournal jrnl) throws IOException, ClassNotFoundException, JobPersistenceException {
+        File snapshot = new File(dir, SNAPSHOT_FILE);
+        if (snapshot.exists()) {
+            ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(snapshot)));
+            try {
+                if (in.readInt() != SNAPSHOT_VERSION) {
+                    throw new IOException("Unsupported snapshot version in " + snapshot.getAbsolutePath());
+                }
+                sequence = in.readLong();
+                for (Entry<String, Calendar> e : ((Map<String, Calendar>) in.readObject()).entrySet()) {
+                    storeCalendar(e.getKey(), e.getValue(), true, false);
+                }
+                for (JobDetail job : (List<JobDetail>) in.readObject()) {
+                    storeJob(job, true);
+                }
+                pausedTriggerGroups.addAll((Set<String>) in.readObject());
+                pausedJobGroups.addAll((Set<String>) in.readObject());
+                int numTriggers = in.readInt();
+                for (int i = 0; i < numTriggers; i++) {
+                    OperableTrigger trigger = (OperableTrigger) in.readObject();
+                    restoreTrigger(trigger, in.readInt());
+                }
+                for (FiredRecord fired : (List<FiredRecord>) in.readObject()) {
+                    recoverableFires.put(fired.fireInstanceId, fired);
+                }
+            } finally {
+                in.close();
+            }
+        }
+
+        int replayed = 0;
+        byte[] payload;
+        while ((payload = jrnl.readNext()) != null) {
+            long seq = jrnl.getLastSequence();
+            if (seq <= sequence) {
+                continue; // already in the snapshot
+            }
+            try {
+                replay(payload);
+            } catch (JobPersistenceException e) {
+                // as the change it records did when it was made
+                getLog().info("Journal record " + seq + " does not apply; skipping it: " + e.getMessage());
+            }
+            sequence = seq;
+            replayed++;
+        }
+        if (replayed > 0) {
+            getLog().info("Replayed " + replayed + " journal records.");
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void replay(byte[] payload) throws IOException, ClassNotFoundException, JobPersistenceException {
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(payload));
+        byte type = in.readByte();
+        switch (type) {
+            case STORE_JOB:
+                storeJob((JobDetail) in.readObject(), (Boolean) in.readObject());
+                break;
+            case REMOVE_JOB:
+                removeJob((JobKey) in.readObject());
+                break;
+            case REMOVE_JOBS:
+                removeJobs((List<JobKey>) in.readObject());
+                break;
+            case STORE_TRIGGER:
+                storeTrigger((OperableTrigger) in.readObject(), (Boolean) in.readObject());
+                break;
+            case REMOVE_TRIGGER:
+                removeTrigger((TriggerKey) in.readObject());
+                break;
+            case REMOVE_TRIGGERS:
+                removeTriggers((List<TriggerKey>) in.readObject());
+                break;
+            case REPLACE_TRIGGER:
+                replaceTrigger((TriggerKey) in.readObject(), (OperableTrigger) in.readObject());
+                break;
+            case STORE_JOBS_AND_TRIGGERS:
+                storeJobsAndTriggers((Map<JobDetail, Set<? extends Trigger>>) in.readObject(), (Boolean) in.readObject());
+                break;
+            case STORE_CALENDAR:
+                storeCalendar((String) in.readObject(), (Calendar) in.readObject(),
+                        (Boolean) in.readObject(), (Boolean) in.readObject());
+                break;
+            case REMOVE_CALENDAR:
+                removeCalendar((String) in.readObject());
+                break;
+            case CLEAR:
+                clearAllSchedulingData();
+                break;
+            case RESET_TRIGGER_FROM_ERROR:
+                resetTriggerFromErrorState((TriggerKey) in.readObject());
+                break;
+            case PAUSE_TRIGGER:
+                pauseTrigger((TriggerKey) in.readObject());
+                break;
+            case PAUSE_TRIGGERS:
+                pauseTriggers((GroupMatcher<TriggerKey>) in.readObject());
+                break;
+            case PAUSE_JOB:
+                pauseJob((JobKey) in.readObject());
+                break;
+            case PAUSE_JOBS:
+                pauseJobs((GroupMatcher<JobKey>) in.readObject());
+                break;
+            case RESUME_TRIGGER:
+                resumeTrigger((TriggerKey) in.readObject());
+                break;
+            case RESUME_TRIGGERS:
+                resumeTriggers((GroupMatcher<TriggerKey>) in.readObject());
+                break;
+            case RESUME_JOB:
+                resumeJob((JobKey) in.readObject());
+                break;
+            case RESUME_JOBS:
+                resumeJobs((GroupMatcher<JobKey>) in.readObject());
+                break;
+            case PAUSE_ALL:
+                pauseAll();
+                break;
+            case RESUME_ALL:
+                resumeAll();
+                break;
+            case TRIGGER_MISFIRED:
+                restoreTrigger((OperableTrigger) in.readObject(), (Integer) in.readObject());
+                break;
+            case TRIGGER_FIRED: {
+                restoreTrigger((OperableTrigger) in.readObject(), TriggerWrapper.STATE_WAITING);
+                FiredRecord fired = (FiredRecord) in.readObject();
+                if (fired != null) {
+                    recoverableFires.put(fired.fireInstanceId, fired);
+                }
+                break;
+            }
+            case JOB_COMPLETED: {
+                OperableTrigger trigger = (OperableTrigger) in.readObject();
+                triggeredJobComplete(trigger, (JobDetail) in.readObject(),
+                        (CompletedExecutionInstruction) in.readObject());
+                break;
+            }
+            default:
+                throw new IOException("Unknown journal record type " + type);
+        }
+    }
+
+    /**
+     * Put a trigger back into the store in the state it was recorded with.
+     * Triggers that were acquired or blocked by an executing job are
+     * restored as waiting, as no job is executing any more.
+     */
+    private void restoreTrigger(OperableTrigger trigger, int state) throws JobPersistenceException {
+        storeTrigger(trigger, true);
+        TriggerWrapper tw = triggersByKey.get(trigger.getKey());
+
+        switch (state) {
+            case TriggerWrapper.STATE_ACQUIRED:
+            case TriggerWrapper.STATE_EXECUTING:
+            case TriggerWrapper.STATE_BLOCKED:
+                state = TriggerWrapper.STATE_WAITING;
+                break;
+            case TriggerWrapper.STATE_PAUSED_BLOCKED:
+                state = TriggerWrapper.STATE_PAUSED;
+                break;
+            default:
+                break;
+        }
+
+        tw.state = state;
+        if (state == TriggerWrapper.STATE_WAITING) {
+            timeTriggers.add(tw);
+        } else {
+            timeTriggers.remove(tw);
+        }
+    }
+
+    /**
+     * Schedule jobs that request recovery and were executing when the store
+     * stopped to be fired again. Must be called holding the lock.
+     */
+    @SuppressWarnings("deprecation")
+    private void recoverFiredJobs() throws JobPersistenceException {
+        if (recoverableFires.isEmpty()) {
+            return;
+        }
+
+        getLog().info("Recovering " + recoverableFires.size()
+                + " jobs that were in-progress at the time of the last shut-down.");
+
+        for (FiredRecord fired : new ArrayList<FiredRecord>(recoverableFires.values())) {
+            if (!jobsByKey.containsKey(fired.jobKey)) {
+                continue;
+            }
+            SimpleTriggerImpl rcvryTrig = new SimpleTriggerImpl("recover_" + fired.fireInstanceId,
+                    Scheduler.DEFAULT_RECOVERY_GROUP, new Date(fired.scheduledFireTime));
+            rcvryTrig.setJobName(fired.jobKey.getName());
+            rcvryTrig.setJobGroup(fired.jobKey.getGroup());
+            rcvryTrig.setPriority(fired.priority);
+            rcvryTrig.setMisfireInstruction(SimpleTrigger.MISFIRE_INSTRUCTION_IGNORE_MISFIRE_POLICY);
+
+            JobDataMap jd = (fired.jobDataMap != null) ? (JobDataMap) fired.jobDataMap.clone() : new JobDataMap();
+            jd.put(Scheduler.FAILED_JOB_ORIGINAL_TRIGGER_NAME, fired.triggerKey.getName());
+            jd.put(Scheduler.FAILED_JOB_ORIGINAL_TRIGGER_GROUP, fired.triggerKey.getGroup());
+            jd.put(Scheduler.FAILED_JOB_ORIGINAL_TRIGGER_FIRETIME_IN_MILLISECONDS, String.valueOf(fired.fireTime));
+            jd.put(Scheduler.FAILED_JOB_ORIGINAL_TRIGGER_SCHEDULED_FIRETIME_IN_MILLISECONDS, String.valueOf(fired.scheduledFireTime));
+            rcvryTrig.setJobDataMap(jd);
+
+            rcvryTrig.computeFirstFireTime(null);
+            storeTrigger(rcvryTrig, false);
+        }
+        recoverableFires.clear();
+    }
+
+    /*
+     * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+     *
+     * Helper Classes.
+     *
+     * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+     */
+
+    /**
+     * What is needed to recover a job that was executing when the store
+     * stopped.
+     */
+    private static class FiredRecord implements Serializable {
+
+        private static final long serialVersionUID = 4279012359614861934L;
+
+        final String fireInstanceId;
+        final TriggerKey triggerKey;
+        final JobKey jobKey;
+        final long fireTime;
+        final long scheduledFireTime;
+        final int priority;
+        final JobDataMap jobDataMap;
+
+        FiredRecord(TriggerFiredBundle bndle) {
+            OperableTrigger trigger = bndle.getTrigger();
+            fireInstanceId = trigger.getFireInstanceId();
+            triggerKey = trigger.getKey();
+            jobKey = trigger.getJobKey();
+            fireTime = bndle.getFireTime().getTime();
+            scheduledFireTime = (bndle.getScheduledFireTime() != null)
+                    ? bndle.getScheduledFireTime().getTime() : fireTime;
+            priority = trigger.getPriority();
+            jobDataMap = trigger.getJobDataMap();
+        }
+    }
+
+    /**
+     * Forces the journal to the storage device every
+     * <code>journalSyncInterval</code> milliseconds.
+     */
+    private class JournalFlusher extends Thread {
+
+        private volatile boolean shutdown = false;
+
+        JournalFlusher() {
+            this.setName("QuartzScheduler_" + instanceName + "_JournalFlusher");
+            this.setDaemon(true);
+        }
+
+        public void shutdown() {
+            shutdown = true;
+            this.interrupt();
+        }
+
+        @Override
+        public void run() {
+            while (!shutdown) {
+                try {
+                    Thread.sleep(journalSyncInterval);
+                } catch (InterruptedException ignore) {
+                }
+                MappedJournal jrnl = journal;
+                if (jrnl != null) {
+                    jrnl.force();
+                }
+            }
+        }
+    }
+
+    /**
+     * Swallows the notifications made by changes that are being replayed.
+     */
+    private static class NoOpSignaler implements SchedulerSignaler {
+
+        public void notifyTriggerListenersMisfired(Trigger trigger) {
+        }
+
+        public void notifySchedulerListenersFinalized(Trigger trigger) {
+        }
+
+        public void notifySchedulerListenersJobDeleted(JobKey jobKey) {
+        }
+
+        public void signalSchedulingChange(long candidateNewNextFireTime) {
+        }
+
+        public void notifySchedulerListenersError(String string, SchedulerException jpe) {
+        }
+    }
+}
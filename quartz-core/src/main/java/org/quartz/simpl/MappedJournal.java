@@ -0,0 +1,193 @@
+/*
+ * All content copyright Terracotta, Inc., unless otherwise indicated. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.quartz.simpl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only file of records, written through a memory mapping of the
+ * file.
+ * <p>
+ * Each record is framed by its length, a CRC32 checksum and a sequence
+ * number, which must increase from record to record. Reading stops at the
+ * first record that is incomplete, fails its checksum or is out of sequence,
+ * so that a record torn by a crash - and anything after it - is ignored, and
+ * is overwritten by the next append.
+ * </p>
+ * <p>
+ * Appends, reads and resets are made by one thread at a time (the job
+ * store's lock); <code>force()</code> may be called concurrently with them.
+ * </p>
+ */
+class MappedJournal {
+
+    private static final int HEADER_SIZE = 16; // length, checksum, sequence
+
+    private static final int MIN_MAPPING_SIZE = 1024 * 1024;
+
+    private final RandomAccessFile file;
+
+    private final FileChannel channel;
+
+    private MappedByteBuffer buffer;
+
+    private int position;
+
+    private long lastSequence;
+
+    MappedJournal(File journalFile) throws IOException {
+        file = new RandomAccessFile(journalFile, "rw");
+        channel = file.getChannel();
+        map((int) Math.min(Integer.MAX_VALUE, Math.max(MIN_MAPPING_SIZE, channel.size())));
+    }
+
+    /**
+     * Read the record following the last one read, or return
+     * <code>null</code> if there are no more valid records, in which case
+     * the next record appended will follow the last valid one.
+     */
+    synchronized byte[] readNext() {
+        if (position + HEADER_SIZE > buffer.capacity()) {
+            return null;
+        }
+        int length = buffer.getInt(position);
+        if (length <= 0 || length > buffer.capacity() - position - HEADER_SIZE) {
+            return null;
+        }
+        int checksum = buffer.getInt(position + 4);
+        long sequence = buffer.getLong(position + 8);
+        if (sequence <= lastSequence) {
+            return null;
+        }
+
+        byte[] payload = new byte[length];
+        buffer.position(position + HEADER_SIZE);
+        buffer.get(payload);
+        if (checksum(sequence, payload) != checksum) {
+            return null;
+        }
+
+        position += HEADER_SIZE + length;
+        lastSequence = sequence;
+        return payload;
+    }
+
+    /**
+     * Append a record, growing the file if necessary. The record is visible
+     * to the operating system, and so survives a crash of this process, once
+     * this method returns; it survives a crash of the machine once
+     * <code>force()</code> has been called.
+     */
+    synchronized void append(long sequence, byte[] payload) throws IOException {
+        if (sequence <= lastSequence) {
+            throw new IllegalArgumentException("Journal sequence numbers must increase.");
+        }
+        long needed = (long) position + HEADER_SIZE + payload.length;
+        if (needed > buffer.capacity()) {
+            if (needed > Integer.MAX_VALUE) {
+                throw new IOException("Journal file is full.");
+            }
+            map((int) Math.min(Integer.MAX_VALUE, Math.max(needed, 2L * buffer.capacity())));
+        }
+
+        buffer.position(position + 4);
+        buffer.putInt(checksum(sequence, payload));
+        buffer.putLong(sequence);
+        buffer.put(payload);
+        // written last, so that a record is never complete before its content
+        buffer.putInt(position, payload.length);
+
+        position += HEADER_SIZE + payload.length;
+        lastSequence = sequence;
+    }
+
+    /**
+     * Force all appended records to the storage device.
+     *
+     * @return the sequence number of the last record known to be forced.
+     */
+    long force() {
+        MappedByteBuffer buf;
+        long sequence;
+        synchronized (this) {
+            buf = buffer;
+            sequence = lastSequence;
+        }
+        buf.force();
+        return sequence;
+    }
+
+    /**
+     * Discard all records. The whole file is cleared, so that nothing
+     * written before - such as records that followed a torn one - can be
+     * read back. Sequence numbers of records appended afterwards must still
+     * be larger than those of the discarded ones.
+     */
+    synchronized void reset() {
+        int capacity = buffer.capacity();
+        int i = 0;
+        // only write to pages that are not already clear
+        for (; i + 8 <= capacity; i += 8) {
+            if (buffer.getLong(i) != 0L) {
+                buffer.putLong(i, 0L);
+            }
+        }
+        for (; i < capacity; i++) {
+            if (buffer.get(i) != 0) {
+                buffer.put(i, (byte) 0);
+            }
+        }
+        buffer.force();
+        position = 0;
+    }
+
+    /**
+     * The number of bytes used by the records in the journal.
+     */
+    synchronized int size() {
+        return position;
+    }
+
+    synchronized long getLastSequence() {
+        return lastSequence;
+    }
+
+    synchronized void close() throws IOException {
+        buffer.force();
+        channel.close();
+        file.close();
+    }
+
+    private void map(int size) throws IOException {
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+
+    private static int checksum(long sequence, byte[] payload) {
+        CRC32 crc = new CRC32();
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            crc.update((int) (sequence >>> shift));
+        }
+        crc.update(payload, 0, payload.length);
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,936 @@
+/*
+ * All content copyright Terracotta, Inc., unless otherwise indicated. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.quartz.simpl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.quartz.calendar.Calendar;
+import org.quartz.exception.FootprintLimitExceededException;
+import org.quartz.exception.ObjectAlreadyExistsException;
+import org.quartz.job.JobDetail;
+import org.quartz.job.JobKey;
+import org.quartz.job.JobPersistenceException;
+import org.quartz.matchers.GroupMatcher;
+import org.quartz.matchers.StringMatcher;
+import org.quartz.scheduler.SchedulerConfigException;
+import org.quartz.spi.ClassLoadHelper;
+import org.quartz.spi.FootprintReporter;
+import org.quartz.spi.JobStore;
+import org.quartz.spi.JobStoreFootprint;
+import org.quartz.spi.OperableTrigger;
+import org.quartz.spi.SchedulerSignaler;
+import org.quartz.spi.TriggerFiredResult;
+import org.quartz.triggers.Trigger;
+import org.quartz.triggers.Trigger.CompletedExecutionInstruction;
+import org.quartz.triggers.Trigger.TriggerState;
+import org.quartz.triggers.TriggerKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * A <code>{@link JobStore}</code> that keeps its data in RAM like
+ * <code>{@link RAMJobStore}</code>, split over a number of independent
+ * partitions, each with its own lock, maps and time index.
+ * </p>
+ * <p>
+ * Jobs are assigned to partitions by the hash of their key, and triggers are
+ * kept in the partition of their job, so that changes to the schedule made by
+ * different threads mostly proceed in parallel, and the work of keeping each
+ * time index ordered grows with the size of a partition rather than of the
+ * whole store. <code>acquireNextTriggers</code> merges the heads of the
+ * partitions' time indexes, acquiring triggers in the same order a single
+ * <code>RAMJobStore</code> would. Calendars are held by every partition.
+ * </p>
+ * <p>
+ * Operations on a single job or trigger are atomic as with
+ * <code>RAMJobStore</code>; operations spanning several partitions - such as
+ * pausing a group, or <code>storeJobsAndTriggers</code> - are applied one
+ * partition after the other.
+ * </p>
+ *
+ * @see RAMJobStore
+ */
+public class PartitionedRAMJobStore implements JobStore, FootprintReporter {
+
+    /*
+     * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+     *
+     * Data members.
+     *
+     * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+     */
+
+    private static final int DEFAULT_PARTITION_COUNT = 16;
+
+    private Partition[] partitions;
+
+    // the partition holding each trigger
+    private final Map<TriggerKey, Partition> partitionsByTriggerKey = new ConcurrentHashMap<TriggerKey, Partition>(1000);
+
+    // held while storing a trigger, so that its key is unique across partitions
+    private final Object[] triggerKeyLocks = new Object[64];
+
+    // serializes changes that are applied to every partition
+    private final Object groupLock = new Object();
+
+    private final Object acquireLock = new Object();
+
+    private volatile long maxFootprint;
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    /*
+     * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+     *
+     * Constructors.
+     *
+     * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+     */
+
+    /**
+     * <p>
+     * Create a new <code>PartitionedRAMJobStore</code>.
+     * </p>
+     */
+    public PartitionedRAMJobStore() {
+        for (int i = 0; i < triggerKeyLocks.length; i++) {
+            triggerKeyLocks[i] = new Object();
+        }
+        createPartitions(DEFAULT_PARTITION_COUNT);
+    }
+
+    /*
+     * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+     *
+     * Interface.
+     *
+     * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+     */
+
+    protected Logger getLog() {
+        return log;
+    }
+
+    public int getPartitionCount() {
+        return partitions.length;
+    }
+
+    /**
+     * The number of partitions the data is split over; the default is 16.
+     * Can only be changed while the store is empty.
+     */
+    public void setPartitionCount(int partitionCount) {
+        if (partitionCount < 1) {
+            throw new IllegalArgumentException("Partition count must be larger than 0");
+        }
+        for (Partition p : partitions) {
+            if (p.getNumberOfJobs() > 0 || p.getNumberOfCalendars() > 0) {
+                throw new IllegalStateException("Partition count cannot be changed once data is stored.");
+            }
+        }
+        createPartitions(partitionCount);
+    }
+
+    public long getMisfireThreshold() {
+        return partitions[0].getMisfireThreshold();
+    }
+
+    /**
+     * @see RAMJobStore#setMisfireThreshold(long)
+     */
+    public void setMisfireThreshold(long misfireThreshold) {
+        for (Partition p : partitions) {
+            p.setMisfireThreshold(misfireThreshold);
+        }
+    }
+
+    /**
+     * @see RAMJobStore#setUseTimingWheel(boolean)
+     */
+    public void setUseTimingWheel(boolean useTimingWheel) {
+        for (Partition p : partitions) {
+            p.setUseTimingWheel(useTimingWheel);
+        }
+    }
+
+    public long getMaxFootprint() {
+        return maxFootprint;
+    }
+
+    /**
+     * The limit applies to the whole store, counting the copies of the
+     * calendars held by each partition.
+     *
+     * @see RAMJobStore#setMaxFootprint(long)
+     */
+    public void setMaxFootprint(long maxFootprint) {
+        if (maxFootprint < 0) {
+            throw new IllegalArgumentException("Maximum footprint cannot be negative");
+        }
+        this.maxFootprint = maxFootprint;
+        for (Partition p : partitions) {
+            p.setFootprintTracked(maxFootprint > 0);
+        }
+    }
+
+    /**
+     * @see RAMJobStore#getFootprint()
+     */
+    public JobStoreFootprint getFootprint() {
+        int numberOfJobs = 0;
+        long jobBytes = 0;
+        int numberOfTriggers = 0;
+        long triggerBytes = 0;
+        long calendarBytes = 0;
+        long jobDataMapBytes = 0;
+        Map<String, Long> jobGroupBytes = new HashMap<String, Long>();
+        Map<String, Long> triggerGroupBytes = new HashMap<String, Long>();
+        List<Entry<String, Long>> largest = new ArrayList<Entry<String, Long>>();
+        for (Partition p : partitions) {
+            JobStoreFootprint footprint = p.getFootprint();
+            numberOfJobs += footprint.getNumberOfJobs();
+            jobBytes += footprint.getJobBytes();
+            numberOfTriggers += footprint.getNumberOfTriggers();
+            triggerBytes += footprint.getTriggerBytes();
+            calendarBytes += footprint.getCalendarBytes();
+            jobDataMapBytes += footprint.getJobDataMapBytes();
+            addAll(jobGroupBytes, footprint.getJobGroupBytes());
+            addAll(triggerGroupBytes, footprint.getTriggerGroupBytes());
+            largest.addAll(footprint.getLargestJobDataMaps().entrySet());
+        }
+
+        Collections.sort(largest, Collections.reverseOrder(RAMJobStore.FOOTPRINT_COMPARATOR));
+        Map<String, Long> largestJobDataMaps = new LinkedHashMap<String, Long>();
+        for (Entry<String, Long> e : largest) {
+            if (largestJobDataMaps.size() == RAMJobStore.LARGEST_JOB_DATA_MAPS) {
+                break;
+            }
+            largestJobDataMaps.put(e.getKey(), e.getValue());
+        }
+
+        return new JobStoreFootprint(numberOfJobs, jobBytes, numberOfTriggers, triggerBytes,
+                partitions[0].getNumberOfCalendars(), calendarBytes, jobDataMapBytes, maxFootprint,
+                jobGroupBytes, triggerGroupBytes, largestJobDataMaps);
+    }
+
+    private static void addAll(Map<String, Long> totals, Map<String, Long> bytesByGroup) {
+        for (Entry<String, Long> e : bytesByGroup.entrySet()) {
+            Long total = totals.get(e.getKey());
+            totals.put(e.getKey(), (total != null) ? total + e.getValue() : e.getValue());
+        }
+    }
+
+    /**
+     * Refuse to grow a partition by the given number of bytes if that takes
+     * the whole store beyond <code>maxFootprint</code>. Only reads the sizes
+     * of the other partitions, so needs none of their locks.
+     */
+    void checkFootprint(String what, long bytes) throws FootprintLimitExceededException {
+        long limit = maxFootprint;
+        if (limit > 0 && bytes > 0) {
+            long footprint = 0;
+            for (Partition p : partitions) {
+                footprint += p.getEstimatedFootprint();
+            }
+            if (footprint + bytes > limit) {
+                throw new FootprintLimitExceededException(what, bytes, footprint, limit);
+            }
+        }
+    }
+
+    public void initialize(ClassLoadHelper loadHelper, SchedulerSignaler schedSignaler) throws SchedulerConfigException {
+        for (Partition p : partitions) {
+            p.initialize(loadHelper, schedSignaler);
+        }
+
+        getLog().info("PartitionedRAMJobStore initialized with " + partitions.length + " partitions.");
+    }
+
+    public void schedulerStarted() {
+        // nothing to do
+    }
+
+    public void schedulerPaused() {
+        // nothing to do
+    }
+
+    public void schedulerResumed() {
+        // nothing to do
+    }
+
+    public void shutdown() {
+        for (Partition p : partitions) {
+            p.shutdown();
+        }
+    }
+
+    public boolean supportsPersistence() {
+        return false;
+    }
+
+    public long getEstimatedTimeToReleaseAndAcquireTrigger() {
+        return 5;
+    }
+
+    public boolean isClustered() {
+        return false;
+    }
+
+    public void clearAllSchedulingData() throws JobPersistenceException {
+        synchronized (groupLock) {
+            for (Partition p : partitions) {
+                p.clearAllSchedulingData();
+            }
+        }
+    }
+
+    public void storeJobAndTrigger(JobDetail newJob, OperableTrigger newTrigger) throws JobPersistenceException {
+        storeJob(newJob, false);
+        storeTrigger(newTrigger, false);
+    }
+
+    public void storeJob(JobDetail newJob, boolean replaceExisting) throws JobPersistenceException {
+        partitionFor(newJob.getKey()).storeJob(newJob, replaceExisting);
+    }
+
+    public void storeJobsAndTriggers(Map<JobDetail, Set<? extends Trigger>> triggersAndJobs, boolean replace)
+            throws JobPersistenceException {
+        // make sure there are no collisions...
+        if (!replace) {
+            for (Entry<JobDetail, Set<? extends Trigger>> e : triggersAndJobs.entrySet()) {
+                if (checkExists(e.getKey().getKey()))
+                    throw new ObjectAlreadyExistsException(e.getKey());
+                for (Trigger trigger : e.getValue()) {
+                    if (checkExists(trigger.getKey()))
+                        throw new ObjectAlreadyExistsException(trigger);
+                }
+            }
+        }
+        for (Entry<JobDetail, Set<? extends Trigger>> e : triggersAndJobs.entrySet()) {
+            storeJob(e.getKey(), true);
+            for (Trigger trigger : e.getValue()) {
+                storeTrigger((OperableTrigger) trigger, true);
+            }
+        }
+    }
+
+    public boolean removeJob(JobKey jobKey) {
+        return partitionFor(jobKey).removeJob(jobKey);
+    }
+
+    public boolean removeJobs(List<JobKey> jobKeys) throws JobPersistenceException {
+        boolean allFound = true;
+        for (JobKey key : jobKeys)
+            allFound = removeJob(key) && allFound;
+        return allFound;
+    }
+
+    public JobDetail retrieveJob(JobKey jobKey) {
+        return partitionFor(jobKey).retrieveJob(jobKey);
+    }
+
+    public void storeTrigger(OperableTrigger newTrigger, boolean replaceExisting) throws JobPersistenceException {
+        Partition p = partitionFor(newTrigger.getJobKey());
+        synchronized (triggerKeyLock(newTrigger.getKey())) {
+            Partition current = partitionsByTriggerKey.get(newTrigger.getKey());
+            if (current != null && current != p) {
+                if (!replaceExisting) {
+                    throw new ObjectAlreadyExistsException(newTrigger);
+                }
+                // the trigger is moving to a job in another partition
+                if (!p.checkExists(newTrigger.getJobKey())) {
+                    throw new JobPersistenceException("The job ("
+                            + newTrigger.getJobKey()
+                            + ") referenced by the trigger does not exist.");
+                }
+                current.removeTrigger(newTrigger.getKey(), false);
+            }
+            p.storeTrigger(newTrigger, replaceExisting);
+        }
+    }
+
+    public boolean removeTrigger(TriggerKey triggerKey) {
+        Partition p = partitionsByTriggerKey.get(triggerKey);
+        return p != null && p.removeTrigger(triggerKey);
+    }
+
+    public boolean removeTriggers(List<TriggerKey> triggerKeys) throws JobPersistenceException {
+        boolean allFound = true;
+        for (TriggerKey key : triggerKeys)
+            allFound = removeTrigger(key) && allFound;
+        return allFound;
+    }
+
+    public boolean replaceTrigger(TriggerKey triggerKey, OperableTrigger newTrigger) throws JobPersistenceException {
+        synchronized (triggerKeyLock(newTrigger.getKey())) {
+            Partition p = partitionsByTriggerKey.get(triggerKey);
+            if (p == null) {
+                return false;
+            }
+            Partition current = partitionsByTriggerKey.get(newTrigger.getKey());
+            if (current != null && current != p) {
+                throw new ObjectAlreadyExistsException(newTrigger);
+            }
+            return p.replaceTrigger(triggerKey, newTrigger);
+        }
+    }
+
+    public OperableTrigger retrieveTrigger(TriggerKey triggerKey) {
+        Partition p = partitionsByTriggerKey.get(triggerKey);
+        return (p != null) ? p.retrieveTrigger(triggerKey) : null;
+    }
+
+    public boolean checkExists(JobKey jobKey) throws JobPersistenceException {
+        return partitionFor(jobKey).checkExists(jobKey);
+    }
+
+    public boolean checkExists(TriggerKey triggerKey) throws JobPersistenceException {
+        return partitionsByTriggerKey.containsKey(triggerKey);
+    }
+
+    public TriggerState getTriggerState(TriggerKey triggerKey) throws JobPersistenceException {
+        Partition p = partitionsByTriggerKey.get(triggerKey);
+        return (p != null) ? p.getTriggerState(triggerKey) : TriggerState.NONE;
+    }
+
+    public void resetTriggerFromErrorState(TriggerKey triggerKey) throws JobPersistenceException {
+        Partition p = partitionsByTriggerKey.get(triggerKey);
+        if (p != null) {
+            p.resetTriggerFromErrorState(triggerKey);
+        }
+    }
+
+    public void storeCalendar(String name, Calendar calendar, boolean replaceExisting, boolean updateTriggers)
+            throws ObjectAlreadyExistsException {
+        synchronized (groupLock) {
+            if (!replaceExisting && partitions[0].retrieveCalendar(name) != null) {
+                throw new ObjectAlreadyExistsException(
+                        "Calendar with name '" + name + "' already exists.");
+            }
+            for (Partition p : partitions) {
+                p.storeCalendar(name, calendar, true, updateTriggers);
+            }
+        }
+    }
+
+    public boolean removeCalendar(String calName) throws JobPersistenceException {
+        synchronized (groupLock) {
+            for (Partition p : partitions) {
+                if (p.isCalendarReferenced(calName)) {
+                    throw new JobPersistenceException(
+                            "Calender cannot be removed if it referenced by a Trigger!");
+                }
+            }
+            boolean found = false;
+            for (Partition p : partitions) {
+                found = p.removeCalendar(calName) | found;
+            }
+            return found;
+        }
+    }
+
+    public Calendar retrieveCalendar(String calName) {
+        return partitions[0].retrieveCalendar(calName);
+    }
+
+    public int getNumberOfJobs() {
+        int count = 0;
+        for (Partition p : partitions) {
+            count += p.getNumberOfJobs();
+        }
+        return count;
+    }
+
+    public int getNumberOfTriggers() {
+        return partitionsByTriggerKey.size();
+    }
+
+    public int getNumberOfCalendars() {
+        return partitions[0].getNumberOfCalendars();
+    }
+
+    public Set<JobKey> getJobKeys(GroupMatcher<JobKey> matcher) {
+        Set<JobKey> keys = new HashSet<JobKey>();
+        for (Partition p : partitions) {
+            keys.addAll(p.getJobKeys(matcher));
+        }
+        return keys;
+    }
+
+    public Set<TriggerKey> getTriggerKeys(GroupMatcher<TriggerKey> matcher) {
+        Set<TriggerKey> keys = new HashSet<TriggerKey>();
+        for (Partition p : partitions) {
+            keys.addAll(p.getTriggerKeys(matcher));
+        }
+        return keys;
+    }
+
+    public List<String> getJobGroupNames() {
+        Set<String> groups = new LinkedHashSet<String>();
+        for (Partition p : partitions) {
+            groups.addAll(p.getJobGroupNames());
+        }
+        return new LinkedList<String>(groups);
+    }
+
+    public List<String> getTriggerGroupNames() {
+        Set<String> groups = new LinkedHashSet<String>();
+        for (Partition p : partitions) {
+            groups.addAll(p.getTriggerGroupNames());
+        }
+        return new LinkedList<String>(groups);
+    }
+
+    public List<String> getCalendarNames() {
+        return partitions[0].getCalendarNames();
+    }
+
+    public List<OperableTrigger> getTriggersForJob(JobKey jobKey) {
+        return partitionFor(jobKey).getTriggersForJob(jobKey);
+    }
+
+    public void pauseTrigger(TriggerKey triggerKey) {
+        Partition p = partitionsByTriggerKey.get(triggerKey);
+        if (p != null) {
+            p.pauseTrigger(triggerKey);
+        }
+    }
+
+    /**
+     * Pauses the matching groups in every partition, including those in
+     * which a group has no triggers, so that triggers later added to a
+     * paused group are paused wherever they are stored.
+     */
+    public List<String> pauseTriggers(GroupMatcher<TriggerKey> matcher) {
+        synchronized (groupLock) {
+            Set<String> pausedGroups = new LinkedHashSet<String>();
+            for (Partition p : partitions) {
+                pausedGroups.addAll(p.pauseTriggers(matcher));
+            }
+            if (matcher.getCompareWithOperator() != StringMatcher.StringOperatorName.EQUALS) {
+                for (String group : pausedGroups) {
+                    for (Partition p : partitions) {
+                        p.pauseTriggers(GroupMatcher.triggerGroupEquals(group));
+                    }
+                }
+            }
+            return new LinkedList<String>(pausedGroups);
+        }
+    }
+
+    public void pauseJob(JobKey jobKey) {
+        partitionFor(jobKey).pauseJob(jobKey);
+    }
+
+    /**
+     * Pauses the matching groups in every partition.
+     *
+     * @see #pauseTriggers(GroupMatcher)
+     */
+    public List<String> pauseJobs(GroupMatcher<JobKey> matcher) {
+        synchronized (groupLock) {
+            Set<String> pausedGroups = new LinkedHashSet<String>();
+            for (Partition p : partitions) {
+                pausedGroups.addAll(p.pauseJobs(matcher));
+            }
+            if (matcher.getCompareWithOperator() != StringMatcher.StringOperatorName.EQUALS) {
+                for (String group : pausedGroups) {
+                    for (Partition p : partitions) {
+                        p.pauseJobs(GroupMatcher.jobGroupEquals(group));
+                    }
+                }
+            }
+            return new LinkedList<String>(pausedGroups);
+        }
+    }
+
+    public void resumeTrigger(TriggerKey triggerKey) {
+        Partition p = partitionsByTriggerKey.get(triggerKey);
+        if (p != null) {
+            p.resumeTrigger(triggerKey);
+        }
+    }
+
+    public List<String> resumeTriggers(GroupMatcher<TriggerKey> matcher) {
+        synchronized (groupLock) {
+            Set<String> groups = new LinkedHashSet<String>();
+            for (Partition p : partitions) {
+                groups.addAll(p.resumeTriggers(matcher));
+            }
+            return new ArrayList<String>(groups);
+        }
+    }
+
+    public Set<String> getPausedTriggerGroups() throws JobPersistenceException {
+        Set<String> groups = new HashSet<String>();
+        for (Partition p : partitions) {
+            groups.addAll(p.getPausedTriggerGroups());
+        }
+        return groups;
+    }
+
+    public void resumeJob(JobKey jobKey) {
+        partitionFor(jobKey).resumeJob(jobKey);
+    }
+
+    public Collection<String> resumeJobs(GroupMatcher<JobKey> matcher) {
+        synchronized (groupLock) {
+            Set<String> groups = new HashSet<String>();
+            for (Partition p : partitions) {
+                groups.addAll(p.resumeJobs(matcher));
+            }
+            return groups;
+        }
+    }
+
+    public void pauseAll() {
+        synchronized (groupLock) {
+            for (String group : getTriggerGroupNames()) {
+                pauseTriggers(GroupMatcher.triggerGroupEquals(group));
+            }
+        }
+    }
+
+    public void resumeAll() {
+        synchronized (groupLock) {
+            for (Partition p : partitions) {
+                p.resumeAll();
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Get a handle to the next triggers to be fired, and mark them as
+     * 'reserved' by the calling scheduler.
+     * </p>
+     * <p>
+     * The partitions' earliest triggers are kept in a priority queue; the
+     * earliest of them is acquired, and replaced in the queue by the next
+     * trigger of its partition, until <code>maxCount</code> triggers are
+     * acquired or the earliest one is outside the batch.
+     * </p>
+     *
+     * @see #releaseAcquiredTrigger(OperableTrigger)
+     */
+    public List<OperableTrigger> acquireNextTriggers(long noLaterThan, int maxCount, long timeWindow) {
+        List<OperableTrigger> result = new ArrayList<OperableTrigger>();
+
+        synchronized (acquireLock) {
+            PriorityQueue<Head> heads = new PriorityQueue<Head>(partitions.length, new HeadComparator());
+            for (Partition p : partitions) {
+                Head head = p.head();
+                if (head != null) {
+                    heads.add(head);
+                }
+            }
+
+            long batchEnd = noLaterThan;
+            try {
+                while (result.size() < maxCount) {
+                    Head head = heads.poll();
+                    if (head == null || head.nextFireTime > batchEnd) {
+                        break;
+                    }
+
+                    OperableTrigger trig = head.partition.acquire(head);
+                    if (trig != null) {
+                        if (result.isEmpty()) {
+                            batchEnd = Math.max(head.nextFireTime, System.currentTimeMillis()) + timeWindow;
+                        }
+                        result.add(trig);
+                    }
+
+                    Head next = head.partition.head();
+                    if (next != null) {
+                        heads.add(next);
+                    }
+                }
+            } finally {
+                for (Partition p : partitions) {
+                    p.endAcquisition();
+                }
+            }
+        }
+
+        return result;
+    }
+
+    public void releaseAcquiredTrigger(OperableTrigger trigger) {
+        partitionFor(trigger.getJobKey()).releaseAcquiredTrigger(trigger);
+    }
+
+    /**
+     * Fires each trigger in its partition; the results are in the order of
+     * the given triggers.
+     */
+    public List<TriggerFiredResult> triggersFired(List<OperableTrigger> firedTriggers) {
+        List<TriggerFiredResult> results = new ArrayList<TriggerFiredResult>(firedTriggers.size());
+        for (OperableTrigger trigger : firedTriggers) {
+            results.addAll(partitionFor(trigger.getJobKey()).triggersFired(Collections.singletonList(trigger)));
+        }
+        return results;
+    }
+
+    public void triggeredJobComplete(OperableTrigger trigger, JobDetail jobDetail,
+                                     CompletedExecutionInstruction triggerInstCode) {
+        partitionFor(jobDetail.getKey()).triggeredJobComplete(trigger, jobDetail, triggerInstCode);
+    }
+
+    public long getAcquireRetryDelay(int failureCount) {
+        return 20;
+    }
+
+    public void setInstanceId(String schedInstId) {
+        //
+    }
+
+    public void setInstanceName(String schedName) {
+        //
+    }
+
+    public void setThreadPoolSize(final int poolSize) {
+        //
+    }
+
+    private void createPartitions(int partitionCount) {
+        partitions = new Partition[partitionCount];
+        for (int i = 0; i < partitionCount; i++) {
+            partitions[i] = new Partition(this);
+            partitions[i].setFootprintTracked(maxFootprint > 0);
+        }
+    }
+
+    private Partition partitionFor(JobKey jobKey) {
+        int h = jobKey.hashCode();
+        h ^= (h >>> 16);
+        return partitions[(h & 0x7fffffff) % partitions.length];
+    }
+
+    private Object triggerKeyLock(TriggerKey triggerKey) {
+        return triggerKeyLocks[(triggerKey.hashCode() & 0x7fffffff) % triggerKeyLocks.length];
+    }
+
+    /*
+     * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+     *
+     * Helper Classes.
+     *
+     * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+     */
+
+    /**
+     * One partition of the store, keeping the store's index of trigger keys
+     * up to date as triggers are added and removed.
+     */
+    static class Partition extends RAMJobStore {
+
+        private final PartitionedRAMJobStore store;
+
+        private final Map<TriggerKey, Partition> partitionsByTriggerKey;
+
+        // jobs acquired during one call to acquireNextTriggers
+        private final Set<JobKey> acquiredJobKeysForNoConcurrentExec = new HashSet<JobKey>();
+
+        Partition(PartitionedRAMJobStore store) {
+            this.store = store;
+            this.partitionsByTriggerKey = store.partitionsByTriggerKey;
+        }
+
+        /**
+         * The limit applies to the whole store.
+         */
+        @Override
+        protected void checkFootprint(String what, long bytes) throws FootprintLimitExceededException {
+            store.checkFootprint(what, bytes);
+        }
+
+        /**
+         * The limit of the whole store, reported by the partition's
+         * footprint.
+         */
+        @Override
+        public long getMaxFootprint() {
+            return store.getMaxFootprint();
+        }
+
+        @Override
+        public void storeTrigger(OperableTrigger newTrigger, boolean replaceExisting) throws JobPersistenceException {
+            synchronized (lock) {
+                super.storeTrigger(newTrigger, replaceExisting);
+                partitionsByTriggerKey.put(newTrigger.getKey(), this);
+            }
+        }
+
+        @Override
+        protected boolean removeTrigger(TriggerKey key, boolean removeOrphanedJob) {
+            synchronized (lock) {
+                boolean found = super.removeTrigger(key, removeOrphanedJob);
+                if (found) {
+                    partitionsByTriggerKey.remove(key);
+                }
+                return found;
+            }
+        }
+
+        @Override
+        public boolean replaceTrigger(TriggerKey triggerKey, OperableTrigger newTrigger) throws JobPersistenceException {
+            synchronized (lock) {
+                boolean found = super.replaceTrigger(triggerKey, newTrigger);
+                if (found && !triggerKey.equals(newTrigger.getKey())) {
+                    partitionsByTriggerKey.remove(triggerKey);
+                }
+                return found;
+            }
+        }
+
+        boolean isCalendarReferenced(String calName) {
+            synchronized (lock) {
+                return triggersByCalendar.containsKey(calName);
+            }
+        }
+
+        /**
+         * Apply misfire instructions to the earliest waiting triggers, and
+         * park blocked ones, until the earliest one has not misfired, and
+         * return it.
+         */
+        Head head() {
+            synchronized (lock) {
+                while (true) {
+                    TriggerWrapper tw = timeTriggers.first();
+                    if (tw == null) {
+                        return null;
+                    }
+                    Date nextFireTime = tw.trigger.getNextFireTime();
+                    if (nextFireTime == null) {
+                        timeTriggers.remove(tw);
+                        continue;
+                    }
+                    if (tw.state == TriggerWrapper.STATE_BLOCKED) {
+                        timeTriggers.remove(tw);
+                        parkTrigger(tw);
+                        continue;
+                    }
+                    if (nextFireTime.getTime() <= System.currentTimeMillis() - getMisfireThreshold()) {
+                        timeTriggers.remove(tw);
+                        boolean misfired = applyMisfire(tw);
+                        if (tw.trigger.getNextFireTime() != null && tw.state == TriggerWrapper.STATE_WAITING) {
+                            timeTriggers.add(tw);
+                        }
+                        if (misfired) {
+                            continue;
+                        }
+                    }
+                    return new Head(this, tw);
+                }
+            }
+        }
+
+        /**
+         * Acquire the given trigger, if it is still the earliest waiting
+         * trigger of this partition.
+         */
+        OperableTrigger acquire(Head head) {
+            synchronized (lock) {
+                TriggerWrapper tw = timeTriggers.first();
+                if (tw != head.wrapper || tw.trigger.getNextFireTime() == null
+                        || tw.trigger.getNextFireTime().getTime() != head.nextFireTime) {
+                    return null;
+                }
+                timeTriggers.remove(tw);
+
+                // If trigger's job is set as @DisallowConcurrentExecution, and it has already been acquired,
+                // park the trigger with the job until the job completes.
+                JobKey jobKey = tw.trigger.getJobKey();
+                if (jobsByKey.get(jobKey).jobDetail.isConcurrentExectionDisallowed()) {
+                    if (!acquiredJobKeysForNoConcurrentExec.add(jobKey)) {
+                        parkTrigger(tw);
+                        return null;
+                    }
+                }
+
+                tw.state = TriggerWrapper.STATE_ACQUIRED;
+                synchronized (tw) {
+                    tw.trigger.setFireInstanceId(getFiredTriggerRecordId());
+                    return (OperableTrigger) tw.trigger.clone();
+                }
+            }
+        }
+
+        void endAcquisition() {
+            synchronized (lock) {
+                acquiredJobKeysForNoConcurrentExec.clear();
+            }
+        }
+    }
+
+    /**
+     * The earliest waiting trigger of a partition, as it was when looked at.
+     */
+    static class Head {
+
+        final Partition partition;
+
+        final TriggerWrapper wrapper;
+
+        final long nextFireTime;
+
+        final int priority;
+
+        Head(Partition partition, TriggerWrapper wrapper) {
+            this.partition = partition;
+            this.wrapper = wrapper;
+            this.nextFireTime = wrapper.trigger.getNextFireTime().getTime();
+            this.priority = wrapper.trigger.getPriority();
+        }
+    }
+
+    /**
+     * Orders heads like <code>{@link Trigger.TriggerTimeComparator}</code>
+     * orders triggers.
+     */
+    static class HeadComparator implements Comparator<Head> {
+
+        public int compare(Head h1, Head h2) {
+            if (h1.nextFireTime != h2.nextFireTime) {
+                return h1.nextFireTime < h2.nextFireTime ? -1 : 1;
+            }
+            if (h1.priority != h2.priority) {
+                return h2.priority - h1.priority;
+            }
+            return h1.wrapper.key.compareTo(h2.wrapper.key);
+        }
+    }
+}
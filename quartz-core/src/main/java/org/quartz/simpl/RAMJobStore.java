@@ -17,6 +17,7 @@
 
 package org.quartz.simpl;
 
+import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -24,12 +25,18 @@ import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeSet;
 import java.util.Map.Entry;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.quartz.calendar.Calendar;
@@ -38,6 +45,7 @@ import org.quartz.job.JobDataMap;
 import org.quartz.job.JobDetail;
 import org.quartz.job.JobKey;
 import org.quartz.job.JobPersistenceException;
+import org.quartz.exception.FootprintLimitExceededException;
 import org.quartz.exception.ObjectAlreadyExistsException;
 import org.quartz.triggers.Trigger;
 import org.quartz.triggers.TriggerKey;
@@ -46,8 +54,11 @@ import org.quartz.triggers.Trigger.TriggerState;
 import org.quartz.triggers.Trigger.TriggerTimeComparator;
 import org.quartz.matchers.GroupMatcher;
 import org.quartz.matchers.StringMatcher;
+import org.quartz.scheduler.SchedulerConfigException;
 import org.quartz.spi.ClassLoadHelper;
+import org.quartz.spi.FootprintReporter;
 import org.quartz.spi.JobStore;
+import org.quartz.spi.JobStoreFootprint;
 import org.quartz.spi.OperableTrigger;
 import org.quartz.spi.SchedulerSignaler;
 import org.quartz.spi.TriggerFiredBundle;
@@ -72,7 +83,7 @@ import org.slf4j.LoggerFactory;
  * @author Sharada Jambula
  * @author Eric Mueller
  */
-public class RAMJobStore implements JobStore {
+public class RAMJobStore implements JobStore, FootprintReporter {
 
     /*
      * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
@@ -82,30 +93,57 @@ public class RAMJobStore implements JobStore {
      * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
      */
 
-    protected HashMap<JobKey, JobWrapper> jobsByKey = new HashMap<JobKey, JobWrapper>(1000);
+    protected Map<JobKey, JobWrapper> jobsByKey = createMap(1000);
 
-    protected HashMap<TriggerKey, TriggerWrapper> triggersByKey = new HashMap<TriggerKey, TriggerWrapper>(1000);
+    protected Map<TriggerKey, TriggerWrapper> triggersByKey = createMap(1000);
 
-    protected HashMap<String, HashMap<JobKey, JobWrapper>> jobsByGroup = new HashMap<String, HashMap<JobKey, JobWrapper>>(25);
+    protected Map<String, Map<JobKey, JobWrapper>> jobsByGroup = createMap(25);
 
-    protected HashMap<String, HashMap<TriggerKey, TriggerWrapper>> triggersByGroup = new HashMap<String, HashMap<TriggerKey, TriggerWrapper>>(25);
+    protected Map<String, Map<TriggerKey, TriggerWrapper>> triggersByGroup = createMap(25);
 
-    protected TreeSet<TriggerWrapper> timeTriggers = new TreeSet<TriggerWrapper>(new TriggerWrapperComparator());
+    protected TriggerTimeIndex timeTriggers = createTimeIndex(false);
 
-    protected HashMap<String, Calendar> calendarsByName = new HashMap<String, Calendar>(25);
+    protected Map<String, Calendar> calendarsByName = createMap(25);
 
-    protected Map<JobKey, List<TriggerWrapper>> triggersByJob = new HashMap<JobKey, List<TriggerWrapper>>(1000);
+    protected Map<JobKey, Set<TriggerWrapper>> triggersByJob = createMap(1000);
+
+    protected Map<String, Set<TriggerWrapper>> triggersByCalendar = createMap(25);
 
     protected final Object lock = new Object();
 
-    protected HashSet<String> pausedTriggerGroups = new HashSet<String>();
+    // calendar changes affecting at least this many triggers update them in parallel
+    private static final int PARALLEL_CALENDAR_UPDATE_THRESHOLD = 1000;
+
+    protected Set<String> pausedTriggerGroups = createSet();
+
+    protected Set<String> pausedJobGroups = createSet();
 
-    protected HashSet<String> pausedJobGroups = new HashSet<String>();
+    protected Set<JobKey> blockedJobs = createSet();
 
-    protected HashSet<JobKey> blockedJobs = new HashSet<JobKey>();
+    // triggers set aside from timeTriggers until their job completes, by job and key
+    protected Map<JobKey, Map<TriggerKey, TriggerWrapper>> blockedTriggersByJob = createMap(25);
 
     protected long misfireThreshold = 5000l;
 
+    // estimated sizes, see FootprintEstimator; changed under lock, but may
+    // be read without it. Those of jobs and triggers are only kept up to date
+    // while footprintTracked
+    private volatile long jobFootprint;
+
+    private volatile long triggerFootprint;
+
+    private volatile long calendarFootprint;
+
+    private final Map<String, Long> calendarFootprints = new HashMap<String, Long>();
+
+    private volatile long maxFootprint;
+
+    // guarded by lock
+    private boolean footprintTracked;
+
+    // the number of largest JobDataMaps listed by getFootprint()
+    static final int LARGEST_JOB_DATA_MAPS = 10;
+
     protected SchedulerSignaler signaler;
 
     private final Logger log = LoggerFactory.getLogger(getClass());
@@ -138,13 +176,51 @@ public class RAMJobStore implements JobStore {
         return log;
     }
 
+    /**
+     * Create one of the maps backing this store (keys, groups, calendars,
+     * triggers by job).  All access to the maps is guarded by
+     * <code>lock</code> unless a subclass says otherwise.
+     */
+    protected <K, V> Map<K, V> createMap(int initialCapacity) {
+        return new HashMap<K, V>(initialCapacity);
+    }
+
+    /**
+     * Create one of the sets backing this store (paused groups, blocked jobs).
+     */
+    protected <E> Set<E> createSet() {
+        return new HashSet<E>();
+    }
+
+    /**
+     * Create the set holding the triggers of a single job or calendar.
+     */
+    protected Set<TriggerWrapper> createTriggerSet() {
+        return new LinkedHashSet<TriggerWrapper>(4);
+    }
+
+    /**
+     * Create the index of waiting triggers consulted by
+     * <code>acquireNextTriggers</code>.
+     */
+    protected TriggerTimeIndex createTimeIndex(boolean useTimingWheel) {
+        return useTimingWheel ? new TimingWheelTriggerTimeIndex() : new TreeSetTriggerTimeIndex();
+    }
+
+    /**
+     * Create the copy of a trigger that is kept by this store.
+     */
+    protected OperableTrigger createStoredTrigger(OperableTrigger trigger) {
+        return (OperableTrigger) trigger.clone();
+    }
+
     /**
      * <p>
      * Called by the QuartzScheduler before the <code>JobStore</code> is
      * used, in order to give the it a chance to initialize.
      * </p>
      */
-    public void initialize(ClassLoadHelper loadHelper, SchedulerSignaler schedSignaler) {
+    public void initialize(ClassLoadHelper loadHelper, SchedulerSignaler schedSignaler) throws SchedulerConfigException {
 
         this.signaler = schedSignaler;
 
@@ -182,6 +258,71 @@ public class RAMJobStore implements JobStore {
         this.misfireThreshold = misfireThreshold;
     }
 
+    /**
+     * Whether waiting triggers are indexed by a hierarchical timing wheel
+     * rather than a sorted tree. The timing wheel makes storing and acquiring
+     * near-term triggers constant time, which pays off with very large
+     * numbers of triggers; the default is <code>false</code>.
+     *
+     * @param useTimingWheel whether to use a timing wheel time index
+     */
+    @SuppressWarnings("UnusedDeclaration")
+    public void setUseTimingWheel(boolean useTimingWheel) {
+        synchronized (lock) {
+            TriggerTimeIndex index = createTimeIndex(useTimingWheel);
+            for (TriggerWrapper tw : timeTriggers) {
+                index.add(tw);
+            }
+            timeTriggers = index;
+        }
+    }
+
+    public long getMaxFootprint() {
+        return maxFootprint;
+    }
+
+    /**
+     * The estimated number of bytes beyond which storing more jobs or
+     * triggers fails with a <code>FootprintLimitExceededException</code>,
+     * rather than the JVM running out of memory; the default, 0, is no
+     * limit.
+     *
+     * @see #getFootprint()
+     */
+    @SuppressWarnings("UnusedDeclaration")
+    public void setMaxFootprint(long maxFootprint) {
+        if (maxFootprint < 0) {
+            throw new IllegalArgumentException("Maximum footprint cannot be negative");
+        }
+        this.maxFootprint = maxFootprint;
+        setFootprintTracked(maxFootprint > 0);
+    }
+
+    /**
+     * Keep track of the estimated size of the jobs and triggers as they are
+     * stored and removed, as the footprint limit is checked against it,
+     * starting from the size of those already stored. Otherwise their size
+     * is only estimated by <code>getFootprint()</code>, sparing storing them
+     * the cost of it.
+     */
+    void setFootprintTracked(boolean tracked) {
+        synchronized (lock) {
+            if (tracked && !footprintTracked) {
+                long jobBytes = 0;
+                for (JobWrapper jw : jobsByKey.values()) {
+                    jobBytes += jw.getFootprint();
+                }
+                long triggerBytes = 0;
+                for (TriggerWrapper tw : triggersByKey.values()) {
+                    triggerBytes += tw.getFootprint();
+                }
+                jobFootprint = jobBytes;
+                triggerFootprint = triggerBytes;
+            }
+            footprintTracked = tracked;
+        }
+    }
+
     /**
      * <p>
      * Called by the QuartzScheduler to inform the <code>JobStore</code> that
@@ -226,6 +367,7 @@ public class RAMJobStore implements JobStore {
             for (String name : lst) {
                 removeCalendar(name);
             }
+            blockedTriggersByJob.clear();
         }
     }
 
@@ -258,38 +400,56 @@ public class RAMJobStore implements JobStore {
      *                                      exists, and replaceExisting is set to false.
      */
     public void storeJob(JobDetail newJob,
-                         boolean replaceExisting) throws ObjectAlreadyExistsException {
+                         boolean replaceExisting) throws JobPersistenceException {
         JobWrapper jw = new JobWrapper((JobDetail) newJob.clone());
 
         boolean repl = false;
 
         synchronized (lock) {
-            if (jobsByKey.get(jw.key) != null) {
+            JobWrapper orig = jobsByKey.get(jw.key);
+            if (orig != null) {
                 if (!replaceExisting) {
                     throw new ObjectAlreadyExistsException(newJob);
                 }
                 repl = true;
             }
 
+            if (footprintTracked) {
+                checkFootprint("Job '" + jw.key + "'", jw.getFootprint() - (repl ? orig.getFootprint() : 0));
+            }
             if (!repl) {
-                // get job group
-                HashMap<JobKey, JobWrapper> grpMap = jobsByGroup.get(newJob.getKey().getGroup());
-                if (grpMap == null) {
-                    grpMap = new HashMap<JobKey, JobWrapper>(100);
-                    jobsByGroup.put(newJob.getKey().getGroup(), grpMap);
-                }
-                // add to jobs by group
-                grpMap.put(newJob.getKey(), jw);
-                // add to jobs by FQN map
-                jobsByKey.put(jw.key, jw);
+                addJob(jw);
             } else {
                 // update job detail
-                JobWrapper orig = jobsByKey.get(jw.key);
-                orig.jobDetail = jw.jobDetail; // already cloned
+                replaceJobDetail(orig, jw); // already cloned
             }
         }
     }
 
+    private void addJob(JobWrapper jw) {
+        // get job group
+        Map<JobKey, JobWrapper> grpMap = jobsByGroup.get(jw.key.getGroup());
+        if (grpMap == null) {
+            grpMap = createMap(100);
+            jobsByGroup.put(jw.key.getGroup(), grpMap);
+        }
+        // add to jobs by group
+        grpMap.put(jw.key, jw);
+        // add to jobs by FQN map
+        jobsByKey.put(jw.key, jw);
+        if (footprintTracked) {
+            jobFootprint += jw.getFootprint();
+        }
+    }
+
+    private void replaceJobDetail(JobWrapper orig, JobWrapper replacement) {
+        if (footprintTracked) {
+            jobFootprint += replacement.getFootprint() - orig.getFootprint();
+        }
+        orig.jobDetail = replacement.jobDetail;
+        orig.footprint = replacement.footprint;
+    }
+
     /**
      * <p>
      * Remove (delete) the <code>{@link Job}</code> with the given
@@ -305,16 +465,21 @@ public class RAMJobStore implements JobStore {
         boolean found = false;
 
         synchronized (lock) {
-            List<OperableTrigger> triggersOfJob = getTriggersForJob(jobKey);
-            for (OperableTrigger trig : triggersOfJob) {
-                this.removeTrigger(trig.getKey());
+            for (TriggerWrapper tw : getTriggerWrappersForJob(jobKey)) {
+                this.removeTrigger(tw.key);
                 found = true;
             }
 
-            found = (jobsByKey.remove(jobKey) != null) | found;
+            JobWrapper jw = jobsByKey.remove(jobKey);
+            if (jw != null) {
+                if (footprintTracked) {
+                    jobFootprint -= jw.getFootprint();
+                }
+                found = true;
+            }
             if (found) {
 
-                HashMap<JobKey, JobWrapper> grpMap = jobsByGroup.get(jobKey.getGroup());
+                Map<JobKey, JobWrapper> grpMap = jobsByGroup.get(jobKey.getGroup());
                 if (grpMap != null) {
                     grpMap.remove(jobKey);
                     if (grpMap.size() == 0) {
@@ -351,29 +516,81 @@ public class RAMJobStore implements JobStore {
         return allFound;
     }
 
+    /**
+     * <p>
+     * Store the given jobs and triggers, all at once.
+     * </p>
+     * <p>
+     * Everything is validated before anything is stored, so that either all
+     * or none of the jobs and triggers are stored, and the store's indexes
+     * are built in one pass, with the waiting triggers added to the time
+     * index as one sorted batch - which makes loading a large schedule
+     * proportional to its size, rather than to its size times the depth of
+     * the index.
+     * </p>
+     *
+     * @throws ObjectAlreadyExistsException if a job or trigger already exists,
+     *                                      and replace is <code>false</code>.
+     * @throws JobPersistenceException if a trigger references a job that
+     *                                 neither exists nor is stored with it.
+     */
     public void storeJobsAndTriggers(
             Map<JobDetail, Set<? extends Trigger>> triggersAndJobs, boolean replace)
             throws JobPersistenceException {
 
         synchronized (lock) {
             // make sure there are no collisions...
-            if (!replace) {
-                for (Entry<JobDetail, Set<? extends Trigger>> e : triggersAndJobs.entrySet()) {
-                    if (checkExists(e.getKey().getKey()))
-                        throw new ObjectAlreadyExistsException(e.getKey());
-                    for (Trigger trigger : e.getValue()) {
-                        if (checkExists(trigger.getKey()))
-                            throw new ObjectAlreadyExistsException(trigger);
+            Set<JobKey> newJobKeys = new HashSet<JobKey>(triggersAndJobs.size() * 2);
+            for (JobDetail job : triggersAndJobs.keySet()) {
+                if (!replace && jobsByKey.get(job.getKey()) != null)
+                    throw new ObjectAlreadyExistsException(job);
+                newJobKeys.add(job.getKey());
+            }
+            for (Set<? extends Trigger> triggers : triggersAndJobs.values()) {
+                for (Trigger trigger : triggers) {
+                    if (!replace && triggersByKey.get(trigger.getKey()) != null)
+                        throw new ObjectAlreadyExistsException(trigger);
+                    if (!newJobKeys.contains(trigger.getJobKey()) && jobsByKey.get(trigger.getJobKey()) == null) {
+                        throw new JobPersistenceException("The job ("
+                                + trigger.getJobKey()
+                                + ") referenced by the trigger does not exist.");
                     }
                 }
             }
+
+            if (footprintTracked) {
+                checkFootprint(triggersAndJobs.size() + " jobs and their triggers", estimateFootprint(triggersAndJobs));
+            }
+
             // do bulk add...
-            for (Entry<JobDetail, Set<? extends Trigger>> e : triggersAndJobs.entrySet()) {
-                storeJob(e.getKey(), true);
-                for (Trigger trigger : e.getValue()) {
-                    storeTrigger((OperableTrigger) trigger, true);
+            for (JobDetail job : triggersAndJobs.keySet()) {
+                JobWrapper orig = jobsByKey.get(job.getKey());
+                if (orig != null) {
+                    replaceJobDetail(orig, new JobWrapper((JobDetail) job.clone()));
+                } else {
+                    addJob(new JobWrapper((JobDetail) job.clone()));
+                }
+            }
+            List<TriggerWrapper> waiting = new ArrayList<TriggerWrapper>();
+            for (Set<? extends Trigger> triggers : triggersAndJobs.values()) {
+                for (Trigger trigger : triggers) {
+                    if (triggersByKey.get(trigger.getKey()) != null) {
+                        removeTrigger(trigger.getKey(), false);
+                    }
+                    TriggerWrapper tw = new TriggerWrapper(createStoredTrigger((OperableTrigger) trigger));
+                    if (addTrigger(tw)) {
+                        waiting.add(tw);
+                    }
+                }
+            }
+            // leave out triggers replaced later in the same batch
+            List<TriggerWrapper> stored = new ArrayList<TriggerWrapper>(waiting.size());
+            for (TriggerWrapper tw : waiting) {
+                if (triggersByKey.get(tw.key) == tw) {
+                    stored.add(tw);
                 }
             }
+            timeTriggers.addAll(stored);
         }
 
     }
@@ -393,14 +610,17 @@ public class RAMJobStore implements JobStore {
      */
     public void storeTrigger(OperableTrigger newTrigger,
                              boolean replaceExisting) throws JobPersistenceException {
-        TriggerWrapper tw = new TriggerWrapper((OperableTrigger) newTrigger.clone());
+        TriggerWrapper tw = new TriggerWrapper(createStoredTrigger(newTrigger));
 
         synchronized (lock) {
-            if (triggersByKey.get(tw.key) != null) {
-                if (!replaceExisting) {
-                    throw new ObjectAlreadyExistsException(newTrigger);
-                }
-
+            TriggerWrapper orig = triggersByKey.get(tw.key);
+            if (orig != null && !replaceExisting) {
+                throw new ObjectAlreadyExistsException(newTrigger);
+            }
+            if (footprintTracked) {
+                checkFootprint("Trigger '" + tw.key + "'", tw.getFootprint() - (orig != null ? orig.getFootprint() : 0));
+            }
+            if (orig != null) {
                 removeTrigger(newTrigger.getKey(), false);
             }
 
@@ -410,36 +630,66 @@ public class RAMJobStore implements JobStore {
                         + ") referenced by the trigger does not exist.");
             }
 
-            // add to triggers by job
-            List<TriggerWrapper> jobList = triggersByJob.get(tw.jobKey);
-            if (jobList == null) {
-                jobList = new ArrayList<TriggerWrapper>(1);
-                triggersByJob.put(tw.jobKey, jobList);
+            if (addTrigger(tw)) {
+                timeTriggers.add(tw);
             }
-            jobList.add(tw);
+        }
+    }
+
+    /**
+     * Add the given trigger to the key, group and job indexes, and set its
+     * state.
+     *
+     * @return <code>true</code> if the trigger is waiting, and so belongs in
+     * the time index.
+     */
+    private boolean addTrigger(TriggerWrapper tw) {
+        // add to triggers by job
+        Set<TriggerWrapper> jobTriggers = triggersByJob.get(tw.jobKey);
+        if (jobTriggers == null) {
+            jobTriggers = createTriggerSet();
+            triggersByJob.put(tw.jobKey, jobTriggers);
+        }
+        jobTriggers.add(tw);
 
-            // add to triggers by group
-            HashMap<TriggerKey, TriggerWrapper> grpMap = triggersByGroup.get(newTrigger.getKey().getGroup());
-            if (grpMap == null) {
-                grpMap = new HashMap<TriggerKey, TriggerWrapper>(100);
-                triggersByGroup.put(newTrigger.getKey().getGroup(), grpMap);
+        // add to triggers by calendar
+        String calName = tw.trigger.getCalendarName();
+        if (calName != null) {
+            Set<TriggerWrapper> calTriggers = triggersByCalendar.get(calName);
+            if (calTriggers == null) {
+                calTriggers = createTriggerSet();
+                triggersByCalendar.put(calName, calTriggers);
             }
-            grpMap.put(newTrigger.getKey(), tw);
-            // add to triggers by FQN map
-            triggersByKey.put(tw.key, tw);
+            calTriggers.add(tw);
+        }
 
-            if (pausedTriggerGroups.contains(newTrigger.getKey().getGroup())
-                    || pausedJobGroups.contains(newTrigger.getJobKey().getGroup())) {
-                tw.state = TriggerWrapper.STATE_PAUSED;
-                if (blockedJobs.contains(tw.jobKey)) {
-                    tw.state = TriggerWrapper.STATE_PAUSED_BLOCKED;
-                }
-            } else if (blockedJobs.contains(tw.jobKey)) {
-                tw.state = TriggerWrapper.STATE_BLOCKED;
-            } else {
-                timeTriggers.add(tw);
+        // add to triggers by group
+        Map<TriggerKey, TriggerWrapper> grpMap = triggersByGroup.get(tw.key.getGroup());
+        if (grpMap == null) {
+            grpMap = createMap(100);
+            triggersByGroup.put(tw.key.getGroup(), grpMap);
+        }
+        grpMap.put(tw.key, tw);
+        // add to triggers by FQN map
+        triggersByKey.put(tw.key, tw);
+        if (footprintTracked) {
+            triggerFootprint += tw.getFootprint();
+        }
+
+        if (pausedTriggerGroups.contains(tw.key.getGroup())
+                || pausedJobGroups.contains(tw.jobKey.getGroup())) {
+            tw.state = TriggerWrapper.STATE_PAUSED;
+            if (blockedJobs.contains(tw.jobKey)) {
+                tw.state = TriggerWrapper.STATE_PAUSED_BLOCKED;
+                parkTrigger(tw);
             }
+            return false;
+        } else if (blockedJobs.contains(tw.jobKey)) {
+            tw.state = TriggerWrapper.STATE_BLOCKED;
+            parkTrigger(tw);
+            return false;
         }
+        return true;
     }
 
     /**
@@ -455,7 +705,12 @@ public class RAMJobStore implements JobStore {
         return removeTrigger(triggerKey, true);
     }
 
-    private boolean removeTrigger(TriggerKey key, boolean removeOrphanedJob) {
+    /**
+     * Remove the trigger with the given key, and with
+     * <code>removeOrphanedJob</code> also its job if that is not durable and
+     * has no other triggers left.
+     */
+    protected boolean removeTrigger(TriggerKey key, boolean removeOrphanedJob) {
 
         boolean found;
 
@@ -464,29 +719,11 @@ public class RAMJobStore implements JobStore {
             TriggerWrapper tw = triggersByKey.remove(key);
             found = tw != null;
             if (found) {
-                // remove from triggers by group
-                HashMap<TriggerKey, TriggerWrapper> grpMap = triggersByGroup.get(key.getGroup());
-                if (grpMap != null) {
-                    grpMap.remove(key);
-                    if (grpMap.size() == 0) {
-                        triggersByGroup.remove(key.getGroup());
-                    }
-                }
-                //remove from triggers by job
-                List<TriggerWrapper> jobList = triggersByJob.get(tw.jobKey);
-                if (jobList != null) {
-                    jobList.remove(tw);
-                    if (jobList.isEmpty()) {
-                        triggersByJob.remove(tw.jobKey);
-                    }
-                }
-
-                timeTriggers.remove(tw);
+                removeFromIndexes(tw);
 
                 if (removeOrphanedJob) {
                     JobWrapper jw = jobsByKey.get(tw.jobKey);
-                    List<OperableTrigger> trigs = getTriggersForJob(tw.jobKey);
-                    if ((trigs == null || trigs.size() == 0) && !jw.jobDetail.isDurable()) {
+                    if (!triggersByJob.containsKey(tw.jobKey) && !jw.jobDetail.isDurable()) {
                         if (removeJob(jw.key)) {
                             signaler.notifySchedulerListenersJobDeleted(jw.key);
                         }
@@ -517,25 +754,7 @@ public class RAMJobStore implements JobStore {
                     throw new JobPersistenceException("New trigger is not related to the same job as the old trigger.");
                 }
 
-                // remove from triggers by group
-                HashMap<TriggerKey, TriggerWrapper> grpMap = triggersByGroup.get(triggerKey.getGroup());
-                if (grpMap != null) {
-                    grpMap.remove(triggerKey);
-                    if (grpMap.size() == 0) {
-                        triggersByGroup.remove(triggerKey.getGroup());
-                    }
-                }
-
-                //remove from triggers by job
-                List<TriggerWrapper> jobList = triggersByJob.get(tw.jobKey);
-                if (jobList != null) {
-                    jobList.remove(tw);
-                    if (jobList.isEmpty()) {
-                        triggersByJob.remove(tw.jobKey);
-                    }
-                }
-
-                timeTriggers.remove(tw);
+                removeFromIndexes(tw);
 
                 try {
                     storeTrigger(newTrigger, false);
@@ -549,6 +768,56 @@ public class RAMJobStore implements JobStore {
         return found;
     }
 
+    /**
+     * Remove the given trigger from the group, job, calendar and time
+     * indexes.
+     */
+    private void removeFromIndexes(TriggerWrapper tw) {
+        // remove from triggers by group
+        Map<TriggerKey, TriggerWrapper> grpMap = triggersByGroup.get(tw.key.getGroup());
+        if (grpMap != null) {
+            grpMap.remove(tw.key);
+            if (grpMap.size() == 0) {
+                triggersByGroup.remove(tw.key.getGroup());
+            }
+        }
+
+        //remove from triggers by job
+        Set<TriggerWrapper> jobTriggers = triggersByJob.get(tw.jobKey);
+        if (jobTriggers != null) {
+            jobTriggers.remove(tw);
+            if (jobTriggers.isEmpty()) {
+                triggersByJob.remove(tw.jobKey);
+            }
+        }
+
+        //remove from triggers by calendar
+        String calName = tw.trigger.getCalendarName();
+        if (calName != null) {
+            Set<TriggerWrapper> calTriggers = triggersByCalendar.get(calName);
+            if (calTriggers != null) {
+                calTriggers.remove(tw);
+                if (calTriggers.isEmpty()) {
+                    triggersByCalendar.remove(calName);
+                }
+            }
+        }
+
+        // remove from triggers parked with their job
+        Map<TriggerKey, TriggerWrapper> parked = blockedTriggersByJob.get(tw.jobKey);
+        if (parked != null && parked.get(tw.key) == tw) {
+            parked.remove(tw.key);
+            if (parked.isEmpty()) {
+                blockedTriggersByJob.remove(tw.jobKey);
+            }
+        }
+
+        timeTriggers.remove(tw);
+        if (footprintTracked) {
+            triggerFootprint -= tw.getFootprint();
+        }
+    }
+
     /**
      * <p>
      * Retrieve the <code>{@link JobDetail}</code> for the given
@@ -625,34 +894,38 @@ public class RAMJobStore implements JobStore {
      */
     public TriggerState getTriggerState(TriggerKey triggerKey) throws JobPersistenceException {
         synchronized (lock) {
-            TriggerWrapper tw = triggersByKey.get(triggerKey);
+            return triggerStateOf(triggersByKey.get(triggerKey));
+        }
+    }
 
-            if (tw == null) {
-                return TriggerState.NONE;
-            }
+    protected TriggerState triggerStateOf(TriggerWrapper tw) {
+        if (tw == null) {
+            return TriggerState.NONE;
+        }
 
-            if (tw.state == TriggerWrapper.STATE_COMPLETE) {
-                return TriggerState.COMPLETE;
-            }
+        int state = tw.state;
 
-            if (tw.state == TriggerWrapper.STATE_PAUSED) {
-                return TriggerState.PAUSED;
-            }
+        if (state == TriggerWrapper.STATE_COMPLETE) {
+            return TriggerState.COMPLETE;
+        }
 
-            if (tw.state == TriggerWrapper.STATE_PAUSED_BLOCKED) {
-                return TriggerState.PAUSED;
-            }
+        if (state == TriggerWrapper.STATE_PAUSED) {
+            return TriggerState.PAUSED;
+        }
 
-            if (tw.state == TriggerWrapper.STATE_BLOCKED) {
-                return TriggerState.BLOCKED;
-            }
+        if (state == TriggerWrapper.STATE_PAUSED_BLOCKED) {
+            return TriggerState.PAUSED;
+        }
 
-            if (tw.state == TriggerWrapper.STATE_ERROR) {
-                return TriggerState.ERROR;
-            }
+        if (state == TriggerWrapper.STATE_BLOCKED) {
+            return TriggerState.BLOCKED;
+        }
 
-            return TriggerState.NORMAL;
+        if (state == TriggerWrapper.STATE_ERROR) {
+            return TriggerState.ERROR;
         }
+
+        return TriggerState.NORMAL;
     }
 
     /**
@@ -724,20 +997,91 @@ public class RAMJobStore implements JobStore {
             }
 
             calendarsByName.put(name, calendar);
+            long footprint = FootprintEstimator.estimate(name, calendar);
+            Long origFootprint = calendarFootprints.put(name, footprint);
+            calendarFootprint += footprint - (origFootprint != null ? origFootprint : 0);
 
             if (obj != null && updateTriggers) {
-                for (TriggerWrapper tw : getTriggerWrappersForCalendar(name)) {
-                    OperableTrigger trig = tw.getTrigger();
-                    boolean removed = timeTriggers.remove(tw);
+                updateWithNewCalendar(getTriggerWrappersForCalendar(name), calendar);
+            }
+        }
+    }
 
-                    trig.updateWithNewCalendar(calendar, getMisfireThreshold());
+    /**
+     * Update the given triggers for the new version of their calendar. Large
+     * numbers of triggers have their next fire times computed in parallel,
+     * on copies, which are then set on the stored triggers - computing the
+     * fire times of a trigger against a calendar can take far longer than
+     * updating the indexes.
+     */
+    private void updateWithNewCalendar(final List<TriggerWrapper> tws, final Calendar calendar) {
+        final long misfireThreshold = getMisfireThreshold();
+        int threads = Runtime.getRuntime().availableProcessors();
 
-                    if (removed) {
-                        timeTriggers.add(tw);
+        Date[] nextFireTimes = null;
+        if (threads > 1 && tws.size() >= PARALLEL_CALENDAR_UPDATE_THRESHOLD) {
+            nextFireTimes = computeNextFireTimes(tws, calendar, misfireThreshold, threads * 4);
+        }
+
+        for (int i = 0; i < tws.size(); i++) {
+            TriggerWrapper tw = tws.get(i);
+            boolean removed = timeTriggers.remove(tw);
+
+            synchronized (tw) {
+                if (nextFireTimes != null) {
+                    tw.trigger.setNextFireTime(nextFireTimes[i]);
+                } else {
+                    tw.trigger.updateWithNewCalendar(calendar, misfireThreshold);
+                }
+            }
+
+            if (removed) {
+                timeTriggers.add(tw);
+            }
+        }
+    }
+
+    /**
+     * Compute the next fire times of copies of the given triggers, updated
+     * with the given calendar, in parallel.
+     *
+     * @return the next fire times, or <code>null</code> if interrupted.
+     */
+    private Date[] computeNextFireTimes(final List<TriggerWrapper> tws, final Calendar calendar,
+                                        final long misfireThreshold, int taskCount) {
+        final Date[] nextFireTimes = new Date[tws.size()];
+        int chunkSize = (tws.size() + taskCount - 1) / taskCount;
+
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(taskCount);
+        for (int from = 0; from < tws.size(); from += chunkSize) {
+            final int start = from;
+            final int end = Math.min(from + chunkSize, tws.size());
+            tasks.add(new Callable<Void>() {
+                public Void call() {
+                    for (int i = start; i < end; i++) {
+                        OperableTrigger copy = (OperableTrigger) tws.get(i).trigger.clone();
+                        copy.updateWithNewCalendar(calendar, misfireThreshold);
+                        nextFireTimes[i] = copy.getNextFireTime();
                     }
+                    return null;
                 }
+            });
+        }
+
+        try {
+            for (Future<Void> result : ForkJoinPool.commonPool().invokeAll(tasks)) {
+                result.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
             }
+            throw new IllegalStateException(e.getCause());
         }
+        return nextFireTimes;
     }
 
     /**
@@ -758,24 +1102,18 @@ public class RAMJobStore implements JobStore {
      */
     public boolean removeCalendar(String calName)
             throws JobPersistenceException {
-        int numRefs = 0;
-
         synchronized (lock) {
-            for (TriggerWrapper trigger : triggersByKey.values()) {
-                OperableTrigger trigg = trigger.trigger;
-                if (trigg.getCalendarName() != null
-                        && trigg.getCalendarName().equals(calName)) {
-                    numRefs++;
-                }
+            if (triggersByCalendar.containsKey(calName)) {
+                throw new JobPersistenceException(
+                        "Calender cannot be removed if it referenced by a Trigger!");
             }
-        }
 
-        if (numRefs > 0) {
-            throw new JobPersistenceException(
-                    "Calender cannot be removed if it referenced by a Trigger!");
+            Long footprint = calendarFootprints.remove(calName);
+            if (footprint != null) {
+                calendarFootprint -= footprint;
+            }
+            return (calendarsByName.remove(calName) != null);
         }
-
-        return (calendarsByName.remove(calName) != null);
     }
 
     /**
@@ -839,41 +1177,45 @@ public class RAMJobStore implements JobStore {
      * </p>
      */
     public Set<JobKey> getJobKeys(GroupMatcher<JobKey> matcher) {
-        Set<JobKey> outList = null;
         synchronized (lock) {
+            return jobKeysMatching(matcher);
+        }
+    }
 
-            StringMatcher.StringOperatorName operator = matcher.getCompareWithOperator();
-            String compareToValue = matcher.getCompareToValue();
+    protected Set<JobKey> jobKeysMatching(GroupMatcher<JobKey> matcher) {
+        Set<JobKey> outList = null;
 
-            switch (operator) {
-                case EQUALS:
-                    HashMap<JobKey, JobWrapper> grpMap = jobsByGroup.get(compareToValue);
-                    if (grpMap != null) {
-                        outList = new HashSet<JobKey>();
+        StringMatcher.StringOperatorName operator = matcher.getCompareWithOperator();
+        String compareToValue = matcher.getCompareToValue();
 
-                        for (JobWrapper jw : grpMap.values()) {
+        switch (operator) {
+            case EQUALS:
+                Map<JobKey, JobWrapper> grpMap = jobsByGroup.get(compareToValue);
+                if (grpMap != null) {
+                    outList = new HashSet<JobKey>();
 
-                            if (jw != null) {
-                                outList.add(jw.jobDetail.getKey());
-                            }
+                    for (JobWrapper jw : grpMap.values()) {
+
+                        if (jw != null) {
+                            outList.add(jw.key);
                         }
                     }
-                    break;
+                }
+                break;
 
-                default:
-                    for (Map.Entry<String, HashMap<JobKey, JobWrapper>> entry : jobsByGroup.entrySet()) {
-                        if (operator.evaluate(entry.getKey(), compareToValue) && entry.getValue() != null) {
-                            if (outList == null) {
-                                outList = new HashSet<JobKey>();
-                            }
-                            for (JobWrapper jobWrapper : entry.getValue().values()) {
-                                if (jobWrapper != null) {
-                                    outList.add(jobWrapper.jobDetail.getKey());
-                                }
+            default:
+                for (Map.Entry<String, Map<JobKey, JobWrapper>> entry : jobsByGroup.entrySet()) {
+                    if (operator.evaluate(entry.getKey(), compareToValue) && entry.getValue() != null) {
+                        if (outList == null) {
+                            outList = new HashSet<JobKey>();
+                        }
+                        for (JobWrapper jobWrapper : entry.getValue().values()) {
+                            if (jobWrapper != null) {
+                                outList.add(jobWrapper.key);
                             }
                         }
                     }
-            }
+                }
         }
 
         return outList == null ? java.util.Collections.<JobKey>emptySet() : outList;
@@ -903,41 +1245,45 @@ public class RAMJobStore implements JobStore {
      * </p>
      */
     public Set<TriggerKey> getTriggerKeys(GroupMatcher<TriggerKey> matcher) {
-        Set<TriggerKey> outList = null;
         synchronized (lock) {
+            return triggerKeysMatching(matcher);
+        }
+    }
 
-            StringMatcher.StringOperatorName operator = matcher.getCompareWithOperator();
-            String compareToValue = matcher.getCompareToValue();
+    protected Set<TriggerKey> triggerKeysMatching(GroupMatcher<TriggerKey> matcher) {
+        Set<TriggerKey> outList = null;
 
-            switch (operator) {
-                case EQUALS:
-                    HashMap<TriggerKey, TriggerWrapper> grpMap = triggersByGroup.get(compareToValue);
-                    if (grpMap != null) {
-                        outList = new HashSet<TriggerKey>();
+        StringMatcher.StringOperatorName operator = matcher.getCompareWithOperator();
+        String compareToValue = matcher.getCompareToValue();
 
-                        for (TriggerWrapper tw : grpMap.values()) {
+        switch (operator) {
+            case EQUALS:
+                Map<TriggerKey, TriggerWrapper> grpMap = triggersByGroup.get(compareToValue);
+                if (grpMap != null) {
+                    outList = new HashSet<TriggerKey>();
 
-                            if (tw != null) {
-                                outList.add(tw.trigger.getKey());
-                            }
+                    for (TriggerWrapper tw : grpMap.values()) {
+
+                        if (tw != null) {
+                            outList.add(tw.key);
                         }
                     }
-                    break;
+                }
+                break;
 
-                default:
-                    for (Map.Entry<String, HashMap<TriggerKey, TriggerWrapper>> entry : triggersByGroup.entrySet()) {
-                        if (operator.evaluate(entry.getKey(), compareToValue) && entry.getValue() != null) {
-                            if (outList == null) {
-                                outList = new HashSet<TriggerKey>();
-                            }
-                            for (TriggerWrapper triggerWrapper : entry.getValue().values()) {
-                                if (triggerWrapper != null) {
-                                    outList.add(triggerWrapper.trigger.getKey());
-                                }
+            default:
+                for (Map.Entry<String, Map<TriggerKey, TriggerWrapper>> entry : triggersByGroup.entrySet()) {
+                    if (operator.evaluate(entry.getKey(), compareToValue) && entry.getValue() != null) {
+                        if (outList == null) {
+                            outList = new HashSet<TriggerKey>();
+                        }
+                        for (TriggerWrapper triggerWrapper : entry.getValue().values()) {
+                            if (triggerWrapper != null) {
+                                outList.add(triggerWrapper.key);
                             }
                         }
                     }
-            }
+                }
         }
 
         return outList == null ? Collections.<TriggerKey>emptySet() : outList;
@@ -988,9 +1334,9 @@ public class RAMJobStore implements JobStore {
         ArrayList<OperableTrigger> trigList = new ArrayList<OperableTrigger>();
 
         synchronized (lock) {
-            List<TriggerWrapper> jobList = triggersByJob.get(jobKey);
-            if (jobList != null) {
-                for (TriggerWrapper tw : jobList) {
+            Set<TriggerWrapper> jobTriggers = triggersByJob.get(jobKey);
+            if (jobTriggers != null) {
+                for (TriggerWrapper tw : jobTriggers) {
                     trigList.add((OperableTrigger) tw.trigger.clone());
                 }
             }
@@ -1000,33 +1346,25 @@ public class RAMJobStore implements JobStore {
     }
 
     protected ArrayList<TriggerWrapper> getTriggerWrappersForJob(JobKey jobKey) {
-        ArrayList<TriggerWrapper> trigList = new ArrayList<TriggerWrapper>();
-
         synchronized (lock) {
-            List<TriggerWrapper> jobList = triggersByJob.get(jobKey);
-            if (jobList != null) {
-                for (TriggerWrapper trigger : jobList) {
-                    trigList.add(trigger);
-                }
+            Set<TriggerWrapper> jobTriggers = triggersByJob.get(jobKey);
+            if (jobTriggers != null) {
+                return new ArrayList<TriggerWrapper>(jobTriggers);
             }
         }
 
-        return trigList;
+        return new ArrayList<TriggerWrapper>();
     }
 
     protected ArrayList<TriggerWrapper> getTriggerWrappersForCalendar(String calName) {
-        ArrayList<TriggerWrapper> trigList = new ArrayList<TriggerWrapper>();
-
         synchronized (lock) {
-            for (TriggerWrapper tw : triggersByKey.values()) {
-                String tcalName = tw.getTrigger().getCalendarName();
-                if (tcalName != null && tcalName.equals(calName)) {
-                    trigList.add(tw);
-                }
+            Set<TriggerWrapper> calTriggers = triggersByCalendar.get(calName);
+            if (calTriggers != null) {
+                return new ArrayList<TriggerWrapper>(calTriggers);
             }
         }
 
-        return trigList;
+        return new ArrayList<TriggerWrapper>();
     }
 
     /**
@@ -1198,6 +1536,7 @@ public class RAMJobStore implements JobStore {
 
             if (blockedJobs.contains(trig.getJobKey())) {
                 tw.state = TriggerWrapper.STATE_BLOCKED;
+                parkTrigger(tw);
             } else {
                 tw.state = TriggerWrapper.STATE_WAITING;
             }
@@ -1389,7 +1728,9 @@ public class RAMJobStore implements JobStore {
 
         signaler.notifyTriggerListenersMisfired((OperableTrigger) tw.trigger.clone());
 
-        tw.trigger.updateAfterMisfire(cal);
+        synchronized (tw) {
+            tw.trigger.updateAfterMisfire(cal);
+        }
 
         if (tw.trigger.getNextFireTime() == null) {
             tw.state = TriggerWrapper.STATE_COMPLETE;
@@ -1422,7 +1763,6 @@ public class RAMJobStore implements JobStore {
         synchronized (lock) {
             List<OperableTrigger> result = new ArrayList<OperableTrigger>();
             Set<JobKey> acquiredJobKeysForNoConcurrentExec = new HashSet<JobKey>();
-            Set<TriggerWrapper> excludedTriggers = new HashSet<TriggerWrapper>();
             long batchEnd = noLaterThan;
 
             // return empty list if store has no triggers.
@@ -1430,21 +1770,20 @@ public class RAMJobStore implements JobStore {
                 return result;
 
             while (true) {
-                TriggerWrapper tw;
-
-                try {
-                    tw = timeTriggers.first();
-                    if (tw == null)
-                        break;
-                    timeTriggers.remove(tw);
-                } catch (java.util.NoSuchElementException nsee) {
+                TriggerWrapper tw = timeTriggers.pollFirst();
+                if (tw == null)
                     break;
-                }
 
                 if (tw.trigger.getNextFireTime() == null) {
                     continue;
                 }
 
+                // blocked while in the index; set aside until its job completes
+                if (tw.state == TriggerWrapper.STATE_BLOCKED) {
+                    parkTrigger(tw);
+                    continue;
+                }
+
                 if (applyMisfire(tw)) {
                     if (tw.trigger.getNextFireTime() != null) {
                         timeTriggers.add(tw);
@@ -1458,12 +1797,12 @@ public class RAMJobStore implements JobStore {
                 }
 
                 // If trigger's job is set as @DisallowConcurrentExecution, and it has already been added to result, then
-                // put it back into the timeTriggers set and continue to search for next trigger.
+                // park it with the job until the job completes, and continue to search for next trigger.
                 JobKey jobKey = tw.trigger.getJobKey();
                 JobDetail job = jobsByKey.get(tw.trigger.getJobKey()).jobDetail;
                 if (job.isConcurrentExectionDisallowed()) {
                     if (acquiredJobKeysForNoConcurrentExec.contains(jobKey)) {
-                        excludedTriggers.add(tw);
+                        parkTrigger(tw);
                         continue; // go to next trigger in store.
                     } else {
                         acquiredJobKeysForNoConcurrentExec.add(jobKey);
@@ -1471,8 +1810,11 @@ public class RAMJobStore implements JobStore {
                 }
 
                 tw.state = TriggerWrapper.STATE_ACQUIRED;
-                tw.trigger.setFireInstanceId(getFiredTriggerRecordId());
-                OperableTrigger trig = (OperableTrigger) tw.trigger.clone();
+                OperableTrigger trig;
+                synchronized (tw) {
+                    tw.trigger.setFireInstanceId(getFiredTriggerRecordId());
+                    trig = (OperableTrigger) tw.trigger.clone();
+                }
                 if (result.isEmpty()) {
                     batchEnd = Math.max(tw.trigger.getNextFireTime().getTime(), System.currentTimeMillis()) + timeWindow;
                 }
@@ -1480,10 +1822,6 @@ public class RAMJobStore implements JobStore {
                 if (result.size() == maxCount)
                     break;
             }
-
-            // If we did excluded triggers to prevent ACQUIRE state due to DisallowConcurrentExecution, we need to add them back to store.
-            if (excludedTriggers.size() > 0)
-                timeTriggers.addAll(excludedTriggers);
             return result;
         }
     }
@@ -1502,6 +1840,10 @@ public class RAMJobStore implements JobStore {
                 tw.state = TriggerWrapper.STATE_WAITING;
                 timeTriggers.add(tw);
             }
+            // the triggers parked behind it may be acquired again
+            if (!blockedJobs.contains(trigger.getJobKey())) {
+                releaseBlockedTriggers(trigger.getJobKey());
+            }
         }
     }
 
@@ -1521,24 +1863,30 @@ public class RAMJobStore implements JobStore {
                 TriggerWrapper tw = triggersByKey.get(trigger.getKey());
                 // was the trigger deleted since being acquired?
                 if (tw == null || tw.trigger == null) {
+                    releaseUnfiredJob(trigger.getJobKey());
                     continue;
                 }
                 // was the trigger completed, paused, blocked, etc. since being acquired?
                 if (tw.state != TriggerWrapper.STATE_ACQUIRED) {
+                    releaseUnfiredJob(tw.jobKey);
                     continue;
                 }
 
                 Calendar cal = null;
                 if (tw.trigger.getCalendarName() != null) {
                     cal = retrieveCalendar(tw.trigger.getCalendarName());
-                    if (cal == null)
+                    if (cal == null) {
+                        releaseUnfiredJob(tw.jobKey);
                         continue;
+                    }
                 }
                 Date prevFireTime = trigger.getPreviousFireTime();
                 // in case trigger was replaced between acquiring and firing
                 timeTriggers.remove(tw);
                 // call triggered on our copy, and the scheduler's copy
-                tw.trigger.triggered(cal);
+                synchronized (tw) {
+                    tw.trigger.triggered(cal);
+                }
                 trigger.triggered(cal);
                 //tw.state = TriggerWrapper.STATE_EXECUTING;
                 tw.state = TriggerWrapper.STATE_WAITING;
@@ -1551,16 +1899,8 @@ public class RAMJobStore implements JobStore {
                 JobDetail job = bndle.getJobDetail();
 
                 if (job.isConcurrentExectionDisallowed()) {
-                    ArrayList<TriggerWrapper> trigs = getTriggerWrappersForJob(job.getKey());
-                    for (TriggerWrapper ttw : trigs) {
-                        if (ttw.state == TriggerWrapper.STATE_WAITING) {
-                            ttw.state = TriggerWrapper.STATE_BLOCKED;
-                        }
-                        if (ttw.state == TriggerWrapper.STATE_PAUSED) {
-                            ttw.state = TriggerWrapper.STATE_PAUSED_BLOCKED;
-                        }
-                        timeTriggers.remove(ttw);
-                    }
+                    setJobTriggersBlocked(job.getKey(), true);
+                    parkTrigger(tw);
                     blockedJobs.add(job.getKey());
                 } else if (tw.trigger.getNextFireTime() != null) {
                     synchronized (lock) {
@@ -1605,24 +1945,17 @@ public class RAMJobStore implements JobStore {
                         newData.clearDirtyFlag();
                     }
                     jd = jd.getJobBuilder().setJobData(newData).build();
-                    jw.jobDetail = jd;
+                    replaceJobDetail(jw, new JobWrapper(jd));
                 }
                 if (jd.isConcurrentExectionDisallowed()) {
                     blockedJobs.remove(jd.getKey());
-                    ArrayList<TriggerWrapper> trigs = getTriggerWrappersForJob(jd.getKey());
-                    for (TriggerWrapper ttw : trigs) {
-                        if (ttw.state == TriggerWrapper.STATE_BLOCKED) {
-                            ttw.state = TriggerWrapper.STATE_WAITING;
-                            timeTriggers.add(ttw);
-                        }
-                        if (ttw.state == TriggerWrapper.STATE_PAUSED_BLOCKED) {
-                            ttw.state = TriggerWrapper.STATE_PAUSED;
-                        }
-                    }
+                    setJobTriggersBlocked(jd.getKey(), false);
+                    releaseBlockedTriggers(jd.getKey());
                     signaler.signalSchedulingChange(0L);
                 }
             } else { // even if it was deleted, there may be cleanup to do
                 blockedJobs.remove(jobDetail.getKey());
+                blockedTriggersByJob.remove(jobDetail.getKey());
             }
 
             // check for trigger deleted during execution...
@@ -1660,6 +1993,76 @@ public class RAMJobStore implements JobStore {
         }
     }
 
+    /**
+     * Set aside the given trigger, taken out of <code>timeTriggers</code>,
+     * until its job completes, in place of any trigger parked with the same
+     * key.
+     */
+    protected void parkTrigger(TriggerWrapper tw) {
+        Map<TriggerKey, TriggerWrapper> parked = blockedTriggersByJob.get(tw.jobKey);
+        if (parked == null) {
+            parked = new HashMap<TriggerKey, TriggerWrapper>();
+            blockedTriggersByJob.put(tw.jobKey, parked);
+        }
+        parked.put(tw.key, tw);
+    }
+
+    /**
+     * Block or unblock the triggers of the given job. Blocked triggers are
+     * left in <code>timeTriggers</code>, and only parked once acquisition
+     * reaches them.
+     */
+    private void setJobTriggersBlocked(JobKey jobKey, boolean blocked) {
+        Set<TriggerWrapper> jobTriggers = triggersByJob.get(jobKey);
+        if (jobTriggers == null) {
+            return;
+        }
+        for (TriggerWrapper ttw : jobTriggers) {
+            if (blocked) {
+                if (ttw.state == TriggerWrapper.STATE_WAITING) {
+                    ttw.state = TriggerWrapper.STATE_BLOCKED;
+                } else if (ttw.state == TriggerWrapper.STATE_PAUSED) {
+                    ttw.state = TriggerWrapper.STATE_PAUSED_BLOCKED;
+                }
+            } else {
+                if (ttw.state == TriggerWrapper.STATE_BLOCKED) {
+                    ttw.state = TriggerWrapper.STATE_WAITING;
+                } else if (ttw.state == TriggerWrapper.STATE_PAUSED_BLOCKED) {
+                    ttw.state = TriggerWrapper.STATE_PAUSED;
+                }
+            }
+        }
+    }
+
+    /**
+     * Put the waiting triggers parked with the given job back into
+     * <code>timeTriggers</code>.
+     */
+    protected void releaseBlockedTriggers(JobKey jobKey) {
+        Map<TriggerKey, TriggerWrapper> parked = blockedTriggersByJob.remove(jobKey);
+        if (parked == null) {
+            return;
+        }
+        List<TriggerWrapper> waiting = new ArrayList<TriggerWrapper>(parked.size());
+        for (TriggerWrapper ttw : parked.values()) {
+            // skip triggers removed, replaced or paused while parked
+            if (triggersByKey.get(ttw.key) == ttw && ttw.state == TriggerWrapper.STATE_WAITING) {
+                waiting.add(ttw);
+            }
+        }
+        timeTriggers.addAll(waiting);
+    }
+
+    /**
+     * Release the triggers parked during acquisition with the given job, as
+     * an acquired trigger of the job is not going to be fired after all.
+     */
+    private void releaseUnfiredJob(JobKey jobKey) {
+        if (!blockedJobs.contains(jobKey)) {
+            releaseBlockedTriggers(jobKey);
+        }
+    }
+
     @Override
     public long getAcquireRetryDelay(int failureCount) {
         return 20;
@@ -1675,6 +2078,119 @@ public class RAMJobStore implements JobStore {
         }
     }
 
+    /**
+     * <p>
+     * Get an estimate of the memory taken by the jobs, triggers and
+     * calendars in the store. The sizes by group and of the
+     * <code>JobDataMap</code>s are worked out by looking at every job and
+     * trigger, which holds the store's lock for a while when it is large.
+     * </p>
+     */
+    public JobStoreFootprint getFootprint() {
+        synchronized (lock) {
+            Map<String, Long> jobGroupBytes = new HashMap<String, Long>();
+            Map<String, Long> triggerGroupBytes = new HashMap<String, Long>();
+            PriorityQueue<Entry<String, Long>> largest = new PriorityQueue<Entry<String, Long>>(
+                    LARGEST_JOB_DATA_MAPS + 1, FOOTPRINT_COMPARATOR);
+            long jobDataMapBytes = 0;
+            long jobBytes = 0;
+            long triggerBytes = 0;
+
+            for (Map.Entry<String, Map<JobKey, JobWrapper>> group : jobsByGroup.entrySet()) {
+                long bytes = 0;
+                for (JobWrapper jw : group.getValue().values()) {
+                    bytes += jw.getFootprint();
+                    long mapBytes = FootprintEstimator.estimate(jw.jobDetail.getJobDataMap());
+                    jobDataMapBytes += mapBytes;
+                    offerLargest(largest, "Job " + jw.key, mapBytes);
+                }
+                jobGroupBytes.put(group.getKey(), bytes);
+                jobBytes += bytes;
+            }
+            for (Map.Entry<String, Map<TriggerKey, TriggerWrapper>> group : triggersByGroup.entrySet()) {
+                long bytes = 0;
+                for (TriggerWrapper tw : group.getValue().values()) {
+                    bytes += tw.getFootprint();
+                    long mapBytes = FootprintEstimator.estimate(tw.trigger.getJobDataMap());
+                    jobDataMapBytes += mapBytes;
+                    offerLargest(largest, "Trigger " + tw.key, mapBytes);
+                }
+                triggerGroupBytes.put(group.getKey(), bytes);
+                triggerBytes += bytes;
+            }
+
+            List<Entry<String, Long>> sorted = new ArrayList<Entry<String, Long>>(largest);
+            Collections.sort(sorted, Collections.reverseOrder(FOOTPRINT_COMPARATOR));
+            Map<String, Long> largestJobDataMaps = new LinkedHashMap<String, Long>();
+            for (Entry<String, Long> e : sorted) {
+                largestJobDataMaps.put(e.getKey(), e.getValue());
+            }
+
+            return new JobStoreFootprint(jobsByKey.size(), jobBytes, triggersByKey.size(), triggerBytes,
+                    calendarsByName.size(), calendarFootprint, jobDataMapBytes, maxFootprint,
+                    jobGroupBytes, triggerGroupBytes, largestJobDataMaps);
+        }
+    }
+
+    static final Comparator<Entry<String, Long>> FOOTPRINT_COMPARATOR = new Comparator<Entry<String, Long>>() {
+        public int compare(Entry<String, Long> e1, Entry<String, Long> e2) {
+            return e1.getValue().compareTo(e2.getValue());
+        }
+    };
+
+    private static void offerLargest(PriorityQueue<Entry<String, Long>> largest, String name, long bytes) {
+        if (bytes == 0) {
+            return;
+        }
+        if (largest.size() == LARGEST_JOB_DATA_MAPS) {
+            if (largest.peek().getValue() >= bytes) {
+                return;
+            }
+            largest.poll();
+        }
+        largest.add(new AbstractMap.SimpleImmutableEntry<String, Long>(name, bytes));
+    }
+
+    /**
+     * The estimated size of the jobs, triggers and calendars in the store,
+     * read without taking the store's lock.
+     */
+    protected long getEstimatedFootprint() {
+        return jobFootprint + triggerFootprint + calendarFootprint;
+    }
+
+    /**
+     * Refuse to grow the store by the given number of bytes if that takes
+     * it beyond <code>maxFootprint</code>.
+     */
+    protected void checkFootprint(String what, long bytes) throws FootprintLimitExceededException {
+        long limit = maxFootprint;
+        if (limit > 0 && bytes > 0) {
+            long footprint = getEstimatedFootprint();
+            if (footprint + bytes > limit) {
+                throw new FootprintLimitExceededException(what, bytes, footprint, limit);
+            }
+        }
+    }
+
+    /**
+     * The number of bytes by which storing the given jobs and triggers would
+     * grow the store.
+     */
+    private long estimateFootprint(Map<JobDetail, Set<? extends Trigger>> triggersAndJobs) {
+        long bytes = 0;
+        for (Map.Entry<JobDetail, Set<? extends Trigger>> e : triggersAndJobs.entrySet()) {
+            JobWrapper orig = jobsByKey.get(e.getKey().getKey());
+            bytes += FootprintEstimator.estimate(e.getKey()) - (orig != null ? orig.getFootprint() : 0);
+            for (Trigger trigger : e.getValue()) {
+                TriggerWrapper origTrigger = triggersByKey.get(trigger.getKey());
+                bytes += FootprintEstimator.estimate((OperableTrigger) trigger)
+                        - (origTrigger != null ? origTrigger.getFootprint() : 0);
+            }
+        }
+        return bytes;
+    }
+
     @SuppressWarnings("UnusedDeclaration")
     protected String peekTriggers() {
 
@@ -1761,13 +2277,23 @@ class JobWrapper {
 
     public JobKey key;
 
-    public JobDetail jobDetail;
+    public volatile JobDetail jobDetail;
+
+    // estimated size, negative until first needed; fits in the padding of the object
+    int footprint = -1;
 
     JobWrapper(JobDetail jobDetail) {
         this.jobDetail = jobDetail;
         key = jobDetail.getKey();
     }
 
+    int getFootprint() {
+        if (footprint < 0) {
+            footprint = (int) Math.min(Integer.MAX_VALUE, FootprintEstimator.estimate(jobDetail));
+        }
+        return footprint;
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (obj instanceof JobWrapper) {
@@ -1786,6 +2312,13 @@ class JobWrapper {
     }
 }
 
+/**
+ * Holds a stored trigger and its state. The store's lock guards all
+ * mutation; in-place changes to the trigger's schedule are additionally made
+ * while holding the wrapper's monitor, so that readers that do not take the
+ * store's lock (see <code>{@link ConcurrentRAMJobStore}</code>) can take a
+ * consistent copy.
+ */
 class TriggerWrapper {
 
     public final TriggerKey key;
@@ -1794,7 +2327,10 @@ class TriggerWrapper {
 
     public final OperableTrigger trigger;
 
-    public int state = STATE_WAITING;
+    public volatile int state = STATE_WAITING;
+
+    // estimated size, negative until first needed; fits in the padding of the object
+    private int footprint = -1;
 
     public static final int STATE_WAITING = 0;
 
@@ -1821,6 +2357,13 @@ class TriggerWrapper {
         this.jobKey = trigger.getJobKey();
     }
 
+    int getFootprint() {
+        if (footprint < 0) {
+            footprint = (int) Math.min(Integer.MAX_VALUE, FootprintEstimator.estimate(trigger));
+        }
+        return footprint;
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (obj instanceof TriggerWrapper) {
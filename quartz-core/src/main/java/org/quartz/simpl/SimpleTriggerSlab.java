@@ -0,0 +1,294 @@
+/*
+ * All content copyright Terracotta, Inc., unless otherwise indicated. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.quartz.simpl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.quartz.job.JobDataMap;
+import org.quartz.job.JobKey;
+import org.quartz.triggers.SimpleTriggerImpl;
+import org.quartz.triggers.TriggerKey;
+
+/**
+ * The state of many <code>SimpleTrigger</code>s, kept column by column in
+ * arrays of primitives, one slot per trigger, rather than in one object graph
+ * per trigger. Calendar names are kept once, in a dictionary.
+ * <p>
+ * Slots of removed triggers are reused. A slab is not thread-safe; it is
+ * guarded by the lock of the job store that owns it.
+ * </p>
+ *
+ * @see CompactSimpleTrigger
+ */
+class SimpleTriggerSlab {
+
+    private static final long NO_TIME = Long.MIN_VALUE;
+
+    private static final int NO_CALENDAR = -1;
+
+    private long[] startTimes;
+
+    private long[] endTimes;
+
+    private long[] nextFireTimes;
+
+    private long[] previousFireTimes;
+
+    private long[] repeatIntervals;
+
+    private int[] repeatCounts;
+
+    private int[] timesTriggered;
+
+    private int[] priorities;
+
+    private int[] misfireInstructions;
+
+    private int[] calendarIds;
+
+    // null in the slots of the many triggers without them
+    private String[] descriptions;
+
+    private JobDataMap[] jobDataMaps;
+
+    private String[] fireInstanceIds;
+
+    private final List<String> calendarNames = new ArrayList<String>();
+
+    private final Map<String, Integer> calendarIdsByName = new HashMap<String, Integer>();
+
+    private int[] freeSlots = new int[16];
+
+    private int freeCount;
+
+    private int size;
+
+    SimpleTriggerSlab(int initialCapacity) {
+        resize(Math.max(16, initialCapacity));
+    }
+
+    /**
+     * Allocate a slot and fill it with the state of the given trigger.
+     */
+    int add(SimpleTriggerImpl trigger) {
+        int slot;
+        if (freeCount > 0) {
+            slot = freeSlots[--freeCount];
+        } else {
+            if (size == startTimes.length) {
+                resize(size * 2);
+            }
+            slot = size++;
+        }
+        write(slot, trigger);
+        return slot;
+    }
+
+    void remove(int slot) {
+        descriptions[slot] = null;
+        jobDataMaps[slot] = null;
+        fireInstanceIds[slot] = null;
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+        }
+        freeSlots[freeCount++] = slot;
+    }
+
+    /**
+     * The number of slots in use.
+     */
+    int getTriggerCount() {
+        return size - freeCount;
+    }
+
+    void write(int slot, SimpleTriggerImpl trigger) {
+        startTimes[slot] = toTime(trigger.getStartTime());
+        endTimes[slot] = toTime(trigger.getEndTime());
+        nextFireTimes[slot] = toTime(trigger.getNextFireTime());
+        previousFireTimes[slot] = toTime(trigger.getPreviousFireTime());
+        repeatIntervals[slot] = trigger.getRepeatInterval();
+        repeatCounts[slot] = trigger.getRepeatCount();
+        timesTriggered[slot] = trigger.getTimesTriggered();
+        priorities[slot] = trigger.getPriority();
+        misfireInstructions[slot] = trigger.getMisfireInstruction();
+        calendarIds[slot] = calendarId(trigger.getCalendarName());
+        descriptions[slot] = trigger.getDescription();
+        JobDataMap jobDataMap = trigger.getJobDataMap();
+        jobDataMaps[slot] = jobDataMap.isEmpty() ? null : jobDataMap;
+        fireInstanceIds[slot] = trigger.getFireInstanceId();
+    }
+
+    /**
+     * Create a <code>SimpleTriggerImpl</code> with the state kept in the
+     * given slot. It does not share any mutable state with the slab.
+     */
+    SimpleTriggerImpl read(int slot, TriggerKey key, JobKey jobKey) {
+        SimpleTriggerImpl trigger = new SimpleTriggerImpl();
+        trigger.setKey(key);
+        trigger.setJobKey(jobKey);
+        if (startTimes[slot] != NO_TIME) {
+            trigger.setStartTime(new Date(startTimes[slot]));
+        }
+        trigger.setEndTime(toDate(endTimes[slot]));
+        trigger.setNextFireTime(toDate(nextFireTimes[slot]));
+        trigger.setPreviousFireTime(toDate(previousFireTimes[slot]));
+        trigger.setRepeatInterval(repeatIntervals[slot]);
+        trigger.setRepeatCount(repeatCounts[slot]);
+        trigger.setTimesTriggered(timesTriggered[slot]);
+        trigger.setPriority(priorities[slot]);
+        trigger.setMisfireInstruction(misfireInstructions[slot]);
+        trigger.setCalendarName(getCalendarName(slot));
+        trigger.setDescription(descriptions[slot]);
+        if (jobDataMaps[slot] != null) {
+            trigger.setJobDataMap((JobDataMap) jobDataMaps[slot].clone());
+        }
+        trigger.setFireInstanceId(fireInstanceIds[slot]);
+        return trigger;
+    }
+
+    Date getStartTime(int slot) {
+        return toDate(startTimes[slot]);
+    }
+
+    Date getEndTime(int slot) {
+        return toDate(endTimes[slot]);
+    }
+
+    Date getNextFireTime(int slot) {
+        return toDate(nextFireTimes[slot]);
+    }
+
+    void setNextFireTime(int slot, Date nextFireTime) {
+        nextFireTimes[slot] = toTime(nextFireTime);
+    }
+
+    Date getPreviousFireTime(int slot) {
+        return toDate(previousFireTimes[slot]);
+    }
+
+    void setPreviousFireTime(int slot, Date previousFireTime) {
+        previousFireTimes[slot] = toTime(previousFireTime);
+    }
+
+    long getRepeatInterval(int slot) {
+        return repeatIntervals[slot];
+    }
+
+    int getRepeatCount(int slot) {
+        return repeatCounts[slot];
+    }
+
+    int getTimesTriggered(int slot) {
+        return timesTriggered[slot];
+    }
+
+    int getPriority(int slot) {
+        return priorities[slot];
+    }
+
+    void setPriority(int slot, int priority) {
+        priorities[slot] = priority;
+    }
+
+    int getMisfireInstruction(int slot) {
+        return misfireInstructions[slot];
+    }
+
+    String getCalendarName(int slot) {
+        int id = calendarIds[slot];
+        return (id == NO_CALENDAR) ? null : calendarNames.get(id);
+    }
+
+    void setCalendarName(int slot, String calendarName) {
+        calendarIds[slot] = calendarId(calendarName);
+    }
+
+    String getDescription(int slot) {
+        return descriptions[slot];
+    }
+
+    void setDescription(int slot, String description) {
+        descriptions[slot] = description;
+    }
+
+    JobDataMap getJobDataMap(int slot) {
+        return jobDataMaps[slot];
+    }
+
+    void setJobDataMap(int slot, JobDataMap jobDataMap) {
+        jobDataMaps[slot] = (jobDataMap == null || jobDataMap.isEmpty()) ? null : jobDataMap;
+    }
+
+    String getFireInstanceId(int slot) {
+        return fireInstanceIds[slot];
+    }
+
+    void setFireInstanceId(int slot, String fireInstanceId) {
+        fireInstanceIds[slot] = fireInstanceId;
+    }
+
+    private int calendarId(String calendarName) {
+        if (calendarName == null) {
+            return NO_CALENDAR;
+        }
+        Integer id = calendarIdsByName.get(calendarName);
+        if (id == null) {
+            id = calendarNames.size();
+            calendarNames.add(calendarName);
+            calendarIdsByName.put(calendarName, id);
+        }
+        return id;
+    }
+
+    private void resize(int capacity) {
+        startTimes = copyOf(startTimes, capacity);
+        endTimes = copyOf(endTimes, capacity);
+        nextFireTimes = copyOf(nextFireTimes, capacity);
+        previousFireTimes = copyOf(previousFireTimes, capacity);
+        repeatIntervals = copyOf(repeatIntervals, capacity);
+        repeatCounts = copyOf(repeatCounts, capacity);
+        timesTriggered = copyOf(timesTriggered, capacity);
+        priorities = copyOf(priorities, capacity);
+        misfireInstructions = copyOf(misfireInstructions, capacity);
+        calendarIds = copyOf(calendarIds, capacity);
+        descriptions = (descriptions == null) ? new String[capacity] : Arrays.copyOf(descriptions, capacity);
+        jobDataMaps = (jobDataMaps == null) ? new JobDataMap[capacity] : Arrays.copyOf(jobDataMaps, capacity);
+        fireInstanceIds = (fireInstanceIds == null) ? new String[capacity] : Arrays.copyOf(fireInstanceIds, capacity);
+    }
+
+    private static long[] copyOf(long[] array, int capacity) {
+        return (array == null) ? new long[capacity] : Arrays.copyOf(array, capacity);
+    }
+
+    private static int[] copyOf(int[] array, int capacity) {
+        return (array == null) ? new int[capacity] : Arrays.copyOf(array, capacity);
+    }
+
+    private static long toTime(Date date) {
+        return (date == null) ? NO_TIME : date.getTime();
+    }
+
+    private static Date toDate(long time) {
+        return (time == NO_TIME) ? null : new Date(time);
+    }
+}
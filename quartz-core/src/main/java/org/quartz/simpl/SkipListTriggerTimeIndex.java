@@ -0,0 +1,92 @@
+/*
+ * All content copyright Terracotta, Inc., unless otherwise indicated. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.quartz.simpl;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A <code>{@link TriggerTimeIndex}</code> backed by a concurrent skip list.
+ * Mutation is still expected to happen under the job store's lock, but
+ * <code>first()</code>, <code>size()</code> and iteration may be called
+ * without it.
+ */
+class SkipListTriggerTimeIndex implements TriggerTimeIndex {
+
+    private final ConcurrentSkipListSet<TriggerWrapper> triggers = new ConcurrentSkipListSet<TriggerWrapper>(new TriggerWrapperComparator());
+
+    // ConcurrentSkipListSet.size() is linear
+    private final AtomicInteger size = new AtomicInteger();
+
+    public boolean add(TriggerWrapper tw) {
+        if (triggers.add(tw)) {
+            size.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    public void addAll(Collection<TriggerWrapper> tws) {
+        for (TriggerWrapper tw : tws) {
+            add(tw);
+        }
+    }
+
+    public boolean remove(TriggerWrapper tw) {
+        if (triggers.remove(tw)) {
+            size.decrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    public TriggerWrapper first() {
+        try {
+            return triggers.first();
+        } catch (java.util.NoSuchElementException nsee) {
+            return null;
+        }
+    }
+
+    public TriggerWrapper pollFirst() {
+        TriggerWrapper tw = triggers.pollFirst();
+        if (tw != null) {
+            size.decrementAndGet();
+        }
+        return tw;
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    public boolean isEmpty() {
+        return size.get() == 0;
+    }
+
+    public void clear() {
+        triggers.clear();
+        size.set(0);
+    }
+
+    public Iterator<TriggerWrapper> iterator() {
+        return triggers.iterator();
+    }
+}
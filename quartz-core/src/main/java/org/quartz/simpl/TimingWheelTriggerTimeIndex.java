@@ -0,0 +1,346 @@
+/*
+ * All content copyright Terracotta, Inc., unless otherwise indicated. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.quartz.simpl;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * <p>
+ * A hierarchical timing wheel implementation of <code>{@link TriggerTimeIndex}</code>.
+ * </p>
+ * <p>
+ * Triggers are hashed into millisecond, second, minute and hour buckets
+ * relative to the wheel's current position, so that storing, removing and
+ * acquiring near-term triggers costs constant time rather than the
+ * logarithmic comparator work of a balanced tree. Triggers further out than
+ * the current day are kept in a sorted overflow set and cascaded into the
+ * wheel as it advances. Only the millisecond buckets are kept sorted, which
+ * is all that is needed to preserve the priority and key tie-breaking of
+ * <code>{@link TriggerWrapperComparator}</code>.
+ * </p>
+ * <p>
+ * The wheel only moves forward. Triggers added behind its position (e.g.
+ * released triggers, or misfires) are kept in a sorted overdue set, which
+ * always sorts ahead of the wheel; if that set grows larger than the rest of
+ * the index the wheel is rebuilt at the earliest fire time.
+ * </p>
+ */
+class TimingWheelTriggerTimeIndex implements TriggerTimeIndex {
+
+    private static final long[] TICKS = {1L, 1000L, 60L * 1000L, 60L * 60L * 1000L};
+
+    private static final int[] SLOTS = {1000, 60, 60, 24};
+
+    private static final int LEVELS = TICKS.length;
+
+    private static final long DAY = TICKS[LEVELS - 1] * SLOTS[LEVELS - 1];
+
+    private static final int MIN_REBASE_SIZE = 1024;
+
+    private final TriggerWrapperComparator comparator = new TriggerWrapperComparator();
+
+    // millisecond buckets hold triggers with equal fire times, so must stay sorted
+    private final TreeSet<TriggerWrapper>[] millis;
+
+    private final HashSet<TriggerWrapper>[][] buckets;
+
+    private final BitSet[] occupied = new BitSet[LEVELS];
+
+    private final int[] levelSizes = new int[LEVELS];
+
+    private final TreeSet<TriggerWrapper> overdue = new TreeSet<TriggerWrapper>(comparator);
+
+    private final TreeSet<TriggerWrapper> overflow = new TreeSet<TriggerWrapper>(comparator);
+
+    private final TreeSet<TriggerWrapper> unscheduled = new TreeSet<TriggerWrapper>(comparator);
+
+    private long base = 0L;
+
+    private int size = 0;
+
+    @SuppressWarnings("unchecked")
+    TimingWheelTriggerTimeIndex() {
+        millis = new TreeSet[SLOTS[0]];
+        buckets = new HashSet[LEVELS][];
+        for (int level = 0; level < LEVELS; level++) {
+            occupied[level] = new BitSet(SLOTS[level]);
+            if (level > 0) {
+                buckets[level] = new HashSet[SLOTS[level]];
+            }
+        }
+    }
+
+    public boolean add(TriggerWrapper tw) {
+        Date nextFireTime = tw.trigger.getNextFireTime();
+        boolean added;
+        if (nextFireTime == null) {
+            added = unscheduled.add(tw);
+        } else {
+            long time = nextFireTime.getTime();
+            if (time < base && shouldRebase()) {
+                rebase(time);
+            }
+            added = (time < base) ? overdue.add(tw) : insert(tw, time);
+        }
+        if (added) {
+            size++;
+        }
+        return added;
+    }
+
+    public void addAll(Collection<TriggerWrapper> tws) {
+        for (TriggerWrapper tw : tws) {
+            add(tw);
+        }
+    }
+
+    public boolean remove(TriggerWrapper tw) {
+        Date nextFireTime = tw.trigger.getNextFireTime();
+        boolean removed;
+        if (nextFireTime == null) {
+            removed = unscheduled.remove(tw);
+        } else {
+            long time = nextFireTime.getTime();
+            removed = (time < base) ? overdue.remove(tw) : delete(tw, time);
+        }
+        if (removed) {
+            size--;
+        }
+        return removed;
+    }
+
+    public TriggerWrapper first() {
+        TreeSet<TriggerWrapper> bucket = firstBucket();
+        return (bucket == null) ? null : bucket.first();
+    }
+
+    public TriggerWrapper pollFirst() {
+        TreeSet<TriggerWrapper> bucket = firstBucket();
+        if (bucket == null) {
+            return null;
+        }
+        TriggerWrapper tw = bucket.pollFirst();
+        if (bucket != overdue && bucket != unscheduled) {
+            levelSizes[0]--;
+            if (bucket.isEmpty()) {
+                occupied[0].clear(slot(tw.trigger.getNextFireTime().getTime(), 0));
+            }
+        }
+        size--;
+        return tw;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        drainTimed();
+        unscheduled.clear();
+        base = 0L;
+        size = 0;
+    }
+
+    /**
+     * Iterates a sorted snapshot of the index; intended for diagnostics only.
+     */
+    public Iterator<TriggerWrapper> iterator() {
+        List<TriggerWrapper> all = new ArrayList<TriggerWrapper>(size);
+        all.addAll(overdue);
+        all.addAll(overflow);
+        all.addAll(unscheduled);
+        for (int level = 0; level < LEVELS; level++) {
+            BitSet bits = occupied[level];
+            for (int slot = bits.nextSetBit(0); slot >= 0; slot = bits.nextSetBit(slot + 1)) {
+                all.addAll((level == 0) ? millis[slot] : buckets[level][slot]);
+            }
+        }
+        Collections.sort(all, comparator);
+        return Collections.unmodifiableList(all).iterator();
+    }
+
+    /**
+     * Find the (sorted) bucket holding the first trigger, advancing the wheel
+     * as far as the earliest occupied millisecond.
+     */
+    private TreeSet<TriggerWrapper> firstBucket() {
+        if (!overdue.isEmpty()) {
+            return overdue;
+        }
+
+        do {
+            if (levelSizes[0] > 0) {
+                int slot = occupied[0].nextSetBit(slot(base, 0));
+                base = Math.floorDiv(base, TICKS[1]) * TICKS[1] + slot;
+                return millis[slot];
+            }
+        } while (cascade());
+
+        return unscheduled.isEmpty() ? null : unscheduled;
+    }
+
+    /**
+     * Advance the wheel to the next occupied bucket above the millisecond
+     * level (or to the day of the first overflowed trigger), redistributing
+     * that bucket's triggers into the finer levels.
+     *
+     * @return <code>false</code> if there are no timed triggers left.
+     */
+    private boolean cascade() {
+        for (int level = 1; level < LEVELS; level++) {
+            if (levelSizes[level] == 0) {
+                continue;
+            }
+            // the bucket the wheel is positioned in has already been cascaded
+            int slot = occupied[level].nextSetBit(slot(base, level) + 1);
+            if (slot < 0) {
+                continue;
+            }
+            long span = TICKS[level] * SLOTS[level];
+            base = Math.floorDiv(base, span) * span + slot * TICKS[level];
+
+            HashSet<TriggerWrapper> bucket = buckets[level][slot];
+            List<TriggerWrapper> moving = new ArrayList<TriggerWrapper>(bucket);
+            bucket.clear();
+            occupied[level].clear(slot);
+            levelSizes[level] -= moving.size();
+            for (TriggerWrapper tw : moving) {
+                insert(tw, tw.trigger.getNextFireTime().getTime());
+            }
+            return true;
+        }
+
+        if (overflow.isEmpty()) {
+            return false;
+        }
+
+        base = Math.floorDiv(overflow.first().trigger.getNextFireTime().getTime(), DAY) * DAY;
+        while (!overflow.isEmpty()) {
+            long time = overflow.first().trigger.getNextFireTime().getTime();
+            if (time >= base + DAY) {
+                break;
+            }
+            insert(overflow.pollFirst(), time);
+        }
+        return true;
+    }
+
+    private boolean insert(TriggerWrapper tw, long time) {
+        for (int level = 0; level < LEVELS; level++) {
+            long span = TICKS[level] * SLOTS[level];
+            if (Math.floorDiv(time, span) != Math.floorDiv(base, span)) {
+                continue;
+            }
+            int slot = slot(time, level);
+            boolean added;
+            if (level == 0) {
+                if (millis[slot] == null) {
+                    millis[slot] = new TreeSet<TriggerWrapper>(comparator);
+                }
+                added = millis[slot].add(tw);
+            } else {
+                if (buckets[level][slot] == null) {
+                    buckets[level][slot] = new HashSet<TriggerWrapper>();
+                }
+                added = buckets[level][slot].add(tw);
+            }
+            if (added) {
+                occupied[level].set(slot);
+                levelSizes[level]++;
+            }
+            return added;
+        }
+        return overflow.add(tw);
+    }
+
+    private boolean delete(TriggerWrapper tw, long time) {
+        for (int level = 0; level < LEVELS; level++) {
+            long span = TICKS[level] * SLOTS[level];
+            if (Math.floorDiv(time, span) != Math.floorDiv(base, span)) {
+                continue;
+            }
+            int slot = slot(time, level);
+            Collection<TriggerWrapper> bucket = (level == 0) ? millis[slot] : buckets[level][slot];
+            if (bucket == null || !bucket.remove(tw)) {
+                return false;
+            }
+            levelSizes[level]--;
+            if (bucket.isEmpty()) {
+                occupied[level].clear(slot);
+            }
+            return true;
+        }
+        return overflow.remove(tw);
+    }
+
+    private boolean shouldRebase() {
+        int timed = size - unscheduled.size();
+        return overdue.size() >= MIN_REBASE_SIZE && overdue.size() >= timed - overdue.size();
+    }
+
+    /**
+     * Rebuild the wheel positioned at the earliest of the given time and the
+     * timed triggers currently held.
+     */
+    private void rebase(long time) {
+        List<TriggerWrapper> timed = drainTimed();
+        long earliest = time;
+        for (TriggerWrapper tw : timed) {
+            earliest = Math.min(earliest, tw.trigger.getNextFireTime().getTime());
+        }
+        base = earliest;
+        for (TriggerWrapper tw : timed) {
+            insert(tw, tw.trigger.getNextFireTime().getTime());
+        }
+    }
+
+    private List<TriggerWrapper> drainTimed() {
+        List<TriggerWrapper> timed = new ArrayList<TriggerWrapper>(size);
+        timed.addAll(overdue);
+        timed.addAll(overflow);
+        overdue.clear();
+        overflow.clear();
+        for (int level = 0; level < LEVELS; level++) {
+            BitSet bits = occupied[level];
+            for (int slot = bits.nextSetBit(0); slot >= 0; slot = bits.nextSetBit(slot + 1)) {
+                Collection<TriggerWrapper> bucket = (level == 0) ? millis[slot] : buckets[level][slot];
+                timed.addAll(bucket);
+                bucket.clear();
+            }
+            bits.clear();
+            levelSizes[level] = 0;
+        }
+        return timed;
+    }
+
+    private static int slot(long time, int level) {
+        return (int) Math.floorMod(Math.floorDiv(time, TICKS[level]), (long) SLOTS[level]);
+    }
+}
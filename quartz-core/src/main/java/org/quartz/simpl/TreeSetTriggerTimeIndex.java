@@ -0,0 +1,161 @@
+/*
+ * All content copyright Terracotta, Inc., unless otherwise indicated. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.quartz.simpl;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * The default <code>{@link TriggerTimeIndex}</code>, a red-black tree ordered
+ * by <code>{@link TriggerWrapperComparator}</code>.
+ */
+class TreeSetTriggerTimeIndex implements TriggerTimeIndex {
+
+    private final TriggerWrapperComparator comparator = new TriggerWrapperComparator();
+
+    private final TreeSet<TriggerWrapper> triggers = new TreeSet<TriggerWrapper>(comparator);
+
+    public boolean add(TriggerWrapper tw) {
+        return triggers.add(tw);
+    }
+
+    /**
+     * Adds a large batch by sorting it, merging it with the wrappers already
+     * present, and rebuilding the tree from the sorted result, which takes
+     * linear time once the batch is sorted.
+     */
+    public void addAll(Collection<TriggerWrapper> tws) {
+        if (tws.size() < 64 || tws.size() < triggers.size() / 8) {
+            triggers.addAll(tws);
+            return;
+        }
+
+        TriggerWrapper[] added = tws.toArray(new TriggerWrapper[tws.size()]);
+        Arrays.sort(added, comparator);
+
+        List<TriggerWrapper> merged = new ArrayList<TriggerWrapper>(triggers.size() + added.length);
+        Iterator<TriggerWrapper> present = triggers.iterator();
+        TriggerWrapper next = present.hasNext() ? present.next() : null;
+        for (TriggerWrapper tw : added) {
+            while (next != null && comparator.compare(next, tw) < 0) {
+                merged.add(next);
+                next = present.hasNext() ? present.next() : null;
+            }
+            if (next != null && comparator.compare(next, tw) == 0) {
+                continue;
+            }
+            if (!merged.isEmpty() && comparator.compare(merged.get(merged.size() - 1), tw) == 0) {
+                continue;
+            }
+            merged.add(tw);
+        }
+        while (next != null) {
+            merged.add(next);
+            next = present.hasNext() ? present.next() : null;
+        }
+
+        triggers.clear();
+        // TreeSet builds itself from another sorted set with the same comparator in linear time
+        triggers.addAll(new SortedList(merged, comparator));
+    }
+
+    public boolean remove(TriggerWrapper tw) {
+        return triggers.remove(tw);
+    }
+
+    public TriggerWrapper first() {
+        return triggers.isEmpty() ? null : triggers.first();
+    }
+
+    public TriggerWrapper pollFirst() {
+        return triggers.pollFirst();
+    }
+
+    public int size() {
+        return triggers.size();
+    }
+
+    public boolean isEmpty() {
+        return triggers.isEmpty();
+    }
+
+    public void clear() {
+        triggers.clear();
+    }
+
+    public Iterator<TriggerWrapper> iterator() {
+        return triggers.iterator();
+    }
+
+    /**
+     * A sorted list, without duplicates, presented as a <code>SortedSet</code>
+     * for <code>TreeSet.addAll</code>; only iteration is supported.
+     */
+    private static class SortedList extends AbstractSet<TriggerWrapper> implements SortedSet<TriggerWrapper> {
+
+        private final List<TriggerWrapper> list;
+
+        private final Comparator<TriggerWrapper> comparator;
+
+        SortedList(List<TriggerWrapper> list, Comparator<TriggerWrapper> comparator) {
+            this.list = list;
+            this.comparator = comparator;
+        }
+
+        @Override
+        public Iterator<TriggerWrapper> iterator() {
+            return list.iterator();
+        }
+
+        @Override
+        public int size() {
+            return list.size();
+        }
+
+        public Comparator<? super TriggerWrapper> comparator() {
+            return comparator;
+        }
+
+        public SortedSet<TriggerWrapper> subSet(TriggerWrapper fromElement, TriggerWrapper toElement) {
+            throw new UnsupportedOperationException();
+        }
+
+        public SortedSet<TriggerWrapper> headSet(TriggerWrapper toElement) {
+            throw new UnsupportedOperationException();
+        }
+
+        public SortedSet<TriggerWrapper> tailSet(TriggerWrapper fromElement) {
+            throw new UnsupportedOperationException();
+        }
+
+        public TriggerWrapper first() {
+            return list.get(0);
+        }
+
+        public TriggerWrapper last() {
+            return list.get(list.size() - 1);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * All content copyright Terracotta, Inc., unless otherwise indicated. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.quartz.simpl;
+
+import java.util.Collection;
+
+/**
+ * <p>
+ * The ordered set of waiting triggers that the <code>{@link RAMJobStore}</code>
+ * consults when acquiring the next triggers to fire.
+ * </p>
+ * <p>
+ * Entries are ordered by next fire time, then by descending priority, then by
+ * trigger key - exactly as <code>{@link org.quartz.triggers.Trigger.TriggerTimeComparator}</code>
+ * orders triggers. A trigger's next fire time, priority and key must not be
+ * changed while its wrapper is held by an index; callers remove the wrapper,
+ * update the trigger, and add it back.
+ * </p>
+ * <p>
+ * Implementations are not required to be thread-safe, the job store guards
+ * them with its own lock.
+ * </p>
+ *
+ * @see TreeSetTriggerTimeIndex
+ * @see TimingWheelTriggerTimeIndex
+ */
+interface TriggerTimeIndex extends Iterable<TriggerWrapper> {
+
+    /**
+     * Add the given wrapper to the index.
+     *
+     * @return <code>true</code> if the wrapper was not already present.
+     */
+    boolean add(TriggerWrapper tw);
+
+    /**
+     * Add all of the given wrappers to the index.
+     */
+    void addAll(Collection<TriggerWrapper> tws);
+
+    /**
+     * Remove the given wrapper from the index.
+     *
+     * @return <code>true</code> if the wrapper was present.
+     */
+    boolean remove(TriggerWrapper tw);
+
+    /**
+     * Get the wrapper that sorts first, or <code>null</code> if the index is
+     * empty.
+     */
+    TriggerWrapper first();
+
+    /**
+     * Remove and return the wrapper that sorts first, or <code>null</code> if
+     * the index is empty.
+     */
+    TriggerWrapper pollFirst();
+
+    int size();
+
+    boolean isEmpty();
+
+    void clear();
+}
@@ -0,0 +1,51 @@
+/* 
+ * All content copyright Terracotta, Inc., unless otherwise indicated. All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not 
+ * use this file except in compliance with the License. You may obtain a copy 
+ * of the License at 
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0 
+ *   
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the 
+ * License for the specific language governing permissions and limitations 
+ * under the License.
+ * 
+ */
+
+package org.quartz.spi;
+
+/**
+ * Implemented by <code>{@link JobStore}</code>s that keep their data in
+ * memory, to report how much of the heap it is estimated to take, and to
+ * refuse to store more beyond a configured limit.
+ *
+ * @see JobStoreFootprint
+ */
+public interface FootprintReporter {
+
+    /**
+     * Get an estimate of the memory taken by the jobs, triggers and
+     * calendars in the store.
+     */
+    JobStoreFootprint getFootprint();
+
+    /**
+     * Get the estimated number of bytes beyond which the store refuses to
+     * store more jobs or triggers, or 0 if there is no limit.
+     */
+    long getMaxFootprint();
+
+    /**
+     * Set the estimated number of bytes beyond which the store refuses to
+     * store more jobs or triggers, by throwing a
+     * <code>{@link org.quartz.exception.FootprintLimitExceededException}</code>;
+     * 0 (the default) for no limit. The limit is a soft one: it is checked
+     * against estimates, and changes that do not make the store bigger, or
+     * that are made by the store itself as jobs execute, are never
+     * refused.
+     */
+    void setMaxFootprint(long maxFootprint);
+}
@@ -0,0 +1,167 @@
+/* 
+ * All content copyright Terracotta, Inc., unless otherwise indicated. All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not 
+ * use this file except in compliance with the License. You may obtain a copy 
+ * of the License at 
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0 
+ *   
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the 
+ * License for the specific language governing permissions and limitations 
+ * under the License.
+ * 
+ */
+
+package org.quartz.spi;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * <p>
+ * A snapshot of the memory a <code>{@link JobStore}</code> is estimated to
+ * take, as returned by <code>{@link FootprintReporter#getFootprint()}</code>.
+ * All sizes are in bytes, and include the store's own indexes.
+ * </p>
+ */
+public class JobStoreFootprint implements java.io.Serializable {
+
+    private static final long serialVersionUID = -2204836573613318740L;
+
+    private final int numberOfJobs;
+
+    private final long jobBytes;
+
+    private final int numberOfTriggers;
+
+    private final long triggerBytes;
+
+    private final int numberOfCalendars;
+
+    private final long calendarBytes;
+
+    private final long jobDataMapBytes;
+
+    private final long maxFootprint;
+
+    private final Map<String, Long> jobGroupBytes;
+
+    private final Map<String, Long> triggerGroupBytes;
+
+    private final Map<String, Long> largestJobDataMaps;
+
+    /*
+     * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+     *
+     * Constructors.
+     *
+     * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+     */
+
+    public JobStoreFootprint(int numberOfJobs, long jobBytes, int numberOfTriggers, long triggerBytes,
+                             int numberOfCalendars, long calendarBytes, long jobDataMapBytes, long maxFootprint,
+                             Map<String, Long> jobGroupBytes, Map<String, Long> triggerGroupBytes,
+                             Map<String, Long> largestJobDataMaps) {
+        this.numberOfJobs = numberOfJobs;
+        this.jobBytes = jobBytes;
+        this.numberOfTriggers = numberOfTriggers;
+        this.triggerBytes = triggerBytes;
+        this.numberOfCalendars = numberOfCalendars;
+        this.calendarBytes = calendarBytes;
+        this.jobDataMapBytes = jobDataMapBytes;
+        this.maxFootprint = maxFootprint;
+        this.jobGroupBytes = Collections.unmodifiableMap(jobGroupBytes);
+        this.triggerGroupBytes = Collections.unmodifiableMap(triggerGroupBytes);
+        this.largestJobDataMaps = Collections.unmodifiableMap(largestJobDataMaps);
+    }
+
+    /*
+     * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+     *
+     * Interface.
+     *
+     * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+     */
+
+    public int getNumberOfJobs() {
+        return numberOfJobs;
+    }
+
+    /**
+     * The estimated size of all jobs, including their <code>JobDataMap</code>s.
+     */
+    public long getJobBytes() {
+        return jobBytes;
+    }
+
+    public int getNumberOfTriggers() {
+        return numberOfTriggers;
+    }
+
+    /**
+     * The estimated size of all triggers, including their
+     * <code>JobDataMap</code>s.
+     */
+    public long getTriggerBytes() {
+        return triggerBytes;
+    }
+
+    public int getNumberOfCalendars() {
+        return numberOfCalendars;
+    }
+
+    public long getCalendarBytes() {
+        return calendarBytes;
+    }
+
+    /**
+     * The estimated size of the <code>JobDataMap</code>s of all jobs and
+     * triggers, which is part of their sizes.
+     */
+    public long getJobDataMapBytes() {
+        return jobDataMapBytes;
+    }
+
+    public long getTotalBytes() {
+        return jobBytes + triggerBytes + calendarBytes;
+    }
+
+    /**
+     * The limit the store was configured with, or 0 if it has none.
+     */
+    public long getMaxFootprint() {
+        return maxFootprint;
+    }
+
+    /**
+     * The estimated size of the jobs of each job group.
+     */
+    public Map<String, Long> getJobGroupBytes() {
+        return jobGroupBytes;
+    }
+
+    /**
+     * The estimated size of the triggers of each trigger group.
+     */
+    public Map<String, Long> getTriggerGroupBytes() {
+        return triggerGroupBytes;
+    }
+
+    /**
+     * The estimated sizes of the largest <code>JobDataMap</code>s, largest
+     * first, by the key of the job or trigger that holds them.
+     */
+    public Map<String, Long> getLargestJobDataMaps() {
+        return largestJobDataMaps;
+    }
+
+    @Override
+    public String toString() {
+        return "JobStoreFootprint[jobs=" + numberOfJobs + "/" + jobBytes + "B, triggers="
+                + numberOfTriggers + "/" + triggerBytes + "B, calendars=" + numberOfCalendars + "/"
+                + calendarBytes + "B, jobDataMaps=" + jobDataMapBytes + "B, limit=" + maxFootprint + "B]";
+    }
+}
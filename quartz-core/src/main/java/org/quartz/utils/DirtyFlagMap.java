@@ -17,18 +17,32 @@
 
 package org.quartz.utils;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.lang.reflect.Array;
+import java.util.AbstractMap;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
 /**
  * <p>
  * An implementation of <code>Map</code> that wraps another <code>Map</code>
  * and flags itself 'dirty' when it is modified.
  * </p>
+ * <p>
+ * Clones share the wrapped map with the original until either of them is
+ * modified, at which point the modified one takes a private copy. Cloning is
+ * therefore cheap for the common case of copies that are only read, such as
+ * the <code>JobDataMap</code>s of jobs and triggers handed out by job stores.
+ * </p>
+ * <p>
+ * The wrapped map can also be loaded when it is first accessed, so that the
+ * cost of reading it is only paid by the maps that are actually used.
+ * </p>
  *
  * @author James House
  */
@@ -43,9 +57,19 @@ public class DirtyFlagMap<K, V> implements Map<K, V>, Cloneable, java.io.Seriali
      */
     private static final long serialVersionUID = 1433884852607126222L;
 
+    private static final int KEYS = 0;
+    private static final int VALUES = 1;
+    private static final int ENTRIES = 2;
+
     private boolean dirty = false;
     private Map<K, V> map;
 
+    // whether map may also be referenced by a clone, and must be copied before being modified
+    private transient boolean shared = false;
+
+    // when set, map is not loaded yet, and is loaded by it when first accessed
+    private transient Callable<? extends Map<K, V>> loader;
+
     /*
      * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
      *
@@ -89,6 +113,22 @@ public class DirtyFlagMap<K, V> implements Map<K, V>, Cloneable, java.io.Seriali
         map = new HashMap<K, V>(initialCapacity, loadFactor);
     }
 
+    /**
+     * <p>
+     * Create a DirtyFlagMap that 'wraps' the <code>Map</code> returned by the
+     * given loader, which is only called when the map is first accessed. The
+     * loader must return a new, modifiable map.
+     * </p>
+     * <p>
+     * If the loader fails, the access fails with an
+     * <code>IllegalStateException</code>, and the next access calls the
+     * loader again.
+     * </p>
+     */
+    protected DirtyFlagMap(final Callable<? extends Map<K, V>> loader) {
+        this.loader = loader;
+    }
+
     /*
      * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
      *
@@ -119,28 +159,37 @@ public class DirtyFlagMap<K, V> implements Map<K, V>, Cloneable, java.io.Seriali
      * <p>
      * Get a direct handle to the underlying Map.
      * </p>
+     * <p>
+     * If the map is still shared with a clone it is copied first, so that
+     * changes made through the handle are not seen by the clone.
+     * </p>
      */
     public Map<K, V> getWrappedMap() {
-        return map;
+        return writableMap();
     }
 
     public void clear() {
-        if (!map.isEmpty()) {
+        if (!loadedMap().isEmpty()) {
             dirty = true;
+            if (shared) {
+                map = new HashMap<K, V>();
+                shared = false;
+            } else {
+                map.clear();
+            }
         }
-        map.clear();
     }
 
     public boolean containsKey(final Object key) {
-        return map.containsKey(key);
+        return loadedMap().containsKey(key);
     }
 
     public boolean containsValue(final Object val) {
-        return map.containsValue(val);
+        return loadedMap().containsValue(val);
     }
 
     public Set<Entry<K, V>> entrySet() {
-        return new DirtyFlagMapEntrySet(map.entrySet());
+        return new DirtyFlagMapEntrySet();
     }
 
     @Override
@@ -149,42 +198,45 @@ public class DirtyFlagMap<K, V> implements Map<K, V>, Cloneable, java.io.Seriali
             return false;
         }
 
-        return map.equals(((DirtyFlagMap<?, ?>) obj).getWrappedMap());
+        return loadedMap().equals(((DirtyFlagMap<?, ?>) obj).loadedMap());
     }
 
     @Override
     public int hashCode() {
-        return map.hashCode();
+        return loadedMap().hashCode();
     }
 
     public V get(final Object key) {
-        return map.get(key);
+        return loadedMap().get(key);
     }
 
     public boolean isEmpty() {
-        return map.isEmpty();
+        return loadedMap().isEmpty();
     }
 
     public Set<K> keySet() {
-        return new DirtyFlagSet<K>(map.keySet());
+        return new DirtyFlagSet<K>(KEYS);
     }
 
     public V put(final K key, final V val) {
         dirty = true;
 
-        return map.put(key, val);
+        return writableMap().put(key, val);
     }
 
     public void putAll(final Map<? extends K, ? extends V> t) {
         if (!t.isEmpty()) {
             dirty = true;
+            writableMap().putAll(t);
         }
-
-        map.putAll(t);
     }
 
     public V remove(final Object key) {
-        V obj = map.remove(key);
+        if (!loadedMap().containsKey(key)) {
+            return null;
+        }
+
+        V obj = writableMap().remove(key);
 
         if (obj != null) {
             dirty = true;
@@ -194,50 +246,118 @@ public class DirtyFlagMap<K, V> implements Map<K, V>, Cloneable, java.io.Seriali
     }
 
     public int size() {
-        return map.size();
+        return loadedMap().size();
     }
 
     public Collection<V> values() {
-        return new DirtyFlagCollection<V>(map.values());
+        return new DirtyFlagCollection<V>(VALUES);
     }
 
     @Override
-    @SuppressWarnings("unchecked") // suppress warnings on generic cast of super.clone() and map.clone() lines.
+    @SuppressWarnings("unchecked") // suppress warnings on generic cast of super.clone() line.
     public Object clone() {
         DirtyFlagMap<K, V> copy;
         try {
             copy = (DirtyFlagMap<K, V>) super.clone();
-            if (map instanceof HashMap) {
-                copy.map = (Map<K, V>) ((HashMap<K, V>) map).clone();
-            }
         } catch (CloneNotSupportedException ex) {
             throw new IncompatibleClassChangeError("Not Cloneable.");
         }
 
+        if (loader == null) {
+            if (!shared) {
+                shared = true;
+            }
+            copy.shared = true;
+        } else {
+            // a map not loaded yet is loaded once, for all of them to share
+            if (!(loader instanceof SharedLoader)) {
+                loader = new SharedLoader<K, V>(loader);
+            }
+            copy.loader = loader;
+        }
+
         return copy;
     }
 
+    /**
+     * Get the wrapped map, first loading it if it is not loaded yet.
+     */
+    private Map<K, V> loadedMap() {
+        if (loader != null) {
+            try {
+                map = loader.call();
+            } catch (Exception e) {
+                throw new IllegalStateException("Unable to load the map: " + e.getMessage(), e);
+            }
+            shared = (loader instanceof SharedLoader);
+            loader = null;
+        }
+        return map;
+    }
+
+    private void writeObject(final ObjectOutputStream out) throws IOException {
+        loadedMap();
+        out.defaultWriteObject();
+    }
+
+    /**
+     * Get the wrapped map for modification, first taking a private copy of
+     * it if it is shared with a clone.
+     */
+    private Map<K, V> writableMap() {
+        loadedMap();
+        if (shared) {
+            map = new HashMap<K, V>(map);
+            shared = false;
+        }
+        return map;
+    }
+
+    /**
+     * Get the requested view of the given map.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> Collection<T> viewOf(final Map<K, V> m, final int kind) {
+        switch (kind) {
+            case KEYS:
+                return (Collection<T>) m.keySet();
+            case VALUES:
+                return (Collection<T>) m.values();
+            default:
+                return (Collection<T>) m.entrySet();
+        }
+    }
+
     /**
      * Wrap a Collection so we can mark the DirtyFlagMap as dirty if
-     * the underlying Collection is modified.
+     * the underlying Collection is modified.  The view always reflects the
+     * map currently wrapped, which may change from a shared map to a private
+     * copy of it.
      */
     private class DirtyFlagCollection<T> implements Collection<T> {
-        private Collection<T> collection;
+        private final int kind;
 
-        public DirtyFlagCollection(final Collection<T> c) {
-            collection = c;
+        public DirtyFlagCollection(final int kind) {
+            this.kind = kind;
         }
 
         protected Collection<T> getWrappedCollection() {
-            return collection;
+            return viewOf(loadedMap(), kind);
+        }
+
+        protected Collection<T> getWritableCollection() {
+            return viewOf(writableMap(), kind);
         }
 
         public Iterator<T> iterator() {
-            return new DirtyFlagIterator<T>(collection.iterator());
+            return new DirtyFlagIterator<T>(kind);
         }
 
         public boolean remove(final Object o) {
-            boolean removed = collection.remove(o);
+            if (!getWrappedCollection().contains(o)) {
+                return false;
+            }
+            boolean removed = getWritableCollection().remove(o);
             if (removed) {
                 dirty = true;
             }
@@ -245,7 +365,7 @@ public class DirtyFlagMap<K, V> implements Map<K, V>, Cloneable, java.io.Seriali
         }
 
         public boolean removeAll(final Collection<?> c) {
-            boolean changed = collection.removeAll(c);
+            boolean changed = getWritableCollection().removeAll(c);
             if (changed) {
                 dirty = true;
             }
@@ -253,7 +373,7 @@ public class DirtyFlagMap<K, V> implements Map<K, V>, Cloneable, java.io.Seriali
         }
 
         public boolean retainAll(final Collection<?> c) {
-            boolean changed = collection.retainAll(c);
+            boolean changed = getWritableCollection().retainAll(c);
             if (changed) {
                 dirty = true;
             }
@@ -261,43 +381,40 @@ public class DirtyFlagMap<K, V> implements Map<K, V>, Cloneable, java.io.Seriali
         }
 
         public void clear() {
-            if (collection.isEmpty() == false) {
-                dirty = true;
-            }
-            collection.clear();
+            DirtyFlagMap.this.clear();
         }
 
         // Pure wrapper methods
         public int size() {
-            return collection.size();
+            return getWrappedCollection().size();
         }
 
         public boolean isEmpty() {
-            return collection.isEmpty();
+            return getWrappedCollection().isEmpty();
         }
 
         public boolean contains(final Object o) {
-            return collection.contains(o);
+            return getWrappedCollection().contains(o);
         }
 
         public boolean add(final T o) {
-            return collection.add(o);
+            return getWritableCollection().add(o);
         } // Not supported
 
         public boolean addAll(final Collection<? extends T> c) {
-            return collection.addAll(c);
+            return getWritableCollection().addAll(c);
         } // Not supported
 
         public boolean containsAll(final Collection<?> c) {
-            return collection.containsAll(c);
+            return getWrappedCollection().containsAll(c);
         }
 
         public Object[] toArray() {
-            return collection.toArray();
+            return getWrappedCollection().toArray();
         }
 
         public <U> U[] toArray(final U[] array) {
-            return collection.toArray(array);
+            return getWrappedCollection().toArray(array);
         }
     }
 
@@ -306,38 +423,57 @@ public class DirtyFlagMap<K, V> implements Map<K, V>, Cloneable, java.io.Seriali
      * the underlying Collection is modified.
      */
     private class DirtyFlagSet<T> extends DirtyFlagCollection<T> implements Set<T> {
-        public DirtyFlagSet(final Set<T> set) {
-            super(set);
-        }
-
-        protected Set<T> getWrappedSet() {
-            return (Set<T>) getWrappedCollection();
+        public DirtyFlagSet(final int kind) {
+            super(kind);
         }
     }
 
     /**
      * Wrap an Iterator so that we can mark the DirtyFlagMap as dirty if an
-     * element is removed.
+     * element is removed.  Iteration continues over the map wrapped when it
+     * started; if that map has since become shared, or been replaced by a
+     * private copy, removals are applied to the private copy by key.
      */
     private class DirtyFlagIterator<T> implements Iterator<T> {
-        private Iterator<T> iterator;
+        private final int kind;
+        private final Map<K, V> iterated;
+        private final Iterator<Map.Entry<K, V>> iterator;
+        private Map.Entry<K, V> last;
 
-        public DirtyFlagIterator(final Iterator<T> iterator) {
-            this.iterator = iterator;
+        public DirtyFlagIterator(final int kind) {
+            this.kind = kind;
+            this.iterated = loadedMap();
+            this.iterator = map.entrySet().iterator();
         }
 
         public void remove() {
             dirty = true;
-            iterator.remove();
+            if (iterated == map && !shared) {
+                iterator.remove();
+            } else {
+                if (last == null) {
+                    throw new IllegalStateException();
+                }
+                writableMap().remove(last.getKey());
+            }
+            last = null;
         }
 
-        // Pure wrapper methods
         public boolean hasNext() {
             return iterator.hasNext();
         }
 
+        @SuppressWarnings("unchecked")
         public T next() {
-            return iterator.next();
+            last = iterator.next();
+            switch (kind) {
+                case KEYS:
+                    return (T) last.getKey();
+                case VALUES:
+                    return (T) last.getValue();
+                default:
+                    return (T) new DirtyFlagMapEntry(iterated, last);
+            }
         }
     }
 
@@ -348,13 +484,8 @@ public class DirtyFlagMap<K, V> implements Map<K, V>, Cloneable, java.io.Seriali
      */
     private class DirtyFlagMapEntrySet extends DirtyFlagSet<Map.Entry<K, V>> {
 
-        public DirtyFlagMapEntrySet(final Set<Map.Entry<K, V>> set) {
-            super(set);
-        }
-
-        @Override
-        public Iterator<Map.Entry<K, V>> iterator() {
-            return new DirtyFlagMapEntryIterator(getWrappedSet().iterator());
+        public DirtyFlagMapEntrySet() {
+            super(ENTRIES);
         }
 
         @Override
@@ -388,35 +519,27 @@ public class DirtyFlagMap<K, V> implements Map<K, V>, Cloneable, java.io.Seriali
         }
     }
 
-    /**
-     * Wrap an Iterator over Map.Entry objects so that we can
-     * mark the Map as dirty if an element is removed or modified.
-     */
-    private class DirtyFlagMapEntryIterator extends DirtyFlagIterator<Map.Entry<K, V>> {
-        public DirtyFlagMapEntryIterator(final Iterator<Map.Entry<K, V>> iterator) {
-            super(iterator);
-        }
-
-        @Override
-        public DirtyFlagMapEntry next() {
-            return new DirtyFlagMapEntry(super.next());
-        }
-    }
-
     /**
      * Wrap a Map.Entry so we can mark the Map as dirty if
      * a value is set.
      */
     private class DirtyFlagMapEntry implements Map.Entry<K, V> {
+        private final Map<K, V> owner;
         private Map.Entry<K, V> entry;
 
-        public DirtyFlagMapEntry(final Map.Entry<K, V> entry) {
+        public DirtyFlagMapEntry(final Map<K, V> owner, final Map.Entry<K, V> entry) {
+            this.owner = owner;
             this.entry = entry;
         }
 
         public V setValue(final V o) {
             dirty = true;
-            return entry.setValue(o);
+            if (owner == map && !shared) {
+                return entry.setValue(o);
+            }
+            V old = writableMap().put(entry.getKey(), o);
+            entry = new AbstractMap.SimpleEntry<K, V>(entry.getKey(), o);
+            return old;
         }
 
         // Pure wrapper methods
@@ -432,5 +555,26 @@ public class DirtyFlagMap<K, V> implements Map<K, V>, Cloneable, java.io.Seriali
             return entry.equals(o);
         }
     }
-}
 
+    /**
+     * Loads the map of a map not loaded yet and of its clones, only once.
+     */
+    private static final class SharedLoader<K, V> implements Callable<Map<K, V>> {
+
+        private Callable<? extends Map<K, V>> loader;
+
+        private Map<K, V> map;
+
+        SharedLoader(Callable<? extends Map<K, V>> loader) {
+            this.loader = loader;
+        }
+
+        public synchronized Map<K, V> call() throws Exception {
+            if (loader != null) {
+                map = loader.call();
+                loader = null;
+            }
+            return map;
+        }
+    }
+}
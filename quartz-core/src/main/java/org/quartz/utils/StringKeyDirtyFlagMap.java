@@ -16,6 +16,8 @@
 package org.quartz.utils;
 
 import java.io.Serializable;
+import java.util.Map;
+import java.util.concurrent.Callable;
 
 /**
  * <p>
@@ -50,6 +52,10 @@ public class StringKeyDirtyFlagMap extends DirtyFlagMap<String, Object> {
         super(initialCapacity, loadFactor);
     }
 
+    protected StringKeyDirtyFlagMap(Callable<? extends Map<String, Object>> loader) {
+        super(loader);
+    }
+
     @Override
     public boolean equals(Object obj) {
         return super.equals(obj);
@@ -57,7 +63,7 @@ public class StringKeyDirtyFlagMap extends DirtyFlagMap<String, Object> {
 
     @Override
     public int hashCode() {
-        return getWrappedMap().hashCode();
+        return super.hashCode();
     }
 
     /**
@@ -11,7 +11,8 @@
 CREATE TABLE QRTZ_CALENDARS (
   SCHED_NAME VARCHAR(120) NOT NULL,
   CALENDAR_NAME VARCHAR (200)  NOT NULL ,
-  CALENDAR IMAGE NOT NULL
+  CALENDAR IMAGE NOT NULL ,
+  DATA_VERSION BIGINT NULL
 );
 
 CREATE TABLE QRTZ_CRON_TRIGGERS (
@@ -47,7 +48,9 @@ CREATE TABLE QRTZ_SCHEDULER_STATE (
   SCHED_NAME VARCHAR(120) NOT NULL,
   INSTANCE_NAME VARCHAR (200)  NOT NULL ,
   LAST_CHECKIN_TIME BIGINT NOT NULL ,
-  CHECKIN_INTERVAL BIGINT NOT NULL
+  CHECKIN_INTERVAL BIGINT NOT NULL ,
+  FIRST_PARTITION INTEGER NULL ,
+  LAST_PARTITION INTEGER NULL
 );
 
 CREATE TABLE QRTZ_LOCKS (
@@ -65,7 +68,8 @@ CREATE TABLE QRTZ_JOB_DETAILS (
   IS_NONCONCURRENT BOOLEAN  NOT NULL ,
   IS_UPDATE_DATA BOOLEAN  NOT NULL ,
   REQUESTS_RECOVERY BOOLEAN  NOT NULL ,
-  JOB_DATA IMAGE NULL
+  JOB_DATA IMAGE NULL ,
+  DATA_VERSION BIGINT NULL
 );
 
 CREATE TABLE QRTZ_SIMPLE_TRIGGERS (
@@ -117,7 +121,8 @@ CREATE TABLE QRTZ_TRIGGERS (
   END_TIME BIGINT NULL ,
   CALENDAR_NAME VARCHAR (200)  NULL ,
   MISFIRE_INSTR SMALLINT NULL ,
-  JOB_DATA IMAGE NULL
+  JOB_DATA IMAGE NULL ,
+  PARTITION_NUM INTEGER NULL
 );
 
 ALTER TABLE QRTZ_CALENDARS  ADD
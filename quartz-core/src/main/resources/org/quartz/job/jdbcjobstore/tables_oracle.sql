@@ -45,6 +45,7 @@ CREATE TABLE qrtz_job_details
     IS_UPDATE_DATA VARCHAR2(1) NOT NULL,
     REQUESTS_RECOVERY VARCHAR2(1) NOT NULL,
     JOB_DATA BLOB NULL,
+    DATA_VERSION NUMBER(19) NULL,
     CONSTRAINT QRTZ_JOB_DETAILS_PK PRIMARY KEY (SCHED_NAME,JOB_NAME,JOB_GROUP)
 );
 CREATE TABLE qrtz_triggers
@@ -65,6 +66,7 @@ CREATE TABLE qrtz_triggers
     CALENDAR_NAME VARCHAR2(200) NULL,
     MISFIRE_INSTR NUMBER(2) NULL,
     JOB_DATA BLOB NULL,
+    PARTITION_NUM NUMBER(10) NULL,
     CONSTRAINT QRTZ_TRIGGERS_PK PRIMARY KEY (SCHED_NAME,TRIGGER_NAME,TRIGGER_GROUP),
     CONSTRAINT QRTZ_TRIGGER_TO_JOBS_FK FOREIGN KEY (SCHED_NAME,JOB_NAME,JOB_GROUP) 
       REFERENCES QRTZ_JOB_DETAILS(SCHED_NAME,JOB_NAME,JOB_GROUP) 
@@ -127,6 +129,7 @@ CREATE TABLE qrtz_calendars
     SCHED_NAME VARCHAR2(120) NOT NULL,
     CALENDAR_NAME  VARCHAR2(200) NOT NULL, 
     CALENDAR BLOB NOT NULL,
+    DATA_VERSION NUMBER(19) NULL,
     CONSTRAINT QRTZ_CALENDARS_PK PRIMARY KEY (SCHED_NAME,CALENDAR_NAME)
 );
 CREATE TABLE qrtz_paused_trigger_grps
@@ -158,6 +161,8 @@ CREATE TABLE qrtz_scheduler_state
     INSTANCE_NAME VARCHAR2(200) NOT NULL,
     LAST_CHECKIN_TIME NUMBER(13) NOT NULL,
     CHECKIN_INTERVAL NUMBER(13) NOT NULL,
+    FIRST_PARTITION NUMBER(10) NULL,
+    LAST_PARTITION NUMBER(10) NULL,
     CONSTRAINT QRTZ_SCHEDULER_STATE_PK PRIMARY KEY (SCHED_NAME,INSTANCE_NAME)
 );
 CREATE TABLE qrtz_locks
@@ -182,6 +187,7 @@ create index idx_qrtz_t_nft_st on qrtz_triggers(SCHED_NAME,TRIGGER_STATE,NEXT_FI
 create index idx_qrtz_t_nft_misfire on qrtz_triggers(SCHED_NAME,MISFIRE_INSTR,NEXT_FIRE_TIME);
 create index idx_qrtz_t_nft_st_misfire on qrtz_triggers(SCHED_NAME,MISFIRE_INSTR,NEXT_FIRE_TIME,TRIGGER_STATE);
 create index idx_qrtz_t_nft_st_misfire_grp on qrtz_triggers(SCHED_NAME,MISFIRE_INSTR,NEXT_FIRE_TIME,TRIGGER_GROUP,TRIGGER_STATE);
+create index idx_qrtz_t_part_nft_st on qrtz_triggers(SCHED_NAME,PARTITION_NUM,TRIGGER_STATE,NEXT_FIRE_TIME);
 
 create index idx_qrtz_ft_trig_inst_name on qrtz_fired_triggers(SCHED_NAME,INSTANCE_NAME);
 create index idx_qrtz_ft_inst_job_req_rcvry on qrtz_fired_triggers(SCHED_NAME,INSTANCE_NAME,REQUESTS_RECOVERY);
@@ -0,0 +1,153 @@
+/*
+ * All content copyright Terracotta, Inc., unless otherwise indicated. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.quartz.job.jdbcjobstore;
+
+import java.io.ByteArrayOutputStream;
+import java.io.NotSerializableException;
+import java.io.ObjectOutputStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+import org.quartz.job.JobDataMap;
+
+public class BinaryJobDataMapCodecTest extends TestCase {
+
+    private final BinaryJobDataMapCodec codec = new BinaryJobDataMapCodec();
+
+    public void testRoundTripsValuesOfEachType() throws Exception {
+        JobDataMap data = new JobDataMap();
+        data.put("string", "value \u00e9\u4e2d\ud83d\ude00");
+        data.put("emptyString", "");
+        data.put("int", -42);
+        data.put("maxInt", Integer.MAX_VALUE);
+        data.put("long", Long.MIN_VALUE);
+        data.put("true", true);
+        data.put("false", false);
+        data.put("double", 1.5d);
+        data.put("float", -2.25f);
+        data.put("short", (short) -7);
+        data.put("byte", (byte) 3);
+        data.put("char", 'x');
+        data.put("null", null);
+        data.put("date", new Date(1234567890123L));
+
+        Map<String, Object> entries = data.getWrappedMap();
+        Map<?, ?> decoded = codec.decode(codec.encode(entries));
+
+        assertEquals(entries, decoded);
+        for (Map.Entry<String, Object> entry : entries.entrySet()) {
+            Object value = decoded.get(entry.getKey());
+            if (value != null) {
+                assertEquals(entry.getValue().getClass(), value.getClass());
+            }
+        }
+    }
+
+    public void testRoundTripsBytesAndCollections() throws Exception {
+        LinkedHashMap<String, Object> ordered = new LinkedHashMap<String, Object>();
+        ordered.put("z", 1);
+        ordered.put("a", 2L);
+        ArrayList<Object> list = new ArrayList<Object>(Arrays.asList("one", 2, null, ordered));
+        HashMap<Object, Object> nested = new HashMap<Object, Object>();
+        nested.put(3, list);
+
+        Map<String, Object> data = new HashMap<String, Object>();
+        data.put("bytes", new byte[]{1, 2, 3});
+        data.put("nested", nested);
+
+        Map<?, ?> decoded = codec.decode(codec.encode(data));
+
+        assertTrue(Arrays.equals(new byte[]{1, 2, 3}, (byte[]) decoded.get("bytes")));
+        assertEquals(nested, decoded.get("nested"));
+        List<?> decodedList = (List<?>) ((Map<?, ?>) decoded.get("nested")).get(3);
+        assertEquals(ArrayList.class, decodedList.getClass());
+        assertEquals(LinkedHashMap.class, decodedList.get(3).getClass());
+        assertEquals(Arrays.asList("z", "a"), new ArrayList<Object>(((Map<?, ?>) decodedList.get(3)).keySet()));
+    }
+
+    public void testSerializesOtherValues() throws Exception {
+        Map<String, Object> data = new HashMap<String, Object>();
+        data.put("decimal", new BigDecimal("12.345"));
+        data.put("unmodifiable", Arrays.asList(1, 2));
+
+        assertEquals(data, codec.decode(codec.encode(data)));
+    }
+
+    public void testEncodesCyclicMap() throws Exception {
+        HashMap<String, Object> cyclic = new HashMap<String, Object>();
+        cyclic.put("self", cyclic);
+        Map<String, Object> data = new HashMap<String, Object>();
+        data.put("cyclic", cyclic);
+
+        Map<?, ?> decoded = codec.decode(codec.encode(data));
+
+        Map<?, ?> decodedCyclic = (Map<?, ?>) decoded.get("cyclic");
+        assertSame(decodedCyclic, decodedCyclic.get("self"));
+    }
+
+    public void testNamesNotSerializableValue() throws Exception {
+        Map<String, Object> data = new HashMap<String, Object>();
+        data.put("object", new Object());
+        try {
+            codec.encode(data);
+            fail("Expected a NotSerializableException");
+        } catch (NotSerializableException expected) {
+            assertTrue(expected.getMessage().contains("'object'"));
+        }
+    }
+
+    public void testIsSmallerThanJavaSerialization() throws Exception {
+        JobDataMap data = new JobDataMap();
+        data.put("count", 3);
+        data.put("name", "report");
+        data.put("enabled", true);
+
+        ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(serialized);
+        out.writeObject(data);
+        out.close();
+
+        assertTrue(codec.encode(data.getWrappedMap()).length * 4 < serialized.size());
+    }
+
+    public void testDecodesOnlyItsOwnFormat() throws Exception {
+        assertTrue(codec.canDecode(codec.encode(new HashMap<String, Object>())));
+
+        ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(serialized);
+        out.writeObject(new JobDataMap());
+        out.close();
+        assertFalse(codec.canDecode(serialized.toByteArray()));
+
+        Properties properties = new Properties();
+        properties.put("key", "value");
+        ByteArrayOutputStream text = new ByteArrayOutputStream();
+        properties.store(text, "");
+        assertFalse(codec.canDecode(text.toByteArray()));
+
+        assertFalse(codec.canDecode(new byte[0]));
+        assertFalse(codec.canDecode(null));
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * All content copyright Terracotta, Inc., unless otherwise indicated. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.quartz.job.jdbcjobstore;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import junit.framework.TestCase;
+
+import org.quartz.AbstractJobStoreTest.MyJob;
+import org.quartz.AbstractJobStoreTest.SampleSignaler;
+import org.quartz.job.JobBuilder;
+import org.quartz.job.JobDetail;
+import org.quartz.scheduler.SchedulerConfigException;
+import org.quartz.scheduler.SimpleScheduleBuilder;
+import org.quartz.simpl.CascadingClassLoadHelper;
+import org.quartz.spi.ClassLoadHelper;
+import org.quartz.spi.OperableTrigger;
+import org.quartz.triggers.TriggerBuilder;
+import org.quartz.utils.DBConnectionManager;
+
+/**
+ * Several job stores of the same scheduler, as the nodes of a cluster
+ * would be, acquiring triggers at the same time without the
+ * <code>TRIGGER_ACCESS</code> lock.
+ */
+public class ConcurrentTriggerAcquisitionTest extends TestCase {
+
+    private static final int NODES = 4;
+
+    private static final int TRIGGERS = 200;
+
+    private final List<JobStoreTX> stores = new ArrayList<JobStoreTX>();
+
+    private String dsName;
+
+    @Override
+    protected void setUp() throws Exception {
+        dsName = "concurrentAcquisition" + getName();
+        JdbcQuartzTestUtilities.createDatabase(dsName);
+        Connection conn = DBConnectionManager.getInstance().getConnection(dsName);
+        try {
+            conn.createStatement().execute("SET MODE MySQL");
+        } finally {
+            conn.close();
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        for (JobStoreTX store : stores) {
+            store.shutdown();
+        }
+        JdbcQuartzTestUtilities.destroyDatabase(dsName);
+    }
+
+    public void testEachTriggerIsAcquiredOnce() throws Exception {
+        createStores(null);
+        assertEachTriggerIsAcquiredOnce();
+    }
+
+    public void testEachTriggerIsAcquiredOnceWithLockedRows() throws Exception {
+        // H2 can not skip locked rows, but locking them is enough to claim
+        // the triggers in batches
+        createStores("skipLockedClause=FOR UPDATE");
+        assertTrue(stores.get(0).getDelegate().supportsSkipLocked());
+        assertEachTriggerIsAcquiredOnce();
+    }
+
+    public void testLockModesAreExclusive() throws Exception {
+        JobStoreTX store = new JobStoreTX();
+        store.setDataSource(dsName);
+        store.setAcquireTriggersWithinLock(true);
+        store.setAcquireTriggersWithoutLock(true);
+        try {
+            store.initialize(new CascadingClassLoadHelper(), new SampleSignaler());
+            fail("Expected a SchedulerConfigException");
+        } catch (SchedulerConfigException expected) {
+        }
+    }
+
+    private void createStores(String delegateInitString) throws Exception {
+        ClassLoadHelper loadHelper = new CascadingClassLoadHelper();
+        loadHelper.initialize();
+        for (int i = 0; i < NODES; i++) {
+            JobStoreTX store = new JobStoreTX();
+            store.setDataSource(dsName);
+            store.setTablePrefix("QRTZ_");
+            store.setInstanceId("NODE_" + i);
+            store.setInstanceName("concurrentAcquisition");
+            store.setUseDBLocks(true);
+            store.setAcquireTriggersWithoutLock(true);
+            store.setDriverDelegateInitString(delegateInitString);
+            store.initialize(loadHelper, new SampleSignaler());
+            stores.add(store);
+        }
+    }
+
+    private void assertEachTriggerIsAcquiredOnce() throws Exception {
+        final long firstFireTime = System.currentTimeMillis() + 1000L;
+        JobDetail job = JobBuilder.newJob(MyJob.class).withIdentity("job", "group").storeDurably().build();
+        stores.get(0).storeJob(job, false);
+        for (int i = 0; i < TRIGGERS; i++) {
+            OperableTrigger trigger = (OperableTrigger) TriggerBuilder.newTrigger()
+                    .withIdentity("trigger" + i, "group")
+                    .withSchedule(SimpleScheduleBuilder.repeatHourlyForever())
+                    .forJob(job).startAt(new Date(firstFireTime + i)).build();
+            trigger.computeFirstFireTime(null);
+            stores.get(0).storeTrigger(trigger, false);
+        }
+
+        final List<OperableTrigger> acquired = Collections.synchronizedList(new ArrayList<OperableTrigger>());
+        final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> nodes = new ArrayList<Thread>();
+        for (final JobStoreTX store : stores) {
+            Thread node = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        // losing every claim to the other nodes may leave a
+                        // node empty handed while triggers remain
+                        int emptyHanded = 0;
+                        while (emptyHanded < 3) {
+                            List<OperableTrigger> batch = store.acquireNextTriggers(
+                                    firstFireTime + TRIGGERS, 10, 0L);
+                            acquired.addAll(batch);
+                            emptyHanded = batch.isEmpty() ? emptyHanded + 1 : 0;
+                        }
+                    } catch (Throwable t) {
+                        failures.add(t);
+                    }
+                }
+            };
+            node.start();
+            nodes.add(node);
+        }
+        start.countDown();
+        for (Thread node : nodes) {
+            node.join(60000L);
+        }
+
+        assertTrue(failures.toString(), failures.isEmpty());
+        Set<String> triggerNames = new HashSet<String>();
+        Set<String> fireInstanceIds = new HashSet<String>();
+        for (OperableTrigger trigger : acquired) {
+            assertTrue("Acquired twice: " + trigger.getKey(), triggerNames.add(trigger.getKey().getName()));
+            fireInstanceIds.add(trigger.getFireInstanceId());
+        }
+        assertEquals(TRIGGERS, triggerNames.size());
+        assertEquals(TRIGGERS, fireInstanceIds.size());
+
+        Connection conn = DBConnectionManager.getInstance().getConnection(dsName);
+        try {
+            ResultSet rs = conn.createStatement().executeQuery(
+                    "SELECT COUNT(*) FROM QRTZ_FIRED_TRIGGERS WHERE STATE = 'ACQUIRED'");
+            rs.next();
+            assertEquals(TRIGGERS, rs.getInt(1));
+            rs = conn.createStatement().executeQuery(
+                    "SELECT COUNT(*) FROM QRTZ_TRIGGERS WHERE TRIGGER_STATE = 'ACQUIRED'");
+            rs.next();
+            assertEquals(TRIGGERS, rs.getInt(1));
+        } finally {
+            conn.close();
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * All content copyright Terracotta, Inc., unless otherwise indicated. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.quartz.job.jdbcjobstore;
+
+import java.util.Date;
+import java.util.List;
+
+import org.quartz.AbstractJobStoreTest.MyJob;
+import org.quartz.AbstractJobStoreTest.SampleSignaler;
+import org.quartz.job.JobBuilder;
+import org.quartz.job.JobDetail;
+import org.quartz.scheduler.SimpleScheduleBuilder;
+import org.quartz.simpl.CascadingClassLoadHelper;
+import org.quartz.spi.ClassLoadHelper;
+import org.quartz.spi.OperableTrigger;
+import org.quartz.spi.TriggerFiredResult;
+import org.quartz.triggers.Trigger.CompletedExecutionInstruction;
+import org.quartz.triggers.TriggerBuilder;
+
+/**
+ * Measures the triggers a <code>JobStoreTX</code> on an in-memory H2
+ * database acquires, fires and completes per second, when acquiring them in
+ * batches of 1, 10 and 100 triggers, and how many of them
+ * <code>triggersFired</code> alone fires per second.
+ * <p>
+ * Run with the number of triggers to fire (default 2,000), the number of
+ * jobs they are spread over (default 20) and the size of the statement cache
+ * of the job store (default 0, disabled) as arguments. As the H2 schema has
+ * no index on the next fire times of triggers, acquiring takes longer the more
+ * triggers there are.
+ * </p>
+ */
+public class JdbcJobStoreFiringBenchmark {
+
+    private static final int[] BATCH_SIZES = {1, 10, 100};
+
+    public static void main(String[] args) throws Exception {
+        int count = (args.length > 0) ? Integer.parseInt(args[0]) : 2000;
+        int jobCount = (args.length > 1) ? Integer.parseInt(args[1]) : 20;
+        int statementCacheSize = (args.length > 2) ? Integer.parseInt(args[2]) : 0;
+
+        ClassLoadHelper loadHelper = new CascadingClassLoadHelper();
+        loadHelper.initialize();
+
+        for (int round = 0; round < 3; round++) {
+            for (int batchSize : BATCH_SIZES) {
+                String name = "firingBenchmark" + round + "_" + batchSize;
+                JdbcQuartzTestUtilities.createDatabase(name);
+                JobStoreTX store = new JobStoreTX();
+                store.setDataSource(name);
+                store.setTablePrefix("QRTZ_");
+                store.setInstanceId("BENCHMARK");
+                store.setInstanceName(name);
+                store.setUseDBLocks(true);
+                store.setStatementCacheSize(statementCacheSize);
+                store.initialize(loadHelper, new SampleSignaler());
+                store.schedulerStarted();
+                try {
+                    run(store, count, jobCount, batchSize);
+                } finally {
+                    store.shutdown();
+                    JdbcQuartzTestUtilities.destroyDatabase(name);
+                }
+            }
+        }
+    }
+
+    private static void run(JobStoreTX store, int count, int jobCount, int batchSize) throws Exception {
+        long baseFireTime = System.currentTimeMillis() + 600000L;
+        JobDetail[] jobs = new JobDetail[jobCount];
+        for (int i = 0; i < jobCount; i++) {
+            jobs[i] = JobBuilder.newJob(MyJob.class).withIdentity("job" + i, "group").storeDurably().build();
+            store.storeJob(jobs[i], false);
+        }
+        for (int i = 0; i < count; i++) {
+            store.storeTrigger(trigger("trigger" + i, jobs[i % jobCount], baseFireTime + i), false);
+        }
+
+        System.gc();
+        long acquireNanos = 0;
+        long fireNanos = 0;
+        long completeNanos = 0;
+        int fired = 0;
+        while (fired < count) {
+            // as if the scheduler's clock had reached the fire time of the
+            // last trigger of the batch
+            long start = System.nanoTime();
+            List<OperableTrigger> acquired = store.acquireNextTriggers(
+                    baseFireTime + fired + batchSize - 1, batchSize, 0L);
+            long acquiredAt = System.nanoTime();
+            List<TriggerFiredResult> results = store.triggersFired(acquired);
+            long firedAt = System.nanoTime();
+            for (TriggerFiredResult result : results) {
+                store.triggeredJobComplete(result.getTriggerFiredBundle().getTrigger(),
+                        result.getTriggerFiredBundle().getJobDetail(), CompletedExecutionInstruction.NOOP);
+            }
+            completeNanos += System.nanoTime() - firedAt;
+            fireNanos += firedAt - acquiredAt;
+            acquireNanos += acquiredAt - start;
+            fired += acquired.size();
+        }
+        long millis = Math.max(1L, (acquireNanos + fireNanos + completeNanos) / 1000000L);
+        long fireMillis = Math.max(1L, fireNanos / 1000000L);
+        System.out.println("Batches of " + batchSize + ": fired " + fired + " triggers in " + millis + " ms ("
+                + (fired * 1000L / millis) + " fires/sec), of which " + (acquireNanos / 1000000L)
+                + " ms acquiring, " + fireMillis + " ms firing (" + (fired * 1000L / fireMillis)
+                + " fires/sec) and " + (completeNanos / 1000000L) + " ms completing");
+    }
+
+    private static OperableTrigger trigger(String name, JobDetail job, long fireTime) {
+        OperableTrigger trigger = (OperableTrigger) TriggerBuilder.newTrigger()
+                .withIdentity(name, "group")
+                .withSchedule(SimpleScheduleBuilder.repeatHourlyForever()
+                        .withMisfireHandlingInstructionIgnoreMisfires())
+                .forJob(job).startAt(new Date(fireTime)).build();
+        trigger.computeFirstFireTime(null);
+        return trigger;
+    }
+}
@@ -15,11 +15,50 @@
  */
 package org.quartz.job.jdbcjobstore;
 
+import static org.quartz.triggers.TriggerKey.triggerKey;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.quartz.AbstractJobStoreTest;
+import org.quartz.AbstractSchedulerTest.TestAnnotatedJob;
+import org.quartz.calendar.Calendar;
+import org.quartz.calendar.CalendarIntervalScheduleBuilder;
+import org.quartz.calendar.CalendarIntervalTrigger;
+import org.quartz.calendar.HolidayCalendar;
+import org.quartz.cron.CronScheduleBuilder;
+import org.quartz.cron.CronTrigger;
+import org.quartz.job.JobBuilder;
+import org.quartz.job.JobDetail;
+import org.quartz.job.JobPersistenceException;
+import org.quartz.job.jdbcjobstore.JobStoreSupport.CompletedExecution;
+import org.quartz.matchers.GroupMatcher;
+import org.quartz.scheduler.ScheduleBuilder;
+import org.quartz.scheduler.SchedulerConfigException;
+import org.quartz.scheduler.SimpleScheduleBuilder;
+import org.quartz.simpl.CascadingClassLoadHelper;
+import org.quartz.spi.ClassLoadHelper;
 import org.quartz.spi.JobStore;
+import org.quartz.spi.OperableTrigger;
+import org.quartz.spi.TriggerFiredBundle;
+import org.quartz.spi.TriggerFiredResult;
+import org.quartz.triggers.SimpleTrigger;
+import org.quartz.triggers.Trigger.CompletedExecutionInstruction;
+import org.quartz.triggers.Trigger.TriggerState;
+import org.quartz.triggers.TriggerBuilder;
+import org.quartz.triggers.TriggerKey;
 
 public class JdbcJobStoreTest extends AbstractJobStoreTest {
 
@@ -29,6 +68,1013 @@ public class JdbcJobStoreTest extends AbstractJobStoreTest {
         // nothing
     }
 
+    public void testAcquireTriggersOfEachTypeWithTheirJobs() throws Exception {
+        JobStoreSupport store = stores.get("AbstractJobStoreTest");
+        JobDetail job = JobBuilder.newJob(MyJob.class).withIdentity("batchJob", "batchGroup")
+                .usingJobData("jobKey", "jobValue").build();
+        long startTime = System.currentTimeMillis() + 1000L;
+
+        store.storeJobAndTrigger(job, trigger("simple", job, startTime,
+                SimpleScheduleBuilder.simpleSchedule().withIntervalInSeconds(5).withRepeatCount(3)));
+        store.storeTrigger(trigger("cron", job, startTime,
+                CronScheduleBuilder.cronSchedule("0/5 * * * * ?")), false);
+        store.storeTrigger(trigger("calendarInterval", job, startTime,
+                CalendarIntervalScheduleBuilder.calendarIntervalSchedule().withIntervalInHours(2)), false);
+
+        // all read in the query that selects them
+        Connection conn = store.getNonManagedTXConnection();
+        try {
+            List<TriggerAcquisitionRecord> records = store.getDelegate().selectTriggersToAcquire(conn,
+                    startTime + 20000L, 0L, 10, store.getClassLoadHelper());
+            assertEquals(3, records.size());
+            for (TriggerAcquisitionRecord record : records) {
+                assertEquals(record.getTriggerKey(), record.getTrigger().getKey());
+                assertEquals(job.getKey(), record.getJobDetail().getKey());
+            }
+        } finally {
+            store.cleanupConnection(conn);
+        }
+
+        List<OperableTrigger> acquired = store.acquireNextTriggers(startTime + 10000L, 10, 10000L);
+        assertEquals(3, acquired.size());
+        for (OperableTrigger trigger : acquired) {
+            assertNotNull(trigger.getFireInstanceId());
+            assertEquals(job.getKey(), trigger.getJobKey());
+            assertEquals("triggerValue", trigger.getJobDataMap().getString("triggerKey"));
+            if (trigger instanceof SimpleTrigger) {
+                assertEquals(3, ((SimpleTrigger) trigger).getRepeatCount());
+                assertEquals(5000L, ((SimpleTrigger) trigger).getRepeatInterval());
+            } else if (trigger instanceof CronTrigger) {
+                assertEquals("0/5 * * * * ?", ((CronTrigger) trigger).getCronExpression());
+            } else {
+                assertEquals(2, ((CalendarIntervalTrigger) trigger).getRepeatInterval());
+            }
+        }
+
+        List<TriggerFiredResult> fired = store.triggersFired(acquired);
+        assertEquals(3, fired.size());
+        for (TriggerFiredResult result : fired) {
+            assertEquals("jobValue", result.getTriggerFiredBundle().getJobDetail().getJobDataMap().getString("jobKey"));
+        }
+    }
+
+    public void testFireAndCompleteTriggersInBatches() throws Exception {
+        JobStoreSupport store = stores.get("AbstractJobStoreTest");
+        JobDetail sharedJob = JobBuilder.newJob(MyJob.class).withIdentity("sharedJob", "batchGroup").build();
+        JobDetail nonConcurrentJob = JobBuilder.newJob(TestAnnotatedJob.class)
+                .withIdentity("nonConcurrentJob", "batchGroup").usingJobData("count", 0).build();
+        long startTime = System.currentTimeMillis() + 1000L;
+        SimpleScheduleBuilder schedule = SimpleScheduleBuilder.simpleSchedule().withIntervalInSeconds(5).withRepeatCount(3);
+
+        store.storeJobAndTrigger(sharedJob, trigger("shared1", sharedJob, startTime, schedule));
+        store.storeTrigger(trigger("shared2", sharedJob, startTime, schedule), false);
+        store.storeJobAndTrigger(nonConcurrentJob, trigger("nonConcurrent1", nonConcurrentJob, startTime, schedule));
+        store.storeTrigger(trigger("nonConcurrent2", nonConcurrentJob, startTime + 60000L, schedule), false);
+
+        List<OperableTrigger> acquired = store.acquireNextTriggers(startTime + 10000L, 10, 10000L);
+        assertEquals(3, acquired.size());
+
+        List<TriggerFiredResult> fired = store.triggersFired(acquired);
+        assertEquals(3, fired.size());
+        JobDetail firedSharedJob = null;
+        List<CompletedExecution> completions = new ArrayList<CompletedExecution>();
+        for (TriggerFiredResult result : fired) {
+            TriggerFiredBundle bundle = result.getTriggerFiredBundle();
+            assertNotNull(bundle);
+            JobDetail job = bundle.getJobDetail();
+            if (job.getKey().equals(sharedJob.getKey())) {
+                // each firing has its own copy of the job
+                assertNotSame(firedSharedJob, job);
+                firedSharedJob = job;
+            } else {
+                job.getJobDataMap().put("count", 1);
+            }
+            completions.add(new CompletedExecution(bundle.getTrigger(), job, CompletedExecutionInstruction.NOOP));
+        }
+
+        OperableTrigger shared1 = store.retrieveTrigger(triggerKey("shared1", "batchGroup"));
+        assertEquals(startTime + 5000L, shared1.getNextFireTime().getTime());
+        assertEquals(1, ((SimpleTrigger) shared1).getTimesTriggered());
+        assertEquals(TriggerState.NORMAL, store.getTriggerState(shared1.getKey()));
+        assertEquals(TriggerState.BLOCKED, store.getTriggerState(triggerKey("nonConcurrent1", "batchGroup")));
+        assertEquals(TriggerState.BLOCKED, store.getTriggerState(triggerKey("nonConcurrent2", "batchGroup")));
+
+        Connection conn = store.getNonManagedTXConnection();
+        try {
+            store.triggeredJobsComplete(conn, completions);
+            store.commitConnection(conn);
+
+            assertTrue(store.getDelegate().selectInstancesFiredTriggerRecords(conn, "SINGLE_NODE_TEST").isEmpty());
+        } finally {
+            store.cleanupConnection(conn);
+        }
+        assertEquals(TriggerState.NORMAL, store.getTriggerState(triggerKey("nonConcurrent1", "batchGroup")));
+        assertEquals(TriggerState.NORMAL, store.getTriggerState(triggerKey("nonConcurrent2", "batchGroup")));
+        assertEquals(1, store.retrieveJob(nonConcurrentJob.getKey()).getJobDataMap().getInt("count"));
+    }
+
+    public void testFiringWritesOnlyWhatChanged() throws Exception {
+        JobStoreSupport store = stores.get("AbstractJobStoreTest");
+        JobDetail job = JobBuilder.newJob(MyJob.class).withIdentity("firedJob", "batchGroup").build();
+        long startTime = System.currentTimeMillis() + 1000L;
+        store.storeJobAndTrigger(job, trigger("firedSimple", job, startTime,
+                SimpleScheduleBuilder.simpleSchedule().withIntervalInSeconds(5).withRepeatCount(3)));
+        store.storeTrigger(trigger("firedCalendarInterval", job, startTime,
+                CalendarIntervalScheduleBuilder.calendarIntervalSchedule().withIntervalInMinutes(1)), false);
+        store.storeTrigger(trigger("firedCron", job, startTime,
+                CronScheduleBuilder.cronSchedule("* * * * * ?")), false);
+
+        List<OperableTrigger> acquired = store.acquireNextTriggers(startTime + 10000L, 10, 10000L);
+        assertEquals(3, acquired.size());
+        for (OperableTrigger trigger : acquired) {
+            if (trigger.getKey().getName().equals("firedSimple")) {
+                trigger.getJobDataMap().put("fired", true);
+            }
+        }
+
+        // changed behind the back of the acquired triggers, which would
+        // overwrite the descriptions if they were written in full
+        Connection conn = store.getNonManagedTXConnection();
+        try {
+            conn.createStatement().executeUpdate(
+                    "UPDATE QRTZ_TRIGGERS SET DESCRIPTION = 'unchanged' WHERE TRIGGER_GROUP = 'batchGroup'");
+            store.commitConnection(conn);
+        } finally {
+            store.cleanupConnection(conn);
+        }
+
+        List<TriggerFiredResult> fired = store.triggersFired(acquired);
+        for (TriggerFiredResult result : fired) {
+            assertNotNull(result.getTriggerFiredBundle());
+        }
+
+        OperableTrigger simple = store.retrieveTrigger(triggerKey("firedSimple", "batchGroup"));
+        assertEquals("unchanged", simple.getDescription());
+        assertEquals(startTime, simple.getPreviousFireTime().getTime());
+        assertEquals(startTime + 5000L, simple.getNextFireTime().getTime());
+        assertEquals(1, ((SimpleTrigger) simple).getTimesTriggered());
+        assertTrue(simple.getJobDataMap().getBoolean("fired"));
+        assertEquals("triggerValue", simple.getJobDataMap().getString("triggerKey"));
+
+        OperableTrigger calendarInterval = store.retrieveTrigger(triggerKey("firedCalendarInterval", "batchGroup"));
+        assertEquals("unchanged", calendarInterval.getDescription());
+        assertEquals(startTime + 60000L, calendarInterval.getNextFireTime().getTime());
+        assertEquals(1, ((CalendarIntervalTrigger) calendarInterval).getTimesTriggered());
+        assertEquals(1, ((CalendarIntervalTrigger) calendarInterval).getRepeatInterval());
+        assertEquals("triggerValue", calendarInterval.getJobDataMap().getString("triggerKey"));
+
+        OperableTrigger cron = store.retrieveTrigger(triggerKey("firedCron", "batchGroup"));
+        assertEquals("unchanged", cron.getDescription());
+        assertNotNull(cron.getPreviousFireTime());
+        assertEquals("* * * * * ?", ((CronTrigger) cron).getCronExpression());
+        assertEquals(TriggerState.NORMAL, store.getTriggerState(cron.getKey()));
+    }
+
+    public void testWriteBehindCompletions() throws Exception {
+        JobStoreTX store = newStore("WRITE_BEHIND_TEST", new StoreConfiguration() {
+            public void configure(JobStoreTX jobStore) {
+                jobStore.setUseDBLocks(true);
+                jobStore.setCompletionWriteBehindInterval(10L);
+            }
+        });
+        store.schedulerStarted();
+        try {
+            JobDetail job = JobBuilder.newJob(TestAnnotatedJob.class)
+                    .withIdentity("writeBehindJob", "batchGroup").usingJobData("count", 0).build();
+            long startTime = System.currentTimeMillis() + 1000L;
+            SimpleScheduleBuilder schedule = SimpleScheduleBuilder.simpleSchedule().withIntervalInSeconds(5).withRepeatCount(3);
+            store.storeJobAndTrigger(job, trigger("writeBehind1", job, startTime, schedule));
+            store.storeTrigger(trigger("writeBehind2", job, startTime + 60000L, schedule), false);
+
+            List<OperableTrigger> acquired = store.acquireNextTriggers(startTime + 10000L, 10, 10000L);
+            assertEquals(1, acquired.size());
+            TriggerFiredBundle bundle = store.triggersFired(acquired).get(0).getTriggerFiredBundle();
+            assertEquals(TriggerState.BLOCKED, store.getTriggerState(triggerKey("writeBehind2", "batchGroup")));
+
+            bundle.getJobDetail().getJobDataMap().put("count", 1);
+            store.triggeredJobComplete(bundle.getTrigger(), bundle.getJobDetail(), CompletedExecutionInstruction.NOOP);
+
+            long deadline = System.currentTimeMillis() + 5000L;
+            while (store.getTriggerState(triggerKey("writeBehind2", "batchGroup")) == TriggerState.BLOCKED
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10L);
+            }
+            assertEquals(TriggerState.NORMAL, store.getTriggerState(triggerKey("writeBehind1", "batchGroup")));
+            assertEquals(TriggerState.NORMAL, store.getTriggerState(triggerKey("writeBehind2", "batchGroup")));
+            assertEquals(1, store.retrieveJob(job.getKey()).getJobDataMap().getInt("count"));
+            assertEquals(0, selectFiredTriggerCount(store, "WRITE_BEHIND_TEST"));
+        } finally {
+            store.shutdown();
+        }
+    }
+
+    public void testFailingCompletionHoldsBackNoOther() throws Exception {
+        JobStoreTX store = newStore("WRITE_BEHIND_FAILING_TEST", new StoreConfiguration() {
+            public void configure(JobStoreTX jobStore) {
+                jobStore.setUseDBLocks(true);
+                jobStore.setCompletionWriteBehindInterval(200L);
+                jobStore.setDbRetryInterval(10L);
+            }
+        });
+        store.schedulerStarted();
+        try {
+            JobDetail failingJob = JobBuilder.newJob(TestAnnotatedJob.class)
+                    .withIdentity("failingJob", "batchGroup").build();
+            JobDetail otherJob = JobBuilder.newJob(TestAnnotatedJob.class)
+                    .withIdentity("otherJob", "batchGroup").build();
+            long startTime = System.currentTimeMillis() + 1000L;
+            SimpleScheduleBuilder schedule = SimpleScheduleBuilder.simpleSchedule().withIntervalInSeconds(5).withRepeatCount(3);
+            store.storeJobAndTrigger(failingJob, trigger("failing", failingJob, startTime, schedule));
+            store.storeJobAndTrigger(otherJob, trigger("other", otherJob, startTime, schedule));
+
+            List<OperableTrigger> acquired = store.acquireNextTriggers(startTime + 10000L, 10, 10000L);
+            assertEquals(2, acquired.size());
+            for (TriggerFiredResult result : store.triggersFired(acquired)) {
+                TriggerFiredBundle bundle = result.getTriggerFiredBundle();
+                if (bundle.getJobDetail().getKey().equals(failingJob.getKey())) {
+                    // can never be written
+                    bundle.getJobDetail().getJobDataMap().put("unserializable", new Object());
+                }
+                store.triggeredJobComplete(bundle.getTrigger(), bundle.getJobDetail(), CompletedExecutionInstruction.NOOP);
+            }
+
+            long deadline = System.currentTimeMillis() + 5000L;
+            while (store.getTriggerState(triggerKey("other", "batchGroup")) == TriggerState.BLOCKED
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10L);
+            }
+            assertEquals(TriggerState.NORMAL, store.getTriggerState(triggerKey("other", "batchGroup")));
+            assertEquals(TriggerState.BLOCKED, store.getTriggerState(triggerKey("failing", "batchGroup")));
+            assertEquals(1, selectFiredTriggerCount(store, "WRITE_BEHIND_FAILING_TEST"));
+        } finally {
+            store.shutdown();
+        }
+    }
+
+    public void testShutdownWritesQueuedCompletions() throws Exception {
+        // never written before shutdown
+        JobStoreTX store = newStore("WRITE_BEHIND_SHUTDOWN_TEST", new StoreConfiguration() {
+            public void configure(JobStoreTX jobStore) {
+                jobStore.setUseDBLocks(true);
+                jobStore.setCompletionWriteBehindInterval(600000L);
+            }
+        });
+        store.schedulerStarted();
+        JobDetail job = JobBuilder.newJob(MyJob.class).withIdentity("queuedJob", "batchGroup").build();
+        long startTime = System.currentTimeMillis() + 1000L;
+        store.storeJobAndTrigger(job, trigger("queued", job, startTime,
+                SimpleScheduleBuilder.simpleSchedule().withIntervalInSeconds(5).withRepeatCount(3)));
+
+        List<OperableTrigger> acquired = store.acquireNextTriggers(startTime + 10000L, 10, 10000L);
+        TriggerFiredBundle bundle = store.triggersFired(acquired).get(0).getTriggerFiredBundle();
+        store.triggeredJobComplete(bundle.getTrigger(), bundle.getJobDetail(), CompletedExecutionInstruction.NOOP);
+        assertEquals(1, selectFiredTriggerCount(store, "WRITE_BEHIND_SHUTDOWN_TEST"));
+
+        store.shutdown();
+        assertEquals(0, selectFiredTriggerCount(stores.get("AbstractJobStoreTest"), "WRITE_BEHIND_SHUTDOWN_TEST"));
+    }
+
+    public void testJobDataIsDecodedOnFirstAccess() throws Exception {
+        JobStoreSupport store = stores.get("AbstractJobStoreTest");
+        JobDetail job = JobBuilder.newJob(MyJob.class).withIdentity("lazyJob", "lazyGroup")
+                .usingJobData("key", "value").build();
+        long startTime = System.currentTimeMillis() + 1000L;
+        store.storeJobAndTrigger(job, trigger("lazy", job, startTime,
+                SimpleScheduleBuilder.simpleSchedule().withIntervalInSeconds(5).withRepeatCount(3)));
+        assertEquals("value", store.retrieveJob(job.getKey()).getJobDataMap().getString("key"));
+
+        Connection conn = store.getNonManagedTXConnection();
+        try {
+            PreparedStatement ps = conn.prepareStatement(
+                    "UPDATE QRTZ_JOB_DETAILS SET JOB_DATA = ? WHERE JOB_NAME = 'lazyJob'");
+            ps.setBytes(1, new byte[]{(byte) 0xAC, (byte) 0xED, 0, 5, 1});
+            ps.executeUpdate();
+            ps.close();
+            conn.commit();
+        } finally {
+            store.cleanupConnection(conn);
+        }
+
+        // read, but not decoded, to acquire the trigger
+        JobDetail retrieved = store.retrieveJob(job.getKey());
+        List<OperableTrigger> acquired = store.acquireNextTriggers(startTime + 10000L, 10, 0L);
+        assertEquals(1, acquired.size());
+        assertEquals("triggerValue", acquired.get(0).getJobDataMap().getString("triggerKey"));
+        try {
+            retrieved.getJobDataMap().get("key");
+            fail("Expected an IllegalStateException");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    public void testFiringTriggerWithUndecodableJobDataPutsItInError() throws Exception {
+        JobStoreSupport store = stores.get("AbstractJobStoreTest");
+        JobDetail job = JobBuilder.newJob(MyJob.class).withIdentity("undecodableJob", "lazyGroup")
+                .usingJobData("key", "value").build();
+        long startTime = System.currentTimeMillis() + 1000L;
+        store.storeJobAndTrigger(job, trigger("undecodable", job, startTime,
+                SimpleScheduleBuilder.simpleSchedule().withIntervalInSeconds(5).withRepeatCount(3)));
+
+        Connection conn = store.getNonManagedTXConnection();
+        try {
+            PreparedStatement ps = conn.prepareStatement(
+                    "UPDATE QRTZ_JOB_DETAILS SET JOB_DATA = ? WHERE JOB_NAME = 'undecodableJob'");
+            ps.setBytes(1, new byte[]{(byte) 0xAC, (byte) 0xED, 0, 5, 1});
+            ps.executeUpdate();
+            ps.close();
+            conn.commit();
+        } finally {
+            store.cleanupConnection(conn);
+        }
+
+        List<OperableTrigger> acquired = store.acquireNextTriggers(startTime + 10000L, 10, 0L);
+        assertEquals(1, acquired.size());
+        List<TriggerFiredResult> fired = store.triggersFired(acquired);
+        assertNull(fired.get(0).getTriggerFiredBundle());
+        assertTrue(fired.get(0).getException() instanceof JobPersistenceException);
+        assertEquals(TriggerState.ERROR, store.getTriggerState(triggerKey("undecodable", "batchGroup")));
+    }
+
+    public void testCodecReadsJobDataStoredBeforeIt() throws Exception {
+        JobStoreSupport store = stores.get("AbstractJobStoreTest");
+        JobDetail serializedJob = JobBuilder.newJob(MyJob.class).withIdentity("serializedJob", "codecGroup")
+                .usingJobData("string", "value").usingJobData("long", 5L).storeDurably().build();
+        store.storeJob(serializedJob, false);
+
+        JobStoreTX codecStore = newStore("CODEC_TEST", new StoreConfiguration() {
+            public void configure(JobStoreTX jobStore) throws Exception {
+                jobStore.setDriverDelegateInitString("jobDataMapCodec=" + BinaryJobDataMapCodec.class.getName());
+            }
+        });
+        try {
+            JobDetail retrieved = codecStore.retrieveJob(serializedJob.getKey());
+            assertEquals("value", retrieved.getJobDataMap().getString("string"));
+            assertEquals(5L, retrieved.getJobDataMap().getLong("long"));
+
+            JobDetail encodedJob = JobBuilder.newJob(MyJob.class).withIdentity("encodedJob", "codecGroup")
+                    .usingJobData("string", "other").usingJobData("int", 7).storeDurably().build();
+            codecStore.storeJob(encodedJob, false);
+            retrieved = codecStore.retrieveJob(encodedJob.getKey());
+            assertEquals("other", retrieved.getJobDataMap().getString("string"));
+            assertEquals(7, retrieved.getJobDataMap().getInt("int"));
+
+            assertTrue(new BinaryJobDataMapCodec().canDecode(selectJobData(codecStore, "encodedJob")));
+        } finally {
+            codecStore.shutdown();
+        }
+    }
+
+    public void testCompressesLargeJobData() throws Exception {
+        JobStoreTX compressingStore = newStore("COMPRESSION_TEST", new StoreConfiguration() {
+            public void configure(JobStoreTX jobStore) throws Exception {
+                jobStore.setDriverDelegateInitString("compressionThreshold=1024");
+            }
+        });
+        try {
+            StringBuilder large = new StringBuilder();
+            for (int i = 0; i < 5000; i++) {
+                large.append("line ").append(i % 10).append('\n');
+            }
+            JobDetail largeJob = JobBuilder.newJob(MyJob.class).withIdentity("largeJob", "compressionGroup")
+                    .usingJobData("large", large.toString()).storeDurably().build();
+            JobDetail smallJob = JobBuilder.newJob(MyJob.class).withIdentity("smallJob", "compressionGroup")
+                    .usingJobData("small", "value").storeDurably().build();
+            compressingStore.storeJob(largeJob, false);
+            compressingStore.storeJob(smallJob, false);
+
+            assertEquals(1, compressingStore.getCompressedBlobCount());
+            byte[] stored = selectJobData(compressingStore, "largeJob");
+            assertEquals((byte) 0x1F, stored[0]);
+            assertEquals((byte) 0x8B, stored[1]);
+            assertTrue(compressingStore.getBytesSavedByCompression() > large.length() - stored.length - 1024);
+            assertTrue(stored.length < large.length() / 10);
+            assertEquals((byte) 0xAC, selectJobData(compressingStore, "smallJob")[0]);
+
+            // read whether or not the reading store compresses
+            assertEquals(large.toString(), compressingStore.retrieveJob(largeJob.getKey()).getJobDataMap().getString("large"));
+            assertEquals(large.toString(), stores.get("AbstractJobStoreTest").retrieveJob(largeJob.getKey())
+                    .getJobDataMap().getString("large"));
+        } finally {
+            compressingStore.shutdown();
+        }
+    }
+
+    public void testCachesJobsUntilTheirVersionChanges() throws Exception {
+        StoreConfiguration caching = new StoreConfiguration() {
+            public void configure(JobStoreTX jobStore) {
+                jobStore.setJobAndCalendarCacheSize(16);
+            }
+        };
+        JobStoreTX store = newStore("CACHE_TEST", caching);
+        JobStoreTX otherStore = newStore("OTHER_CACHE_TEST", caching);
+        try {
+            JobDetail job = JobBuilder.newJob(MyJob.class).withIdentity("cachedJob", "cacheGroup")
+                    .withDescription("first").usingJobData("count", 1).storeDurably().build();
+            store.storeJob(job, false);
+            assertEquals("first", store.retrieveJob(job.getKey()).getDescription());
+
+            // a change that does not write a new version is not seen
+            Connection conn = store.getNonManagedTXConnection();
+            try {
+                PreparedStatement ps = conn.prepareStatement(
+                        "UPDATE QRTZ_JOB_DETAILS SET DESCRIPTION = 'unversioned' WHERE JOB_NAME = 'cachedJob'");
+                ps.executeUpdate();
+                ps.close();
+                conn.commit();
+            } finally {
+                store.cleanupConnection(conn);
+            }
+            JobDetail cached = store.retrieveJob(job.getKey());
+            assertEquals("first", cached.getDescription());
+
+            // every copy has its own job data
+            cached.getJobDataMap().put("count", 2);
+            assertEquals(1, store.retrieveJob(job.getKey()).getJobDataMap().getInt("count"));
+
+            otherStore.storeJob(JobBuilder.newJob(MyJob.class).withIdentity("cachedJob", "cacheGroup")
+                    .withDescription("second").usingJobData("count", 3).storeDurably().build(), true);
+            JobDetail retrieved = store.retrieveJob(job.getKey());
+            assertEquals("second", retrieved.getDescription());
+            assertEquals(3, retrieved.getJobDataMap().getInt("count"));
+
+            assertTrue(otherStore.removeJob(job.getKey()));
+            assertNull(store.retrieveJob(job.getKey()));
+        } finally {
+            store.shutdown();
+            otherStore.shutdown();
+        }
+    }
+
+    public void testCachesCalendarsUntilTheirVersionChanges() throws Exception {
+        StoreConfiguration caching = new StoreConfiguration() {
+            public void configure(JobStoreTX jobStore) {
+                jobStore.setJobAndCalendarCacheSize(16);
+            }
+        };
+        JobStoreTX store = newStore("CACHE_TEST", caching);
+        JobStoreTX otherStore = newStore("OTHER_CACHE_TEST", caching);
+        try {
+            HolidayCalendar calendar = new HolidayCalendar();
+            calendar.addExcludedDate(new Date(86400000L * 1000));
+            store.storeCalendar("cachedCalendar", calendar, false, false);
+            Calendar retrieved = store.retrieveCalendar("cachedCalendar");
+            assertEquals(1, ((HolidayCalendar) retrieved).getExcludedDates().size());
+            assertNotSame(retrieved, store.retrieveCalendar("cachedCalendar"));
+
+            calendar.addExcludedDate(new Date(86400000L * 2000));
+            otherStore.storeCalendar("cachedCalendar", calendar, true, false);
+            retrieved = store.retrieveCalendar("cachedCalendar");
+            assertEquals(2, ((HolidayCalendar) retrieved).getExcludedDates().size());
+
+            assertTrue(otherStore.removeCalendar("cachedCalendar"));
+            assertNull(store.retrieveCalendar("cachedCalendar"));
+        } finally {
+            store.shutdown();
+            otherStore.shutdown();
+        }
+    }
+
+    public void testHandlesMisfiresInBatches() throws Exception {
+        stopFixtureMisfireHandler();
+        JobStoreTX store = newStore("MISFIRE_BATCH_TEST", new StoreConfiguration() {
+            public void configure(JobStoreTX jobStore) {
+                jobStore.setMisfireBatchSize(1000);
+            }
+        });
+        try {
+            JobDetail job = JobBuilder.newJob(MyJob.class).withIdentity("misfiredJob", "misfireGroup")
+                    .storeDurably().build();
+            store.storeJob(job, false);
+            long now = System.currentTimeMillis();
+            for (int i = 0; i < 600; i++) {
+                ScheduleBuilder<?> schedule;
+                if (i % 3 == 0) {
+                    schedule = SimpleScheduleBuilder.repeatHourlyForever();
+                } else if (i % 3 == 1) {
+                    schedule = CronScheduleBuilder.cronSchedule("0 0 * * * ?").withMisfireHandlingInstructionDoNothing();
+                } else {
+                    schedule = SimpleScheduleBuilder.simpleSchedule();
+                }
+                store.storeTrigger(trigger("misfired" + i, job, now - 3 * 3600000L + 60000L + i, schedule), false);
+            }
+
+            JobStoreSupport.RecoverMisfiredJobsResult result = store.doRecoverMisfires();
+            long handled = System.currentTimeMillis();
+
+            assertEquals(600, result.getProcessedMisfiredTriggerCount());
+            assertFalse(result.hasMoreMisfiredTriggers());
+            for (int i = 0; i < 600; i++) {
+                OperableTrigger trigger = (OperableTrigger) store.retrieveTrigger(triggerKey("misfired" + i, "batchGroup"));
+                long nextFireTime = trigger.getNextFireTime().getTime();
+                assertEquals(TriggerState.NORMAL, store.getTriggerState(trigger.getKey()));
+                if (i % 3 == 2) {
+                    // fired now
+                    assertTrue(nextFireTime >= now && nextFireTime <= handled);
+                } else {
+                    assertTrue(nextFireTime > handled);
+                }
+                if (i % 3 == 0) {
+                    assertEquals(3, ((SimpleTrigger) trigger).getTimesTriggered());
+                }
+            }
+            assertSame(JobStoreSupport.RecoverMisfiredJobsResult.NO_OP, store.doRecoverMisfires());
+        } finally {
+            store.shutdown();
+        }
+    }
+
+    public void testMisfireBatchSkipsTriggersChangedMeanwhile() throws Exception {
+        stopFixtureMisfireHandler();
+        JobStoreTX store = newStore("MISFIRE_CHANGED_TEST", new StoreConfiguration() {
+            public void configure(JobStoreTX jobStore) {
+                jobStore.setMisfireBatchSize(2);
+            }
+        });
+        try {
+            JobDetail job = JobBuilder.newJob(MyJob.class).withIdentity("changedJob", "misfireGroup")
+                    .storeDurably().build();
+            store.storeJob(job, false);
+            long startTime = System.currentTimeMillis() - 3600000L;
+            for (int i = 0; i < 5; i++) {
+                store.storeTrigger(trigger("changed" + i, job, startTime + i,
+                        SimpleScheduleBuilder.repeatMinutelyForever()), false);
+            }
+
+            Connection conn = store.getNonManagedTXConnection();
+            try {
+                Map<TriggerKey, OperableTrigger> misfired = store.getDelegate().selectMisfiredTriggers(conn,
+                        Constants.STATE_WAITING, System.currentTimeMillis(), 2);
+                assertEquals(2, misfired.size());
+                List<OperableTrigger> triggers = new ArrayList<OperableTrigger>();
+                List<String> states = new ArrayList<String>();
+                long[] oldNextFireTimes = new long[2];
+                for (OperableTrigger trigger : misfired.values()) {
+                    oldNextFireTimes[triggers.size()] = trigger.getNextFireTime().getTime();
+                    trigger.updateAfterMisfire(null);
+                    triggers.add(trigger);
+                    states.add(Constants.STATE_WAITING);
+                }
+                assertEquals("changed0", triggers.get(0).getKey().getName());
+
+                store.getDelegate().updateTriggerState(conn, triggers.get(0).getKey(), Constants.STATE_PAUSED);
+                int[] counts = store.getDelegate().updateTriggersAfterMisfire(conn, triggers, states,
+                        Constants.STATE_WAITING, oldNextFireTimes);
+                assertEquals(0, counts[0]);
+                assertEquals(1, counts[1]);
+                conn.commit();
+            } finally {
+                store.cleanupConnection(conn);
+            }
+
+            JobStoreSupport.RecoverMisfiredJobsResult result = store.doRecoverMisfires();
+            assertEquals(2, result.getProcessedMisfiredTriggerCount());
+            assertTrue(result.hasMoreMisfiredTriggers());
+
+            // recovering at startup handles the other batches in the same transaction
+            store.schedulerStarted();
+            assertEquals(0, selectMisfiredCount(store));
+            assertEquals(TriggerState.PAUSED, store.getTriggerState(triggerKey("changed0", "batchGroup")));
+        } finally {
+            store.shutdown();
+        }
+    }
+
+    public void testMisfireBatchVerifiesUpdatesTheDriverDoesNotCount() throws Exception {
+        stopFixtureMisfireHandler();
+        JobStoreTX store = newStore("MISFIRE_NO_INFO_TEST", new StoreConfiguration() {
+            public void configure(JobStoreTX jobStore) {
+                jobStore.setMisfireBatchSize(2);
+            }
+        });
+        try {
+            JobDetail job = JobBuilder.newJob(MyJob.class).withIdentity("noInfoJob", "misfireGroup")
+                    .storeDurably().build();
+            store.storeJob(job, false);
+            long startTime = System.currentTimeMillis() - 3600000L;
+            for (int i = 0; i < 2; i++) {
+                store.storeTrigger(trigger("noInfo" + i, job, startTime + i,
+                        SimpleScheduleBuilder.repeatMinutelyForever()), false);
+            }
+
+            Connection conn = store.getNonManagedTXConnection();
+            try {
+                Map<TriggerKey, OperableTrigger> misfired = store.getDelegate().selectMisfiredTriggers(conn,
+                        Constants.STATE_WAITING, System.currentTimeMillis(), 2);
+                assertEquals(2, misfired.size());
+                List<OperableTrigger> triggers = new ArrayList<OperableTrigger>();
+                List<String> states = new ArrayList<String>();
+                long[] oldNextFireTimes = new long[2];
+                for (OperableTrigger trigger : misfired.values()) {
+                    oldNextFireTimes[triggers.size()] = trigger.getNextFireTime().getTime();
+                    trigger.updateAfterMisfire(null);
+                    triggers.add(trigger);
+                    states.add(Constants.STATE_WAITING);
+                }
+                assertEquals("noInfo0", triggers.get(0).getKey().getName());
+
+                // fired meanwhile, to the same next fire time
+                PreparedStatement ps = conn.prepareStatement("UPDATE QRTZ_TRIGGERS SET NEXT_FIRE_TIME = ?, "
+                        + "PREV_FIRE_TIME = ? WHERE TRIGGER_NAME = 'noInfo0'");
+                try {
+                    ps.setLong(1, triggers.get(0).getNextFireTime().getTime());
+                    ps.setLong(2, oldNextFireTimes[0]);
+                    ps.executeUpdate();
+                } finally {
+                    ps.close();
+                }
+                int[] counts = store.getDelegate().updateTriggersAfterMisfire(batchCountsNotReported(conn),
+                        triggers, states, Constants.STATE_WAITING, oldNextFireTimes);
+                assertEquals(0, counts[0]);
+                assertEquals(1, counts[1]);
+                conn.commit();
+            } finally {
+                store.cleanupConnection(conn);
+            }
+        } finally {
+            store.shutdown();
+        }
+    }
+
+    /**
+     * The given connection, with batches reporting
+     * <code>SUCCESS_NO_INFO</code> for each statement, as Oracle's driver
+     * does.
+     */
+    private static Connection batchCountsNotReported(final Connection conn) {
+        return (Connection) Proxy.newProxyInstance(JdbcJobStoreTest.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        final Object result = method.invoke(conn, args);
+                        if (!(result instanceof PreparedStatement)) {
+                            return result;
+                        }
+                        return Proxy.newProxyInstance(JdbcJobStoreTest.class.getClassLoader(),
+                                new Class<?>[]{PreparedStatement.class}, new InvocationHandler() {
+                                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                                        Object statementResult = method.invoke(result, args);
+                                        if (method.getName().equals("executeBatch")) {
+                                            Arrays.fill((int[]) statementResult, Statement.SUCCESS_NO_INFO);
+                                        }
+                                        return statementResult;
+                                    }
+                                });
+                    }
+                });
+    }
+
+    public void testFiresDueTriggersOnAcquire() throws Exception {
+        JobStoreTX store = newStore("FIRE_ON_ACQUIRE_TEST", new StoreConfiguration() {
+            public void configure(JobStoreTX jobStore) {
+                jobStore.setUseDBLocks(true);
+                jobStore.setFireDueTriggersOnAcquire(true);
+            }
+        });
+        try {
+            JobDetail job = JobBuilder.newJob(MyJob.class).withIdentity("firedOnAcquireJob", "batchGroup").build();
+            long now = System.currentTimeMillis();
+            SimpleScheduleBuilder schedule = SimpleScheduleBuilder.simpleSchedule().withIntervalInHours(1).repeatForever();
+            store.storeJobAndTrigger(job, trigger("due", job, now - 1000L, schedule));
+            store.storeTrigger(trigger("later", job, now + 5000L, schedule), false);
+
+            List<OperableTrigger> acquired = store.acquireNextTriggers(now + 10000L, 10, 10000L);
+            assertEquals(2, acquired.size());
+            // the scheduler still sees when the due trigger was to fire
+            assertEquals(now - 1000L, acquired.get(0).getNextFireTime().getTime());
+            assertEquals(Constants.STATE_EXECUTING, selectFiredTriggerState(store, acquired.get(0)));
+            assertEquals(Constants.STATE_ACQUIRED, selectFiredTriggerState(store, acquired.get(1)));
+            assertEquals(1, ((SimpleTrigger) store.retrieveTrigger(triggerKey("due", "batchGroup")))
+                    .getTimesTriggered());
+
+            List<TriggerFiredResult> fired = store.triggersFired(acquired);
+            assertEquals(2, fired.size());
+            TriggerFiredBundle due = fired.get(0).getTriggerFiredBundle();
+            assertEquals(triggerKey("due", "batchGroup"), due.getTrigger().getKey());
+            assertEquals(now - 1000L, due.getScheduledFireTime().getTime());
+            assertEquals(now - 1000L + 3600000L, due.getNextFireTime().getTime());
+            assertEquals(triggerKey("later", "batchGroup"), fired.get(1).getTriggerFiredBundle().getTrigger().getKey());
+            assertEquals(1, ((SimpleTrigger) store.retrieveTrigger(triggerKey("due", "batchGroup")))
+                    .getTimesTriggered());
+            assertEquals(Constants.STATE_EXECUTING, selectFiredTriggerState(store, acquired.get(1)));
+        } finally {
+            store.shutdown();
+        }
+    }
+
+    public void testReleasingTriggerFiredOnAcquireUndoesItsFiring() throws Exception {
+        JobStoreTX store = newStore("FIRE_ON_ACQUIRE_TEST", new StoreConfiguration() {
+            public void configure(JobStoreTX jobStore) {
+                jobStore.setUseDBLocks(true);
+                jobStore.setFireDueTriggersOnAcquire(true);
+            }
+        });
+        try {
+            JobDetail job = JobBuilder.newJob(TestAnnotatedJob.class).withIdentity("releasedJob", "batchGroup").build();
+            long now = System.currentTimeMillis();
+            SimpleScheduleBuilder schedule = SimpleScheduleBuilder.simpleSchedule().withIntervalInHours(1).repeatForever();
+            store.storeJobAndTrigger(job, trigger("released", job, now - 1000L, schedule));
+
+            List<OperableTrigger> acquired = store.acquireNextTriggers(now + 10000L, 1, 0L);
+            assertEquals(1, acquired.size());
+            assertEquals(TriggerState.BLOCKED, store.getTriggerState(triggerKey("released", "batchGroup")));
+
+            store.releaseAcquiredTrigger(acquired.get(0));
+            assertEquals(0, selectFiredTriggerCount(store, "FIRE_ON_ACQUIRE_TEST"));
+            assertEquals(TriggerState.NORMAL, store.getTriggerState(triggerKey("released", "batchGroup")));
+            SimpleTrigger released = (SimpleTrigger) store.retrieveTrigger(triggerKey("released", "batchGroup"));
+            assertEquals(now - 1000L, released.getNextFireTime().getTime());
+            assertEquals(0, released.getTimesTriggered());
+
+            // the job still runs, as the trigger fires again
+            acquired = store.acquireNextTriggers(now + 10000L, 1, 0L);
+            assertEquals(1, acquired.size());
+            TriggerFiredBundle bundle = store.triggersFired(acquired).get(0).getTriggerFiredBundle();
+            assertNotNull(bundle);
+            assertEquals(job.getKey(), bundle.getJobDetail().getKey());
+            assertEquals(now - 1000L, bundle.getScheduledFireTime().getTime());
+            store.triggeredJobComplete(bundle.getTrigger(), bundle.getJobDetail(),
+                    CompletedExecutionInstruction.NOOP);
+            assertEquals(0, selectFiredTriggerCount(store, "FIRE_ON_ACQUIRE_TEST"));
+            assertEquals(1, ((SimpleTrigger) store.retrieveTrigger(triggerKey("released", "batchGroup")))
+                    .getTimesTriggered());
+        } finally {
+            store.shutdown();
+        }
+    }
+
+    public void testRoutesReadOnlyQueriesToReadOnlyDataSource() throws Exception {
+        JdbcQuartzTestUtilities.createDatabase("ReadOnlyReplica");
+        JobStoreTX store = newStore("READ_ONLY_TEST",
+                readOnlyDataSource("ReadOnlyReplica", "getJobKeys, getTriggerState, getTriggersForJob"));
+        try {
+            int jobCount = store.getNumberOfJobs();
+            JobDetail job = JobBuilder.newJob(MyJob.class).withIdentity("primaryJob", "replicaGroup").build();
+            SimpleScheduleBuilder schedule = SimpleScheduleBuilder.simpleSchedule().withIntervalInHours(1).repeatForever();
+            store.storeJobAndTrigger(job, trigger("primaryTrigger", job, System.currentTimeMillis() + 60000L, schedule));
+
+            // the replica has not caught up with the job yet
+            assertTrue(store.getJobKeys(GroupMatcher.jobGroupEquals("replicaGroup")).isEmpty());
+            // not routed
+            assertEquals(jobCount + 1, store.getNumberOfJobs());
+            // what is missing from the replica is read from the primary
+            assertEquals(TriggerState.NORMAL, store.getTriggerState(triggerKey("primaryTrigger", "batchGroup")));
+            assertEquals(1, store.getTriggersForJob(job.getKey()).size());
+
+            JobDetail replicatedJob = JobBuilder.newJob(MyJob.class).withIdentity("replicatedJob", "replicaGroup")
+                    .storeDurably().build();
+            JobStoreTX replica = newStore("REPLICA_TEST", new StoreConfiguration() {
+                public void configure(JobStoreTX jobStore) {
+                    jobStore.setDataSource("ReadOnlyReplica");
+                }
+            });
+            try {
+                replica.storeJob(replicatedJob, false);
+            } finally {
+                replica.shutdown();
+            }
+            assertEquals(replicatedJob.getKey(),
+                    store.getJobKeys(GroupMatcher.jobGroupEquals("replicaGroup")).iterator().next());
+        } finally {
+            store.shutdown();
+            JdbcQuartzTestUtilities.destroyDatabase("ReadOnlyReplica");
+        }
+    }
+
+    public void testReadsTriggersForJobFromPrimaryByDefault() throws Exception {
+        JdbcQuartzTestUtilities.createDatabase("ReadOnlyReplica");
+        JobStoreTX store = newStore("READ_ONLY_TEST", readOnlyDataSource("ReadOnlyReplica", null));
+        JobStoreTX routingStore = newStore("ROUTING_TEST", readOnlyDataSource("ReadOnlyReplica", "getTriggersForJob"));
+        try {
+            JobDetail job = JobBuilder.newJob(MyJob.class).withIdentity("unscheduledJob", "replicaGroup")
+                    .storeDurably().build();
+            store.storeJob(job, false);
+
+            // the replica has not caught up with the trigger being unscheduled yet
+            JobStoreTX replica = newStore("REPLICA_TEST", new StoreConfiguration() {
+                public void configure(JobStoreTX jobStore) {
+                    jobStore.setDataSource("ReadOnlyReplica");
+                }
+            });
+            try {
+                replica.storeJobAndTrigger(job, trigger("unscheduledTrigger", job,
+                        System.currentTimeMillis() + 60000L, SimpleScheduleBuilder.repeatHourlyForever()));
+            } finally {
+                replica.shutdown();
+            }
+
+            assertTrue(store.getTriggersForJob(job.getKey()).isEmpty());
+            assertEquals(1, routingStore.getTriggersForJob(job.getKey()).size());
+        } finally {
+            routingStore.shutdown();
+            store.shutdown();
+            JdbcQuartzTestUtilities.destroyDatabase("ReadOnlyReplica");
+        }
+    }
+
+    public void testFallsBackToPrimaryWhenReadOnlyDataSourceFails() throws Exception {
+        JobStoreTX store = newStore("READ_ONLY_TEST", readOnlyDataSource("MissingReplica", null));
+        try {
+            int jobCount = store.getNumberOfJobs();
+            JobDetail job = JobBuilder.newJob(MyJob.class).withIdentity("primaryJob", "replicaGroup")
+                    .storeDurably().build();
+            store.storeJob(job, false);
+
+            assertEquals(job.getKey(), store.getJobKeys(GroupMatcher.jobGroupEquals("replicaGroup")).iterator().next());
+            assertEquals(jobCount + 1, store.getNumberOfJobs());
+        } finally {
+            store.shutdown();
+        }
+    }
+
+    public void testRejectsUnknownReadOnlyQuery() throws Exception {
+        try {
+            newStore("READ_ONLY_TEST", readOnlyDataSource("ReadOnlyReplica", "getJobKeys,storeJob"));
+            fail("Expected a SchedulerConfigException");
+        } catch (SchedulerConfigException expected) {
+            assertTrue(expected.getMessage().contains("'storeJob'"));
+        }
+    }
+
+    public void testAcquiresPrefetchedTriggersByKey() throws Exception {
+        JobStoreTX store = newStore("PREFETCH_TEST", new StoreConfiguration() {
+            public void configure(JobStoreTX jobStore) {
+                jobStore.setUseDBLocks(true);
+                jobStore.setPrefetchWindow(600000L);
+            }
+        });
+        JobStoreTX otherStore = newStore("OTHER_PREFETCH_TEST", null);
+        try {
+            JobDetail job = JobBuilder.newJob(MyJob.class).withIdentity("prefetchedJob", "batchGroup").build();
+            long now = System.currentTimeMillis();
+            store.storeJobAndTrigger(job, trigger("repeating", job, now + 1000L,
+                    SimpleScheduleBuilder.simpleSchedule().withIntervalInSeconds(2).repeatForever()));
+
+            List<OperableTrigger> acquired = store.acquireNextTriggers(now + 1500L, 10, 0L);
+            assertEquals(1, acquired.size());
+
+            // stored by another instance, so not in the window yet
+            otherStore.storeTrigger(trigger("other", job, now + 1200L, SimpleScheduleBuilder.simpleSchedule()), false);
+
+            // the fired trigger goes back to the window with its next fire time
+            store.triggersFired(acquired);
+            acquired = store.acquireNextTriggers(now + 3500L, 10, 5000L);
+            assertEquals(1, acquired.size());
+            assertEquals(triggerKey("repeating", "batchGroup"), acquired.get(0).getKey());
+            assertEquals(now + 3000L, acquired.get(0).getNextFireTime().getTime());
+
+            // storing a trigger empties the window, that is then filled again
+            store.storeTrigger(trigger("own", job, now + 1100L, SimpleScheduleBuilder.simpleSchedule()), false);
+            acquired = store.acquireNextTriggers(now + 3500L, 10, 5000L);
+            assertEquals(2, acquired.size());
+            assertEquals(triggerKey("own", "batchGroup"), acquired.get(0).getKey());
+            assertEquals(triggerKey("other", "batchGroup"), acquired.get(1).getKey());
+        } finally {
+            store.shutdown();
+            otherStore.shutdown();
+        }
+    }
+
+    public void testPrefetchWindowKeepsTriggersNotAcquired() throws Exception {
+        JobStoreTX store = newStore("PREFETCH_TEST", new StoreConfiguration() {
+            public void configure(JobStoreTX jobStore) {
+                jobStore.setUseDBLocks(true);
+                jobStore.setPrefetchWindow(600000L);
+            }
+        });
+        try {
+            JobDetail job = JobBuilder.newJob(TestAnnotatedJob.class).withIdentity("nonConcurrentJob", "batchGroup")
+                    .build();
+            long now = System.currentTimeMillis();
+            store.storeJobAndTrigger(job, trigger("first", job, now + 1000L, SimpleScheduleBuilder.simpleSchedule()));
+            store.storeTrigger(trigger("second", job, now + 1100L, SimpleScheduleBuilder.simpleSchedule()), false);
+
+            // only one trigger of a non-concurrent job is acquired at a time
+            List<OperableTrigger> acquired = store.acquireNextTriggers(now + 2000L, 10, 0L);
+            assertEquals(1, acquired.size());
+            assertEquals(triggerKey("first", "batchGroup"), acquired.get(0).getKey());
+
+            acquired = store.acquireNextTriggers(now + 2000L, 10, 0L);
+            assertEquals(1, acquired.size());
+            assertEquals(triggerKey("second", "batchGroup"), acquired.get(0).getKey());
+        } finally {
+            store.shutdown();
+        }
+    }
+
+    /**
+     * The settings of a store routing the given queries to the given
+     * read-only data source.
+     */
+    private static StoreConfiguration readOnlyDataSource(final String dataSource, final String queries) {
+        return new StoreConfiguration() {
+            public void configure(JobStoreTX jobStore) {
+                jobStore.setReadOnlyDataSource(dataSource);
+                jobStore.setReadOnlyDataSourceQueries(queries);
+            }
+        };
+    }
+
+    private static String selectFiredTriggerState(JobStoreSupport store, OperableTrigger trigger) throws Exception {
+        Connection conn = store.getNonManagedTXConnection();
+        try {
+            for (FiredTriggerRecord record : store.getDelegate().selectInstancesFiredTriggerRecords(conn,
+                    store.getInstanceId())) {
+                if (record.getFireInstanceId().equals(trigger.getFireInstanceId())) {
+                    return record.getFireInstanceState();
+                }
+            }
+            return null;
+        } finally {
+            store.cleanupConnection(conn);
+        }
+    }
+
+    /**
+     * Stop the store of the fixture, whose misfire handler would otherwise
+     * handle the misfires of a test along with it.
+     */
+    private void stopFixtureMisfireHandler() {
+        stores.get("AbstractJobStoreTest").shutdown();
+    }
+
+    private static int selectMisfiredCount(JobStoreSupport store) throws Exception {
+        Connection conn = store.getNonManagedTXConnection();
+        try {
+            return store.getDelegate().countMisfiredTriggersInState(conn, Constants.STATE_WAITING,
+                    store.getMisfireTime());
+        } finally {
+            store.cleanupConnection(conn);
+        }
+    }
+
+    private static byte[] selectJobData(JobStoreSupport store, String jobName) throws Exception {
+        Connection conn = store.getNonManagedTXConnection();
+        try {
+            PreparedStatement ps = conn.prepareStatement("SELECT JOB_DATA FROM QRTZ_JOB_DETAILS WHERE JOB_NAME = ?");
+            try {
+                ps.setString(1, jobName);
+                ResultSet rs = ps.executeQuery();
+                try {
+                    assertTrue(rs.next());
+                    return rs.getBytes(1);
+                } finally {
+                    rs.close();
+                }
+            } finally {
+                ps.close();
+            }
+        } finally {
+            store.cleanupConnection(conn);
+        }
+    }
+
+    /**
+     * A store of the fixture's database, beside the fixture's own, with the
+     * given instance id and the settings the given configuration makes, if
+     * any.
+     */
+    private static JobStoreTX newStore(String instanceId, StoreConfiguration configuration) throws Exception {
+        JobStoreTX store = new JobStoreTX();
+        store.setDataSource("AbstractJobStoreTest");
+        store.setTablePrefix("QRTZ_");
+        store.setInstanceId(instanceId);
+        store.setInstanceName("AbstractJobStoreTest");
+        if (configuration != null) {
+            configuration.configure(store);
+        }
+        ClassLoadHelper loadHelper = new CascadingClassLoadHelper();
+        loadHelper.initialize();
+        store.initialize(loadHelper, new SampleSignaler());
+        return store;
+    }
+
+    /**
+     * The settings particular to a store made by <code>newStore()</code>.
+     */
+    private interface StoreConfiguration {
+
+        void configure(JobStoreTX store) throws Exception;
+    }
+
+    private static int selectFiredTriggerCount(JobStoreSupport store, String instanceId) throws Exception {
+        Connection conn = store.getNonManagedTXConnection();
+        try {
+            return store.getDelegate().selectInstancesFiredTriggerRecords(conn, instanceId).size();
+        } finally {
+            store.cleanupConnection(conn);
+        }
+    }
+
+    private static OperableTrigger trigger(String name, JobDetail job, long startTime,
+                                           ScheduleBuilder<?> schedule) {
+        OperableTrigger trigger = (OperableTrigger) TriggerBuilder.newTrigger()
+                .withIdentity(name, "batchGroup")
+                .usingJobData("triggerKey", "triggerValue")
+                .withSchedule(schedule)
+                .forJob(job).startAt(new Date(startTime)).build();
+        trigger.computeFirstFireTime(null);
+        return trigger;
+    }
+
     @Override
     protected JobStore createJobStore(String name) {
         try {
@@ -39,6 +1085,7 @@ public class JdbcJobStoreTest extends AbstractJobStoreTest {
             jdbcJobStore.setInstanceId("SINGLE_NODE_TEST");
             jdbcJobStore.setInstanceName(name);
             jdbcJobStore.setUseDBLocks(true);
+            jdbcJobStore.setStatementCacheSize(16);
 
             stores.put(name, jdbcJobStore);
 
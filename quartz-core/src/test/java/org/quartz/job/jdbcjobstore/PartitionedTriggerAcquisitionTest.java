@@ -0,0 +1,260 @@
+/*
+ * All content copyright Terracotta, Inc., unless otherwise indicated. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.quartz.job.jdbcjobstore;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import junit.framework.TestCase;
+
+import org.quartz.AbstractJobStoreTest.MyJob;
+import org.quartz.AbstractJobStoreTest.SampleSignaler;
+import org.quartz.job.JobBuilder;
+import org.quartz.job.JobDetail;
+import org.quartz.scheduler.SchedulerConfigException;
+import org.quartz.scheduler.SimpleScheduleBuilder;
+import org.quartz.simpl.CascadingClassLoadHelper;
+import org.quartz.spi.ClassLoadHelper;
+import org.quartz.spi.OperableTrigger;
+import org.quartz.triggers.TriggerBuilder;
+import org.quartz.triggers.TriggerKey;
+import org.quartz.utils.DBConnectionManager;
+
+/**
+ * Several clustered job stores of the same scheduler, with their triggers
+ * spread over partitions, each acquiring the triggers of the partitions it
+ * leases.
+ */
+public class PartitionedTriggerAcquisitionTest extends TestCase {
+
+    private static final int PARTITIONS = 8;
+
+    private static final int TRIGGERS = 200;
+
+    private final List<JobStoreTX> stores = new ArrayList<JobStoreTX>();
+
+    private String dsName;
+
+    private long firstFireTime;
+
+    @Override
+    protected void setUp() throws Exception {
+        dsName = "partitionedAcquisition" + getName();
+        JdbcQuartzTestUtilities.createDatabase(dsName);
+        firstFireTime = System.currentTimeMillis() + 1000L;
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        for (JobStoreTX store : stores) {
+            store.shutdown();
+        }
+        JdbcQuartzTestUtilities.destroyDatabase(dsName);
+    }
+
+    public void testInstancesLeaseDistinctPartitions() throws Exception {
+        createStores(3);
+        checkInAll();
+
+        boolean[] leased = new boolean[PARTITIONS];
+        for (JobStoreTX store : stores) {
+            int[] partitions = store.getLeasedPartitions();
+            for (int partition = partitions[0]; partition <= partitions[1]; partition++) {
+                assertFalse("Leased twice: " + partition, leased[partition]);
+                leased[partition] = true;
+            }
+            assertEquals(partitions[0], selectInt("SELECT FIRST_PARTITION FROM QRTZ_SCHEDULER_STATE WHERE INSTANCE_NAME = '"
+                    + store.getInstanceId() + "'"));
+            assertEquals(partitions[1], selectInt("SELECT LAST_PARTITION FROM QRTZ_SCHEDULER_STATE WHERE INSTANCE_NAME = '"
+                    + store.getInstanceId() + "'"));
+        }
+        for (int partition = 0; partition < PARTITIONS; partition++) {
+            assertTrue("Not leased: " + partition, leased[partition]);
+        }
+    }
+
+    public void testEachTriggerIsAcquiredOnceFromLeasedPartitions() throws Exception {
+        createStores(4);
+        checkInAll();
+        storeTriggers();
+        assertEquals(0, selectInt("SELECT COUNT(*) FROM QRTZ_TRIGGERS WHERE PARTITION_NUM IS NULL"));
+
+        final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+        final List<List<OperableTrigger>> acquiredByStore = new ArrayList<List<OperableTrigger>>();
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> nodes = new ArrayList<Thread>();
+        for (final JobStoreTX store : stores) {
+            final List<OperableTrigger> acquired = new ArrayList<OperableTrigger>();
+            acquiredByStore.add(acquired);
+            Thread node = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        List<OperableTrigger> batch;
+                        do {
+                            batch = store.acquireNextTriggers(firstFireTime + TRIGGERS, 10, 0L);
+                            acquired.addAll(batch);
+                        } while (!batch.isEmpty());
+                    } catch (Throwable t) {
+                        failures.add(t);
+                    }
+                }
+            };
+            node.start();
+            nodes.add(node);
+        }
+        start.countDown();
+        for (Thread node : nodes) {
+            node.join(60000L);
+        }
+
+        assertTrue(failures.toString(), failures.isEmpty());
+        Set<String> triggerNames = new HashSet<String>();
+        for (int i = 0; i < stores.size(); i++) {
+            JobStoreTX store = stores.get(i);
+            int[] partitions = store.getLeasedPartitions();
+            for (OperableTrigger trigger : acquiredByStore.get(i)) {
+                assertTrue("Acquired twice: " + trigger.getKey(), triggerNames.add(trigger.getKey().getName()));
+                int partition = store.getPartition(trigger.getKey());
+                assertTrue(partition >= partitions[0] && partition <= partitions[1]);
+            }
+        }
+        assertEquals(TRIGGERS, triggerNames.size());
+        assertEquals(TRIGGERS, selectInt("SELECT COUNT(*) FROM QRTZ_FIRED_TRIGGERS WHERE STATE = 'ACQUIRED'"));
+    }
+
+    public void testPartitionsOfFailedInstanceAreLeasedAgain() throws Exception {
+        createStores(2);
+        checkInAll();
+        storeTriggers();
+        JobStoreTX survivor = stores.get(0);
+        JobStoreTX failed = stores.get(1);
+        List<OperableTrigger> acquiredByFailed = failed.acquireNextTriggers(firstFireTime + TRIGGERS, 10, 0L);
+        assertFalse(acquiredByFailed.isEmpty());
+
+        execute("UPDATE QRTZ_SCHEDULER_STATE SET LAST_CHECKIN_TIME = 0 WHERE INSTANCE_NAME = '"
+                + failed.getInstanceId() + "'");
+        assertTrue(survivor.doCheckin());
+
+        int[] partitions = survivor.getLeasedPartitions();
+        assertEquals(0, partitions[0]);
+        assertEquals(PARTITIONS - 1, partitions[1]);
+
+        Set<String> triggerNames = new HashSet<String>();
+        List<OperableTrigger> batch;
+        do {
+            batch = survivor.acquireNextTriggers(firstFireTime + TRIGGERS, 10, 0L);
+            for (OperableTrigger trigger : batch) {
+                assertTrue("Acquired twice: " + trigger.getKey(), triggerNames.add(trigger.getKey().getName()));
+            }
+        } while (!batch.isEmpty());
+        assertEquals(TRIGGERS, triggerNames.size());
+    }
+
+    public void testTriggersWithoutPartitionAreAssignedOne() throws Exception {
+        JobStoreTX unpartitioned = createStore("UNPARTITIONED", 0, false);
+        storeTriggers();
+        assertEquals(TRIGGERS, selectInt("SELECT COUNT(*) FROM QRTZ_TRIGGERS WHERE PARTITION_NUM IS NULL"));
+        unpartitioned.shutdown();
+        stores.remove(unpartitioned);
+
+        createStores(1);
+        checkInAll();
+        assertEquals(0, selectInt("SELECT COUNT(*) FROM QRTZ_TRIGGERS WHERE PARTITION_NUM IS NULL"));
+        assertEquals(stores.get(0).getPartition(TriggerKey.triggerKey("trigger0", "group")),
+                selectInt("SELECT PARTITION_NUM FROM QRTZ_TRIGGERS WHERE TRIGGER_NAME = 'trigger0'"));
+    }
+
+    public void testPartitionsRequireACluster() throws Exception {
+        try {
+            createStore("NODE", PARTITIONS, false);
+            fail("Expected a SchedulerConfigException");
+        } catch (SchedulerConfigException expected) {
+        }
+    }
+
+    private void createStores(int count) throws Exception {
+        for (int i = 0; i < count; i++) {
+            createStore("NODE_" + i, PARTITIONS, true);
+        }
+    }
+
+    private JobStoreTX createStore(String instanceId, int partitionCount, boolean clustered) throws Exception {
+        ClassLoadHelper loadHelper = new CascadingClassLoadHelper();
+        loadHelper.initialize();
+        JobStoreTX store = new JobStoreTX();
+        store.setDataSource(dsName);
+        store.setTablePrefix("QRTZ_");
+        store.setInstanceId(instanceId);
+        store.setInstanceName("partitionedAcquisition");
+        store.setIsClustered(clustered);
+        store.setPartitionCount(partitionCount);
+        store.initialize(loadHelper, new SampleSignaler());
+        stores.add(store);
+        return store;
+    }
+
+    private void checkInAll() throws Exception {
+        // the second time round, each instance knows of all the others
+        for (int round = 0; round < 2; round++) {
+            for (JobStoreTX store : stores) {
+                store.doCheckin();
+            }
+        }
+    }
+
+    private void storeTriggers() throws Exception {
+        JobDetail job = JobBuilder.newJob(MyJob.class).withIdentity("job", "group").storeDurably().build();
+        JobStoreTX store = stores.get(0);
+        store.storeJob(job, false);
+        for (int i = 0; i < TRIGGERS; i++) {
+            OperableTrigger trigger = (OperableTrigger) TriggerBuilder.newTrigger()
+                    .withIdentity("trigger" + i, "group")
+                    .withSchedule(SimpleScheduleBuilder.repeatHourlyForever())
+                    .forJob(job).startAt(new Date(firstFireTime + i)).build();
+            trigger.computeFirstFireTime(null);
+            store.storeTrigger(trigger, false);
+        }
+    }
+
+    private int selectInt(String sql) throws Exception {
+        Connection conn = DBConnectionManager.getInstance().getConnection(dsName);
+        try {
+            ResultSet rs = conn.createStatement().executeQuery(sql);
+            assertTrue(rs.next());
+            return rs.getInt(1);
+        } finally {
+            conn.close();
+        }
+    }
+
+    private void execute(String sql) throws Exception {
+        Connection conn = DBConnectionManager.getInstance().getConnection(dsName);
+        try {
+            conn.createStatement().execute(sql);
+        } finally {
+            conn.close();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * All content copyright Terracotta, Inc., unless otherwise indicated. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.quartz.job.jdbcjobstore;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+
+import junit.framework.TestCase;
+
+public class StatementCachingConnectionInvocationHandlerTest extends TestCase {
+
+    private static final String SELECT_ONE = "SELECT X FROM T WHERE X = ?";
+
+    private static final String SELECT_TWO = "SELECT X FROM T WHERE X > ?";
+
+    private static final String SELECT_THREE = "SELECT X FROM T WHERE X < ?";
+
+    private Connection rawConn;
+
+    private StatementCachingConnectionInvocationHandler handler;
+
+    private Connection conn;
+
+    @Override
+    protected void setUp() throws Exception {
+        rawConn = DriverManager.getConnection("jdbc:h2:mem:statementCachingTest", "sa", "");
+        rawConn.createStatement().execute("CREATE TABLE T (X INT)");
+        rawConn.createStatement().execute("INSERT INTO T VALUES (1), (2), (3)");
+        handler = new StatementCachingConnectionInvocationHandler(rawConn, 2);
+        conn = (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class[]{Connection.class}, handler);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (!rawConn.isClosed()) {
+            rawConn.createStatement().execute("DROP TABLE T");
+            rawConn.close();
+        }
+    }
+
+    public void testStatementIsPreparedOnce() throws Exception {
+        PreparedStatement ps = conn.prepareStatement(SELECT_ONE);
+        assertEquals(1, selectCount(ps, 1));
+        ps.close();
+
+        PreparedStatement again = conn.prepareStatement(SELECT_ONE);
+        assertSame(ps, again);
+        assertFalse(again.isClosed());
+        assertEquals(0, selectCount(again, 4));
+        again.close();
+    }
+
+    public void testStatementInUseIsPreparedAnew() throws Exception {
+        PreparedStatement ps = conn.prepareStatement(SELECT_TWO);
+        ps.setInt(1, 0);
+        ResultSet rs = ps.executeQuery();
+        assertTrue(rs.next());
+
+        // e.g. while iterating over the results of the first one
+        PreparedStatement nested = conn.prepareStatement(SELECT_TWO);
+        assertNotSame(ps, nested);
+        assertEquals(1, selectCount(nested, 2));
+        nested.close();
+        assertTrue(nested.isClosed());
+
+        assertTrue(rs.next());
+        assertTrue(rs.next());
+        rs.close();
+        ps.close();
+        assertSame(ps, conn.prepareStatement(SELECT_TWO));
+    }
+
+    public void testLeastRecentlyUsedStatementIsClosed() throws Exception {
+        PreparedStatement one = conn.prepareStatement(SELECT_ONE);
+        PreparedStatement rawOne = one.unwrap(PreparedStatement.class);
+        one.close();
+        conn.prepareStatement(SELECT_TWO).close();
+        conn.prepareStatement(SELECT_THREE).close();
+
+        assertTrue(rawOne.isClosed());
+        assertNotSame(one, conn.prepareStatement(SELECT_ONE));
+    }
+
+    public void testStatementsAreClosedWithTheConnection() throws Exception {
+        PreparedStatement one = conn.prepareStatement(SELECT_ONE);
+        PreparedStatement rawOne = one.unwrap(PreparedStatement.class);
+        one.close();
+        PreparedStatement inUse = conn.prepareStatement(SELECT_TWO);
+        PreparedStatement rawInUse = inUse.unwrap(PreparedStatement.class);
+
+        handler.closeStatements();
+        assertTrue(rawOne.isClosed());
+        assertFalse(rawInUse.isClosed());
+        inUse.close();
+        assertTrue(rawInUse.isClosed());
+    }
+
+    private static int selectCount(PreparedStatement ps, int x) throws Exception {
+        ps.setInt(1, x);
+        ResultSet rs = ps.executeQuery();
+        try {
+            int count = 0;
+            while (rs.next()) {
+                count++;
+            }
+            return count;
+        } finally {
+            rs.close();
+        }
+    }
+}
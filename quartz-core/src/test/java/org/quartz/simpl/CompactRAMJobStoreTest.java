@@ -0,0 +1,128 @@
+/*
+ * All content copyright Terracotta, Inc., unless otherwise indicated. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.quartz.simpl;
+
+import java.util.Date;
+import java.util.List;
+
+import org.quartz.AbstractJobStoreTest;
+import org.quartz.calendar.BaseCalendar;
+import org.quartz.exception.ObjectAlreadyExistsException;
+import org.quartz.job.JobBuilder;
+import org.quartz.job.JobDetail;
+import org.quartz.scheduler.SimpleScheduleBuilder;
+import org.quartz.spi.JobStore;
+import org.quartz.spi.OperableTrigger;
+import org.quartz.spi.TriggerFiredResult;
+import org.quartz.triggers.SimpleTrigger;
+import org.quartz.triggers.SimpleTriggerImpl;
+import org.quartz.triggers.TriggerBuilder;
+import org.quartz.triggers.TriggerKey;
+
+public class CompactRAMJobStoreTest extends AbstractJobStoreTest {
+
+    @Override
+    protected JobStore createJobStore(String name) {
+        return new CompactRAMJobStore();
+    }
+
+    @Override
+    protected void destroyJobStore(String name) {
+
+    }
+
+    public void testTriggersMaterializedWhenHandedOut() throws Exception {
+        CompactRAMJobStore store = new CompactRAMJobStore();
+        store.initialize(null, new SampleSignaler());
+
+        JobDetail job = JobBuilder.newJob(MyJob.class).withIdentity("job", "group").build();
+        long startTime = System.currentTimeMillis() + 1000L;
+        OperableTrigger trigger = (OperableTrigger) TriggerBuilder.newTrigger()
+                .withIdentity("trigger", "group")
+                .withDescription("description")
+                .usingJobData("key", "value")
+                .withPriority(7)
+                .modifiedByCalendar("calendar")
+                .withSchedule(SimpleScheduleBuilder.simpleSchedule().withIntervalInSeconds(10).withRepeatCount(3))
+                .forJob(job).startAt(new Date(startTime)).build();
+        store.storeCalendar("calendar", new BaseCalendar(), false, false);
+        trigger.computeFirstFireTime(null);
+        store.storeJobAndTrigger(job, trigger);
+        assertEquals(1, store.getNumberOfCompactTriggers());
+
+        OperableTrigger retrieved = store.retrieveTrigger(trigger.getKey());
+        assertEquals(SimpleTriggerImpl.class, retrieved.getClass());
+        assertEquals("description", retrieved.getDescription());
+        assertEquals("value", retrieved.getJobDataMap().getString("key"));
+        assertEquals(7, retrieved.getPriority());
+        assertEquals("calendar", retrieved.getCalendarName());
+        assertEquals(startTime, retrieved.getNextFireTime().getTime());
+        assertEquals(3, ((SimpleTrigger) retrieved).getRepeatCount());
+        assertEquals(10000L, ((SimpleTrigger) retrieved).getRepeatInterval());
+
+        // changes to the copies are not seen by the store
+        retrieved.getJobDataMap().put("key", "changed");
+        assertEquals("value", store.retrieveTrigger(trigger.getKey()).getJobDataMap().getString("key"));
+
+        List<OperableTrigger> acquired = store.acquireNextTriggers(startTime + 10000L, 1, 0L);
+        assertEquals(1, acquired.size());
+        assertNotNull(acquired.get(0).getFireInstanceId());
+        List<TriggerFiredResult> fired = store.triggersFired(acquired);
+        assertEquals(1, fired.size());
+
+        OperableTrigger afterFiring = store.retrieveTrigger(trigger.getKey());
+        assertEquals(1, ((SimpleTrigger) afterFiring).getTimesTriggered());
+        assertEquals(startTime, afterFiring.getPreviousFireTime().getTime());
+        assertEquals(startTime + 10000L, afterFiring.getNextFireTime().getTime());
+    }
+
+    public void testSlotsReused() throws Exception {
+        CompactRAMJobStore store = new CompactRAMJobStore();
+        store.initialize(null, new SampleSignaler());
+
+        JobDetail job = JobBuilder.newJob(MyJob.class).withIdentity("job", "group").storeDurably().build();
+        store.storeJob(job, false);
+        for (int i = 0; i < 100; i++) {
+            store.storeTrigger(trigger("trigger" + i, job), false);
+        }
+        assertEquals(100, store.getNumberOfCompactTriggers());
+
+        for (int i = 0; i < 50; i++) {
+            assertTrue(store.removeTrigger(TriggerKey.triggerKey("trigger" + i, "group")));
+        }
+        store.storeTrigger(trigger("trigger99", job), true);
+        assertTrue(store.replaceTrigger(TriggerKey.triggerKey("trigger98", "group"), trigger("replacement", job)));
+        assertEquals(50, store.getNumberOfCompactTriggers());
+        assertEquals(50, store.getNumberOfTriggers());
+
+        try {
+            store.storeTrigger(trigger("trigger97", job), false);
+            fail("Expected ObjectAlreadyExistsException");
+        } catch (ObjectAlreadyExistsException e) {
+            // expected
+        }
+        assertEquals(50, store.getNumberOfCompactTriggers());
+    }
+
+    private static OperableTrigger trigger(String name, JobDetail job) {
+        OperableTrigger trigger = (OperableTrigger) TriggerBuilder.newTrigger()
+                .withIdentity(name, "group")
+                .withSchedule(SimpleScheduleBuilder.repeatMinutelyForever())
+                .forJob(job).startAt(new Date(System.currentTimeMillis() + 1000L)).build();
+        trigger.computeFirstFireTime(null);
+        return trigger;
+    }
+}
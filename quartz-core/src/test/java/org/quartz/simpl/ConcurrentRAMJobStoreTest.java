@@ -0,0 +1,102 @@
+/*
+ * All content copyright Terracotta, Inc., unless otherwise indicated. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.quartz.simpl;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.quartz.AbstractJobStoreTest;
+import org.quartz.job.JobBuilder;
+import org.quartz.job.JobDetail;
+import org.quartz.job.JobKey;
+import org.quartz.matchers.GroupMatcher;
+import org.quartz.scheduler.SimpleScheduleBuilder;
+import org.quartz.spi.JobStore;
+import org.quartz.spi.OperableTrigger;
+import org.quartz.spi.TriggerFiredResult;
+import org.quartz.triggers.Trigger.CompletedExecutionInstruction;
+import org.quartz.triggers.TriggerBuilder;
+import org.quartz.triggers.TriggerKey;
+
+public class ConcurrentRAMJobStoreTest extends AbstractJobStoreTest {
+
+    @Override
+    protected JobStore createJobStore(String name) {
+        return new ConcurrentRAMJobStore();
+    }
+
+    @Override
+    protected void destroyJobStore(String name) {
+
+    }
+
+    public void testReadsDuringFiring() throws Exception {
+        final ConcurrentRAMJobStore store = new ConcurrentRAMJobStore();
+        store.initialize(null, new SampleSignaler());
+
+        for (int i = 0; i < 50; i++) {
+            JobDetail job = JobBuilder.newJob(MyJob.class).withIdentity("job" + i, "group" + (i % 5)).build();
+            OperableTrigger trigger = (OperableTrigger) TriggerBuilder.newTrigger()
+                    .withIdentity("trigger" + i, "group" + (i % 5))
+                    .withSchedule(SimpleScheduleBuilder.repeatSecondlyForever())
+                    .forJob(job).startAt(new Date(System.currentTimeMillis() - 100)).build();
+            trigger.computeFirstFireTime(null);
+            store.storeJobAndTrigger(job, trigger);
+        }
+
+        final AtomicBoolean done = new AtomicBoolean(false);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread reader = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    while (!done.get()) {
+                        for (TriggerKey key : store.getTriggerKeys(GroupMatcher.anyTriggerGroup())) {
+                            OperableTrigger trigger = store.retrieveTrigger(key);
+                            assertNotNull(trigger.getNextFireTime());
+                            assertNotNull(store.getTriggerState(key));
+                        }
+                        for (JobKey key : store.getJobKeys(GroupMatcher.anyJobGroup())) {
+                            assertNotNull(store.retrieveJob(key));
+                            assertEquals(1, store.getTriggersForJob(key).size());
+                        }
+                    }
+                } catch (Throwable t) {
+                    failure.set(t);
+                }
+            }
+        };
+        reader.start();
+
+        try {
+            for (int round = 0; round < 200; round++) {
+                List<OperableTrigger> acquired = store.acquireNextTriggers(System.currentTimeMillis() + 60000L, 10, 60000L);
+                for (TriggerFiredResult result : store.triggersFired(acquired)) {
+                    store.triggeredJobComplete(result.getTriggerFiredBundle().getTrigger(),
+                            result.getTriggerFiredBundle().getJobDetail(), CompletedExecutionInstruction.NOOP);
+                }
+            }
+        } finally {
+            done.set(true);
+            reader.join();
+        }
+
+        assertNull(failure.get());
+        assertEquals(50, store.getNumberOfTriggers());
+    }
+}
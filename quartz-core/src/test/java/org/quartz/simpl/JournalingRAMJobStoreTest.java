@@ -0,0 +1,210 @@
+/*
+ * All content copyright Terracotta, Inc., unless otherwise indicated. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.quartz.simpl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+
+import org.quartz.AbstractJobStoreTest;
+import org.quartz.calendar.WeeklyCalendar;
+import org.quartz.job.JobBuilder;
+import org.quartz.job.JobDetail;
+import org.quartz.job.JobKey;
+import org.quartz.job.JobPersistenceException;
+import org.quartz.matchers.GroupMatcher;
+import org.quartz.scheduler.Scheduler;
+import org.quartz.scheduler.SimpleScheduleBuilder;
+import org.quartz.spi.JobStore;
+import org.quartz.spi.OperableTrigger;
+import org.quartz.spi.TriggerFiredBundle;
+import org.quartz.triggers.Trigger.CompletedExecutionInstruction;
+import org.quartz.triggers.Trigger.TriggerState;
+import org.quartz.triggers.TriggerBuilder;
+import org.quartz.triggers.TriggerKey;
+
+public class JournalingRAMJobStoreTest extends AbstractJobStoreTest {
+
+    private File journalDirectory;
+
+    @Override
+    protected JobStore createJobStore(String name) {
+        try {
+            journalDirectory = Files.createTempDirectory("quartz-journal").toFile();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return newStore(1024 * 1024);
+    }
+
+    @Override
+    protected void destroyJobStore(String name) {
+        delete(journalDirectory);
+    }
+
+    public void testRestoreAfterCrash() throws Exception {
+        checkRestore(1024 * 1024);
+    }
+
+    public void testRestoreAfterCompaction() throws Exception {
+        checkRestore(1);
+    }
+
+    public void testRestoreFromSnapshotAfterShutdown() throws Exception {
+        JournalingRAMJobStore store = initialize(newStore(1024 * 1024));
+        store.storeJobAndTrigger(job("job1", false), trigger("trigger1", "job1", "group1"));
+        store.pauseTrigger(TriggerKey.triggerKey("trigger1", "group1"));
+        store.shutdown();
+
+        assertTrue(new File(journalDirectory, "quartz.snapshot").exists());
+
+        JournalingRAMJobStore restored = initialize(newStore(1024 * 1024));
+        assertEquals(1, restored.getNumberOfTriggers());
+        assertEquals(TriggerState.PAUSED, restored.getTriggerState(TriggerKey.triggerKey("trigger1", "group1")));
+        restored.shutdown();
+    }
+
+    public void testChangeNotJournaledIsNotMade() throws Exception {
+        JournalingRAMJobStore store = initialize(newStore(1024 * 1024));
+        JobDetail unserializable = JobBuilder.newJob(MyJob.class).withIdentity("unserializable", "group").build();
+        unserializable.getJobDataMap().put("value", new Object());
+        try {
+            store.storeJob(unserializable, false);
+            fail("Expected a JobPersistenceException");
+        } catch (JobPersistenceException expected) {
+            // the job data can not be journaled
+        }
+        assertNull(store.retrieveJob(unserializable.getKey()));
+        store.storeJob(job("job1", false), false);
+
+        JournalingRAMJobStore restored = initialize(newStore(1024 * 1024));
+        assertNull(restored.retrieveJob(unserializable.getKey()));
+        assertNotNull(restored.retrieveJob(new JobKey("job1", "group")));
+        restored.shutdown();
+    }
+
+    public void testSyncsSnapshotRenameBeforeEmptyingJournal() throws Exception {
+        final File journal = new File(journalDirectory, "quartz.journal");
+        final List<Boolean> journalHeldRecords = new ArrayList<Boolean>();
+        JournalingRAMJobStore store = new JournalingRAMJobStore() {
+            @Override
+            void syncDirectory(File dir) throws IOException {
+                super.syncDirectory(dir);
+                // the length of the first record, if any
+                journalHeldRecords.add(ByteBuffer.wrap(Files.readAllBytes(journal.toPath())).getInt() > 0);
+            }
+        };
+        store.setJournalDirectory(journalDirectory.getAbsolutePath());
+        initialize(store);
+        store.storeJob(job("job1", false), false);
+        store.shutdown();
+
+        // on initialize(), with the job the fixture's store journaled, and on shutdown()
+        assertEquals(Arrays.asList(true, true), journalHeldRecords);
+    }
+
+    private void checkRestore(long maxJournalSize) throws Exception {
+        JournalingRAMJobStore store = initialize(newStore(maxJournalSize));
+
+        WeeklyCalendar calendar = new WeeklyCalendar();
+        calendar.setDescription("weekdays");
+        store.storeCalendar("weekdays", calendar, false, false);
+        store.storeJobAndTrigger(job("job1", false), trigger("trigger1", "job1", "group1"));
+        store.storeJobAndTrigger(job("job2", false), trigger("trigger2", "job2", "paused"));
+        store.storeJobAndTrigger(job("job3", true), trigger("trigger3", "job3", "group1"));
+        store.storeJobAndTrigger(job("job4", false), trigger("trigger4", "job4", "group1"));
+        store.pauseTriggers(GroupMatcher.triggerGroupEquals("paused"));
+        store.removeJob(new JobKey("job4", "group"));
+
+        // fire and complete trigger1, and leave job3 executing
+        List<OperableTrigger> acquired = store.acquireNextTriggers(System.currentTimeMillis() + 10000L, 10, 10000L);
+        assertEquals(2, acquired.size());
+        Date trigger1NextFireTime = null;
+        for (OperableTrigger trigger : acquired) {
+            TriggerFiredBundle bndle = store.triggersFired(java.util.Collections.singletonList(trigger))
+                    .get(0).getTriggerFiredBundle();
+            if (trigger.getKey().getName().equals("trigger1")) {
+                store.triggeredJobComplete(bndle.getTrigger(), bndle.getJobDetail(), CompletedExecutionInstruction.NOOP);
+                trigger1NextFireTime = bndle.getTrigger().getNextFireTime();
+            }
+        }
+
+        // crash, leaving store as it is
+        JournalingRAMJobStore restored = initialize(newStore(maxJournalSize));
+
+        // including the job stored by setUp()
+        assertEquals(4, restored.getNumberOfJobs());
+        assertNull(restored.retrieveJob(new JobKey("job4", "group")));
+        assertEquals("weekdays", restored.retrieveCalendar("weekdays").getDescription());
+        assertEquals(TriggerState.PAUSED, restored.getTriggerState(TriggerKey.triggerKey("trigger2", "paused")));
+        assertTrue(restored.getPausedTriggerGroups().contains("paused"));
+        assertEquals(trigger1NextFireTime,
+                restored.retrieveTrigger(TriggerKey.triggerKey("trigger1", "group1")).getNextFireTime());
+
+        Set<TriggerKey> recovering = restored.getTriggerKeys(GroupMatcher.triggerGroupEquals(Scheduler.DEFAULT_RECOVERY_GROUP));
+        assertEquals(1, recovering.size());
+        OperableTrigger recovery = restored.retrieveTrigger(recovering.iterator().next());
+        assertEquals(new JobKey("job3", "group"), recovery.getJobKey());
+        assertEquals("trigger3", recovery.getJobDataMap().getString(Scheduler.FAILED_JOB_ORIGINAL_TRIGGER_NAME));
+
+        // recovery is only done once
+        JournalingRAMJobStore restoredAgain = initialize(newStore(maxJournalSize));
+        assertEquals(1, restoredAgain.getTriggerKeys(GroupMatcher.triggerGroupEquals(Scheduler.DEFAULT_RECOVERY_GROUP)).size());
+        assertEquals(4, restoredAgain.getNumberOfTriggers());
+        restoredAgain.shutdown();
+    }
+
+    private JournalingRAMJobStore newStore(long maxJournalSize) {
+        JournalingRAMJobStore store = new JournalingRAMJobStore();
+        store.setJournalDirectory(journalDirectory.getAbsolutePath());
+        store.setMaxJournalSize(maxJournalSize);
+        return store;
+    }
+
+    private JournalingRAMJobStore initialize(JournalingRAMJobStore store) throws Exception {
+        store.initialize(null, new SampleSignaler());
+        return store;
+    }
+
+    private static JobDetail job(String name, boolean requestsRecovery) {
+        return JobBuilder.newJob(MyJob.class).withIdentity(name, "group").requestRecovery(requestsRecovery).build();
+    }
+
+    private static OperableTrigger trigger(String name, String job, String group) {
+        OperableTrigger trigger = (OperableTrigger) TriggerBuilder.newTrigger()
+                .withIdentity(name, group)
+                .withSchedule(SimpleScheduleBuilder.repeatMinutelyForever())
+                .forJob(job, "group").startAt(new Date(System.currentTimeMillis() + 1000L)).build();
+        trigger.computeFirstFireTime(null);
+        return trigger;
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * All content copyright Terracotta, Inc., unless otherwise indicated. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.quartz.simpl;
+
+import java.util.Date;
+import java.util.List;
+
+import org.quartz.AbstractJobStoreTest;
+import org.quartz.exception.FootprintLimitExceededException;
+import org.quartz.exception.ObjectAlreadyExistsException;
+import org.quartz.job.JobBuilder;
+import org.quartz.job.JobDetail;
+import org.quartz.job.JobKey;
+import org.quartz.matchers.GroupMatcher;
+import org.quartz.scheduler.SimpleScheduleBuilder;
+import org.quartz.spi.JobStore;
+import org.quartz.spi.JobStoreFootprint;
+import org.quartz.spi.OperableTrigger;
+import org.quartz.triggers.Trigger.TriggerState;
+import org.quartz.triggers.TriggerBuilder;
+import org.quartz.triggers.TriggerKey;
+
+public class PartitionedRAMJobStoreTest extends AbstractJobStoreTest {
+
+    @Override
+    protected JobStore createJobStore(String name) {
+        return new PartitionedRAMJobStore();
+    }
+
+    @Override
+    protected void destroyJobStore(String name) {
+
+    }
+
+    public void testAcquireInFireTimeOrderAcrossPartitions() throws Exception {
+        PartitionedRAMJobStore store = new PartitionedRAMJobStore();
+        store.setPartitionCount(4);
+        store.initialize(null, new SampleSignaler());
+
+        long baseFireTime = System.currentTimeMillis() + 1000L;
+        for (int i = 0; i < 20; i++) {
+            // fire times in the reverse of the order of storing
+            store.storeJobAndTrigger(job("job" + i), trigger("trigger" + i, "job" + i, baseFireTime + (20 - i) * 10L));
+        }
+
+        List<OperableTrigger> acquired = store.acquireNextTriggers(baseFireTime + 10000L, 10, 1000L);
+        assertEquals(10, acquired.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals("trigger" + (19 - i), acquired.get(i).getKey().getName());
+        }
+
+        // the remaining triggers follow
+        List<OperableTrigger> next = store.acquireNextTriggers(baseFireTime + 10000L, 20, 1000L);
+        assertEquals(10, next.size());
+        assertEquals("trigger9", next.get(0).getKey().getName());
+    }
+
+    public void testTriggerKeyUniqueAcrossPartitions() throws Exception {
+        PartitionedRAMJobStore store = new PartitionedRAMJobStore();
+        store.initialize(null, new SampleSignaler());
+
+        // jobs in different partitions
+        String otherJob = null;
+        store.storeJob(job("job0"), false);
+        for (int i = 1; otherJob == null; i++) {
+            store.storeJob(job("job" + i), false);
+            store.storeTrigger(trigger("probe" + i, "job" + i, System.currentTimeMillis() + 1000L), false);
+            store.storeTrigger(trigger("probe" + i, "job0", System.currentTimeMillis() + 1000L), true);
+            if (store.getTriggersForJob(new JobKey("job0", "group")).size() == 1) {
+                otherJob = "job" + i;
+            }
+            store.removeTrigger(TriggerKey.triggerKey("probe" + i, "group"));
+        }
+
+        store.storeTrigger(trigger("trigger", otherJob, System.currentTimeMillis() + 1000L), false);
+        try {
+            store.storeTrigger(trigger("trigger", "job0", System.currentTimeMillis() + 1000L), false);
+            fail("Expected ObjectAlreadyExistsException");
+        } catch (ObjectAlreadyExistsException e) {
+            // expected
+        }
+
+        // replacing moves the trigger to the partition of its new job
+        store.storeTrigger(trigger("trigger", "job0", System.currentTimeMillis() + 1000L), true);
+        assertEquals(1, store.getTriggersForJob(new JobKey("job0", "group")).size());
+        assertEquals(0, store.getTriggersForJob(new JobKey(otherJob, "group")).size());
+        assertEquals(1, store.getNumberOfTriggers());
+    }
+
+    public void testGroupPausedInAllPartitions() throws Exception {
+        PartitionedRAMJobStore store = new PartitionedRAMJobStore();
+        store.initialize(null, new SampleSignaler());
+
+        store.storeJobAndTrigger(job("job0"), trigger("trigger0", "job0", System.currentTimeMillis() + 1000L));
+        store.pauseTriggers(GroupMatcher.triggerGroupStartsWith("gro"));
+
+        for (int i = 1; i < 10; i++) {
+            store.storeJobAndTrigger(job("job" + i), trigger("trigger" + i, "job" + i, System.currentTimeMillis() + 1000L));
+            assertEquals(TriggerState.PAUSED, store.getTriggerState(TriggerKey.triggerKey("trigger" + i, "group")));
+        }
+    }
+
+    public void testFootprintOfAllPartitions() throws Exception {
+        PartitionedRAMJobStore store = new PartitionedRAMJobStore();
+        store.setPartitionCount(4);
+        store.initialize(null, new SampleSignaler());
+
+        long fireTime = System.currentTimeMillis() + 1000L;
+        for (int i = 0; i < 20; i++) {
+            store.storeJobAndTrigger(job("job" + i), trigger("trigger" + i, "job" + i, fireTime));
+        }
+        JobStoreFootprint footprint = store.getFootprint();
+        assertEquals(20, footprint.getNumberOfJobs());
+        assertEquals(20, footprint.getNumberOfTriggers());
+
+        store.setMaxFootprint(footprint.getTotalBytes());
+        try {
+            store.storeJobAndTrigger(job("job20"), trigger("trigger20", "job20", fireTime));
+            fail("Expected FootprintLimitExceededException");
+        } catch (FootprintLimitExceededException e) {
+            // expected
+        }
+        assertEquals(20, store.getNumberOfJobs());
+    }
+
+    private static JobDetail job(String name) {
+        return JobBuilder.newJob(MyJob.class).withIdentity(name, "group").storeDurably().build();
+    }
+
+    private static OperableTrigger trigger(String name, String job, long fireTime) {
+        OperableTrigger trigger = (OperableTrigger) TriggerBuilder.newTrigger()
+                .withIdentity(name, "group")
+                .withSchedule(SimpleScheduleBuilder.repeatMinutelyForever())
+                .forJob(job, "group").startAt(new Date(fireTime)).build();
+        trigger.computeFirstFireTime(null);
+        return trigger;
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * All content copyright Terracotta, Inc., unless otherwise indicated. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.quartz.simpl;
+
+import java.util.Date;
+import java.util.List;
+
+import org.quartz.AbstractJobStoreTest.MyJob;
+import org.quartz.AbstractJobStoreTest.SampleSignaler;
+import org.quartz.job.JobBuilder;
+import org.quartz.job.JobDetail;
+import org.quartz.scheduler.SimpleScheduleBuilder;
+import org.quartz.simpl.RAMJobStoreTest.NonConcurrentJob;
+import org.quartz.spi.OperableTrigger;
+import org.quartz.triggers.Trigger.CompletedExecutionInstruction;
+import org.quartz.triggers.TriggerBuilder;
+
+/**
+ * Measures the time a <code>RAMJobStore</code> takes to acquire, fire and
+ * complete the triggers of a <code>@DisallowConcurrentExecution</code> job
+ * with many triggers, firing one after the other among the triggers of other
+ * jobs. Each firing blocks all of the job's other triggers, and each
+ * completion unblocks them.
+ * <p>
+ * Run with the number of triggers of the job (default 10,000) and the number
+ * of other triggers (default 100,000) as arguments.
+ * </p>
+ */
+public class RAMJobStoreBlockedTriggersBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int count = (args.length > 0) ? Integer.parseInt(args[0]) : 10000;
+        int otherCount = (args.length > 1) ? Integer.parseInt(args[1]) : 100000;
+
+        for (int round = 0; round < 3; round++) {
+            long baseFireTime = System.currentTimeMillis() + 600000L;
+            RAMJobStore store = new RAMJobStore();
+            store.initialize(null, new SampleSignaler());
+
+            JobDetail job = JobBuilder.newJob(NonConcurrentJob.class).withIdentity("job", "group").storeDurably().build();
+            store.storeJob(job, false);
+            for (int i = 0; i < count; i++) {
+                store.storeTrigger(trigger("trigger" + i, job, baseFireTime + i * 10L), false);
+            }
+            JobDetail otherJob = JobBuilder.newJob(MyJob.class).withIdentity("otherJob", "group").storeDurably().build();
+            store.storeJob(otherJob, false);
+            for (int i = 0; i < otherCount; i++) {
+                store.storeTrigger(trigger("other" + i, otherJob, baseFireTime + 3600000L + i), false);
+            }
+
+            System.gc();
+            long start = System.nanoTime();
+            int fired = 0;
+            for (int i = 0; i < count; i++) {
+                // as if the scheduler's clock had reached the next fire time
+                List<OperableTrigger> acquired = store.acquireNextTriggers(baseFireTime + i * 10L, 1, 0L);
+                store.triggersFired(acquired);
+                for (OperableTrigger trigger : acquired) {
+                    store.triggeredJobComplete(trigger, job, CompletedExecutionInstruction.NOOP);
+                    fired++;
+                }
+            }
+            long millis = (System.nanoTime() - start) / 1000000L;
+            System.out.println("Fired " + fired + " triggers of one non-concurrent job in " + millis + " ms");
+        }
+    }
+
+    private static OperableTrigger trigger(String name, JobDetail job, long fireTime) {
+        OperableTrigger trigger = (OperableTrigger) TriggerBuilder.newTrigger()
+                .withIdentity(name, "group")
+                .withSchedule(SimpleScheduleBuilder.repeatHourlyForever()
+                        .withMisfireHandlingInstructionIgnoreMisfires())
+                .forJob(job).startAt(new Date(fireTime)).build();
+        trigger.computeFirstFireTime(null);
+        return trigger;
+    }
+}
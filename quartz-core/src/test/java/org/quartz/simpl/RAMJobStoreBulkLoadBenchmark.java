@@ -0,0 +1,90 @@
+/*
+ * All content copyright Terracotta, Inc., unless otherwise indicated. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.quartz.simpl;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.quartz.AbstractJobStoreTest.MyJob;
+import org.quartz.AbstractJobStoreTest.SampleSignaler;
+import org.quartz.job.JobBuilder;
+import org.quartz.job.JobDetail;
+import org.quartz.scheduler.SimpleScheduleBuilder;
+import org.quartz.spi.OperableTrigger;
+import org.quartz.triggers.Trigger;
+import org.quartz.triggers.TriggerBuilder;
+
+/**
+ * Compares the time taken to load a schedule into a <code>RAMJobStore</code>
+ * one job and trigger at a time, and with <code>storeJobsAndTriggers</code>.
+ * <p>
+ * Run with the number of triggers to load (default 1,000,000) as argument,
+ * and a heap large enough for two copies of the schedule, e.g.
+ * <code>-Xmx4g</code>.
+ * </p>
+ */
+public class RAMJobStoreBulkLoadBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int count = (args.length > 0) ? Integer.parseInt(args[0]) : 1000000;
+
+        Map<JobDetail, Set<? extends Trigger>> schedule = createSchedule(count);
+
+        for (int round = 0; round < 3; round++) {
+            RAMJobStore store = new RAMJobStore();
+            store.initialize(null, new SampleSignaler());
+            System.gc();
+            long start = System.nanoTime();
+            for (Map.Entry<JobDetail, Set<? extends Trigger>> e : schedule.entrySet()) {
+                store.storeJobAndTrigger(e.getKey(), (OperableTrigger) e.getValue().iterator().next());
+            }
+            report("one at a time", count, start);
+            store = null;
+
+            store = new RAMJobStore();
+            store.initialize(null, new SampleSignaler());
+            System.gc();
+            start = System.nanoTime();
+            store.storeJobsAndTriggers(schedule, false);
+            report("bulk", count, start);
+        }
+    }
+
+    private static Map<JobDetail, Set<? extends Trigger>> createSchedule(int count) {
+        Random random = new Random(42);
+        long now = System.currentTimeMillis();
+        Map<JobDetail, Set<? extends Trigger>> schedule = new LinkedHashMap<JobDetail, Set<? extends Trigger>>(count * 2);
+        for (int i = 0; i < count; i++) {
+            JobDetail job = JobBuilder.newJob(MyJob.class).withIdentity("job" + i, "group" + (i % 100)).build();
+            OperableTrigger trigger = (OperableTrigger) TriggerBuilder.newTrigger()
+                    .withIdentity("trigger" + i, "group" + (i % 100))
+                    .withSchedule(SimpleScheduleBuilder.repeatHourlyForever())
+                    .forJob(job).startAt(new Date(now + 60000L + random.nextInt(24 * 3600 * 1000))).build();
+            trigger.computeFirstFireTime(null);
+            schedule.put(job, Collections.singleton(trigger));
+        }
+        return schedule;
+    }
+
+    private static void report(String method, int count, long start) {
+        long millis = (System.nanoTime() - start) / 1000000L;
+        System.out.println("Loaded " + count + " triggers " + method + " in " + millis + " ms");
+    }
+}
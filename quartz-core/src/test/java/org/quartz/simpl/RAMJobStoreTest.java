@@ -15,8 +15,32 @@
  */
 package org.quartz.simpl;
 
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 import org.quartz.AbstractJobStoreTest;
+import org.quartz.calendar.BaseCalendar;
+import org.quartz.exception.DisallowConcurrentExecution;
+import org.quartz.exception.FootprintLimitExceededException;
+import org.quartz.job.JobBuilder;
+import org.quartz.job.JobDetail;
+import org.quartz.job.JobKey;
+import org.quartz.job.JobPersistenceException;
+import org.quartz.matchers.GroupMatcher;
+import org.quartz.scheduler.SimpleScheduleBuilder;
 import org.quartz.spi.JobStore;
+import org.quartz.spi.JobStoreFootprint;
+import org.quartz.spi.OperableTrigger;
+import org.quartz.triggers.Trigger;
+import org.quartz.triggers.Trigger.CompletedExecutionInstruction;
+import org.quartz.triggers.Trigger.TriggerState;
+import org.quartz.triggers.TriggerBuilder;
+import org.quartz.triggers.TriggerKey;
 
 public class RAMJobStoreTest extends AbstractJobStoreTest {
 
@@ -30,4 +54,299 @@ public class RAMJobStoreTest extends AbstractJobStoreTest {
     protected void destroyJobStore(String name) {
 
     }
+
+    public void testStoreJobsAndTriggersInBulk() throws Exception {
+        RAMJobStore store = new RAMJobStore();
+        store.initialize(null, new SampleSignaler());
+        store.pauseTriggers(GroupMatcher.triggerGroupEquals("paused"));
+
+        long baseFireTime = System.currentTimeMillis() + 1000L;
+        Map<JobDetail, Set<? extends Trigger>> triggersAndJobs = new LinkedHashMap<JobDetail, Set<? extends Trigger>>();
+        for (int i = 0; i < 200; i++) {
+            JobDetail job = JobBuilder.newJob(MyJob.class).withIdentity("job" + i, "group").build();
+            Set<Trigger> triggers = new HashSet<Trigger>();
+            // fire times in the reverse of the order of storing
+            triggers.add(trigger("trigger" + i, "group", job, baseFireTime + (200 - i) * 10L));
+            triggers.add(trigger("trigger" + i, "paused", job, baseFireTime));
+            triggersAndJobs.put(job, triggers);
+        }
+        store.storeJobsAndTriggers(triggersAndJobs, false);
+
+        assertEquals(200, store.getNumberOfJobs());
+        assertEquals(400, store.getNumberOfTriggers());
+        assertEquals(TriggerState.PAUSED, store.getTriggerState(TriggerKey.triggerKey("trigger0", "paused")));
+
+        List<OperableTrigger> acquired = store.acquireNextTriggers(baseFireTime + 10000L, 3, 10000L);
+        assertEquals(3, acquired.size());
+        assertEquals("trigger199", acquired.get(0).getKey().getName());
+        assertEquals("trigger198", acquired.get(1).getKey().getName());
+        assertEquals("trigger197", acquired.get(2).getKey().getName());
+    }
+
+    public void testStoreJobsAndTriggersStoresNothingOnFailure() throws Exception {
+        RAMJobStore store = new RAMJobStore();
+        store.initialize(null, new SampleSignaler());
+
+        JobDetail job = JobBuilder.newJob(MyJob.class).withIdentity("job", "group").build();
+        JobDetail otherJob = JobBuilder.newJob(MyJob.class).withIdentity("otherJob", "group").build();
+        Map<JobDetail, Set<? extends Trigger>> triggersAndJobs = new LinkedHashMap<JobDetail, Set<? extends Trigger>>();
+        Set<Trigger> triggers = new HashSet<Trigger>();
+        triggers.add(trigger("trigger", "group", job, System.currentTimeMillis() + 1000L));
+        // references a job that is neither stored nor in the batch
+        triggers.add(trigger("orphan", "group", otherJob, System.currentTimeMillis() + 1000L));
+        triggersAndJobs.put(job, triggers);
+
+        try {
+            store.storeJobsAndTriggers(triggersAndJobs, false);
+            fail("Expected JobPersistenceException");
+        } catch (JobPersistenceException e) {
+            // expected
+        }
+        assertEquals(0, store.getNumberOfJobs());
+        assertEquals(0, store.getNumberOfTriggers());
+        assertNull(store.retrieveJob(new JobKey("job", "group")));
+    }
+
+    public void testCalendarChangeUpdatesOnlyItsTriggers() throws Exception {
+        RAMJobStore store = new RAMJobStore();
+        store.initialize(null, new SampleSignaler());
+
+        store.storeCalendar("calendar", new BaseCalendar(), false, false);
+        JobDetail job = JobBuilder.newJob(MyJob.class).withIdentity("job", "group").storeDurably().build();
+        store.storeJob(job, false);
+        long fireTime = System.currentTimeMillis() + 60000L;
+        for (int i = 0; i < 1500; i++) {
+            OperableTrigger trigger = trigger("trigger" + i, "group", job, fireTime);
+            if (i % 2 == 0) {
+                trigger.setCalendarName("calendar");
+            }
+            store.storeTrigger(trigger, false);
+        }
+
+        // exclude the current fire time
+        BaseCalendar excluding = new BaseCalendar() {
+            @Override
+            public boolean isTimeIncluded(long timeStamp) {
+                return timeStamp != fireTime;
+            }
+        };
+        store.storeCalendar("calendar", excluding, true, true);
+
+        assertEquals(fireTime + 60000L, store.retrieveTrigger(TriggerKey.triggerKey("trigger0", "group")).getNextFireTime().getTime());
+        assertEquals(fireTime, store.retrieveTrigger(TriggerKey.triggerKey("trigger1", "group")).getNextFireTime().getTime());
+        List<OperableTrigger> acquired = store.acquireNextTriggers(fireTime + 1000L, 2000, 0L);
+        assertEquals(750, acquired.size());
+
+        try {
+            store.removeCalendar("calendar");
+            fail("Expected JobPersistenceException");
+        } catch (JobPersistenceException e) {
+            // expected
+        }
+        for (int i = 0; i < 1500; i += 2) {
+            store.removeTrigger(TriggerKey.triggerKey("trigger" + i, "group"));
+        }
+        assertTrue(store.removeCalendar("calendar"));
+    }
+
+    public void testTriggersOfNonConcurrentJobParkedUntilJobCompletes() throws Exception {
+        RAMJobStore store = new RAMJobStore();
+        store.initialize(null, new SampleSignaler());
+
+        JobDetail job = JobBuilder.newJob(NonConcurrentJob.class).withIdentity("job", "group").storeDurably().build();
+        store.storeJob(job, false);
+        long fireTime = System.currentTimeMillis() + 1000L;
+        for (int i = 0; i < 10; i++) {
+            store.storeTrigger(trigger("trigger" + i, "group", job, fireTime + i), false);
+        }
+        store.pauseTrigger(TriggerKey.triggerKey("trigger9", "group"));
+
+        // the other triggers of the job are parked, and come back when the trigger is released
+        List<OperableTrigger> acquired = store.acquireNextTriggers(fireTime + 1000L, 10, 1000L);
+        assertEquals(1, acquired.size());
+        assertEquals("trigger0", acquired.get(0).getKey().getName());
+        store.releaseAcquiredTrigger(acquired.get(0));
+        acquired = store.acquireNextTriggers(fireTime + 1000L, 10, 1000L);
+        assertEquals(1, acquired.size());
+        assertEquals("trigger0", acquired.get(0).getKey().getName());
+
+        assertEquals(1, store.triggersFired(acquired).size());
+        assertEquals(TriggerState.BLOCKED, store.getTriggerState(TriggerKey.triggerKey("trigger1", "group")));
+        assertEquals(TriggerState.PAUSED, store.getTriggerState(TriggerKey.triggerKey("trigger9", "group")));
+        assertTrue(store.acquireNextTriggers(fireTime + 1000L, 10, 1000L).isEmpty());
+
+        // triggers stored and resumed while the job executes are blocked too
+        store.storeTrigger(trigger("trigger10", "group", job, fireTime), false);
+        assertEquals(TriggerState.BLOCKED, store.getTriggerState(TriggerKey.triggerKey("trigger10", "group")));
+        store.removeTrigger(TriggerKey.triggerKey("trigger2", "group"));
+
+        store.triggeredJobComplete(acquired.get(0), job, CompletedExecutionInstruction.NOOP);
+        assertEquals(TriggerState.NORMAL, store.getTriggerState(TriggerKey.triggerKey("trigger1", "group")));
+        assertEquals(TriggerState.PAUSED, store.getTriggerState(TriggerKey.triggerKey("trigger9", "group")));
+        acquired = store.acquireNextTriggers(fireTime + 1000L, 10, 1000L);
+        assertEquals(1, acquired.size());
+        assertEquals("trigger10", acquired.get(0).getKey().getName());
+
+        store.triggersFired(acquired);
+        store.triggeredJobComplete(acquired.get(0), job, CompletedExecutionInstruction.NOOP);
+        store.resumeTrigger(TriggerKey.triggerKey("trigger9", "group"));
+        int fired = 2;
+        while (!(acquired = store.acquireNextTriggers(fireTime + 1000L, 10, 1000L)).isEmpty()) {
+            assertEquals(1, acquired.size());
+            store.triggersFired(acquired);
+            store.triggeredJobComplete(acquired.get(0), job, CompletedExecutionInstruction.NOOP);
+            fired++;
+        }
+        // each of the remaining triggers fired once
+        assertEquals(10, fired);
+    }
+
+    public void testParkedTriggerReplacedWhileJobExecutesFires() throws Exception {
+        RAMJobStore store = new RAMJobStore();
+        store.initialize(null, new SampleSignaler());
+
+        JobDetail job = JobBuilder.newJob(NonConcurrentJob.class).withIdentity("job", "group").storeDurably().build();
+        store.storeJob(job, false);
+        long fireTime = System.currentTimeMillis() + 1000L;
+        for (int i = 0; i < 4; i++) {
+            store.storeTrigger(trigger("trigger" + i, "group", job, fireTime + i), false);
+        }
+        List<OperableTrigger> executing = store.acquireNextTriggers(fireTime + 1000L, 10, 1000L);
+        assertEquals(1, executing.size());
+        store.triggersFired(executing);
+        // parks the other triggers
+        assertTrue(store.acquireNextTriggers(fireTime + 1000L, 10, 1000L).isEmpty());
+
+        store.storeTrigger(trigger("trigger1", "group", job, fireTime + 1), true);
+        assertTrue(store.replaceTrigger(TriggerKey.triggerKey("trigger2", "group"),
+                trigger("trigger2", "group", job, fireTime + 2)));
+        store.removeTrigger(TriggerKey.triggerKey("trigger3", "group"));
+        Map<TriggerKey, TriggerWrapper> parked = store.blockedTriggersByJob.get(job.getKey());
+        assertEquals(3, parked.size());
+        assertSame(store.triggersByKey.get(TriggerKey.triggerKey("trigger1", "group")),
+                parked.get(TriggerKey.triggerKey("trigger1", "group")));
+        assertFalse(parked.containsKey(TriggerKey.triggerKey("trigger3", "group")));
+
+        store.triggeredJobComplete(executing.get(0), job, CompletedExecutionInstruction.NOOP);
+        Set<String> fired = new HashSet<String>();
+        List<OperableTrigger> acquired;
+        while (!(acquired = store.acquireNextTriggers(fireTime + 1000L, 10, 1000L)).isEmpty()) {
+            assertEquals(1, acquired.size());
+            store.triggersFired(acquired);
+            store.triggeredJobComplete(acquired.get(0), job, CompletedExecutionInstruction.NOOP);
+            fired.add(acquired.get(0).getKey().getName());
+        }
+        assertEquals(new HashSet<String>(Arrays.asList("trigger1", "trigger2")), fired);
+        assertTrue(store.blockedTriggersByJob.isEmpty());
+    }
+
+    public void testClearAllSchedulingDataForgetsParkedTriggers() throws Exception {
+        RAMJobStore store = new RAMJobStore();
+        store.initialize(null, new SampleSignaler());
+
+        JobDetail job = JobBuilder.newJob(NonConcurrentJob.class).withIdentity("job", "group").storeDurably().build();
+        store.storeJob(job, false);
+        long fireTime = System.currentTimeMillis() + 1000L;
+        store.storeTrigger(trigger("trigger0", "group", job, fireTime), false);
+        store.storeTrigger(trigger("trigger1", "group", job, fireTime + 1), false);
+        store.triggersFired(store.acquireNextTriggers(fireTime + 1000L, 10, 1000L));
+        store.acquireNextTriggers(fireTime + 1000L, 10, 1000L);
+        assertFalse(store.blockedTriggersByJob.isEmpty());
+
+        store.clearAllSchedulingData();
+        assertTrue(store.blockedTriggersByJob.isEmpty());
+    }
+
+    public void testFootprintFollowsStoredData() throws Exception {
+        RAMJobStore store = new RAMJobStore();
+        store.initialize(null, new SampleSignaler());
+        assertEquals(0, store.getFootprint().getTotalBytes());
+
+        JobDetail small = JobBuilder.newJob(MyJob.class).withIdentity("small", "groupA").storeDurably().build();
+        JobDetail large = JobBuilder.newJob(MyJob.class).withIdentity("large", "groupB").storeDurably()
+                .usingJobData("data", new String(new char[10000])).build();
+        store.storeJob(small, false);
+        store.storeJob(large, false);
+        store.storeTrigger(trigger("trigger", "groupA", small, System.currentTimeMillis() + 1000L), false);
+        store.storeCalendar("calendar", new BaseCalendar(), false, false);
+
+        JobStoreFootprint footprint = store.getFootprint();
+        assertEquals(2, footprint.getNumberOfJobs());
+        assertEquals(1, footprint.getNumberOfTriggers());
+        assertEquals(1, footprint.getNumberOfCalendars());
+        assertTrue(footprint.getJobDataMapBytes() > 20000);
+        assertTrue(footprint.getJobGroupBytes().get("groupB") > footprint.getJobGroupBytes().get("groupA"));
+        assertTrue(footprint.getTriggerGroupBytes().get("groupA") > 0);
+        assertEquals(footprint.getJobBytes() + footprint.getTriggerBytes() + footprint.getCalendarBytes(),
+                footprint.getTotalBytes());
+        assertEquals("Job groupB.large", footprint.getLargestJobDataMaps().keySet().iterator().next());
+
+        store.removeJob(large.getKey());
+        store.removeJob(small.getKey());
+        store.removeCalendar("calendar");
+        assertEquals(0, store.getFootprint().getTotalBytes());
+    }
+
+    public void testFootprintLimit() throws Exception {
+        RAMJobStore store = new RAMJobStore();
+        store.initialize(null, new SampleSignaler());
+        JobDetail job = JobBuilder.newJob(MyJob.class).withIdentity("job", "group").storeDurably()
+                .usingJobData("data", new String(new char[1000])).build();
+        store.storeJob(job, false);
+        store.setMaxFootprint(store.getFootprint().getTotalBytes() + 1000);
+
+        JobDetail large = JobBuilder.newJob(MyJob.class).withIdentity("large", "group").storeDurably()
+                .usingJobData("data", new String(new char[1000])).build();
+        try {
+            store.storeJob(large, false);
+            fail("Expected FootprintLimitExceededException");
+        } catch (FootprintLimitExceededException e) {
+            // expected
+        }
+        assertNull(store.retrieveJob(large.getKey()));
+
+        // replacing with a smaller job, and adding a trigger, still fit
+        JobDetail smaller = JobBuilder.newJob(MyJob.class).withIdentity("job", "group").storeDurably().build();
+        store.storeJob(smaller, true);
+        store.storeTrigger(trigger("trigger", "group", smaller, System.currentTimeMillis() + 1000L), false);
+
+        store.setMaxFootprint(store.getFootprint().getTotalBytes());
+        try {
+            store.storeTrigger(trigger("trigger2", "group", smaller, System.currentTimeMillis() + 1000L), false);
+            fail("Expected FootprintLimitExceededException");
+        } catch (FootprintLimitExceededException e) {
+            // expected
+        }
+        assertEquals(1, store.getNumberOfTriggers());
+    }
+
+    public void testFootprintOnlyEstimatedWhenNeeded() throws Exception {
+        RAMJobStore store = new RAMJobStore();
+        store.initialize(null, new SampleSignaler());
+        JobDetail job = JobBuilder.newJob(MyJob.class).withIdentity("job", "group").storeDurably()
+                .usingJobData("data", new String(new char[1000])).build();
+        store.storeJob(job, false);
+        store.storeTrigger(trigger("trigger", "group", job, System.currentTimeMillis() + 1000L), false);
+        assertTrue(store.jobsByKey.get(job.getKey()).footprint < 0);
+        assertEquals(0, store.getEstimatedFootprint() - store.getFootprint().getCalendarBytes());
+
+        // the stored jobs and triggers count towards a limit set later
+        store.setMaxFootprint(Long.MAX_VALUE);
+        assertEquals(store.getFootprint().getTotalBytes(), store.getEstimatedFootprint());
+        store.removeJob(job.getKey());
+        assertEquals(0, store.getEstimatedFootprint());
+    }
+
+    @DisallowConcurrentExecution
+    public static class NonConcurrentJob extends MyJob {
+    }
+
+    private static OperableTrigger trigger(String name, String group, JobDetail job, long fireTime) {
+        OperableTrigger trigger = (OperableTrigger) TriggerBuilder.newTrigger()
+                .withIdentity(name, group)
+                .withSchedule(SimpleScheduleBuilder.repeatMinutelyForever())
+                .forJob(job).startAt(new Date(fireTime)).build();
+        trigger.computeFirstFireTime(null);
+        return trigger;
+    }
 }
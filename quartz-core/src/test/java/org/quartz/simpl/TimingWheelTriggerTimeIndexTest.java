@@ -0,0 +1,133 @@
+/*
+ * All content copyright Terracotta, Inc., unless otherwise indicated. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.quartz.simpl;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.quartz.triggers.SimpleTriggerImpl;
+
+/**
+ * Checks that the timing wheel index orders triggers exactly like the
+ * tree based index.
+ */
+public class TimingWheelTriggerTimeIndexTest extends TestCase {
+
+    private static final long NOW = 1500000000000L;
+
+    public void testTieBreakingWithinMillisecond() {
+        TriggerTimeIndex index = new TimingWheelTriggerTimeIndex();
+        index.add(wrapper("b", NOW, 5));
+        index.add(wrapper("a", NOW, 5));
+        index.add(wrapper("c", NOW, 10));
+        index.add(wrapper("d", NOW - 1, 1));
+
+        assertEquals("d", index.pollFirst().key.getName());
+        assertEquals("c", index.pollFirst().key.getName());
+        assertEquals("a", index.pollFirst().key.getName());
+        assertEquals("b", index.pollFirst().key.getName());
+        assertNull(index.pollFirst());
+        assertTrue(index.isEmpty());
+    }
+
+    public void testUnscheduledTriggersSortLast() {
+        TriggerTimeIndex index = new TimingWheelTriggerTimeIndex();
+        index.add(wrapper("never", -1, 5));
+        index.add(wrapper("later", NOW + 3L * 24 * 60 * 60 * 1000, 5));
+
+        assertEquals("later", index.pollFirst().key.getName());
+        assertEquals("never", index.pollFirst().key.getName());
+    }
+
+    public void testTriggerAddedBehindWheel() {
+        TriggerTimeIndex index = new TimingWheelTriggerTimeIndex();
+        index.add(wrapper("hourLater", NOW + 60L * 60 * 1000, 5));
+        assertEquals("hourLater", index.first().key.getName());
+
+        TriggerWrapper early = wrapper("early", NOW, 5);
+        index.add(early);
+        assertEquals("early", index.first().key.getName());
+        assertTrue(index.remove(early));
+        assertEquals("hourLater", index.first().key.getName());
+        assertEquals(1, index.size());
+    }
+
+    public void testMatchesTreeSetOrdering() {
+        Random random = new Random(42);
+        TriggerTimeIndex expected = new TreeSetTriggerTimeIndex();
+        TriggerTimeIndex actual = new TimingWheelTriggerTimeIndex();
+        List<TriggerWrapper> present = new ArrayList<TriggerWrapper>();
+        long clock = NOW;
+
+        for (int i = 0; i < 50000; i++) {
+            int op = random.nextInt(10);
+            if (op < 5 || present.isEmpty()) {
+                long offset;
+                switch (random.nextInt(5)) {
+                    case 0: offset = random.nextInt(1000); break;
+                    case 1: offset = random.nextInt(60 * 1000); break;
+                    case 2: offset = random.nextInt(2 * 60 * 60 * 1000); break;
+                    case 3: offset = (long) random.nextInt(10 * 24 * 60 * 60) * 1000L; break;
+                    default: offset = -random.nextInt(10 * 1000); break;
+                }
+                TriggerWrapper tw = wrapper("t" + i, clock + offset, random.nextInt(3));
+                assertEquals(expected.add(tw), actual.add(tw));
+                present.add(tw);
+            } else if (op < 7) {
+                TriggerWrapper tw = present.remove(random.nextInt(present.size()));
+                assertEquals(expected.remove(tw), actual.remove(tw));
+            } else if (op < 9) {
+                TriggerWrapper first = expected.pollFirst();
+                assertSame(first, actual.pollFirst());
+                present.remove(first);
+                clock = Math.max(clock, first.trigger.getNextFireTime().getTime());
+            } else {
+                assertSame(expected.first(), actual.first());
+            }
+            assertEquals(expected.size(), actual.size());
+        }
+
+        Iterator<TriggerWrapper> exp = expected.iterator();
+        Iterator<TriggerWrapper> act = actual.iterator();
+        while (exp.hasNext()) {
+            assertSame(exp.next(), act.next());
+        }
+        assertFalse(act.hasNext());
+
+        while (!expected.isEmpty()) {
+            assertSame(expected.pollFirst(), actual.pollFirst());
+        }
+        assertTrue(actual.isEmpty());
+    }
+
+    private static TriggerWrapper wrapper(String name, long nextFireTime, int priority) {
+        SimpleTriggerImpl trigger = new SimpleTriggerImpl();
+        trigger.setName(name);
+        trigger.setGroup("g");
+        trigger.setJobName("job");
+        trigger.setJobGroup("g");
+        trigger.setPriority(priority);
+        if (nextFireTime >= 0) {
+            trigger.setNextFireTime(new Date(nextFireTime));
+        }
+        return new TriggerWrapper(trigger);
+    }
+}
@@ -15,11 +15,19 @@
  */
 package org.quartz.utils;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.quartz.utils.DirtyFlagMap;
 
@@ -188,4 +196,119 @@ public class DirtyFlagMapTest extends TestCase {
         assertTrue(dirtyFlagMap.isDirty());
         assertEquals(0, dirtyFlagMap.size());
     }
+
+    @SuppressWarnings("unchecked")
+    public void testCloneSharesMapUntilModified() throws Exception {
+        DirtyFlagMap<String, String> original = new DirtyFlagMap<String, String>();
+        original.put("a", "A");
+        DirtyFlagMap<String, String> copy = (DirtyFlagMap<String, String>) original.clone();
+        assertSame(wrappedMap(original), wrappedMap(copy));
+
+        copy.put("b", "B");
+        assertNotSame(wrappedMap(original), wrappedMap(copy));
+        assertFalse(original.containsKey("b"));
+        assertEquals(2, copy.size());
+
+        original.remove("a");
+        assertTrue(copy.containsKey("a"));
+    }
+
+    @SuppressWarnings("unchecked")
+    public void testCloneIsolatedFromViewsOfOriginal() {
+        DirtyFlagMap<String, String> original = new DirtyFlagMap<String, String>();
+        original.put("a", "A");
+        original.put("b", "B");
+        Set<String> keySet = original.keySet();
+        Iterator<Map.Entry<String, String>> entries = original.entrySet().iterator();
+        DirtyFlagMap<String, String> copy = (DirtyFlagMap<String, String>) original.clone();
+
+        Map.Entry<String, String> entry = entries.next();
+        entry.setValue("changed");
+        assertEquals("changed", entry.getValue());
+        assertEquals("changed", original.get(entry.getKey()));
+        assertFalse(copy.containsValue("changed"));
+
+        entries.remove();
+        assertFalse(original.containsKey(entry.getKey()));
+        assertTrue(copy.containsKey(entry.getKey()));
+
+        keySet.clear();
+        assertTrue(original.isEmpty());
+        assertEquals(2, copy.size());
+    }
+
+    @SuppressWarnings("unchecked")
+    public void testGetWrappedMapOfCloneIsPrivate() {
+        DirtyFlagMap<String, String> original = new DirtyFlagMap<String, String>();
+        original.put("a", "A");
+        DirtyFlagMap<String, String> copy = (DirtyFlagMap<String, String>) original.clone();
+        copy.getWrappedMap().put("b", "B");
+        assertFalse(original.containsKey("b"));
+        assertEquals(copy, copy.clone());
+    }
+
+    @SuppressWarnings("unchecked")
+    public void testLoadsMapOnFirstAccess() {
+        final AtomicInteger loads = new AtomicInteger();
+        DirtyFlagMap<String, String> lazy = new DirtyFlagMap<String, String>(new Callable<Map<String, String>>() {
+            public Map<String, String> call() {
+                loads.incrementAndGet();
+                return new HashMap<String, String>(Collections.singletonMap("a", "A"));
+            }
+        });
+        DirtyFlagMap<String, String> copy = (DirtyFlagMap<String, String>) lazy.clone();
+        assertEquals(0, loads.get());
+
+        assertEquals("A", lazy.get("a"));
+        assertEquals(1, lazy.size());
+        assertEquals(1, loads.get());
+        assertFalse(lazy.isDirty());
+
+        copy.put("b", "B");
+        assertEquals(1, loads.get());
+        assertFalse(lazy.containsKey("b"));
+        assertEquals(2, copy.size());
+    }
+
+    public void testRetriesFailedLoad() {
+        final AtomicInteger loads = new AtomicInteger();
+        DirtyFlagMap<String, String> lazy = new DirtyFlagMap<String, String>(new Callable<Map<String, String>>() {
+            public Map<String, String> call() throws IOException {
+                if (loads.incrementAndGet() == 1) {
+                    throw new IOException("unreadable");
+                }
+                return new HashMap<String, String>();
+            }
+        });
+        try {
+            lazy.isEmpty();
+            fail("Expected an IllegalStateException");
+        } catch (IllegalStateException expected) {
+            assertTrue(expected.getCause() instanceof IOException);
+        }
+        assertTrue(lazy.isEmpty());
+    }
+
+    @SuppressWarnings("unchecked")
+    public void testSerializesMapNotLoadedYet() throws Exception {
+        DirtyFlagMap<String, String> lazy = new DirtyFlagMap<String, String>(new Callable<Map<String, String>>() {
+            public Map<String, String> call() {
+                return new HashMap<String, String>(Collections.singletonMap("a", "A"));
+            }
+        });
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(lazy);
+        out.close();
+
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        DirtyFlagMap<String, String> read = (DirtyFlagMap<String, String>) in.readObject();
+        assertEquals("A", read.get("a"));
+    }
+
+    private static Object wrappedMap(DirtyFlagMap<?, ?> dirtyFlagMap) throws Exception {
+        java.lang.reflect.Field field = DirtyFlagMap.class.getDeclaredField("map");
+        field.setAccessible(true);
+        return field.get(dirtyFlagMap);
+    }
 }